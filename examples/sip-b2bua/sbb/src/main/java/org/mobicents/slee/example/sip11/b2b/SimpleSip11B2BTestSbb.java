@@ -41,6 +41,8 @@ import javax.slee.SbbContext;
 import javax.slee.SbbLocalObject;
 import javax.slee.facilities.Tracer;
 
+import net.java.slee.resource.sip.AutomaticAckEvent;
+import net.java.slee.resource.sip.AutomaticResponseEvent;
 import net.java.slee.resource.sip.CancelRequestEvent;
 import net.java.slee.resource.sip.DialogActivity;
 import net.java.slee.resource.sip.SipActivityContextInterfaceFactory;
@@ -58,8 +60,11 @@ public abstract class SimpleSip11B2BTestSbb implements javax.slee.Sbb {
 	public void onInviteEvent(RequestEvent event, ActivityContextInterface aci) {
 		// ACI is the server transaction activity
 		try {
-			// send "trying" response
-			replyToRequestEvent(event, Response.TRYING);
+			// send "trying" response, unless the RA already did it
+			if (!(event instanceof AutomaticResponseEvent)
+					|| !((AutomaticResponseEvent) event).isTryingSent()) {
+				replyToRequestEvent(event, Response.TRYING);
+			}
 			// Create the dialogs representing the incoming and outgoing call
 			// legs.
 			final DialogActivity incomingDialog = (DialogActivity) sipProvider
@@ -100,14 +105,18 @@ public abstract class SimpleSip11B2BTestSbb implements javax.slee.Sbb {
 				CSeqHeader.NAME);
 		if (cseq.getMethod().equals(Request.INVITE)) {
 			// lets ack it ourselves to avoid UAS retransmissions due to
-			// forwarding of this response and further UAC Ack
+			// forwarding of this response and further UAC Ack, unless the RA
+			// already did it
 			// note that the app does not handles UAC ACKs
-			try {
-				final Request ack = event.getDialog().createAck(
-						cseq.getSeqNumber());
-				event.getDialog().sendAck(ack);
-			} catch (Exception e) {
-				tracer.severe("Unable to ack INVITE's 200 ok from UAS", e);
+			if (!(event instanceof AutomaticAckEvent)
+					|| !((AutomaticAckEvent) event).isAckSent()) {
+				try {
+					final Request ack = event.getDialog().createAck(
+							cseq.getSeqNumber());
+					event.getDialog().sendAck(ack);
+				} catch (Exception e) {
+					tracer.severe("Unable to ack INVITE's 200 ok from UAS", e);
+				}
 			}
 		} else if (cseq.getMethod().equals(Request.BYE)
 				|| cseq.getMethod().equals(Request.CANCEL)) {
@@ -118,8 +127,12 @@ public abstract class SimpleSip11B2BTestSbb implements javax.slee.Sbb {
 	}
 
 	public void onBye(RequestEvent event, ActivityContextInterface aci) {
-		// send back 200 ok for this dialog right away, to avoid retransmissions
-		replyToRequestEvent(event, Response.OK);
+		// send back 200 ok for this dialog right away, to avoid retransmissions,
+		// unless the RA already did it
+		if (!(event instanceof AutomaticResponseEvent)
+				|| !((AutomaticResponseEvent) event).isFinalResponseSent()) {
+			replyToRequestEvent(event, Response.OK);
+		}
 		// forward to the other dialog
 		processMidDialogRequest(event, aci);
 	}
@@ -130,7 +143,9 @@ public abstract class SimpleSip11B2BTestSbb implements javax.slee.Sbb {
 		}
 		
 		try {
-			this.sipProvider.acceptCancel(event, false);
+			if (!event.isFinalResponseSent()) {
+				this.sipProvider.acceptCancel(event, false);
+			}
 			final ActivityContextInterface peerDialogACI = getOutgoingDialog();
 			final DialogActivity peerDialog = (DialogActivity) peerDialogACI
 					.getActivity();
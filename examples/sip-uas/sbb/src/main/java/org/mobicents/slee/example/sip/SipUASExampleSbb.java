@@ -44,6 +44,7 @@ import javax.slee.facilities.Tracer;
 import javax.slee.resource.ResourceAdaptorTypeID;
 import javax.slee.serviceactivity.ServiceStartedEvent;
 
+import net.java.slee.resource.sip.AutomaticResponseEvent;
 import net.java.slee.resource.sip.DialogActivity;
 import net.java.slee.resource.sip.SipActivityContextInterfaceFactory;
 import net.java.slee.resource.sip.SleeSipProvider;
@@ -173,10 +174,14 @@ public abstract class SipUASExampleSbb implements javax.slee.Sbb {
 				.getServerTransaction();
 
 		try {
-			// send "trying" response
-			Response response = messageFactory.createResponse(Response.TRYING,
-					requestEvent.getRequest());
-			serverTransaction.sendResponse(response);
+			Response response;
+			// send "trying" response, unless the RA already did it
+			if (!(requestEvent instanceof AutomaticResponseEvent)
+					|| !((AutomaticResponseEvent) requestEvent).isTryingSent()) {
+				response = messageFactory.createResponse(Response.TRYING,
+						requestEvent.getRequest());
+				serverTransaction.sendResponse(response);
+			}
 			// get local object
 			final SbbLocalObject sbbLocalObject = this.sbbContext
 					.getSbbLocalObject();
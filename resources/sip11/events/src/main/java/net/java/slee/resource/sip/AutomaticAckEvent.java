@@ -0,0 +1,37 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+/**
+ * Implemented by the response events fired by the SIP RA, tells if the RA
+ * already sent the ACK for the response before firing the event, so that SBBs
+ * do not send it again.
+ * 
+ */
+public interface AutomaticAckEvent {
+
+	/**
+	 * Indicates if the RA already sent the ACK for the 2xx response.
+	 * 
+	 * @return
+	 */
+	public boolean isAckSent();
+
+}
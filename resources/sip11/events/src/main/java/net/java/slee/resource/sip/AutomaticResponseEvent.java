@@ -0,0 +1,44 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+/**
+ * Implemented by the request events fired by the SIP RA, tells which
+ * responses the RA already sent before firing the event, so that SBBs do not
+ * send those again.
+ * 
+ */
+public interface AutomaticResponseEvent {
+
+	/**
+	 * Indicates if the RA already sent the 100 Trying response to the request.
+	 * 
+	 * @return
+	 */
+	public boolean isTryingSent();
+
+	/**
+	 * Indicates if the RA already sent the final response to the request.
+	 * 
+	 * @return
+	 */
+	public boolean isFinalResponseSent();
+
+}
@@ -0,0 +1,152 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Event that signals the completion of a bulk request fan-out, fired once all
+ * requests got a final response or failed. The event type is
+ * <code>net.java.slee.resource.sip.BulkRequest.COMPLETED</code> if all
+ * requests got a 2xx response, otherwise
+ * <code>net.java.slee.resource.sip.BulkRequest.FAILED</code>.
+ * 
+ * @author martins
+ * 
+ */
+public class BulkRequestCompletedEvent implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A request of the fan-out which did not get a 2xx response.
+	 */
+	public static class Failure implements Serializable {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final Object target;
+
+		private final int statusCode;
+
+		/**
+		 * 
+		 * @param target
+		 * @param statusCode
+		 */
+		public Failure(Object target, int statusCode) {
+			this.target = target;
+			this.statusCode = statusCode;
+		}
+
+		/**
+		 * Retrieves the target of the failed request, the dialog activity or
+		 * address provided to the RA.
+		 * 
+		 * @return
+		 */
+		public Object getTarget() {
+			return target;
+		}
+
+		/**
+		 * Retrieves the status code of the final response, 408 if the
+		 * transaction timed out and 503 if the request could not be built or
+		 * sent.
+		 * 
+		 * @return
+		 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		@Override
+		public String toString() {
+			return statusCode + " " + target;
+		}
+	}
+
+	private final int total;
+
+	private final int succeeded;
+
+	private final List<Failure> failures;
+
+	/**
+	 * 
+	 * @param total
+	 * @param succeeded
+	 * @param failures
+	 */
+	public BulkRequestCompletedEvent(int total, int succeeded, List<Failure> failures) {
+		this.total = total;
+		this.succeeded = succeeded;
+		this.failures = Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * Retrieves the number of requests in the fan-out.
+	 * 
+	 * @return
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Retrieves the number of requests which got a 2xx response.
+	 * 
+	 * @return
+	 */
+	public int getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Retrieves the number of requests which failed.
+	 * 
+	 * @return
+	 */
+	public int getFailed() {
+		return failures.size();
+	}
+
+	/**
+	 * Retrieves the requests which failed.
+	 * 
+	 * @return
+	 */
+	public List<Failure> getFailures() {
+		return failures;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkRequestCompletedEvent[ total = " + total + ", succeeded = " + succeeded + ", failed = " + failures.size() + " ]";
+	}
+}
@@ -31,7 +31,7 @@ import javax.sip.message.Request;
  * The event that signals the arrival of a CANCEL SIP Request.
  * 
  */
-public class CancelRequestEvent extends RequestEvent {
+public class CancelRequestEvent extends RequestEvent implements AutomaticResponseEvent {
 
 	/**
 	 * 
@@ -43,12 +43,25 @@ public class CancelRequestEvent extends RequestEvent {
 	 */
 	private final ServerTransaction matchingTransaction;
 
+	/**
+	 * indicates if the RA already accepted the CANCEL
+	 */
+	private final boolean finalResponseSent;
+
 	public CancelRequestEvent(Object source,
 			ServerTransaction serverTransaction,
 			ServerTransaction matchingTransaction, Dialog dialog,
 			Request request) {
+		this(source, serverTransaction, matchingTransaction, dialog, request, false);
+	}
+
+	public CancelRequestEvent(Object source,
+			ServerTransaction serverTransaction,
+			ServerTransaction matchingTransaction, Dialog dialog,
+			Request request, boolean finalResponseSent) {
 		super(source, serverTransaction, dialog, request);
 		this.matchingTransaction = matchingTransaction;
+		this.finalResponseSent = finalResponseSent;
 	}
 
 	/**
@@ -60,6 +73,22 @@ public class CancelRequestEvent extends RequestEvent {
 		return this.matchingTransaction;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.AutomaticResponseEvent#isTryingSent()
+	 */
+	public boolean isTryingSent() {
+		return false;
+	}
+
+	/**
+	 * Indicates if the RA already answered the CANCEL with 200 OK, and the
+	 * matching INVITE with 487 Request Terminated.
+	 */
+	public boolean isFinalResponseSent() {
+		return finalResponseSent;
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder("CancelRequestEvent[ cancelST = ").append(getServerTransaction())
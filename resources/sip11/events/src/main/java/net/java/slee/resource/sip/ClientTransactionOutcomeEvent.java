@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * Event that signals the outcome of a request sent with
+ * <code>SleeSipProvider.sendRequestWithoutActivity(..)</code>, fired
+ * on the outcome activity chosen by the application. The event type is
+ * <code>net.java.slee.resource.sip.ClientTransactionOutcome.COMPLETED</code>
+ * if the request got a 2xx response, otherwise
+ * <code>net.java.slee.resource.sip.ClientTransactionOutcome.FAILED</code>.
+ * 
+ * @author martins
+ * 
+ */
+public class ClientTransactionOutcomeEvent implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final Request request;
+
+	private final Response response;
+
+	private final int statusCode;
+
+	/**
+	 * 
+	 * @param request
+	 * @param response
+	 * @param statusCode
+	 */
+	public ClientTransactionOutcomeEvent(Request request, Response response, int statusCode) {
+		this.request = request;
+		this.response = response;
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Retrieves the request sent.
+	 * 
+	 * @return
+	 */
+	public Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * Retrieves the final response, null if the transaction timed out or the
+	 * request could not be sent.
+	 * 
+	 * @return
+	 */
+	public Response getResponse() {
+		return response;
+	}
+
+	/**
+	 * Retrieves the status code of the final response, 408 if the
+	 * transaction timed out and 503 if the request could not be sent.
+	 * 
+	 * @return
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Indicates if the request got a 2xx response.
+	 * 
+	 * @return
+	 */
+	public boolean isSuccess() {
+		return statusCode > 199 && statusCode < 300;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("ClientTransactionOutcomeEvent[ method = ")
+				.append(request.getMethod()).append(", statusCode = ")
+				.append(statusCode).append(" ]").toString();
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+import javax.sip.ServerTransaction;
+import javax.sip.address.URI;
+import javax.sip.message.Response;
+
+/**
+ * Event that signals a response forwarded upstream by the RA proxy core, on
+ * a server transaction proxied with
+ * <code>SleeSipProvider.proxyRequest(..)</code>, and fired on the server
+ * transaction activity. The event type is one of:
+ * 
+ * <ul>
+ * <li><code>net.java.slee.resource.sip.ProxyResponse.PROVISIONAL</code> -
+ * the first provisional response forwarded, other than 100 Trying;</li>
+ * <li><code>net.java.slee.resource.sip.ProxyResponse.SUCCESS</code> - each
+ * 2xx response forwarded;</li>
+ * <li><code>net.java.slee.resource.sip.ProxyResponse.FAILURE</code> - the
+ * best final response, forwarded once all branches completed without a 2xx
+ * response.</li>
+ * </ul>
+ * 
+ * @author martins
+ * 
+ */
+public class ProxyResponseEvent implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final ServerTransaction serverTransaction;
+
+	private final Response response;
+
+	private final URI target;
+
+	/**
+	 * 
+	 * @param serverTransaction
+	 * @param response
+	 * @param target
+	 */
+	public ProxyResponseEvent(ServerTransaction serverTransaction, Response response, URI target) {
+		this.serverTransaction = serverTransaction;
+		this.response = response;
+		this.target = target;
+	}
+
+	/**
+	 * Retrieves the proxied server transaction.
+	 * 
+	 * @return
+	 */
+	public ServerTransaction getServerTransaction() {
+		return serverTransaction;
+	}
+
+	/**
+	 * Retrieves the response forwarded upstream.
+	 * 
+	 * @return
+	 */
+	public Response getResponse() {
+		return response;
+	}
+
+	/**
+	 * Retrieves the target of the branch which got the response, null if the
+	 * response was generated by the RA, e.g. no branch could be sent.
+	 * 
+	 * @return
+	 */
+	public URI getTarget() {
+		return target;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("ProxyResponseEvent[ statusCode = ")
+				.append(response.getStatusCode()).append(", target = ")
+				.append(target).append(" ]").toString();
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+/**
+ * Event that signals a transport failure sending a message to a peer, e.g.
+ * a TCP, TLS or WebSocket connection which could not be established or was
+ * closed, reported by the SIP stack. The event is fired on the activity of
+ * the peer, which is created on the first failure, and ends once a message
+ * is received from the peer. The event type is
+ * <code>net.java.slee.resource.sip.TransportFailure</code>.
+ * 
+ * @author martins
+ * 
+ */
+public class TransportFailureEvent implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final String host;
+
+	private final int port;
+
+	private final String transport;
+
+	private final int consecutiveFailures;
+
+	private final long time;
+
+	/**
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @param consecutiveFailures
+	 * @param time
+	 */
+	public TransportFailureEvent(String host, int port, String transport, int consecutiveFailures, long time) {
+		this.host = host;
+		this.port = port;
+		this.transport = transport;
+		this.consecutiveFailures = consecutiveFailures;
+		this.time = time;
+	}
+
+	/**
+	 * Retrieves the host of the peer.
+	 * 
+	 * @return
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Retrieves the port of the peer.
+	 * 
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Retrieves the transport which failed.
+	 * 
+	 * @return
+	 */
+	public String getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Retrieves the number of failures since a message was last received
+	 * from the peer, including this one.
+	 * 
+	 * @return
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Retrieves the time of the failure, in ms since the epoch.
+	 * 
+	 * @return
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return "TransportFailureEvent[ peer = " + host + ":" + port + "/" + transport + ", consecutiveFailures = " + consecutiveFailures + " ]";
+	}
+}
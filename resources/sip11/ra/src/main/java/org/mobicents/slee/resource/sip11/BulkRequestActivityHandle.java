@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * The handle of a {@link net.java.slee.resource.sip.BulkRequestActivity},
+ * identified by the fan-out id.
+ * 
+ * @author martins
+ * 
+ */
+public class BulkRequestActivityHandle extends SipActivityHandle {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final String id;
+
+	/**
+	 * 
+	 * @param id
+	 */
+	public BulkRequestActivityHandle(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public boolean isReplicated() {
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return id.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj != null && obj.getClass() == this.getClass()) {
+			return ((BulkRequestActivityHandle) obj).id.equals(this.id);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "bulk-request-" + id;
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.ClientTransaction;
+import javax.sip.Dialog;
+import javax.sip.SipException;
+import javax.sip.SipProvider;
+import javax.sip.address.Address;
+import javax.sip.header.ContentTypeHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+import javax.slee.transaction.SleeTransaction;
+import javax.slee.transaction.SleeTransactionManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import net.java.slee.resource.sip.DialogActivity;
+
+import org.mobicents.slee.resource.sip11.wrappers.BulkRequestActivityWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.DialogWrapper;
+
+/**
+ * Builds and sends the requests of bulk fan-outs, on a pool of worker
+ * threads. The targets of a fan-out are split in chunks of
+ * {@link #CHUNK_SIZE}, each handled by a single task, and the body is shared
+ * by all requests of the fan-out.
+ * 
+ * The requests are only handed to the workers once the SLEE transaction
+ * which started the fan-out activity commits, since the SBB may still roll
+ * it back, and the targets are copied so the workers never see changes the
+ * caller makes to its list.
+ * 
+ * The client transactions are created directly in the stack provider, with a
+ * {@link BulkRequestActivityWrapper.Member} as application data, thus they
+ * are not activities, and their final responses and timeouts are accounted
+ * in the fan-out activity by the RA.
+ * 
+ * @author martins
+ * 
+ */
+public class BulkRequestSender {
+
+	/**
+	 * the max number of requests sent by a single task
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * the default number of worker threads
+	 */
+	public static final int DEFAULT_THREADS = 4;
+
+	private final SleeSipProviderImpl providerWrapper;
+
+	private final Tracer tracer;
+
+	private final SleeTransactionManager sleeTransactionManager;
+
+	private final ExecutorService executor;
+
+	/**
+	 * 
+	 * @param providerWrapper
+	 * @param threads
+	 * @param sleeTransactionManager
+	 * @param tracer
+	 */
+	public BulkRequestSender(SleeSipProviderImpl providerWrapper, int threads, SleeTransactionManager sleeTransactionManager, Tracer tracer) {
+		this.providerWrapper = providerWrapper;
+		this.sleeTransactionManager = sleeTransactionManager;
+		this.tracer = tracer;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "SipRA-BulkRequest-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Sends a request with the specified method and body in each dialog.
+	 * 
+	 * @param activity
+	 * @param method
+	 * @param dialogs
+	 * @param contentType
+	 * @param content
+	 * @throws SipException if the sending can't be bound to the SLEE transaction
+	 */
+	public void send(final BulkRequestActivityWrapper activity, final String method, List<DialogActivity> dialogs,
+			final ContentTypeHeader contentType, final byte[] content) throws SipException {
+		final List<DialogActivity> targets = new ArrayList<DialogActivity>(dialogs);
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < targets.size(); i += CHUNK_SIZE) {
+			final List<DialogActivity> chunk = targets.subList(i, Math.min(targets.size(), i + CHUNK_SIZE));
+			tasks.add(new Runnable() {
+				public void run() {
+					final SipProvider provider = providerWrapper.getRealProvider();
+					for (DialogActivity dialog : chunk) {
+						final BulkRequestActivityWrapper.Member member = activity.createMember(dialog);
+						try {
+							final DialogWrapper dw = (DialogWrapper) dialog;
+							final Dialog wrappedDialog = dw.getWrappedDialog();
+							if (wrappedDialog == null) {
+								throw new IllegalStateException("dialog not established");
+							}
+							final Request request = wrappedDialog.createRequest(method);
+							if (content != null) {
+								request.setContent(content, contentType);
+							}
+							final ClientTransaction ct = provider.getNewClientTransaction(request);
+							ct.setApplicationData(member);
+							wrappedDialog.sendRequest(ct);
+						} catch (Throwable e) {
+							if (tracer.isFineEnabled()) {
+								tracer.fine("Failed to send " + method + " in " + dialog + " of " + activity, e);
+							}
+							member.complete(Response.SERVICE_UNAVAILABLE);
+						}
+					}
+				}
+			});
+		}
+		submitAfterCommit(activity, targets, tasks);
+	}
+
+	/**
+	 * Sends an out of dialog request, built from the template, to each target.
+	 * 
+	 * @param activity
+	 * @param template
+	 * @param addresses
+	 * @throws SipException if the sending can't be bound to the SLEE transaction
+	 */
+	public void send(final BulkRequestActivityWrapper activity, Request template, List<Address> addresses) throws SipException {
+		final List<Address> targets = new ArrayList<Address>(addresses);
+		// the body is set on each copy, so the copies share the template's bytes
+		final Request base = (Request) template.clone();
+		final byte[] content = template.getRawContent();
+		final ContentTypeHeader contentType = (ContentTypeHeader) template.getHeader(ContentTypeHeader.NAME);
+		base.removeContent();
+		final ViaHeader topVia = (ViaHeader) template.getHeader(ViaHeader.NAME);
+		final String transport = topVia != null ? topVia.getTransport() : "udp";
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i = 0; i < targets.size(); i += CHUNK_SIZE) {
+			final List<Address> chunk = targets.subList(i, Math.min(targets.size(), i + CHUNK_SIZE));
+			tasks.add(new Runnable() {
+				public void run() {
+					final SipProvider provider = providerWrapper.getRealProvider();
+					for (Address target : chunk) {
+						final BulkRequestActivityWrapper.Member member = activity.createMember(target);
+						try {
+							final Request request = (Request) base.clone();
+							request.setRequestURI(target.getURI());
+							request.setHeader(providerWrapper.getHeaderFactory().createToHeader(target, null));
+							request.setHeader(providerWrapper.getNewCallId());
+							((FromHeader) request.getHeader(FromHeader.NAME)).setTag(providerWrapper.generateTag());
+							request.removeHeader(ViaHeader.NAME);
+							request.addHeader(providerWrapper.getLocalVia(transport, providerWrapper.generateBranchId()));
+							if (content != null) {
+								request.setContent(content, contentType);
+							}
+							final ClientTransaction ct = provider.getNewClientTransaction(request);
+							ct.setApplicationData(member);
+							ct.sendRequest();
+						} catch (Throwable e) {
+							if (tracer.isFineEnabled()) {
+								tracer.fine("Failed to send request to " + target + " of " + activity, e);
+							}
+							member.complete(Response.SERVICE_UNAVAILABLE);
+						}
+					}
+				}
+			});
+		}
+		submitAfterCommit(activity, targets, tasks);
+	}
+
+	/**
+	 * Submits the tasks of a fan-out once the current SLEE transaction
+	 * commits, or right away if there is no transaction. If the transaction
+	 * rolls back the fan-out activity is not started, and nothing is sent.
+	 * 
+	 * @param activity
+	 * @param targets
+	 * @param tasks
+	 * @throws SipException
+	 */
+	private void submitAfterCommit(final BulkRequestActivityWrapper activity, final List<?> targets,
+			final List<Runnable> tasks) throws SipException {
+		SleeTransaction transaction = null;
+		try {
+			if (sleeTransactionManager != null) {
+				transaction = sleeTransactionManager.getSleeTransaction();
+			}
+			if (transaction == null) {
+				submit(activity, targets, tasks);
+				return;
+			}
+			transaction.registerSynchronization(new Synchronization() {
+				public void beforeCompletion() {
+				}
+				public void afterCompletion(int status) {
+					if (status == Status.STATUS_COMMITTED) {
+						submit(activity, targets, tasks);
+					} else if (tracer.isFineEnabled()) {
+						tracer.fine("SLEE transaction rolled back, not sending the requests of " + activity);
+					}
+				}
+			});
+		} catch (Exception e) {
+			throw new SipException("Failed to bind " + activity + " to the SLEE transaction", e);
+		}
+	}
+
+	private void submit(BulkRequestActivityWrapper activity, List<?> targets, List<Runnable> tasks) {
+		for (int i = 0; i < tasks.size(); i++) {
+			try {
+				executor.execute(tasks.get(i));
+			} catch (RejectedExecutionException e) {
+				final List<?> notSent = targets.subList(i * CHUNK_SIZE, targets.size());
+				tracer.warning("Bulk request sender is shutdown, failing " + notSent.size() + " requests of " + activity);
+				for (Object target : notSent) {
+					activity.createMember(target).complete(Response.SERVICE_UNAVAILABLE);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker threads, the requests not sent yet are dropped.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,1000 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.header.HeaderFactoryExt;
+import gov.nist.javax.sip.header.SipRequestLine;
+import gov.nist.javax.sip.header.SipStatusLine;
+import gov.nist.javax.sip.header.extensions.JoinHeader;
+import gov.nist.javax.sip.header.extensions.ReferencesHeader;
+import gov.nist.javax.sip.header.extensions.ReferredByHeader;
+import gov.nist.javax.sip.header.extensions.ReplacesHeader;
+import gov.nist.javax.sip.header.extensions.SessionExpiresHeader;
+import gov.nist.javax.sip.header.ims.PAccessNetworkInfoHeader;
+import gov.nist.javax.sip.header.ims.PAssertedIdentityHeader;
+import gov.nist.javax.sip.header.ims.PAssertedServiceHeader;
+import gov.nist.javax.sip.header.ims.PAssociatedURIHeader;
+import gov.nist.javax.sip.header.ims.PCalledPartyIDHeader;
+import gov.nist.javax.sip.header.ims.PChargingFunctionAddressesHeader;
+import gov.nist.javax.sip.header.ims.PChargingVectorHeader;
+import gov.nist.javax.sip.header.ims.PMediaAuthorizationHeader;
+import gov.nist.javax.sip.header.ims.PPreferredIdentityHeader;
+import gov.nist.javax.sip.header.ims.PPreferredServiceHeader;
+import gov.nist.javax.sip.header.ims.PProfileKeyHeader;
+import gov.nist.javax.sip.header.ims.PServedUserHeader;
+import gov.nist.javax.sip.header.ims.PUserDatabaseHeader;
+import gov.nist.javax.sip.header.ims.PVisitedNetworkIDHeader;
+import gov.nist.javax.sip.header.ims.PathHeader;
+import gov.nist.javax.sip.header.ims.PrivacyHeader;
+import gov.nist.javax.sip.header.ims.SecurityClientHeader;
+import gov.nist.javax.sip.header.ims.SecurityServerHeader;
+import gov.nist.javax.sip.header.ims.SecurityVerifyHeader;
+import gov.nist.javax.sip.header.ims.ServiceRouteHeader;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sip.InvalidArgumentException;
+import javax.sip.address.Address;
+import javax.sip.address.URI;
+import javax.sip.header.AcceptEncodingHeader;
+import javax.sip.header.AcceptHeader;
+import javax.sip.header.AcceptLanguageHeader;
+import javax.sip.header.AlertInfoHeader;
+import javax.sip.header.AllowEventsHeader;
+import javax.sip.header.AllowHeader;
+import javax.sip.header.AuthenticationInfoHeader;
+import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.CallInfoHeader;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ContentDispositionHeader;
+import javax.sip.header.ContentEncodingHeader;
+import javax.sip.header.ContentLanguageHeader;
+import javax.sip.header.ContentLengthHeader;
+import javax.sip.header.ContentTypeHeader;
+import javax.sip.header.DateHeader;
+import javax.sip.header.ErrorInfoHeader;
+import javax.sip.header.EventHeader;
+import javax.sip.header.ExpiresHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.Header;
+import javax.sip.header.InReplyToHeader;
+import javax.sip.header.MaxForwardsHeader;
+import javax.sip.header.MimeVersionHeader;
+import javax.sip.header.MinExpiresHeader;
+import javax.sip.header.OrganizationHeader;
+import javax.sip.header.PriorityHeader;
+import javax.sip.header.ProxyAuthenticateHeader;
+import javax.sip.header.ProxyAuthorizationHeader;
+import javax.sip.header.ProxyRequireHeader;
+import javax.sip.header.RAckHeader;
+import javax.sip.header.RSeqHeader;
+import javax.sip.header.ReasonHeader;
+import javax.sip.header.RecordRouteHeader;
+import javax.sip.header.ReferToHeader;
+import javax.sip.header.ReplyToHeader;
+import javax.sip.header.RequireHeader;
+import javax.sip.header.RetryAfterHeader;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.SIPETagHeader;
+import javax.sip.header.SIPIfMatchHeader;
+import javax.sip.header.ServerHeader;
+import javax.sip.header.SubjectHeader;
+import javax.sip.header.SubscriptionStateHeader;
+import javax.sip.header.SupportedHeader;
+import javax.sip.header.TimeStampHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.header.UnsupportedHeader;
+import javax.sip.header.UserAgentHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.header.WarningHeader;
+
+/**
+ * A {@link HeaderFactory} decorator which caches the headers parsed with
+ * {@link #createHeader(String, String)} over and over with the same value,
+ * such as <code>Content-Type: application/sdp</code>,
+ * <code>Event: presence</code> or <code>Supported: eventlist</code>, if
+ * their name is one of {@link #CACHED_HEADER_NAMES}, values of other headers
+ * such as Call-ID, Via or From are usually unique. The typed
+ * <code>create*Header</code> methods set the arguments on a new header
+ * without parsing, which costs about the same as a cache lookup, and are
+ * delegated as is.
+ * 
+ * The cached headers are templates which never leave the cache, each call
+ * returns a clone, which may be changed by the application, or by the stack
+ * once added to a message, without affecting the template. The cache is
+ * split in stripes, selected by the key hash, each a LRU map with its own
+ * lock, bounded to its share of the configured capacity, so that dynamic
+ * values do not grow it without limits. A hit costs about a quarter of
+ * parsing the header, a miss parses, stores and clones, and costs about
+ * twice as much, see CachingHeaderFactoryBenchmark.
+ * 
+ * @author martins
+ * 
+ */
+public class CachingHeaderFactory implements HeaderFactoryExt, CachingHeaderFactoryMBean {
+
+	/**
+	 * the default max number of headers cached
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * the names of the headers created with
+	 * {@link #createHeader(String, String)} which are cached, in lower case
+	 */
+	public static final Set<String> CACHED_HEADER_NAMES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"accept", "accept-encoding", "accept-language", "allow", "allow-events", "u",
+			"content-disposition", "content-encoding", "e", "content-language", "content-type", "c",
+			"event", "o", "expires", "max-forwards", "min-expires", "min-se", "mime-version",
+			"priority", "privacy", "proxy-require", "require", "server", "session-expires", "x",
+			"subscription-state", "supported", "k", "unsupported", "user-agent")));
+
+	/**
+	 * the min number of headers in a stripe
+	 */
+	private static final int MIN_STRIPE_CAPACITY = 64;
+
+	private static final int MAX_STRIPES = 16;
+
+	private final HeaderFactoryExt delegate;
+
+	private final int capacity;
+
+	private final Map<String, Header>[] stripes;
+
+	private final StripedCounter hits = new StripedCounter();
+	private final StripedCounter misses = new StripedCounter();
+	private final StripedCounter evictions = new StripedCounter();
+
+	/**
+	 * 
+	 * @param delegate
+	 * @param capacity
+	 *            the max number of headers cached
+	 */
+	@SuppressWarnings("unchecked")
+	public CachingHeaderFactory(HeaderFactoryExt delegate, int capacity) {
+		this.delegate = delegate;
+		this.capacity = capacity;
+		int stripes = 1;
+		while (stripes < MAX_STRIPES && capacity / (stripes << 1) >= MIN_STRIPE_CAPACITY) {
+			stripes <<= 1;
+		}
+		final int stripeCapacity = (capacity + stripes - 1) / stripes;
+		this.stripes = new Map[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new LinkedHashMap<String, Header>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Header> eldest) {
+					if (size() > stripeCapacity) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+
+	/**
+	 * 
+	 * @return the decorated header factory
+	 */
+	public HeaderFactoryExt getDelegate() {
+		return delegate;
+	}
+
+	private Map<String, Header> stripe(String key) {
+		final int h = key.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+	}
+
+	private Header getTemplate(String key) {
+		final Map<String, Header> stripe = stripe(key);
+		final Header template;
+		synchronized (stripe) {
+			template = stripe.get(key);
+		}
+		if (template != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return template;
+	}
+
+	private Header putTemplate(String key, Header header) {
+		final Map<String, Header> stripe = stripe(key);
+		synchronized (stripe) {
+			stripe.put(key, header);
+		}
+		return (Header) header.clone();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getHits()
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getMisses()
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getHitRatio()
+	 */
+	public double getHitRatio() {
+		final long hits = this.hits.sum();
+		final long lookups = hits + misses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getEvictions()
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getSize()
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Map<String, Header> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#getCapacity()
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.CachingHeaderFactoryMBean#clear()
+	 */
+	public void clear() {
+		for (Map<String, Header> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAcceptEncodingHeader(java.lang.String)
+	 */
+	public AcceptEncodingHeader createAcceptEncodingHeader(String arg0) throws ParseException {
+		return delegate.createAcceptEncodingHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAcceptHeader(java.lang.String, java.lang.String)
+	 */
+	public AcceptHeader createAcceptHeader(String arg0, String arg1) throws ParseException {
+		return delegate.createAcceptHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAcceptLanguageHeader(java.util.Locale)
+	 */
+	public AcceptLanguageHeader createAcceptLanguageHeader(Locale arg0) {
+		return delegate.createAcceptLanguageHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAlertInfoHeader(javax.sip.address.URI)
+	 */
+	public AlertInfoHeader createAlertInfoHeader(URI arg0) {
+		return delegate.createAlertInfoHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAllowEventsHeader(java.lang.String)
+	 */
+	public AllowEventsHeader createAllowEventsHeader(String arg0) throws ParseException {
+		return delegate.createAllowEventsHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAllowHeader(java.lang.String)
+	 */
+	public AllowHeader createAllowHeader(String arg0) throws ParseException {
+		return delegate.createAllowHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAuthenticationInfoHeader(java.lang.String)
+	 */
+	public AuthenticationInfoHeader createAuthenticationInfoHeader(String arg0) throws ParseException {
+		return delegate.createAuthenticationInfoHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createAuthorizationHeader(java.lang.String)
+	 */
+	public AuthorizationHeader createAuthorizationHeader(String arg0) throws ParseException {
+		return delegate.createAuthorizationHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createCSeqHeader(int, java.lang.String)
+	 */
+	public CSeqHeader createCSeqHeader(int arg0, String arg1) throws ParseException, InvalidArgumentException {
+		return delegate.createCSeqHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createCSeqHeader(long, java.lang.String)
+	 */
+	public CSeqHeader createCSeqHeader(long arg0, String arg1) throws ParseException, InvalidArgumentException {
+		return delegate.createCSeqHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createCallIdHeader(java.lang.String)
+	 */
+	public CallIdHeader createCallIdHeader(String arg0) throws ParseException {
+		return delegate.createCallIdHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createCallInfoHeader(javax.sip.address.URI)
+	 */
+	public CallInfoHeader createCallInfoHeader(URI arg0) {
+		return delegate.createCallInfoHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createChargingVectorHeader(java.lang.String)
+	 */
+	public PChargingVectorHeader createChargingVectorHeader(String arg0) throws ParseException {
+		return delegate.createChargingVectorHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContactHeader()
+	 */
+	public ContactHeader createContactHeader() {
+		return delegate.createContactHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContactHeader(javax.sip.address.Address)
+	 */
+	public ContactHeader createContactHeader(Address arg0) {
+		return delegate.createContactHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContentDispositionHeader(java.lang.String)
+	 */
+	public ContentDispositionHeader createContentDispositionHeader(String arg0) throws ParseException {
+		return delegate.createContentDispositionHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContentEncodingHeader(java.lang.String)
+	 */
+	public ContentEncodingHeader createContentEncodingHeader(String arg0) throws ParseException {
+		return delegate.createContentEncodingHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContentLanguageHeader(java.util.Locale)
+	 */
+	public ContentLanguageHeader createContentLanguageHeader(Locale arg0) {
+		return delegate.createContentLanguageHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContentLengthHeader(int)
+	 */
+	public ContentLengthHeader createContentLengthHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createContentLengthHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createContentTypeHeader(java.lang.String, java.lang.String)
+	 */
+	public ContentTypeHeader createContentTypeHeader(String arg0, String arg1) throws ParseException {
+		return delegate.createContentTypeHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createDateHeader(java.util.Calendar)
+	 */
+	public DateHeader createDateHeader(Calendar arg0) {
+		return delegate.createDateHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createErrorInfoHeader(javax.sip.address.URI)
+	 */
+	public ErrorInfoHeader createErrorInfoHeader(URI arg0) {
+		return delegate.createErrorInfoHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createEventHeader(java.lang.String)
+	 */
+	public EventHeader createEventHeader(String arg0) throws ParseException {
+		return delegate.createEventHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createExpiresHeader(int)
+	 */
+	public ExpiresHeader createExpiresHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createExpiresHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createFromHeader(javax.sip.address.Address, java.lang.String)
+	 */
+	public FromHeader createFromHeader(Address arg0, String arg1) throws ParseException {
+		return delegate.createFromHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createHeader(java.lang.String)
+	 */
+	public Header createHeader(String arg0) throws ParseException {
+		return delegate.createHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createHeader(java.lang.String, java.lang.String)
+	 */
+	public Header createHeader(String arg0, String arg1) throws ParseException {
+		if (arg0 == null || !CACHED_HEADER_NAMES.contains(arg0.toLowerCase(Locale.ENGLISH))) {
+			return delegate.createHeader(arg0, arg1);
+		}
+		final String key = arg0 + ':' + arg1;
+		final Header template = getTemplate(key);
+		if (template != null) {
+			return (Header) template.clone();
+		}
+		return putTemplate(key, delegate.createHeader(arg0, arg1));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createHeaders(java.lang.String)
+	 */
+	public List createHeaders(String arg0) throws ParseException {
+		return delegate.createHeaders(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createInReplyToHeader(java.lang.String)
+	 */
+	public InReplyToHeader createInReplyToHeader(String arg0) throws ParseException {
+		return delegate.createInReplyToHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createJoinHeader(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	public JoinHeader createJoinHeader(String arg0, String arg1, String arg2) throws ParseException {
+		return delegate.createJoinHeader(arg0, arg1, arg2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createMaxForwardsHeader(int)
+	 */
+	public MaxForwardsHeader createMaxForwardsHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createMaxForwardsHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createMimeVersionHeader(int, int)
+	 */
+	public MimeVersionHeader createMimeVersionHeader(int arg0, int arg1) throws InvalidArgumentException {
+		return delegate.createMimeVersionHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createMinExpiresHeader(int)
+	 */
+	public MinExpiresHeader createMinExpiresHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createMinExpiresHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createOrganizationHeader(java.lang.String)
+	 */
+	public OrganizationHeader createOrganizationHeader(String arg0) throws ParseException {
+		return delegate.createOrganizationHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPAccessNetworkInfoHeader()
+	 */
+	public PAccessNetworkInfoHeader createPAccessNetworkInfoHeader() {
+		return delegate.createPAccessNetworkInfoHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPAssertedIdentityHeader(javax.sip.address.Address)
+	 */
+	public PAssertedIdentityHeader createPAssertedIdentityHeader(Address arg0) throws NullPointerException, ParseException {
+		return delegate.createPAssertedIdentityHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPAssertedServiceHeader()
+	 */
+	public PAssertedServiceHeader createPAssertedServiceHeader() {
+		return delegate.createPAssertedServiceHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPAssociatedURIHeader(javax.sip.address.Address)
+	 */
+	public PAssociatedURIHeader createPAssociatedURIHeader(Address arg0) {
+		return delegate.createPAssociatedURIHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPCalledPartyIDHeader(javax.sip.address.Address)
+	 */
+	public PCalledPartyIDHeader createPCalledPartyIDHeader(Address arg0) {
+		return delegate.createPCalledPartyIDHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPChargingFunctionAddressesHeader()
+	 */
+	public PChargingFunctionAddressesHeader createPChargingFunctionAddressesHeader() {
+		return delegate.createPChargingFunctionAddressesHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPMediaAuthorizationHeader(java.lang.String)
+	 */
+	public PMediaAuthorizationHeader createPMediaAuthorizationHeader(String arg0) throws InvalidArgumentException, ParseException {
+		return delegate.createPMediaAuthorizationHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPPreferredIdentityHeader(javax.sip.address.Address)
+	 */
+	public PPreferredIdentityHeader createPPreferredIdentityHeader(Address arg0) {
+		return delegate.createPPreferredIdentityHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPPreferredServiceHeader()
+	 */
+	public PPreferredServiceHeader createPPreferredServiceHeader() {
+		return delegate.createPPreferredServiceHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPProfileKeyHeader(javax.sip.address.Address)
+	 */
+	public PProfileKeyHeader createPProfileKeyHeader(Address arg0) {
+		return delegate.createPProfileKeyHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPServedUserHeader(javax.sip.address.Address)
+	 */
+	public PServedUserHeader createPServedUserHeader(Address arg0) {
+		return delegate.createPServedUserHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPUserDatabaseHeader(java.lang.String)
+	 */
+	public PUserDatabaseHeader createPUserDatabaseHeader(String arg0) {
+		return delegate.createPUserDatabaseHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPVisitedNetworkIDHeader()
+	 */
+	public PVisitedNetworkIDHeader createPVisitedNetworkIDHeader() {
+		return delegate.createPVisitedNetworkIDHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPathHeader(javax.sip.address.Address)
+	 */
+	public PathHeader createPathHeader(Address arg0) {
+		return delegate.createPathHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createPriorityHeader(java.lang.String)
+	 */
+	public PriorityHeader createPriorityHeader(String arg0) throws ParseException {
+		return delegate.createPriorityHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createPrivacyHeader(java.lang.String)
+	 */
+	public PrivacyHeader createPrivacyHeader(String arg0) {
+		return delegate.createPrivacyHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createProxyAuthenticateHeader(java.lang.String)
+	 */
+	public ProxyAuthenticateHeader createProxyAuthenticateHeader(String arg0) throws ParseException {
+		return delegate.createProxyAuthenticateHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createProxyAuthorizationHeader(java.lang.String)
+	 */
+	public ProxyAuthorizationHeader createProxyAuthorizationHeader(String arg0) throws ParseException {
+		return delegate.createProxyAuthorizationHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createProxyRequireHeader(java.lang.String)
+	 */
+	public ProxyRequireHeader createProxyRequireHeader(String arg0) throws ParseException {
+		return delegate.createProxyRequireHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRAckHeader(int, int, java.lang.String)
+	 */
+	public RAckHeader createRAckHeader(int arg0, int arg1, String arg2) throws InvalidArgumentException, ParseException {
+		return delegate.createRAckHeader(arg0, arg1, arg2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRSeqHeader(int)
+	 */
+	public RSeqHeader createRSeqHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createRSeqHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createReasonHeader(java.lang.String, int, java.lang.String)
+	 */
+	public ReasonHeader createReasonHeader(String arg0, int arg1, String arg2) throws InvalidArgumentException, ParseException {
+		return delegate.createReasonHeader(arg0, arg1, arg2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRecordRouteHeader(javax.sip.address.Address)
+	 */
+	public RecordRouteHeader createRecordRouteHeader(Address arg0) {
+		return delegate.createRecordRouteHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createReferToHeader(javax.sip.address.Address)
+	 */
+	public ReferToHeader createReferToHeader(Address arg0) {
+		return delegate.createReferToHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createReferencesHeader(java.lang.String, java.lang.String)
+	 */
+	public ReferencesHeader createReferencesHeader(String arg0, String arg1) throws ParseException {
+		return delegate.createReferencesHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createReferredByHeader(javax.sip.address.Address)
+	 */
+	public ReferredByHeader createReferredByHeader(Address arg0) {
+		return delegate.createReferredByHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createReplacesHeader(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	public ReplacesHeader createReplacesHeader(String arg0, String arg1, String arg2) throws ParseException {
+		return delegate.createReplacesHeader(arg0, arg1, arg2);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createReplyToHeader(javax.sip.address.Address)
+	 */
+	public ReplyToHeader createReplyToHeader(Address arg0) {
+		return delegate.createReplyToHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createRequestLine(java.lang.String)
+	 */
+	public SipRequestLine createRequestLine(String arg0) throws ParseException {
+		return delegate.createRequestLine(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRequireHeader(java.lang.String)
+	 */
+	public RequireHeader createRequireHeader(String arg0) throws ParseException {
+		return delegate.createRequireHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRetryAfterHeader(int)
+	 */
+	public RetryAfterHeader createRetryAfterHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createRetryAfterHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createRouteHeader(javax.sip.address.Address)
+	 */
+	public RouteHeader createRouteHeader(Address arg0) {
+		return delegate.createRouteHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createSIPETagHeader(java.lang.String)
+	 */
+	public SIPETagHeader createSIPETagHeader(String arg0) throws ParseException {
+		return delegate.createSIPETagHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createSIPIfMatchHeader(java.lang.String)
+	 */
+	public SIPIfMatchHeader createSIPIfMatchHeader(String arg0) throws ParseException {
+		return delegate.createSIPIfMatchHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createSecurityClientHeader()
+	 */
+	public SecurityClientHeader createSecurityClientHeader() {
+		return delegate.createSecurityClientHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createSecurityServerHeader()
+	 */
+	public SecurityServerHeader createSecurityServerHeader() {
+		return delegate.createSecurityServerHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createSecurityVerifyHeader()
+	 */
+	public SecurityVerifyHeader createSecurityVerifyHeader() {
+		return delegate.createSecurityVerifyHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createServerHeader(java.util.List)
+	 */
+	public ServerHeader createServerHeader(List arg0) throws ParseException {
+		return delegate.createServerHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createServiceRouteHeader(javax.sip.address.Address)
+	 */
+	public ServiceRouteHeader createServiceRouteHeader(Address arg0) {
+		return delegate.createServiceRouteHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createSessionExpiresHeader(int)
+	 */
+	public SessionExpiresHeader createSessionExpiresHeader(int arg0) throws InvalidArgumentException {
+		return delegate.createSessionExpiresHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.header.HeaderFactoryExt#createStatusLine(java.lang.String)
+	 */
+	public SipStatusLine createStatusLine(String arg0) throws ParseException {
+		return delegate.createStatusLine(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createSubjectHeader(java.lang.String)
+	 */
+	public SubjectHeader createSubjectHeader(String arg0) throws ParseException {
+		return delegate.createSubjectHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createSubscriptionStateHeader(java.lang.String)
+	 */
+	public SubscriptionStateHeader createSubscriptionStateHeader(String arg0) throws ParseException {
+		return delegate.createSubscriptionStateHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createSupportedHeader(java.lang.String)
+	 */
+	public SupportedHeader createSupportedHeader(String arg0) throws ParseException {
+		return delegate.createSupportedHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createTimeStampHeader(float)
+	 */
+	public TimeStampHeader createTimeStampHeader(float arg0) throws InvalidArgumentException {
+		return delegate.createTimeStampHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createToHeader(javax.sip.address.Address, java.lang.String)
+	 */
+	public ToHeader createToHeader(Address arg0, String arg1) throws ParseException {
+		return delegate.createToHeader(arg0, arg1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createUnsupportedHeader(java.lang.String)
+	 */
+	public UnsupportedHeader createUnsupportedHeader(String arg0) throws ParseException {
+		return delegate.createUnsupportedHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createUserAgentHeader(java.util.List)
+	 */
+	public UserAgentHeader createUserAgentHeader(List arg0) throws ParseException {
+		return delegate.createUserAgentHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createViaHeader(java.lang.String, int, java.lang.String, java.lang.String)
+	 */
+	public ViaHeader createViaHeader(String arg0, int arg1, String arg2, String arg3) throws ParseException, InvalidArgumentException {
+		return delegate.createViaHeader(arg0, arg1, arg2, arg3);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createWWWAuthenticateHeader(java.lang.String)
+	 */
+	public WWWAuthenticateHeader createWWWAuthenticateHeader(String arg0) throws ParseException {
+		return delegate.createWWWAuthenticateHeader(arg0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.sip.header.HeaderFactory#createWarningHeader(java.lang.String, int, java.lang.String)
+	 */
+	public WarningHeader createWarningHeader(String arg0, int arg1, String arg2) throws InvalidArgumentException, ParseException {
+		return delegate.createWarningHeader(arg0, arg1, arg2);
+	}
+
+}
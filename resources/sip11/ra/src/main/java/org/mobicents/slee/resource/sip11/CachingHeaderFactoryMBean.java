@@ -0,0 +1,72 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the {@link CachingHeaderFactory}.
+ * 
+ * @author martins
+ *
+ */
+public interface CachingHeaderFactoryMBean {
+
+	/**
+	 * Retrieves the number of headers cloned from the cache.
+	 * @return
+	 */
+	public long getHits();
+
+	/**
+	 * Retrieves the number of cacheable headers not found in the cache.
+	 * @return
+	 */
+	public long getMisses();
+
+	/**
+	 * Retrieves the ratio of hits in all cache lookups, from 0 to 1.
+	 * @return
+	 */
+	public double getHitRatio();
+
+	/**
+	 * Retrieves the number of headers evicted from the cache, due to its
+	 * capacity.
+	 * @return
+	 */
+	public long getEvictions();
+
+	/**
+	 * Retrieves the number of headers cached.
+	 * @return
+	 */
+	public int getSize();
+
+	/**
+	 * Retrieves the max number of headers cached.
+	 * @return
+	 */
+	public int getCapacity();
+
+	/**
+	 * Removes all headers from the cache.
+	 */
+	public void clear();
+
+}
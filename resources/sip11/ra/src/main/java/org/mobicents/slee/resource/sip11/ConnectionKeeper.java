@@ -0,0 +1,325 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.ListeningPointExt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.SipProvider;
+import javax.slee.facilities.Tracer;
+
+/**
+ * Keeps warm connections to the configured peers, such as trunks, over the
+ * connection oriented transports. The connections are established when the
+ * RA entity is activated, and kept with CRLF keepalives (RFC 5626 section
+ * 4.4.1), sent at intervals randomly distributed between 80% and 100% of the
+ * configured one, which reconnect if the connection was closed. The stack
+ * reuses the connection for all messages to the peer.
+ * 
+ * Peers are configured in the form
+ * <code>10.0.0.1:5060,trunk.example.com:5061/TLS</code>, where the transport
+ * is TCP if not specified. A keepalive which can't be sent is reported to
+ * the RA as a transport failure of the peer.
+ * 
+ * @author martins
+ * 
+ */
+public class ConnectionKeeper implements ConnectionKeeperMBean {
+
+	/**
+	 * the default keepalive interval, in seconds
+	 */
+	public static final int DEFAULT_INTERVAL = 90;
+
+	/**
+	 * A peer kept connected.
+	 */
+	static class Peer {
+
+		final String host;
+		final int port;
+		final String transport;
+
+		final AtomicLong keepalives = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		volatile long lastKeepaliveTime;
+		volatile long lastFailureTime;
+		volatile boolean connected;
+
+		Peer(String host, int port, String transport) {
+			this.host = host;
+			this.port = port;
+			this.transport = transport;
+		}
+
+		@Override
+		public String toString() {
+			return host + ":" + port + "/" + transport;
+		}
+	}
+
+	private final List<Peer> peers;
+
+	private final long interval;
+
+	private final SipResourceAdaptor ra;
+
+	private final SipProvider provider;
+
+	private final Tracer tracer;
+
+	private final Random random = new Random();
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * 
+	 * @param peers
+	 *            the peers config
+	 * @param interval
+	 *            the keepalive interval in seconds, 0 to only connect on
+	 *            activation
+	 * @param ra
+	 * @param provider
+	 * @param tracer
+	 * @throws IllegalArgumentException
+	 *             if the peers config is not valid
+	 */
+	public ConnectionKeeper(String peers, int interval, SipResourceAdaptor ra, SipProvider provider, Tracer tracer) throws IllegalArgumentException {
+		this.peers = parsePeers(peers);
+		this.interval = interval * 1000L;
+		this.ra = ra;
+		this.provider = provider;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Parses the peers config.
+	 * 
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the config is not valid
+	 */
+	static List<Peer> parsePeers(String config) throws IllegalArgumentException {
+		final List<Peer> peers = new ArrayList<Peer>();
+		for (String entry : config.split(",")) {
+			entry = entry.trim();
+			if (entry.length() == 0) {
+				continue;
+			}
+			String transport = ListeningPoint.TCP;
+			final int slash = entry.indexOf('/');
+			if (slash > 0) {
+				transport = entry.substring(slash + 1).trim().toUpperCase();
+				entry = entry.substring(0, slash).trim();
+			}
+			if (!ListeningPoint.TCP.equals(transport) && !ListeningPoint.TLS.equals(transport)) {
+				throw new IllegalArgumentException("keepalive peer with unsupported transport " + transport);
+			}
+			final int colon = entry.lastIndexOf(':');
+			if (colon < 1 || colon < entry.lastIndexOf(']')) {
+				throw new IllegalArgumentException("keepalive peer without port " + entry);
+			}
+			String host = entry.substring(0, colon);
+			if (host.charAt(0) == '[' && host.charAt(host.length() - 1) == ']') {
+				host = host.substring(1, host.length() - 1);
+			}
+			final int port;
+			try {
+				port = Integer.parseInt(entry.substring(colon + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("keepalive peer with invalid port " + entry, e);
+			}
+			if (port < 1 || port > 65535) {
+				throw new IllegalArgumentException("keepalive peer with invalid port " + entry);
+			}
+			peers.add(new Peer(host, port, transport));
+		}
+		return Collections.unmodifiableList(peers);
+	}
+
+	/**
+	 * Connects to all peers, and schedules the keepalives.
+	 */
+	public synchronized void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "SipRA-ConnectionKeeper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		for (final Peer peer : peers) {
+			// connecting may block, thus it is done in the keeper thread too
+			schedule(peer, 0);
+		}
+	}
+
+	/**
+	 * Stops the keepalives, the connections are left to the stack.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void schedule(final Peer peer, long delay) {
+		final ScheduledExecutorService executor = this.executor;
+		if (executor == null) {
+			return;
+		}
+		try {
+			executor.schedule(new Runnable() {
+				public void run() {
+					keepalive(peer);
+					if (interval > 0) {
+						schedule(peer, nextDelay());
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// stopped
+		}
+	}
+
+	private long nextDelay() {
+		return interval - (long) (random.nextDouble() * interval / 5);
+	}
+
+	/**
+	 * Sends a keepalive to the specified peer, which connects if needed.
+	 * 
+	 * @param peer
+	 */
+	void keepalive(Peer peer) {
+		final ListeningPoint lp = provider.getListeningPoint(peer.transport);
+		if (!(lp instanceof ListeningPointExt)) {
+			if (peer.failures.getAndIncrement() == 0) {
+				tracer.warning("No " + peer.transport + " listening point to keep the connection to " + peer);
+			}
+			peer.lastFailureTime = System.currentTimeMillis();
+			peer.connected = false;
+			return;
+		}
+		try {
+			((ListeningPointExt) lp).sendHeartbeat(peer.host, peer.port);
+			peer.keepalives.incrementAndGet();
+			peer.lastKeepaliveTime = System.currentTimeMillis();
+			peer.connected = true;
+		} catch (IOException e) {
+			peer.failures.incrementAndGet();
+			peer.lastFailureTime = System.currentTimeMillis();
+			final boolean wasConnected = peer.connected;
+			peer.connected = false;
+			if (wasConnected || tracer.isFineEnabled()) {
+				tracer.warning("Failed to keep the connection to " + peer, e);
+			}
+			ra.processIOException(new IOExceptionEvent(this, peer.host, peer.port, peer.transport));
+		}
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	List<Peer> getPeerList() {
+		return peers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.ConnectionKeeperMBean#getPeers()
+	 */
+	public String[] getPeers() {
+		final String[] result = new String[peers.size()];
+		for (int i = 0; i < result.length; i++) {
+			final Peer peer = peers.get(i);
+			result[i] = new StringBuilder(peer.toString()).append(peer.connected ? " connected" : " disconnected")
+					.append(" keepalives=").append(peer.keepalives.get())
+					.append(" failures=").append(peer.failures.get())
+					.append(" lastKeepalive=").append(peer.lastKeepaliveTime)
+					.append(" lastFailure=").append(peer.lastFailureTime).toString();
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.ConnectionKeeperMBean#getConnectedPeers()
+	 */
+	public int getConnectedPeers() {
+		int count = 0;
+		for (Peer peer : peers) {
+			if (peer.connected) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.ConnectionKeeperMBean#getKeepalives()
+	 */
+	public long getKeepalives() {
+		long count = 0;
+		for (Peer peer : peers) {
+			count += peer.keepalives.get();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.ConnectionKeeperMBean#getFailures()
+	 */
+	public long getFailures() {
+		long count = 0;
+		for (Peer peer : peers) {
+			count += peer.failures.get();
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.ConnectionKeeperMBean#getInterval()
+	 */
+	public int getInterval() {
+		return (int) (interval / 1000L);
+	}
+
+}
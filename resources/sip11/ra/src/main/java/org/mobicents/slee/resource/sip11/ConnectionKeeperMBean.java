@@ -0,0 +1,61 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the {@link ConnectionKeeper}.
+ * 
+ * @author martins
+ *
+ */
+public interface ConnectionKeeperMBean {
+
+	/**
+	 * Retrieves the state and metrics of each peer, in the form
+	 * "host:port/transport connected keepalives=N failures=N lastKeepalive=T lastFailure=T".
+	 * @return
+	 */
+	public String[] getPeers();
+
+	/**
+	 * Retrieves the number of peers which last keepalive succeeded.
+	 * @return
+	 */
+	public int getConnectedPeers();
+
+	/**
+	 * Retrieves the number of keepalives sent to all peers.
+	 * @return
+	 */
+	public long getKeepalives();
+
+	/**
+	 * Retrieves the number of keepalives which failed, for all peers.
+	 * @return
+	 */
+	public long getFailures();
+
+	/**
+	 * Retrieves the keepalive interval, in seconds.
+	 * @return
+	 */
+	public int getInterval();
+
+}
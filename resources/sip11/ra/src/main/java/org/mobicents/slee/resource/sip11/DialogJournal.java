@@ -0,0 +1,663 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.stack.SIPDialog;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.sip.Dialog;
+import javax.sip.DialogState;
+import javax.sip.address.Address;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.slee.facilities.Tracer;
+
+/**
+ * Journal of the confirmed dialogs state, to recover the dialogs when the RA
+ * entity is activated after a restart, without a cluster.
+ * 
+ * The SIP threads only capture a snapshot of the dialog state, its id, tags,
+ * parties, remote target, route set and CSeqs, and queue it, the journal
+ * thread appends the snapshots to a memory mapped file, and periodically
+ * compacts the file, rewriting only the last snapshot of each dialog. If the
+ * queue is full the snapshot is dropped, the next one of the dialog will be
+ * journaled. Removals are queued apart, in an unbounded queue, and never
+ * dropped, otherwise a terminated dialog would be recovered.
+ * 
+ * Each record is written as its length, a CRC32 and the data, the length
+ * being written last, so recovery stops at the first partially written
+ * record.
+ * 
+ * @author martins
+ * 
+ */
+public class DialogJournal implements DialogJournalMBean {
+
+	/**
+	 * the default initial size of the journal file, in MB
+	 */
+	public static final int DEFAULT_SIZE = 64;
+
+	/**
+	 * the default interval between compactions, in seconds
+	 */
+	public static final int DEFAULT_COMPACTION_INTERVAL = 60;
+
+	static final int QUEUE_CAPACITY = 65536;
+
+	private static final int MAGIC = 0x5349504a;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final byte UPDATE = 1;
+	private static final byte REMOVE = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * A snapshot of a confirmed dialog, or its removal.
+	 */
+	public static class Entry {
+
+		final String dialogId;
+		final String callId;
+		final String localTag;
+		final String remoteTag;
+		final String localParty;
+		final String remoteParty;
+		final String remoteTarget;
+		final String method;
+		final long localSeq;
+		final long remoteSeq;
+		final String[] routeSet;
+
+		Entry(String dialogId, String callId, String localTag, String remoteTag, String localParty,
+				String remoteParty, String remoteTarget, String method, long localSeq, long remoteSeq, String[] routeSet) {
+			this.dialogId = dialogId;
+			this.callId = callId;
+			this.localTag = localTag;
+			this.remoteTag = remoteTag;
+			this.localParty = localParty;
+			this.remoteParty = remoteParty;
+			this.remoteTarget = remoteTarget;
+			this.method = method;
+			this.localSeq = localSeq;
+			this.remoteSeq = remoteSeq;
+			this.routeSet = routeSet;
+		}
+
+		Entry(String dialogId) {
+			this(dialogId, null, null, null, null, null, null, null, 0, 0, null);
+		}
+
+		boolean isRemoval() {
+			return callId == null;
+		}
+
+		public String getDialogId() {
+			return dialogId;
+		}
+
+		/**
+		 * Creates the stack dialog, as the client dialog of a 2xx response
+		 * with the journaled state, the route set being the reversed Record
+		 * Route headers.
+		 * 
+		 * @param provider
+		 * @param messageFactory
+		 * @param via
+		 *            a local Via, for the response to be valid
+		 * @return
+		 * @throws ParseException
+		 */
+		public SIPDialog createDialog(SipProviderImpl provider, MessageFactory messageFactory, ViaHeader via)
+				throws ParseException {
+			final StringBuilder sb = new StringBuilder(512).append("SIP/2.0 200 OK\r\n").append(via.toString().trim())
+					.append("\r\nFrom: ").append(localParty).append(";tag=").append(localTag)
+					.append("\r\nTo: ").append(remoteParty).append(";tag=").append(remoteTag)
+					.append("\r\nCall-ID: ").append(callId)
+					.append("\r\nCSeq: ").append(localSeq).append(' ').append(method);
+			if (remoteTarget != null) {
+				sb.append("\r\nContact: ").append(remoteTarget);
+			}
+			for (int i = routeSet.length - 1; i >= 0; i--) {
+				sb.append("\r\nRecord-Route: ").append(routeSet[i]);
+			}
+			sb.append("\r\nContent-Length: 0\r\n\r\n");
+			final SIPResponse response = (SIPResponse) messageFactory.createResponse(sb.toString());
+			final SIPDialog dialog = ((SIPTransactionStack) provider.getSipStack()).createDialog(provider, response);
+			dialog.setLastResponse(null, response);
+			dialog.setRemoteSequenceNumber(remoteSeq);
+			return dialog;
+		}
+	}
+
+	private final File file;
+
+	private final int initialSize;
+
+	private final long compactionInterval;
+
+	private final Tracer tracer;
+
+	private final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+
+	private final ConcurrentLinkedQueue<Entry> removals = new ConcurrentLinkedQueue<Entry>();
+
+	/**
+	 * the dialogs removed since the snapshots queue was last seen empty, to
+	 * skip their snapshots queued before the removal, only used by the
+	 * journal thread
+	 */
+	private final Set<String> removed = new HashSet<String>();
+
+	/**
+	 * offset of the last record of each dialog, in the order the dialogs were
+	 * journaled, only used by the journal thread
+	 */
+	private final LinkedHashMap<String, Integer> index = new LinkedHashMap<String, Integer>();
+
+	private MappedByteBuffer buffer;
+	private ByteBuffer scratch = ByteBuffer.allocate(4096);
+	private final CRC32 crc = new CRC32();
+
+	private volatile int position;
+	private volatile int liveBytes;
+	private volatile int journaledDialogs;
+	private volatile int recoveredDialogs;
+	private final AtomicLong droppedUpdates = new AtomicLong();
+	private volatile long compactions;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * 
+	 * @param file
+	 * @param initialSize
+	 *            the initial size of the file, in bytes, it grows if the
+	 *            dialogs do not fit after compaction
+	 * @param compactionInterval
+	 *            in seconds
+	 * @param tracer
+	 */
+	public DialogJournal(File file, int initialSize, int compactionInterval, Tracer tracer) {
+		this.file = file;
+		this.initialSize = Math.max(initialSize, 4096);
+		this.compactionInterval = compactionInterval * 1000L;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Opens the journal, reading the dialogs journaled, if the file exists,
+	 * and starts the journal thread.
+	 * 
+	 * @return the dialogs journaled
+	 * @throws IOException
+	 */
+	public synchronized List<Entry> open() throws IOException {
+		final List<Entry> entries = new ArrayList<Entry>();
+		if (file.isFile() && file.length() > HEADER_SIZE) {
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+			} finally {
+				raf.close();
+			}
+			if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+				// the last record of each dialog
+				final LinkedHashMap<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+				int offset = HEADER_SIZE;
+				while (true) {
+					final int length = validRecordLength(offset);
+					if (length < 0) {
+						break;
+					}
+					final ByteBuffer record = record(offset, length);
+					final byte type = record.get();
+					final String dialogId = getString(record);
+					if (type == REMOVE) {
+						offsets.remove(dialogId);
+					} else {
+						// keep the insertion order of the last update
+						offsets.remove(dialogId);
+						offsets.put(dialogId, offset);
+					}
+					offset += RECORD_HEADER_SIZE + length;
+				}
+				for (Map.Entry<String, Integer> e : offsets.entrySet()) {
+					final int length = buffer.getInt(e.getValue());
+					final ByteBuffer record = record(e.getValue(), length);
+					record.get();
+					entries.add(decode(e.getKey(), record));
+				}
+				position = offset;
+				index.putAll(offsets);
+				compact();
+			} else {
+				tracer.warning("Ignoring dialog journal " + file + " with unknown format");
+				buffer = null;
+			}
+		}
+		if (buffer == null) {
+			buffer = createFile(file, initialSize);
+			position = HEADER_SIZE;
+			liveBytes = 0;
+		}
+		recoveredDialogs = entries.size();
+		running = true;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				runJournal();
+			}
+		}, "SipRA-DialogJournal");
+		thread.setDaemon(true);
+		thread.start();
+		return entries;
+	}
+
+	/**
+	 * Stops the journal thread, after journaling the queued snapshots and
+	 * removals.
+	 */
+	public synchronized void close() {
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Journals the state of the specified dialog, if confirmed, without
+	 * blocking.
+	 * 
+	 * @param dialogId
+	 *            the id of the dialog activity
+	 * @param dialog
+	 */
+	public void update(String dialogId, Dialog dialog) {
+		if (dialog == null || dialog.getState() != DialogState.CONFIRMED) {
+			return;
+		}
+		offer(capture(dialogId, dialog));
+	}
+
+	/**
+	 * Removes the specified dialog from the journal, without blocking.
+	 * 
+	 * @param dialogId
+	 */
+	public void remove(String dialogId) {
+		if (dialogId != null) {
+			removals.add(new Entry(dialogId));
+		}
+	}
+
+	private void offer(Entry entry) {
+		if (!queue.offer(entry) && droppedUpdates.getAndIncrement() == 0) {
+			tracer.warning("Dialog journal queue full, dropping dialog updates");
+		}
+	}
+
+	/**
+	 * Captures the state of the specified dialog.
+	 * 
+	 * @param dialogId
+	 * @param dialog
+	 * @return
+	 */
+	static Entry capture(String dialogId, Dialog dialog) {
+		final List<String> routeSet = new ArrayList<String>(2);
+		for (Iterator<?> it = dialog.getRouteSet(); it.hasNext();) {
+			routeSet.add(((SIPHeader) it.next()).getHeaderValue().trim());
+		}
+		final Address remoteTarget = dialog.getRemoteTarget();
+		return new Entry(dialogId, dialog.getCallId().getCallId(), dialog.getLocalTag(),
+				dialog.getRemoteTag(), dialog.getLocalParty().toString(), dialog.getRemoteParty().toString(),
+				remoteTarget == null ? null : remoteTarget.toString(), ((SIPDialog) dialog).getMethod(),
+				dialog.getLocalSeqNumber(), dialog.getRemoteSeqNumber(), routeSet.toArray(new String[routeSet.size()]));
+	}
+
+	private void runJournal() {
+		long nextCompaction = System.currentTimeMillis() + compactionInterval;
+		while (running || !queue.isEmpty() || !removals.isEmpty()) {
+			try {
+				Entry entry;
+				while ((entry = removals.poll()) != null) {
+					write(entry);
+					removed.add(entry.dialogId);
+				}
+				entry = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (entry == null) {
+					// no snapshot queued before the removals written is left
+					removed.clear();
+				} else if (!removed.contains(entry.dialogId)) {
+					write(entry);
+				}
+				final long now = System.currentTimeMillis();
+				if (now >= nextCompaction) {
+					nextCompaction = now + compactionInterval;
+					// compact if most of the file is obsolete records
+					if (position - HEADER_SIZE > 2 * liveBytes) {
+						compact();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Throwable e) {
+				tracer.severe("Failed to journal dialog", e);
+			}
+		}
+	}
+
+	/**
+	 * Appends a record, compacting or growing the file if needed.
+	 * 
+	 * @param entry
+	 * @throws IOException
+	 */
+	void write(Entry entry) throws IOException {
+		final ByteBuffer data = encode(entry);
+		final int length = data.remaining();
+		if (position + RECORD_HEADER_SIZE + length + 4 > buffer.capacity()) {
+			compact();
+			if (position + RECORD_HEADER_SIZE + length + 4 > buffer.capacity()) {
+				grow(RECORD_HEADER_SIZE + length + 4);
+			}
+		}
+		final int offset = position;
+		crc.reset();
+		crc.update(data.array(), 0, length);
+		buffer.position(offset + RECORD_HEADER_SIZE);
+		buffer.put(data.array(), 0, length);
+		buffer.putInt(offset + 4, (int) crc.getValue());
+		// the length is the last write, a record without it is not valid
+		buffer.putInt(offset, length);
+		position = offset + RECORD_HEADER_SIZE + length;
+
+		final Integer previous = entry.isRemoval() ? index.remove(entry.dialogId) : index.put(entry.dialogId, offset);
+		int live = liveBytes;
+		if (previous != null) {
+			live -= RECORD_HEADER_SIZE + buffer.getInt(previous);
+		}
+		if (!entry.isRemoval()) {
+			live += RECORD_HEADER_SIZE + length;
+		}
+		liveBytes = live;
+		journaledDialogs = index.size();
+	}
+
+	/**
+	 * Rewrites the journal with only the last record of each dialog, in a new
+	 * file which replaces the current one.
+	 * 
+	 * @throws IOException
+	 */
+	void compact() throws IOException {
+		int size = initialSize;
+		while (size < 2 * (HEADER_SIZE + liveBytes) + 4) {
+			size *= 2;
+		}
+		size = Math.max(size, buffer.capacity());
+		final File tmp = new File(file.getPath() + ".tmp");
+		final MappedByteBuffer compacted = createFile(tmp, size);
+		int offset = HEADER_SIZE;
+		int live = 0;
+		for (Map.Entry<String, Integer> e : index.entrySet()) {
+			final int from = e.getValue();
+			final int recordSize = RECORD_HEADER_SIZE + buffer.getInt(from);
+			final ByteBuffer record = buffer.duplicate();
+			record.position(from);
+			record.limit(from + recordSize);
+			compacted.position(offset);
+			compacted.put(record);
+			e.setValue(offset);
+			offset += recordSize;
+			live += recordSize;
+		}
+		compacted.force();
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		buffer = compacted;
+		position = offset;
+		liveBytes = live;
+		journaledDialogs = index.size();
+		compactions++;
+	}
+
+	private void grow(int needed) throws IOException {
+		int size = buffer.capacity();
+		while (size < position + needed) {
+			size *= 2;
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static MappedByteBuffer createFile(File file, int size) throws IOException {
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to delete " + file);
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			return buffer;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * 
+	 * @param offset
+	 * @return the length of the record data at the specified offset, -1 if
+	 *         there is no valid record
+	 */
+	private int validRecordLength(int offset) {
+		if (offset + RECORD_HEADER_SIZE > buffer.capacity()) {
+			return -1;
+		}
+		final int length = buffer.getInt(offset);
+		if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+			return -1;
+		}
+		final byte[] data = new byte[length];
+		final ByteBuffer record = buffer.duplicate();
+		record.position(offset + RECORD_HEADER_SIZE);
+		record.get(data);
+		crc.reset();
+		crc.update(data, 0, length);
+		return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : -1;
+	}
+
+	private ByteBuffer record(int offset, int length) {
+		final ByteBuffer record = buffer.duplicate();
+		record.position(offset + RECORD_HEADER_SIZE);
+		record.limit(offset + RECORD_HEADER_SIZE + length);
+		return record;
+	}
+
+	private ByteBuffer encode(Entry entry) {
+		while (true) {
+			scratch.clear();
+			try {
+				if (entry.isRemoval()) {
+					scratch.put(REMOVE);
+					putString(scratch, entry.dialogId);
+				} else {
+					scratch.put(UPDATE);
+					putString(scratch, entry.dialogId);
+					putString(scratch, entry.callId);
+					putString(scratch, entry.localTag);
+					putString(scratch, entry.remoteTag);
+					putString(scratch, entry.localParty);
+					putString(scratch, entry.remoteParty);
+					putString(scratch, entry.remoteTarget);
+					putString(scratch, entry.method);
+					scratch.putLong(entry.localSeq);
+					scratch.putLong(entry.remoteSeq);
+					scratch.putShort((short) entry.routeSet.length);
+					for (String route : entry.routeSet) {
+						putString(scratch, route);
+					}
+				}
+				scratch.flip();
+				return scratch;
+			} catch (java.nio.BufferOverflowException e) {
+				scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+			}
+		}
+	}
+
+	private static Entry decode(String dialogId, ByteBuffer record) {
+		// the dialog id was already read
+		getString(record);
+		final String callId = getString(record);
+		final String localTag = getString(record);
+		final String remoteTag = getString(record);
+		final String localParty = getString(record);
+		final String remoteParty = getString(record);
+		final String remoteTarget = getString(record);
+		final String method = getString(record);
+		final long localSeq = record.getLong();
+		final long remoteSeq = record.getLong();
+		final String[] routeSet = new String[record.getShort()];
+		for (int i = 0; i < routeSet.length; i++) {
+			routeSet[i] = getString(record);
+		}
+		return new Entry(dialogId, callId, localTag, remoteTag, localParty, remoteParty, remoteTarget, method,
+				localSeq, remoteSeq, routeSet);
+	}
+
+	private static void putString(ByteBuffer buffer, String s) {
+		if (s == null) {
+			buffer.putShort((short) -1);
+			return;
+		}
+		final byte[] bytes = s.getBytes(UTF8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		final int length = buffer.getShort();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getJournaledDialogs()
+	 */
+	public int getJournaledDialogs() {
+		return journaledDialogs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getRecoveredDialogs()
+	 */
+	public int getRecoveredDialogs() {
+		return recoveredDialogs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getFileSize()
+	 */
+	public long getFileSize() {
+		final MappedByteBuffer buffer = this.buffer;
+		return buffer == null ? 0 : buffer.capacity();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getUsedBytes()
+	 */
+	public long getUsedBytes() {
+		return position;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getCompactions()
+	 */
+	public long getCompactions() {
+		return compactions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DialogJournalMBean#getDroppedUpdates()
+	 */
+	public long getDroppedUpdates() {
+		return droppedUpdates.get();
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the {@link DialogJournal}.
+ * 
+ * @author martins
+ *
+ */
+public interface DialogJournalMBean {
+
+	/**
+	 * Retrieves the number of confirmed dialogs in the journal.
+	 * @return
+	 */
+	public int getJournaledDialogs();
+
+	/**
+	 * Retrieves the number of dialogs recovered from the journal, when the
+	 * RA entity was activated.
+	 * @return
+	 */
+	public int getRecoveredDialogs();
+
+	/**
+	 * Retrieves the size of the journal file, in bytes.
+	 * @return
+	 */
+	public long getFileSize();
+
+	/**
+	 * Retrieves the number of bytes used in the journal file, by live and
+	 * obsolete records.
+	 * @return
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * Retrieves the number of compactions done.
+	 * @return
+	 */
+	public long getCompactions();
+
+	/**
+	 * Retrieves the number of dialog updates not journaled, since the
+	 * journal queue was full.
+	 * @return
+	 */
+	public long getDroppedUpdates();
+
+}
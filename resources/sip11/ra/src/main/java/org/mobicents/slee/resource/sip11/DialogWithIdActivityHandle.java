@@ -23,11 +23,13 @@
 package org.mobicents.slee.resource.sip11;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 import net.java.slee.resource.sip.DialogActivity;
 
 /**
- * The {@link SipActivityHandle} for {@link DialogActivity}
+ * The {@link SipActivityHandle} for {@link DialogActivity}. The dialog id is
+ * kept in compact form, the {@link String} form is only built when requested.
  * 
  * @author martins
  * 
@@ -37,14 +39,20 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
 	public static final Class<? extends SipActivityHandle> TYPE = DialogWithIdActivityHandle.class;
 	
 	/**
-	 * the dialog's id
+	 * the dialog's id, in compact form
 	 */
-	private String dialogId;
+	private final byte[] dialogId;
+
+	/**
+	 * the 128 bit hash of the dialog's id
+	 */
+	private final long hashHigh;
+	private final long hashLow;
 
 	/**
 	 * 
@@ -54,7 +62,10 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 		if (dialogId == null) {
 			throw new NullPointerException("null dialogId");
 		}		
-		this.dialogId = dialogId;		
+		this.dialogId = SipResourceAdaptorActivityHandleUtils.encodeId(dialogId);
+		final long[] hash = SipResourceAdaptorActivityHandleUtils.hashId(this.dialogId, 0L, 0L);
+		this.hashHigh = hash[0];
+		this.hashLow = hash[1];
 	}
 
 	/**
@@ -63,7 +74,7 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 	 * @return
 	 */
 	public String getDialogId() {
-		return dialogId;
+		return SipResourceAdaptorActivityHandleUtils.decodeId(dialogId, 0, dialogId.length);
 	}
 	
 	/*
@@ -72,7 +83,7 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 	 */
 	@Override
 	public int getEstimatedHandleSize() {
-		return dialogId.length() + 3;
+		return dialogId.length + 3;
 	}
 	
 	@Override
@@ -82,7 +93,7 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 	
 	@Override
 	public int hashCode() {
-		return dialogId.hashCode();
+		return SipResourceAdaptorActivityHandleUtils.hashCode(hashHigh, hashLow);
 	}
 
 	@Override
@@ -94,15 +105,15 @@ public class DialogWithIdActivityHandle extends MarshableSipActivityHandle imple
 		if (getClass() != obj.getClass())
 			return false;
 		final DialogWithIdActivityHandle other = (DialogWithIdActivityHandle) obj;
-		if (!dialogId.equals(other.dialogId)) {
+		if (hashLow != other.hashLow || hashHigh != other.hashHigh) {
 			return false;
-		}		
-		return true;
+		}
+		return Arrays.equals(dialogId, other.dialogId);
 	}
 
 	@Override
 	public String toString() {
-		return dialogId;
+		return getDialogId();
 	}
 		
 }
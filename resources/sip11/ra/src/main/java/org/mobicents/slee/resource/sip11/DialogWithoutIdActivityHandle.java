@@ -26,6 +26,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Arrays;
 
 import javax.sip.Dialog;
 
@@ -33,7 +34,9 @@ import net.java.slee.resource.sip.DialogActivity;
 
 /**
  * The {@link SipActivityHandle} for {@link DialogActivity} related with a
- * {@link Dialog} that does not exist yet.
+ * {@link Dialog} that does not exist yet. The call id is shared with the
+ * dialog's Call-ID header, the local tag is kept in compact form, and the
+ * {@link String} form of the handle is only built when requested.
  * 
  * @author martins
  * 
@@ -52,9 +55,15 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 	private String callId;
 
 	/**
-	 * the dialog's local tag
+	 * the dialog's local tag, in compact form
 	 */
-	private String localTag;
+	private byte[] localTag;
+
+	/**
+	 * the 128 bit hash of call id and local tag
+	 */
+	private long hashHigh;
+	private long hashLow;
 
 	public DialogWithoutIdActivityHandle() {
 
@@ -64,7 +73,6 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 	 * 
 	 * @param callID
 	 * @param localTag
-	 * @param remoteTag
 	 */
 	public DialogWithoutIdActivityHandle(String callId, String localTag) {
 		if (callId == null) {
@@ -73,8 +81,18 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 		if (localTag == null) {
 			throw new NullPointerException("null local tag");
 		}
+		init(callId, localTag);
+	}
+
+	private void init(String callId, String localTag) {
 		this.callId = callId;
-		this.localTag = localTag;
+		this.localTag = SipResourceAdaptorActivityHandleUtils.encodeId(localTag);
+		final long[] callIdHash = SipResourceAdaptorActivityHandleUtils.hashId(
+				SipResourceAdaptorActivityHandleUtils.encodeId(callId), 0L, 0L);
+		final long[] hash = SipResourceAdaptorActivityHandleUtils.hashId(
+				this.localTag, callIdHash[0], callIdHash[1]);
+		this.hashHigh = hash[0];
+		this.hashLow = hash[1];
 	}
 
 	/**
@@ -94,7 +112,7 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 	 */
 	@Override
 	public int getEstimatedHandleSize() {
-		return callId.length() + localTag.length() + 7;
+		return callId.length() + localTag.length + 7;
 	}
 
 	@Override
@@ -108,12 +126,12 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 	 * @return
 	 */
 	public String getLocalTag() {
-		return localTag;
+		return SipResourceAdaptorActivityHandleUtils.decodeId(localTag, 0, localTag.length);
 	}
 
 	@Override
 	public int hashCode() {
-		return callId.hashCode() * 31 + localTag.hashCode();
+		return SipResourceAdaptorActivityHandleUtils.hashCode(hashHigh, hashLow);
 	}
 
 	@Override
@@ -125,10 +143,13 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 		if (getClass() != obj.getClass())
 			return false;
 		DialogWithoutIdActivityHandle other = (DialogWithoutIdActivityHandle) obj;
-		if (!callId.equals(other.callId)) {
+		if (hashLow != other.hashLow || hashHigh != other.hashHigh) {
+			return false;
+		}
+		if (!Arrays.equals(localTag, other.localTag)) {
 			return false;
 		}
-		if (!localTag.equals(other.localTag)) {
+		if (!callId.equals(other.callId)) {
 			return false;
 		}
 		return true;
@@ -141,21 +162,23 @@ public class DialogWithoutIdActivityHandle extends MarshableSipActivityHandle
 
 	@Override
 	public String toString() {
-		return new StringBuilder(callId).append(DIALOG_ID_SEPARATOR)
-				.append(localTag).append(REMOTE_TAG).toString();
+		return new StringBuilder(callId.length() + localTag.length + 6).append(callId)
+				.append(DIALOG_ID_SEPARATOR).append(getLocalTag())
+				.append(REMOTE_TAG).toString();
 	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeUTF(callId);
-		out.writeUTF(localTag);
+		out.writeUTF(getLocalTag());
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException,
 			ClassNotFoundException {
-		callId = in.readUTF();
-		localTag = in.readUTF();
+		final String callId = in.readUTF();
+		final String localTag = in.readUTF();
+		init(callId, localTag);
 	}
 
 }
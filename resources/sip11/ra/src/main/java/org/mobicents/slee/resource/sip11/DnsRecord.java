@@ -0,0 +1,233 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * A DNS resource record, of the types used to locate SIP servers (RFC 3263):
+ * NAPTR, SRV, A and AAAA.
+ * 
+ * @author martins
+ * 
+ */
+public class DnsRecord {
+
+	public static final int A = 1;
+	public static final int AAAA = 28;
+	public static final int SRV = 33;
+	public static final int NAPTR = 35;
+
+	private final String name;
+	private final int type;
+	private final long ttl;
+
+	// NAPTR order or SRV priority
+	private final int order;
+	// NAPTR preference or SRV weight
+	private final int preference;
+	private final int port;
+	private final String flags;
+	private final String service;
+	// NAPTR replacement, SRV target or address
+	private final String value;
+
+	private DnsRecord(String name, int type, long ttl, int order, int preference, int port, String flags,
+			String service, String value) {
+		this.name = name;
+		this.type = type;
+		this.ttl = ttl;
+		this.order = order;
+		this.preference = preference;
+		this.port = port;
+		this.flags = flags;
+		this.service = service;
+		this.value = value;
+	}
+
+	/**
+	 * Creates a NAPTR record, with an empty regexp.
+	 * 
+	 * @param name
+	 * @param ttl
+	 *            the time to live, in seconds
+	 * @param order
+	 * @param preference
+	 * @param flags
+	 * @param service
+	 * @param replacement
+	 * @return
+	 */
+	public static DnsRecord naptr(String name, long ttl, int order, int preference, String flags, String service,
+			String replacement) {
+		return new DnsRecord(name, NAPTR, ttl, order, preference, 0, flags, service, replacement);
+	}
+
+	/**
+	 * Creates a SRV record.
+	 * 
+	 * @param name
+	 * @param ttl
+	 *            the time to live, in seconds
+	 * @param priority
+	 * @param weight
+	 * @param port
+	 * @param target
+	 * @return
+	 */
+	public static DnsRecord srv(String name, long ttl, int priority, int weight, int port, String target) {
+		return new DnsRecord(name, SRV, ttl, priority, weight, port, null, null, target);
+	}
+
+	/**
+	 * Creates an A or AAAA record.
+	 * 
+	 * @param name
+	 * @param ttl
+	 *            the time to live, in seconds
+	 * @param address
+	 *            the IPv4 or IPv6 address
+	 * @return
+	 */
+	public static DnsRecord address(String name, long ttl, String address) {
+		return new DnsRecord(name, address.indexOf(':') < 0 ? A : AAAA, ttl, 0, 0, 0, null, null, address);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Retrieves the time to live of the record, in seconds.
+	 * 
+	 * @return
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Retrieves the NAPTR order.
+	 * 
+	 * @return
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Retrieves the NAPTR preference.
+	 * 
+	 * @return
+	 */
+	public int getPreference() {
+		return preference;
+	}
+
+	/**
+	 * Retrieves the NAPTR flags.
+	 * 
+	 * @return
+	 */
+	public String getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Retrieves the NAPTR service.
+	 * 
+	 * @return
+	 */
+	public String getService() {
+		return service;
+	}
+
+	/**
+	 * Retrieves the NAPTR replacement.
+	 * 
+	 * @return
+	 */
+	public String getReplacement() {
+		return value;
+	}
+
+	/**
+	 * Retrieves the SRV priority.
+	 * 
+	 * @return
+	 */
+	public int getPriority() {
+		return order;
+	}
+
+	/**
+	 * Retrieves the SRV weight.
+	 * 
+	 * @return
+	 */
+	public int getWeight() {
+		return preference;
+	}
+
+	/**
+	 * Retrieves the SRV port.
+	 * 
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Retrieves the SRV target.
+	 * 
+	 * @return
+	 */
+	public String getTarget() {
+		return value;
+	}
+
+	/**
+	 * Retrieves the A or AAAA address.
+	 * 
+	 * @return
+	 */
+	public String getAddress() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(name).append(' ').append(ttl).append(' ');
+		switch (type) {
+		case NAPTR:
+			return sb.append("NAPTR ").append(order).append(' ').append(preference).append(" \"").append(flags)
+					.append("\" \"").append(service).append("\" \"\" ").append(value).toString();
+		case SRV:
+			return sb.append("SRV ").append(order).append(' ').append(preference).append(' ').append(port)
+					.append(' ').append(value).toString();
+		default:
+			return sb.append(type == A ? "A " : "AAAA ").append(value).toString();
+		}
+	}
+}
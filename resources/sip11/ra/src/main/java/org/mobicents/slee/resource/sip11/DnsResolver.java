@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Performs the DNS lookups of the {@link ServerLocatorImpl}, which caches
+ * the results and only invokes the resolver from its own threads, thus
+ * lookups may block. Implementations must have a public no-arg constructor,
+ * to be set with the {@link SipResourceAdaptor#SERVER_LOCATOR_RESOLVER}
+ * config property.
+ * 
+ * @author martins
+ * 
+ */
+public interface DnsResolver {
+
+	/**
+	 * Looks up the records of the specified type.
+	 * 
+	 * @param name
+	 *            the domain name, without trailing dot
+	 * @param type
+	 *            one of the {@link DnsRecord} types
+	 * @return the records found, empty if the name does not exist or has no
+	 *         records of the type
+	 * @throws IOException
+	 *             if the lookup failed, e.g. no server answered
+	 */
+	public List<DnsRecord> lookup(String name, int type) throws IOException;
+
+}
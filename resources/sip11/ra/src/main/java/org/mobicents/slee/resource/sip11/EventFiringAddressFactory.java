@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import javax.sip.address.SipURI;
+import javax.sip.address.TelURL;
+import javax.sip.address.URI;
+import javax.slee.Address;
+import javax.slee.AddressPlan;
+
+/**
+ * Builds the slee {@link Address} where events are fired, from the SIP
+ * address of the party related with the activity. The format is selected by
+ * the {@link SipResourceAdaptor#EVENT_FIRING_ADDRESS} config property:
+ *
+ * <ul>
+ * <li>{@link #NONE} - no address, events are fired with a null address;</li>
+ * <li>{@link #NAME_ADDR} - the full name-addr, display name and params
+ * included, this is the default;</li>
+ * <li>{@link #USER_HOST} - only the uri scheme, user and host, e.g.
+ * sip:alice@atlanta.com;</li>
+ * <li>{@link #E164} - as {@link #USER_HOST} but with visual separators
+ * removed from telephone-subscriber user parts, e.g. sip:+351211234567@host.</li>
+ * </ul>
+ *
+ * The normalized formats ignore display names, uri params and headers, which
+ * do not identify the party, and thus improve the hit rate of the container's
+ * convergence name cache.
+ *
+ * @author martins
+ *
+ */
+public class EventFiringAddressFactory {
+
+	public static final String NONE = "none";
+	public static final String NAME_ADDR = "name-addr";
+	public static final String USER_HOST = "user-host";
+	public static final String E164 = "e164";
+
+	private final String format;
+
+	private final boolean none;
+	private final boolean nameAddr;
+	private final boolean e164;
+
+	/**
+	 *
+	 * @param format
+	 * @throws IllegalArgumentException
+	 *             if the format is not a known one
+	 */
+	public EventFiringAddressFactory(String format) throws IllegalArgumentException {
+		if (format == null) {
+			format = NAME_ADDR;
+		}
+		format = format.trim().toLowerCase();
+		if (!NONE.equals(format) && !NAME_ADDR.equals(format)
+				&& !USER_HOST.equals(format) && !E164.equals(format)) {
+			throw new IllegalArgumentException("unknown event firing address format " + format);
+		}
+		this.format = format;
+		this.none = NONE.equals(format);
+		this.nameAddr = NAME_ADDR.equals(format);
+		this.e164 = E164.equals(format);
+	}
+
+	/**
+	 * Retrieves the format of the addresses created by this factory.
+	 *
+	 * @return
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Indicates if the factory creates addresses, or if events are fired with
+	 * null address.
+	 *
+	 * @return
+	 */
+	public boolean isNone() {
+		return none;
+	}
+
+	/**
+	 * Creates the slee address for the specified sip address.
+	 *
+	 * @param address
+	 * @return null if the factory format is {@link #NONE} or the address is
+	 *         null
+	 */
+	public Address createAddress(javax.sip.address.Address address) {
+		if (none || address == null) {
+			return null;
+		}
+		if (nameAddr) {
+			return new Address(AddressPlan.SIP, address.toString());
+		}
+		return new Address(AddressPlan.SIP, normalize(address.getURI()));
+	}
+
+	private String normalize(URI uri) {
+		if (uri instanceof SipURI) {
+			final SipURI sipURI = (SipURI) uri;
+			final String user = sipURI.getUser();
+			final String host = sipURI.getHost();
+			final StringBuilder sb = new StringBuilder(64).append(
+					uri.getScheme()).append(':');
+			if (user != null) {
+				sb.append(e164 ? normalizeTelephoneNumber(user) : user).append('@');
+			}
+			if (host != null) {
+				sb.append(host.toLowerCase());
+			}
+			return sb.toString();
+		} else if (uri instanceof TelURL) {
+			final TelURL telURL = (TelURL) uri;
+			final String number = telURL.getPhoneNumber();
+			final StringBuilder sb = new StringBuilder(32).append(uri.getScheme()).append(':');
+			if (telURL.isGlobal() && (number.length() == 0 || number.charAt(0) != '+')) {
+				sb.append('+');
+			}
+			return sb.append(e164 ? normalizeTelephoneNumber(number) : number).toString();
+		} else {
+			return uri.toString();
+		}
+	}
+
+	/**
+	 * Removes the visual separators (RFC 3966) from the specified user part,
+	 * if it is a telephone-subscriber, otherwise the user part is returned
+	 * unchanged.
+	 *
+	 * @param user
+	 * @return
+	 */
+	static String normalizeTelephoneNumber(String user) {
+		final int length = user.length();
+		StringBuilder sb = null;
+		for (int i = 0; i < length; i++) {
+			final char c = user.charAt(i);
+			if ((c >= '0' && c <= '9') || (c == '+' && i == 0)) {
+				if (sb != null) {
+					sb.append(c);
+				}
+			} else if (c == '-' || c == '.' || c == '(' || c == ')' || c == ' ') {
+				if (sb == null) {
+					sb = new StringBuilder(length).append(user, 0, i);
+				}
+			} else {
+				// not a telephone-subscriber
+				return user;
+			}
+		}
+		return sb == null ? user : sb.toString();
+	}
+
+}
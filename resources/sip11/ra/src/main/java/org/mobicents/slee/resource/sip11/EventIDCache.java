@@ -22,6 +22,10 @@
 
 package org.mobicents.slee.resource.sip11;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sip.TimeoutEvent;
@@ -33,7 +37,11 @@ import javax.slee.facilities.EventLookupFacility;
 import javax.slee.resource.FireableEventType;
 
 import net.java.slee.resource.sip.DialogForkedEvent;
+import net.java.slee.resource.sip.BulkRequestCompletedEvent;
+import net.java.slee.resource.sip.ClientTransactionOutcomeEvent;
+import net.java.slee.resource.sip.ProxyResponseEvent;
 import net.java.slee.resource.sip.DialogTimeoutEvent;
+import net.java.slee.resource.sip.TransportFailureEvent;
 
 /**
  * Caches event IDs for the SIP RA.
@@ -55,6 +63,14 @@ public class EventIDCache {
 	private static final String TRANSACTION_TIMEOUT_EVENTNAME = "javax.sip.Timeout.TRANSACTION";
 	private static final String DIALOG_TIMEOUT_EVENTNAME = "javax.sip.Timeout.Dialog";
 	private static final String DIALOG_FORKED_EVENTNAME = "javax.sip.Dialog.FORKED";
+	private static final String BULK_REQUEST_COMPLETED_EVENTNAME = "net.java.slee.resource.sip.BulkRequest.COMPLETED";
+	private static final String BULK_REQUEST_FAILED_EVENTNAME = "net.java.slee.resource.sip.BulkRequest.FAILED";
+	private static final String CLIENT_TRANSACTION_OUTCOME_COMPLETED_EVENTNAME = "net.java.slee.resource.sip.ClientTransactionOutcome.COMPLETED";
+	private static final String CLIENT_TRANSACTION_OUTCOME_FAILED_EVENTNAME = "net.java.slee.resource.sip.ClientTransactionOutcome.FAILED";
+	private static final String PROXY_RESPONSE_PROVISIONAL_EVENTNAME = "net.java.slee.resource.sip.ProxyResponse.PROVISIONAL";
+	private static final String PROXY_RESPONSE_SUCCESS_EVENTNAME = "net.java.slee.resource.sip.ProxyResponse.SUCCESS";
+	private static final String PROXY_RESPONSE_FAILURE_EVENTNAME = "net.java.slee.resource.sip.ProxyResponse.FAILURE";
+	private static final String TRANSPORT_FAILURE_EVENTNAME = "net.java.slee.resource.sip.TransportFailure";
 	
 	private ConcurrentHashMap<String, FireableEventType> eventIds = new ConcurrentHashMap<String, FireableEventType>();
 
@@ -161,6 +177,74 @@ public class EventIDCache {
 		return getEventId(eventLookupFacility, DIALOG_FORKED_EVENTNAME);
 	}
 
+	/**
+	 * Retrieves the event id for a {@link BulkRequestCompletedEvent}.
+	 * 
+	 * @param eventLookupFacility
+	 * @param failed
+	 *            if any request of the fan-out failed
+	 * @return
+	 */
+	public FireableEventType getBulkRequestCompletedEventId(EventLookupFacility eventLookupFacility, boolean failed) {
+		return getEventId(eventLookupFacility, failed ? BULK_REQUEST_FAILED_EVENTNAME : BULK_REQUEST_COMPLETED_EVENTNAME);
+	}
+
+	/**
+	 * Retrieves the event id for a {@link ClientTransactionOutcomeEvent}.
+	 * 
+	 * @param eventLookupFacility
+	 * @param failed
+	 *            if the request did not get a 2xx response
+	 * @return
+	 */
+	public FireableEventType getClientTransactionOutcomeEventId(EventLookupFacility eventLookupFacility, boolean failed) {
+		return getEventId(eventLookupFacility, failed ? CLIENT_TRANSACTION_OUTCOME_FAILED_EVENTNAME : CLIENT_TRANSACTION_OUTCOME_COMPLETED_EVENTNAME);
+	}
+
+	/**
+	 * Retrieves the event id for a {@link ProxyResponseEvent}.
+	 * 
+	 * @param eventLookupFacility
+	 * @param statusCode
+	 *            the status code of the response forwarded
+	 * @return
+	 */
+	public FireableEventType getProxyResponseEventId(EventLookupFacility eventLookupFacility, int statusCode) {
+		final String eventName;
+		if (statusCode < 200) {
+			eventName = PROXY_RESPONSE_PROVISIONAL_EVENTNAME;
+		} else if (statusCode < 300) {
+			eventName = PROXY_RESPONSE_SUCCESS_EVENTNAME;
+		} else {
+			eventName = PROXY_RESPONSE_FAILURE_EVENTNAME;
+		}
+		return getEventId(eventLookupFacility, eventName);
+	}
+
+	/**
+	 * Retrieves the event id for a {@link TransportFailureEvent}.
+	 * 
+	 * @param eventLookupFacility
+	 * @return
+	 */
+	public FireableEventType getTransportFailureEventId(EventLookupFacility eventLookupFacility) {
+		return getEventId(eventLookupFacility, TRANSPORT_FAILURE_EVENTNAME);
+	}
+
+	/**
+	 * Retrieves the cache contents, each in the form "event name -> event type".
+	 * 
+	 * @return
+	 */
+	public String[] dump() {
+		final List<String> result = new ArrayList<String>();
+		for (Map.Entry<String, FireableEventType> entry : eventIds.entrySet()) {
+			result.add(entry.getKey() + " -> " + entry.getValue().getEventType());
+		}
+		Collections.sort(result);
+		return result.toArray(new String[result.size()]);
+	}
+
 	private FireableEventType getEventId(EventLookupFacility eventLookupFacility,
 			String eventName) {
 
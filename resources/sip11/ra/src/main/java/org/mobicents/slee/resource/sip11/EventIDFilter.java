@@ -22,7 +22,11 @@
 
 package org.mobicents.slee.resource.sip11;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,6 +43,12 @@ public class EventIDFilter {
 	 */
 	private final ConcurrentHashMap<EventTypeID, Set<ServiceID>> eventID2serviceIDs = new ConcurrentHashMap<EventTypeID, Set<ServiceID>>(
 			31);
+
+	/**
+	 * Holds mappings eventTypeID --> Set(ServiceID) which receive the event as initial event
+	 */
+	private final ConcurrentHashMap<EventTypeID, Set<ServiceID>> initialEventID2serviceIDs = new ConcurrentHashMap<EventTypeID, Set<ServiceID>>(
+			31);
 	
 	/**
 	 * checks if event should be filtered or not
@@ -49,6 +59,16 @@ public class EventIDFilter {
 		return !eventID2serviceIDs.containsKey(eventType.getEventType());
 	}
 
+	/**
+	 * checks if event is an initial event for any active service, if not the
+	 * container does not need an address to route it
+	 * @param eventType
+	 * @return true if there is at least one active service receiving the event as initial event
+	 */
+	public boolean isInitialEvent(FireableEventType eventType) {
+		return initialEventID2serviceIDs.containsKey(eventType.getEventType());
+	}
+
 	/**
 	 * Informs the filter that a receivable service is now active.
 	 * For the events related with the service, and if there are no other
@@ -58,20 +78,27 @@ public class EventIDFilter {
 	 */
 	public void serviceActive(ReceivableService receivableService) {
 		for (ReceivableEvent receivableEvent : receivableService.getReceivableEvents()) {
-			Set<ServiceID> servicesReceivingEvent = eventID2serviceIDs.get(receivableEvent.getEventType());
-			if (servicesReceivingEvent == null) {
-				servicesReceivingEvent = new HashSet<ServiceID>();
-				Set<ServiceID> anotherSet = eventID2serviceIDs.putIfAbsent(receivableEvent.getEventType(), servicesReceivingEvent);
-				if (anotherSet != null) {
-					servicesReceivingEvent = anotherSet;
-				}
-			}
-			synchronized (servicesReceivingEvent) {
-				servicesReceivingEvent.add(receivableService.getService());
+			add(eventID2serviceIDs, receivableEvent.getEventType(), receivableService.getService());
+			if (receivableEvent.isInitialEvent()) {
+				add(initialEventID2serviceIDs, receivableEvent.getEventType(), receivableService.getService());
 			}
 		}		
 	}
 
+	private static void add(ConcurrentHashMap<EventTypeID, Set<ServiceID>> map, EventTypeID eventTypeID, ServiceID serviceID) {
+		Set<ServiceID> servicesReceivingEvent = map.get(eventTypeID);
+		if (servicesReceivingEvent == null) {
+			servicesReceivingEvent = new HashSet<ServiceID>();
+			Set<ServiceID> anotherSet = map.putIfAbsent(eventTypeID, servicesReceivingEvent);
+			if (anotherSet != null) {
+				servicesReceivingEvent = anotherSet;
+			}
+		}
+		synchronized (servicesReceivingEvent) {
+			servicesReceivingEvent.add(serviceID);
+		}
+	}
+
 	/**
 	 * Informs the filter that a receivable service is now inactive.
 	 * For the events related with the service, if there are no other
@@ -81,16 +108,53 @@ public class EventIDFilter {
 	 */
 	public void serviceInactive(ReceivableService receivableService) {
 		for (ReceivableEvent receivableEvent : receivableService.getReceivableEvents()) {
-			Set<ServiceID> servicesReceivingEvent = eventID2serviceIDs.get(receivableEvent.getEventType());
-			if (servicesReceivingEvent != null) {
-				synchronized (servicesReceivingEvent) {
-					servicesReceivingEvent.remove(receivableService.getService());
+			remove(eventID2serviceIDs, receivableEvent.getEventType(), receivableService.getService());
+			remove(initialEventID2serviceIDs, receivableEvent.getEventType(), receivableService.getService());
+		}		
+	}
+
+	private static void remove(ConcurrentHashMap<EventTypeID, Set<ServiceID>> map, EventTypeID eventTypeID, ServiceID serviceID) {
+		Set<ServiceID> servicesReceivingEvent = map.get(eventTypeID);
+		if (servicesReceivingEvent != null) {
+			synchronized (servicesReceivingEvent) {
+				servicesReceivingEvent.remove(serviceID);
+			}
+			if(servicesReceivingEvent.isEmpty()) {
+			    map.remove(eventTypeID);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the filter contents, each in the form
+	 * "event type -> services", with the services receiving it as initial
+	 * event marked with *.
+	 * 
+	 * @return
+	 */
+	public String[] dump() {
+		final List<String> result = new ArrayList<String>();
+		for (Map.Entry<EventTypeID, Set<ServiceID>> entry : eventID2serviceIDs.entrySet()) {
+			final Set<ServiceID> initialServices = new HashSet<ServiceID>();
+			final Set<ServiceID> initialServicesReceivingEvent = initialEventID2serviceIDs.get(entry.getKey());
+			if (initialServicesReceivingEvent != null) {
+				synchronized (initialServicesReceivingEvent) {
+					initialServices.addAll(initialServicesReceivingEvent);
 				}
-				if(servicesReceivingEvent.isEmpty()) {
-				    eventID2serviceIDs.remove(receivableEvent.getEventType());
+			}
+			final StringBuilder sb = new StringBuilder(entry.getKey().toString()).append(" ->");
+			synchronized (entry.getValue()) {
+				for (ServiceID serviceID : entry.getValue()) {
+					sb.append(' ').append(serviceID);
+					if (initialServices.contains(serviceID)) {
+						sb.append('*');
+					}
 				}
 			}
-		}		
+			result.add(sb.toString());
+		}
+		Collections.sort(result);
+		return result.toArray(new String[result.size()]);
 	}
 
 	/**
@@ -0,0 +1,143 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link TransactionSpanSink}, which appends the spans, as the
+ * binary records of {@link TransactionSpan#write(java.io.DataOutput)}, to a
+ * file. Spans are queued and written by a single daemon thread, if the queue
+ * is full the span is dropped.
+ *
+ * @author martins
+ *
+ */
+public class FileTransactionSpanSink implements TransactionSpanSink, Runnable {
+
+	/**
+	 * the max number of spans waiting to be written
+	 */
+	public static final int QUEUE_CAPACITY = 4096;
+
+	private final BlockingQueue<TransactionSpan> queue = new ArrayBlockingQueue<TransactionSpan>(QUEUE_CAPACITY);
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private DataOutputStream out;
+
+	private Thread writer;
+
+	private volatile boolean closed;
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TransactionSpanSink#open(java.lang.String)
+	 */
+	public void open(String location) throws IOException {
+		if (location == null) {
+			throw new IOException("no span file location");
+		}
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(location, true), 64 * 1024));
+		writer = new Thread(this, "SipRA-TransactionSpans");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TransactionSpanSink#span(org.mobicents.slee.resource.sip11.TransactionSpan)
+	 */
+	public void span(TransactionSpan span) {
+		if (closed || !queue.offer(span)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Retrieves the number of spans dropped, due to a full queue.
+	 *
+	 * @return
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		try {
+			while (!closed) {
+				final TransactionSpan span = queue.take();
+				span.write(out);
+				if (queue.isEmpty()) {
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			// closing
+		} catch (IOException e) {
+			closed = true;
+			queue.clear();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TransactionSpanSink#close()
+	 */
+	public void close() {
+		closed = true;
+		if (writer == null) {
+			return;
+		}
+		writer.interrupt();
+		try {
+			writer.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer.isAlive()) {
+			// stuck writing, leave the stream to it
+			writer = null;
+			return;
+		}
+		try {
+			// write what is left
+			TransactionSpan span = null;
+			while ((span = queue.poll()) != null) {
+				span.write(out);
+			}
+			out.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+		writer = null;
+	}
+
+}
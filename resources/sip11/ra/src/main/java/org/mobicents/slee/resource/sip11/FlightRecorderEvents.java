@@ -0,0 +1,372 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.TimeoutEvent;
+import javax.sip.Transaction;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.message.Message;
+import javax.sip.message.Response;
+
+/**
+ * Defines and commits JDK Flight Recorder events for the RA hot path, which
+ * line up with the GC, lock and I/O events of the JVM.
+ *
+ * The RA is built for Java 7, thus the events are defined at runtime, through
+ * the jdk.jfr EventFactory, and {@link #create()} returns null if the JVM has
+ * no Flight Recorder. The enabled state of each event type is cached, and
+ * refreshed when a recording starts or stops, so when no recording is running
+ * a check costs a volatile read.
+ *
+ * All events have the same fields: the SIP method, the response status code
+ * (0 for requests), the simple class name of the activity handle and the hash
+ * code of the Call-ID (0 when unknown). The events are disabled by default,
+ * the settings file {@link #SETTINGS_RESOURCE} enables all of them.
+ *
+ * @author martins
+ *
+ */
+public class FlightRecorderEvents {
+
+	public static final int REQUEST_RECEIVED = 0;
+	public static final int RESPONSE_RECEIVED = 1;
+	public static final int EVENT_FIRED = 2;
+	public static final int ACTIVITY_STARTED = 3;
+	public static final int ACTIVITY_ENDED = 4;
+	public static final int EVENT_FILTERED = 5;
+	public static final int DIALOG_FORKED = 6;
+	public static final int TRANSACTION_TIMEOUT = 7;
+
+	/**
+	 * the names of the event types, without the package prefix
+	 */
+	static final String[] NAMES = { "SipRequestReceived", "SipResponseReceived", "SipEventFired",
+			"SipActivityStarted", "SipActivityEnded", "SipEventFiltered", "SipDialogForked",
+			"SipTransactionTimeout" };
+
+	private static final String[] LABELS = { "SIP Request Received", "SIP Response Received",
+			"SIP Event Fired", "SIP Activity Started", "SIP Activity Ended", "SIP Event Filtered",
+			"SIP Dialog Forked", "SIP Transaction Timeout" };
+
+	public static final String NAME_PREFIX = "org.mobicents.slee.resource.sip11.";
+
+	/**
+	 * the classpath location of the Flight Recorder settings enabling the RA events
+	 */
+	public static final String SETTINGS_RESOURCE = "org/mobicents/slee/resource/sip11/sip-ra.jfc";
+
+	private static final int METHOD_FIELD = 0;
+	private static final int STATUS_FIELD = 1;
+	private static final int HANDLE_TYPE_FIELD = 2;
+	private static final int CALL_ID_HASH_FIELD = 3;
+
+	private final Object[] factories;
+	private final Object[] eventTypes;
+
+	private final Method newEvent;
+	private final Method isEnabled;
+	private final Method set;
+	private final Method begin;
+	private final Method end;
+	private final Method shouldCommit;
+	private final Method commit;
+	private final Method unregister;
+	private final Method removeListener;
+
+	private final Object listener;
+
+	/**
+	 * bit mask of the enabled event types
+	 */
+	private volatile int enabled;
+
+	private FlightRecorderEvents() throws Exception {
+		final ClassLoader classLoader = ClassLoader.getSystemClassLoader();
+		final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", true, classLoader);
+		final Class<?> eventClass = Class.forName("jdk.jfr.Event", true, classLoader);
+		final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", true, classLoader);
+		final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", true, classLoader);
+		final Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", true, classLoader);
+		final Class<?> flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder", true, classLoader);
+		final Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener", true, classLoader);
+		final Class<?> nameClass = Class.forName("jdk.jfr.Name", true, classLoader);
+		final Class<?> labelClass = Class.forName("jdk.jfr.Label", true, classLoader);
+		final Class<?> categoryClass = Class.forName("jdk.jfr.Category", true, classLoader);
+		final Class<?> stackTraceClass = Class.forName("jdk.jfr.StackTrace", true, classLoader);
+		final Class<?> enabledClass = Class.forName("jdk.jfr.Enabled", true, classLoader);
+
+		final Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+		final Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+		final Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+		final Method getEventType = eventFactoryClass.getMethod("getEventType");
+
+		final List<Object> fields = new ArrayList<Object>();
+		fields.add(valueDescriptor.newInstance(String.class, "method",
+				Arrays.asList(annotationElement.newInstance(labelClass, "Method"))));
+		fields.add(valueDescriptor.newInstance(int.class, "status",
+				Arrays.asList(annotationElement.newInstance(labelClass, "Status Code"))));
+		fields.add(valueDescriptor.newInstance(String.class, "handleType",
+				Arrays.asList(annotationElement.newInstance(labelClass, "Activity Handle Type"))));
+		fields.add(valueDescriptor.newInstance(int.class, "callIdHash",
+				Arrays.asList(annotationElement.newInstance(labelClass, "Call-ID Hash"))));
+		final Object category = Array.newInstance(String.class, 2);
+		Array.set(category, 0, "Restcomm");
+		Array.set(category, 1, "SIP RA");
+
+		factories = new Object[NAMES.length];
+		eventTypes = new Object[NAMES.length];
+		for (int i = 0; i < NAMES.length; i++) {
+			final List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotationElement.newInstance(nameClass, NAME_PREFIX + NAMES[i]));
+			annotations.add(annotationElement.newInstance(labelClass, LABELS[i]));
+			annotations.add(annotationElement.newInstance(categoryClass, category));
+			annotations.add(annotationElement.newInstance(stackTraceClass, Boolean.FALSE));
+			annotations.add(annotationElement.newInstance(enabledClass, Boolean.FALSE));
+			factories[i] = create.invoke(null, annotations, fields);
+			eventTypes[i] = getEventType.invoke(factories[i]);
+		}
+
+		newEvent = eventFactoryClass.getMethod("newEvent");
+		unregister = eventFactoryClass.getMethod("unregister");
+		isEnabled = eventTypeClass.getMethod("isEnabled");
+		set = eventClass.getMethod("set", int.class, Object.class);
+		begin = eventClass.getMethod("begin");
+		end = eventClass.getMethod("end");
+		shouldCommit = eventClass.getMethod("shouldCommit");
+		commit = eventClass.getMethod("commit");
+
+		// refresh the enabled event types when recordings start and stop
+		listener = Proxy.newProxyInstance(classLoader, new Class<?>[] { listenerClass }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("recordingStateChanged")) {
+					refresh();
+				} else if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				} else if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else if (method.getName().equals("toString")) {
+					return FlightRecorderEvents.class.getSimpleName();
+				}
+				return null;
+			}
+		});
+		flightRecorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+		removeListener = flightRecorderClass.getMethod("removeListener", listenerClass);
+		refresh();
+	}
+
+	/**
+	 * Defines the RA events in the Flight Recorder.
+	 *
+	 * @return null if the JVM does not support Flight Recorder events
+	 */
+	public static FlightRecorderEvents create() {
+		try {
+			return new FlightRecorderEvents();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Updates the cached enabled state of the event types.
+	 */
+	public void refresh() {
+		int enabled = 0;
+		for (int i = 0; i < eventTypes.length; i++) {
+			try {
+				if ((Boolean) isEnabled.invoke(eventTypes[i])) {
+					enabled |= 1 << i;
+				}
+			} catch (Throwable e) {
+				// leave it disabled
+			}
+		}
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Indicates if a recording is running with the specified event type
+	 * enabled.
+	 *
+	 * @param type
+	 * @return
+	 */
+	public boolean isEnabled(int type) {
+		return (enabled & (1 << type)) != 0;
+	}
+
+	/**
+	 * Creates and begins an event of the specified type, to be committed with
+	 * {@link #commit(Object, String, int, String, int)} when the measured
+	 * operation ends.
+	 *
+	 * @param type
+	 * @return null if the event type is not enabled
+	 */
+	public Object begin(int type) {
+		if (!isEnabled(type)) {
+			return null;
+		}
+		try {
+			final Object event = newEvent.invoke(factories[type]);
+			begin.invoke(event);
+			return event;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Ends and commits an event created by {@link #begin(int)}, if it passes
+	 * the recording settings, such as the duration threshold.
+	 *
+	 * @param event
+	 *            if null nothing is done
+	 * @param method
+	 * @param status
+	 * @param handleType
+	 * @param callIdHash
+	 */
+	public void commit(Object event, String method, int status, String handleType, int callIdHash) {
+		if (event == null) {
+			return;
+		}
+		try {
+			end.invoke(event);
+			if ((Boolean) shouldCommit.invoke(event)) {
+				set.invoke(event, METHOD_FIELD, method);
+				set.invoke(event, STATUS_FIELD, status);
+				set.invoke(event, HANDLE_TYPE_FIELD, handleType);
+				set.invoke(event, CALL_ID_HASH_FIELD, callIdHash);
+				commit.invoke(event);
+			}
+		} catch (Throwable e) {
+			// diagnostics must not break the RA
+		}
+	}
+
+	/**
+	 * Commits an event of the specified type, with the fields taken from a
+	 * SIP message.
+	 *
+	 * @param type
+	 * @param message
+	 *            may be null
+	 * @param handle
+	 *            may be null
+	 */
+	public void commit(int type, Message message, Object handle) {
+		final Object event = begin(type);
+		if (event != null) {
+			commit(event, message, handle);
+		}
+	}
+
+	/**
+	 * Ends and commits an event created by {@link #begin(int)}, with the
+	 * fields taken from a SIP message.
+	 *
+	 * @param event
+	 *            if null nothing is done
+	 * @param message
+	 *            may be null
+	 * @param handle
+	 *            may be null
+	 */
+	public void commit(Object event, Message message, Object handle) {
+		if (event == null) {
+			return;
+		}
+		String method = null;
+		int status = 0;
+		int callIdHash = 0;
+		if (message != null) {
+			final CSeqHeader cSeqHeader = (CSeqHeader) message.getHeader(CSeqHeader.NAME);
+			if (cSeqHeader != null) {
+				method = cSeqHeader.getMethod();
+			}
+			if (message instanceof Response) {
+				status = ((Response) message).getStatusCode();
+			}
+			final CallIdHeader callIdHeader = (CallIdHeader) message.getHeader(CallIdHeader.NAME);
+			if (callIdHeader != null) {
+				callIdHash = callIdHeader.getCallId().hashCode();
+			}
+		}
+		commit(event, method, status, handle != null ? handle.getClass().getSimpleName() : null, callIdHash);
+	}
+
+	/**
+	 * Retrieves the SIP message related with a RA event object.
+	 *
+	 * @param event
+	 * @return null if the event has no message
+	 */
+	public static Message getMessage(Object event) {
+		if (event instanceof RequestEvent) {
+			return ((RequestEvent) event).getRequest();
+		} else if (event instanceof ResponseEvent) {
+			return ((ResponseEvent) event).getResponse();
+		} else if (event instanceof TimeoutEvent) {
+			final TimeoutEvent timeoutEvent = (TimeoutEvent) event;
+			final Transaction t = timeoutEvent.isServerTransaction() ? timeoutEvent.getServerTransaction() : timeoutEvent.getClientTransaction();
+			try {
+				return t != null ? t.getRequest() : null;
+			} catch (IllegalStateException e) {
+				// wrapper already cleared
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the RA events from the Flight Recorder.
+	 */
+	public void close() {
+		enabled = 0;
+		try {
+			removeListener.invoke(null, listener);
+		} catch (Throwable e) {
+			// ignore
+		}
+		for (Object factory : factories) {
+			try {
+				unregister.invoke(factory);
+			} catch (Throwable e) {
+				// ignore
+			}
+		}
+	}
+
+}
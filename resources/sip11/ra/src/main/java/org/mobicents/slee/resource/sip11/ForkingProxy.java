@@ -0,0 +1,267 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.message.SIPMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.sip.ClientTransaction;
+import javax.sip.InvalidArgumentException;
+import javax.sip.SipException;
+import javax.sip.SipProvider;
+import javax.sip.address.URI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.MaxForwardsHeader;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener;
+import org.mobicents.slee.resource.sip11.wrappers.ServerTransactionWrapper;
+
+/**
+ * The RA proxy core, a stateful forking proxy (RFC 3261 16) driven by
+ * {@link ProxyContext}s, one per proxied server transaction. The branch
+ * client transactions are not activities, their responses are processed by
+ * the context and only the aggregated responses are fired as events.
+ * 
+ * @author martins
+ * 
+ */
+public class ForkingProxy {
+
+	/**
+	 * Timer C (RFC 3261 16.6), the max time an INVITE branch waits for a
+	 * final response, restarted on each provisional response, in ms
+	 */
+	public static final long TIMER_C = 180000;
+
+	/**
+	 * the time a branch cancelled on Timer C expiration waits for its final
+	 * response, before it is considered timed out, in ms (64*T1)
+	 */
+	public static final long TIMER_C_CANCEL = 32000;
+
+	private static final float DEFAULT_Q_VALUE = 1.0f;
+
+	private static final int DEFAULT_MAX_FORWARDS = 70;
+
+	/**
+	 * the application data of the CANCEL client txs, their responses are not
+	 * relevant, the branch completes with the response to the INVITE
+	 */
+	private static final ClientTransactionOutcomeListener CANCEL_LISTENER = new ClientTransactionOutcomeListener() {
+		public void transactionCompleted(Response response, int statusCode) {
+		}
+	};
+
+	private final SipResourceAdaptor ra;
+
+	private final SleeSipProviderImpl providerWrapper;
+
+	private final Timer timer;
+
+	private final Tracer tracer;
+
+	/**
+	 * 
+	 * @param ra
+	 * @param providerWrapper
+	 * @param timer
+	 *            the timer to schedule Timer C
+	 */
+	public ForkingProxy(SipResourceAdaptor ra, SleeSipProviderImpl providerWrapper, Timer timer) {
+		this.ra = ra;
+		this.providerWrapper = providerWrapper;
+		this.timer = timer;
+		this.tracer = ra.getTracer(ForkingProxy.class.getSimpleName());
+	}
+
+	/**
+	 * Proxies the request of the specified server transaction to the
+	 * specified targets.
+	 * 
+	 * @param serverTransaction
+	 * @param targets
+	 * @throws SipException
+	 *             if Max-Forwards reached zero or the server transaction is
+	 *             already proxied
+	 */
+	public void proxy(ServerTransactionWrapper serverTransaction, List<ContactHeader> targets) throws SipException {
+		final Request request = (Request) serverTransaction.getRequest().clone();
+		if (Request.ACK.equals(request.getMethod()) || Request.CANCEL.equals(request.getMethod())) {
+			throw new IllegalArgumentException(request.getMethod() + " requests can't be proxied statefully");
+		}
+		// RFC 3261 16.4 and 16.6, the branches only differ in Request-URI and Via
+		final RouteHeader route = (RouteHeader) request.getHeader(RouteHeader.NAME);
+		if (route != null && providerWrapper.isLocalURI(route.getAddress().getURI())) {
+			((SIPMessage) request).removeFirst(RouteHeader.NAME);
+		}
+		final MaxForwardsHeader maxForwards = (MaxForwardsHeader) request.getHeader(MaxForwardsHeader.NAME);
+		try {
+			if (maxForwards == null) {
+				request.setHeader(providerWrapper.getHeaderFactory().createMaxForwardsHeader(DEFAULT_MAX_FORWARDS));
+			} else {
+				maxForwards.decrementMaxForwards();
+			}
+		} catch (InvalidArgumentException e) {
+			throw new SipException("Failed to proxy request", e);
+		}
+		final ProxyContext context = new ProxyContext(this, serverTransaction, request, groupTargets(targets));
+		synchronized (serverTransaction) {
+			if (serverTransaction.getProxyContext() != null) {
+				throw new SipException(serverTransaction + " is already proxied");
+			}
+			serverTransaction.setProxyContext(context);
+		}
+		context.start();
+	}
+
+	/**
+	 * Schedules Timer C for the specified branch.
+	 * 
+	 * @param branch
+	 * @param delay
+	 * @return
+	 */
+	TimerTask scheduleTimerC(final ProxyContext.Branch branch, long delay) {
+		final TimerTask timerC = new TimerTask() {
+			@Override
+			public void run() {
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Timer C expired for " + branch);
+				}
+				branch.timerCExpired();
+			}
+		};
+		timer.schedule(timerC, delay);
+		return timerC;
+	}
+
+	/**
+	 * Groups the targets by q-value, the groups sorted by decreasing q-value
+	 * and the targets of each group in the order provided.
+	 * 
+	 * @param targets
+	 * @return
+	 */
+	static List<List<URI>> groupTargets(List<ContactHeader> targets) {
+		if (targets == null || targets.isEmpty()) {
+			throw new IllegalArgumentException("no targets");
+		}
+		final List<ContactHeader> sorted = new ArrayList<ContactHeader>(targets);
+		// the sort is stable, thus the order of targets with same q-value is kept
+		Collections.sort(sorted, new Comparator<ContactHeader>() {
+			public int compare(ContactHeader o1, ContactHeader o2) {
+				return Float.compare(getQValue(o2), getQValue(o1));
+			}
+		});
+		final List<List<URI>> groups = new ArrayList<List<URI>>();
+		List<URI> group = null;
+		float q = -1;
+		for (ContactHeader target : sorted) {
+			if (group == null || getQValue(target) != q) {
+				q = getQValue(target);
+				group = new ArrayList<URI>();
+				groups.add(group);
+			}
+			group.add(target.getAddress().getURI());
+		}
+		return groups;
+	}
+
+	private static float getQValue(ContactHeader contact) {
+		final float q = contact.getQValue();
+		return q < 0 ? DEFAULT_Q_VALUE : q;
+	}
+
+	/**
+	 * Creates the client transaction of the specified branch.
+	 * 
+	 * @param context
+	 * @param branch
+	 * @return
+	 * @throws SipException
+	 */
+	ClientTransaction createBranchTransaction(ProxyContext context, ProxyContext.Branch branch) throws SipException {
+		final Request request = (Request) context.getRequest().clone();
+		final URI target = (URI) branch.getTarget().clone();
+		request.setRequestURI(target);
+		final ViaHeader via = providerWrapper.getLocalVia(StatelessForwarder.getTransport(target, request), providerWrapper.generateBranchId());
+		if (via == null) {
+			throw new SipException("No listening point for the transport to " + target);
+		}
+		request.addFirst(via);
+		final ClientTransaction ct = providerWrapper.getRealProvider().getNewClientTransaction(request);
+		ct.setApplicationData(branch);
+		return ct;
+	}
+
+	/**
+	 * Sends a CANCEL for the specified branch.
+	 * 
+	 * @param branch
+	 */
+	void sendCancel(ProxyContext.Branch branch) {
+		final ClientTransaction ct = branch.getClientTransaction();
+		if (ct == null) {
+			return;
+		}
+		try {
+			final SipProvider provider = providerWrapper.getRealProvider();
+			final ClientTransaction cancelTransaction = provider.getNewClientTransaction(ct.createCancel());
+			cancelTransaction.setApplicationData(CANCEL_LISTENER);
+			cancelTransaction.sendRequest();
+		} catch (Throwable e) {
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Failed to cancel " + branch, e);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param context
+	 */
+	void proxyCompleted(ProxyContext context) {
+		context.getServerTransaction().setProxyContext(null);
+	}
+
+	SipResourceAdaptor getRa() {
+		return ra;
+	}
+
+	SleeSipProviderImpl getProviderWrapper() {
+		return providerWrapper;
+	}
+
+	Tracer getTracer() {
+		return tracer;
+	}
+
+}
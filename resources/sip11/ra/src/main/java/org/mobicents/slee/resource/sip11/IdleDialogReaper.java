@@ -0,0 +1,145 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.TimerTask;
+
+import javax.slee.facilities.Tracer;
+
+import net.java.slee.resource.sip.SessionTimers;
+
+import org.mobicents.slee.resource.sip11.wrappers.DialogWrapper;
+
+/**
+ * Finds dialogs which received no messages for too long, e.g. due to a lost
+ * BYE, and hands those to the RA, which fires a
+ * {@link net.java.slee.resource.sip.DialogTimeoutEvent} and optionally sends
+ * BYE and ends the dialog activity.
+ * 
+ * A dialog is idle after {@link SipResourceAdaptor#IDLE_DIALOG_TIMEOUT}
+ * without messages, or, if it negotiated an RFC 4028 session timer, when the
+ * session expires without a refresh. The dialogs are tracked by a
+ * {@link TimingWheel}, which is advanced by this task, and receiving a message
+ * only updates the dialog last activity time.
+ * 
+ * @author martins
+ * 
+ */
+public class IdleDialogReaper extends TimerTask implements TimingWheel.Listener<DialogWrapper> {
+
+	/**
+	 * the reaper resolution, in ms
+	 */
+	public static final long TICK = 1000;
+
+	private final SipResourceAdaptor ra;
+	private final Tracer tracer;
+	private final long idleTimeout;
+	private final TimingWheel<DialogWrapper> wheel;
+
+	/**
+	 * 
+	 * @param ra
+	 * @param idleTimeout
+	 *            the max time without messages, in ms
+	 */
+	public IdleDialogReaper(SipResourceAdaptor ra, long idleTimeout) {
+		this.ra = ra;
+		this.tracer = ra.getTracer(IdleDialogReaper.class.getSimpleName());
+		this.idleTimeout = idleTimeout;
+		this.wheel = new TimingWheel<DialogWrapper>(TICK, this);
+	}
+
+	/**
+	 * Starts tracking the specified dialog.
+	 * 
+	 * @param dw
+	 */
+	public void dialogStarted(DialogWrapper dw) {
+		dw.touch();
+		schedule(dw);
+	}
+
+	/**
+	 * Reschedules the dialog timer, after its session interval changed.
+	 * 
+	 * @param dw
+	 */
+	public void sessionIntervalUpdated(DialogWrapper dw) {
+		final TimingWheel.Timer<DialogWrapper> timer = dw.getIdleTimer();
+		if (timer != null) {
+			timer.cancel();
+			schedule(dw);
+		}
+	}
+
+	private void schedule(DialogWrapper dw) {
+		dw.setIdleTimer(wheel.schedule(dw, dw.getLastActivity() + getIdleTimeout(dw)));
+	}
+
+	private long getIdleTimeout(DialogWrapper dw) {
+		final int sessionInterval = dw.getSessionInterval();
+		return sessionInterval > 0 ? SessionTimers.getExpirationTime(sessionInterval) : idleTimeout;
+	}
+
+	/**
+	 * Retrieves the number of dialogs tracked.
+	 * 
+	 * @return
+	 */
+	public int getTrackedDialogs() {
+		return wheel.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TimingWheel.Listener#expired(java.lang.Object, long)
+	 */
+	public long expired(DialogWrapper dw, long now) {
+		if (dw.isEnding()) {
+			return 0;
+		}
+		final long timeout = getIdleTimeout(dw);
+		final long deadline = dw.getLastActivity() + timeout;
+		if (deadline > now) {
+			// messages received since scheduled
+			return deadline;
+		}
+		if (ra.processDialogIdle(dw)) {
+			return 0;
+		}
+		// give the application another period to end it
+		return now + timeout;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.TimerTask#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			wheel.advance(System.currentTimeMillis());
+		} catch (Throwable e) {
+			tracer.severe("Failed to process idle dialogs", e);
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * The default {@link DnsResolver}, which uses the JDK JNDI DNS provider, and
+ * thus the DNS servers configured for the host, without the JVM address
+ * cache. The provider does not expose record TTLs, so all records have the
+ * {@link #DEFAULT_TTL}.
+ * 
+ * @author martins
+ * 
+ */
+public class JndiDnsResolver implements DnsResolver {
+
+	/**
+	 * the TTL of all records, in seconds
+	 */
+	public static final long DEFAULT_TTL = 300;
+
+	private static final String[] TYPES = new String[DnsRecord.NAPTR + 1];
+	static {
+		TYPES[DnsRecord.A] = "A";
+		TYPES[DnsRecord.AAAA] = "AAAA";
+		TYPES[DnsRecord.SRV] = "SRV";
+		TYPES[DnsRecord.NAPTR] = "NAPTR";
+	}
+
+	private final DirContext context;
+
+	public JndiDnsResolver() throws NamingException {
+		final Hashtable<String, String> env = new Hashtable<String, String>();
+		env.put(DirContext.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+		env.put("com.sun.jndi.dns.timeout.initial", "1000");
+		env.put("com.sun.jndi.dns.timeout.retries", "3");
+		this.context = new InitialDirContext(env);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DnsResolver#lookup(java.lang.String, int)
+	 */
+	public List<DnsRecord> lookup(String name, int type) throws IOException {
+		final Attribute attribute;
+		try {
+			final Attributes attributes = context.getAttributes(name + '.', new String[] { TYPES[type] });
+			attribute = attributes.get(TYPES[type]);
+		} catch (NameNotFoundException e) {
+			return Collections.emptyList();
+		} catch (NamingException e) {
+			throw new IOException("failed to lookup " + TYPES[type] + " records of " + name, e);
+		}
+		if (attribute == null) {
+			return Collections.emptyList();
+		}
+		final List<DnsRecord> records = new ArrayList<DnsRecord>(attribute.size());
+		try {
+			for (NamingEnumeration<?> e = attribute.getAll(); e.hasMore();) {
+				final DnsRecord record = parse(name, type, e.next().toString());
+				if (record != null) {
+					records.add(record);
+				}
+			}
+		} catch (NamingException e) {
+			throw new IOException("failed to lookup " + TYPES[type] + " records of " + name, e);
+		}
+		return records;
+	}
+
+	/**
+	 * Parses the rdata of a record, in the JNDI provider format, e.g.
+	 * <code>10 60 5060 sip1.example.com.</code> for SRV.
+	 * 
+	 * @param name
+	 * @param type
+	 * @param rdata
+	 * @return null if the rdata is not valid
+	 */
+	static DnsRecord parse(String name, int type, String rdata) {
+		final String[] fields = rdata.trim().split("\\s+");
+		try {
+			switch (type) {
+			case DnsRecord.NAPTR:
+				if (fields.length < 6) {
+					return null;
+				}
+				return DnsRecord.naptr(name, DEFAULT_TTL, Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+						unquote(fields[2]), unquote(fields[3]), host(fields[5]));
+			case DnsRecord.SRV:
+				if (fields.length < 4) {
+					return null;
+				}
+				return DnsRecord.srv(name, DEFAULT_TTL, Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+						Integer.parseInt(fields[2]), host(fields[3]));
+			default:
+				return fields.length < 1 ? null : DnsRecord.address(name, DEFAULT_TTL, fields[0]);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String unquote(String s) {
+		return s.length() > 1 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"' ? s.substring(1, s.length() - 1) : s;
+	}
+
+	private static String host(String s) {
+		return s.endsWith(".") ? s.substring(0, s.length() - 1) : s;
+	}
+
+}
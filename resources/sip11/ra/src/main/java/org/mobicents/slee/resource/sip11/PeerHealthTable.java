@@ -0,0 +1,317 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.java.slee.resource.sip.PeerHealth;
+
+import org.mobicents.slee.resource.sip11.wrappers.PeerActivityWrapper;
+
+/**
+ * Tracks the transport health of the peers, from the IO exceptions reported
+ * by the SIP stack. A peer is failed from its first failure until a message
+ * is received from it, and while failed it has a
+ * {@link PeerActivityWrapper}, where the failures are fired.
+ * 
+ * Only peers which failed at least once are in the table, and when the
+ * capacity is exceeded the available peers are removed, the failed ones are
+ * kept until they recover. While no peer is failed, checking a received
+ * message is a single volatile read.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerHealthTable {
+
+	/**
+	 * default max number of peers tracked
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * A peer of the table.
+	 */
+	public static class Peer {
+
+		private final String key;
+		private final String host;
+		private final int port;
+		private final String transport;
+
+		// guarded by this
+		private int consecutiveFailures;
+		private long lastFailureTime;
+		private PeerActivityWrapper activity;
+
+		private Peer(String key, String host, int port, String transport) {
+			this.key = key;
+			this.host = host;
+			this.port = port;
+			this.transport = transport;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public int getPort() {
+			return port;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public String getTransport() {
+			return transport;
+		}
+
+		/**
+		 * Retrieves the activity of the peer, null if it is not failed or the
+		 * activity was not created yet.
+		 * 
+		 * @return
+		 */
+		public synchronized PeerActivityWrapper getActivity() {
+			return activity;
+		}
+
+		/**
+		 * Sets the activity of the failed peer, if it has none.
+		 * 
+		 * @param activity
+		 * @return false if the peer already has an activity or recovered
+		 */
+		public synchronized boolean setActivity(PeerActivityWrapper activity) {
+			if (this.activity != null || consecutiveFailures == 0) {
+				return false;
+			}
+			this.activity = activity;
+			return true;
+		}
+
+		/**
+		 * Removes the specified activity from the peer, if it is the current
+		 * one.
+		 * 
+		 * @param activity
+		 */
+		public synchronized void removeActivity(PeerActivityWrapper activity) {
+			if (this.activity == activity) {
+				this.activity = null;
+			}
+		}
+
+		/**
+		 * Retrieves a snapshot of the peer health.
+		 * 
+		 * @return
+		 */
+		public synchronized PeerHealth getHealth() {
+			return new PeerHealth(host, port, transport, consecutiveFailures > 0 ? PeerHealth.State.FAILED
+					: PeerHealth.State.AVAILABLE, consecutiveFailures, lastFailureTime);
+		}
+
+		private synchronized boolean isFailed() {
+			return consecutiveFailures > 0;
+		}
+
+		@Override
+		public String toString() {
+			return key;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<String, Peer>();
+
+	private final AtomicInteger failedPeers = new AtomicInteger();
+
+	private final int capacity;
+
+	/**
+	 * 
+	 * @param capacity
+	 *            the number of peers tracked, above which the available ones
+	 *            are removed
+	 */
+	public PeerHealthTable(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Builds the key of a peer.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @return
+	 */
+	public static String key(String host, int port, String transport) {
+		return new StringBuilder(host.length() + 10).append(host).append(':').append(port).append('/')
+				.append(transport.toUpperCase()).toString();
+	}
+
+	/**
+	 * Accounts a transport failure to the specified peer.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @param time
+	 * @return the failed peer, with the failure already accounted
+	 */
+	public Peer failed(String host, int port, String transport, long time) {
+		final String key = key(host, port, transport);
+		Peer peer = peers.get(key);
+		if (peer == null) {
+			if (peers.size() >= capacity) {
+				removeAvailablePeers();
+			}
+			final Peer newPeer = new Peer(key, host, port, transport.toUpperCase());
+			peer = peers.putIfAbsent(key, newPeer);
+			if (peer == null) {
+				peer = newPeer;
+			}
+		}
+		synchronized (peer) {
+			if (peer.consecutiveFailures++ == 0) {
+				failedPeers.incrementAndGet();
+			}
+			peer.lastFailureTime = time;
+		}
+		return peer;
+	}
+
+	/**
+	 * Accounts a message received from the specified peer, which recovers
+	 * the peer if it is failed.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @return the activity of the recovered peer, which should be ended, or
+	 *         null if the peer was not failed or had no activity
+	 */
+	public PeerActivityWrapper reached(String host, int port, String transport) {
+		if (failedPeers.get() == 0 || host == null || transport == null) {
+			return null;
+		}
+		final Peer peer = peers.get(key(host, port, transport));
+		if (peer == null) {
+			return null;
+		}
+		synchronized (peer) {
+			if (peer.consecutiveFailures == 0) {
+				return null;
+			}
+			peer.consecutiveFailures = 0;
+			failedPeers.decrementAndGet();
+			final PeerActivityWrapper activity = peer.activity;
+			peer.activity = null;
+			return activity;
+		}
+	}
+
+	private void removeAvailablePeers() {
+		for (Peer peer : peers.values()) {
+			if (!peer.isFailed()) {
+				peers.remove(peer.key, peer);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the specified peer.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @return null if the peer never failed, or was removed from the table
+	 */
+	public Peer getPeer(String host, int port, String transport) {
+		return peers.get(key(host, port, transport));
+	}
+
+	/**
+	 * Retrieves the health of the failed peers.
+	 * 
+	 * @return
+	 */
+	public List<PeerHealth> getFailedPeers() {
+		final List<PeerHealth> result = new ArrayList<PeerHealth>(failedPeers.get());
+		if (failedPeers.get() > 0) {
+			for (Peer peer : peers.values()) {
+				final PeerHealth health = peer.getHealth();
+				if (health.getState() == PeerHealth.State.FAILED) {
+					result.add(health);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all peers, returning the activities of the failed ones.
+	 * 
+	 * @return
+	 */
+	public List<PeerActivityWrapper> clear() {
+		final List<PeerActivityWrapper> activities = new ArrayList<PeerActivityWrapper>();
+		for (Peer peer : peers.values()) {
+			final PeerActivityWrapper activity = peer.getActivity();
+			if (activity != null) {
+				activities.add(activity);
+			}
+		}
+		peers.clear();
+		failedPeers.set(0);
+		return activities;
+	}
+
+	/**
+	 * Retrieves the number of peers tracked.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return peers.size();
+	}
+
+}
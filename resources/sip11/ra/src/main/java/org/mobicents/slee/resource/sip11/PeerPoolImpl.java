@@ -0,0 +1,392 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.ListeningPoint;
+
+import net.java.slee.resource.sip.PeerPool;
+import net.java.slee.resource.sip.PeerPoolMember;
+
+/**
+ * A {@link PeerPool}, with copy on write membership, so selecting a member
+ * needs no locks. For the {@link PeerPool.Selection#CALL_ID_HASH} selection
+ * the members are placed in a hash ring, with {@link #RING_POINTS} points
+ * per unit of weight, rebuilt when the membership changes.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerPoolImpl implements PeerPool {
+
+	/**
+	 * ring points per unit of member weight
+	 */
+	static final int RING_POINTS = 40;
+
+	/**
+	 * A pool member, with the state the RA tracks.
+	 */
+	public static class Member {
+
+		private final String host;
+		private final int port;
+		private final String transport;
+		private final String key;
+		private volatile int weight;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private volatile boolean inRotation = true;
+		private volatile boolean probing;
+
+		Member(String host, int port, String transport, int weight) {
+			this.host = host;
+			this.port = port;
+			this.transport = transport;
+			this.weight = weight;
+			this.key = PeerHealthTable.key(host, port, transport);
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public int getPort() {
+			return port;
+		}
+
+		public String getTransport() {
+			return transport;
+		}
+
+		public boolean isInRotation() {
+			return inRotation;
+		}
+
+		int getOutstanding() {
+			return outstanding.get();
+		}
+
+		/**
+		 * Accounts a transaction sent to the member.
+		 */
+		void transactionStarted() {
+			outstanding.incrementAndGet();
+		}
+
+		/**
+		 * Accounts the end of a transaction sent to the member.
+		 * 
+		 * @param answered
+		 *            if a response was received
+		 */
+		public void transactionEnded(boolean answered) {
+			outstanding.decrementAndGet();
+			if (answered) {
+				consecutiveFailures.set(0);
+			}
+		}
+
+		/**
+		 * Accounts a transaction timeout, taking the member out of rotation
+		 * if the max consecutive failures are reached.
+		 * 
+		 * @param maxFailures
+		 * @return true if the member was taken out of rotation
+		 */
+		boolean failed(int maxFailures) {
+			if (consecutiveFailures.incrementAndGet() >= maxFailures && inRotation) {
+				inRotation = false;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Re-admits the member in rotation.
+		 */
+		void readmit() {
+			consecutiveFailures.set(0);
+			inRotation = true;
+		}
+
+		boolean startProbing() {
+			synchronized (this) {
+				if (probing) {
+					return false;
+				}
+				probing = true;
+				return true;
+			}
+		}
+
+		void probeEnded() {
+			probing = false;
+		}
+
+		PeerPoolMember getSnapshot() {
+			return new PeerPoolMember(host, port, transport, weight, outstanding.get(), inRotation,
+					consecutiveFailures.get());
+		}
+
+		@Override
+		public String toString() {
+			return key;
+		}
+	}
+
+	/**
+	 * The members and hash ring, replaced on membership changes.
+	 */
+	private static class Members {
+
+		final Member[] members;
+		final int[] ringHashes;
+		final Member[] ringMembers;
+
+		Members(Member[] members, boolean ring) {
+			this.members = members;
+			if (!ring) {
+				this.ringHashes = null;
+				this.ringMembers = null;
+				return;
+			}
+			int points = 0;
+			for (Member member : members) {
+				points += member.weight * RING_POINTS;
+			}
+			final long[] ringPoints = new long[points];
+			int p = 0;
+			for (int i = 0; i < members.length; i++) {
+				for (int j = 0; j < members[i].weight * RING_POINTS; j++) {
+					// hash in the upper bits, member index in the lower ones
+					ringPoints[p++] = ((long) hash(members[i].key + '#' + j) << 32) | i;
+				}
+			}
+			Arrays.sort(ringPoints);
+			this.ringHashes = new int[points];
+			this.ringMembers = new Member[points];
+			for (int i = 0; i < points; i++) {
+				ringHashes[i] = (int) (ringPoints[i] >> 32);
+				ringMembers[i] = members[(int) ringPoints[i]];
+			}
+		}
+	}
+
+	private final String name;
+
+	private final Selection selection;
+
+	private volatile Members members;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * 
+	 * @param name
+	 * @param selection
+	 */
+	public PeerPoolImpl(String name, Selection selection) {
+		this.name = name;
+		this.selection = selection;
+		this.members = new Members(new Member[0], selection == Selection.CALL_ID_HASH);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerPool#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerPool#getSelection()
+	 */
+	public Selection getSelection() {
+		return selection;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerPool#addMember(java.lang.String, int, java.lang.String, int)
+	 */
+	public synchronized void addMember(String host, int port, String transport, int weight)
+			throws IllegalArgumentException {
+		if (port < 1 || port > 65535) {
+			throw new IllegalArgumentException("invalid port " + port);
+		}
+		if (weight < 1) {
+			throw new IllegalArgumentException("invalid weight " + weight);
+		}
+		if (transport == null) {
+			transport = ListeningPoint.UDP;
+		}
+		final Member[] current = members.members;
+		final int index = indexOf(current, host, port, transport);
+		final Member[] updated;
+		if (index >= 0) {
+			if (current[index].weight == weight) {
+				return;
+			}
+			current[index].weight = weight;
+			updated = current;
+		} else {
+			updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = new Member(host, port, transport.toUpperCase(), weight);
+		}
+		members = new Members(updated, selection == Selection.CALL_ID_HASH);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerPool#removeMember(java.lang.String, int, java.lang.String)
+	 */
+	public synchronized boolean removeMember(String host, int port, String transport) {
+		final Member[] current = members.members;
+		final int index = indexOf(current, host, port, transport == null ? ListeningPoint.UDP : transport);
+		if (index < 0) {
+			return false;
+		}
+		final Member[] updated = new Member[current.length - 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(current, index + 1, updated, index, updated.length - index);
+		members = new Members(updated, selection == Selection.CALL_ID_HASH);
+		return true;
+	}
+
+	private static int indexOf(Member[] members, String host, int port, String transport) {
+		final String key = PeerHealthTable.key(host, port, transport);
+		for (int i = 0; i < members.length; i++) {
+			if (members[i].key.equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerPool#getMembers()
+	 */
+	public List<PeerPoolMember> getMembers() {
+		final Member[] members = this.members.members;
+		final List<PeerPoolMember> result = new ArrayList<PeerPoolMember>(members.length);
+		for (Member member : members) {
+			result.add(member.getSnapshot());
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	Member[] getMemberArray() {
+		return members.members;
+	}
+
+	/**
+	 * Selects the member to send a request, and accounts the transaction as
+	 * outstanding to it.
+	 * 
+	 * @param callId
+	 * @return null if no member is in rotation
+	 */
+	public Member select(String callId) {
+		final Members members = this.members;
+		final Member member = selection == Selection.CALL_ID_HASH ? selectByHash(members, callId)
+				: selectLeastOutstanding(members);
+		if (member != null) {
+			member.transactionStarted();
+		}
+		return member;
+	}
+
+	private Member selectLeastOutstanding(Members members) {
+		final Member[] array = members.members;
+		if (array.length == 0) {
+			return null;
+		}
+		// start at a rotating index, so ties are broken round robin
+		final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % array.length;
+		Member selected = null;
+		long selectedLoad = 0;
+		int selectedWeight = 1;
+		for (int i = 0; i < array.length; i++) {
+			final Member member = array[(start + i) % array.length];
+			if (!member.inRotation) {
+				continue;
+			}
+			final int weight = member.weight;
+			final long load = member.outstanding.get() + 1;
+			// load / weight < selected load / selected weight
+			if (selected == null || load * selectedWeight < selectedLoad * weight) {
+				selected = member;
+				selectedLoad = load;
+				selectedWeight = weight;
+			}
+		}
+		return selected;
+	}
+
+	private Member selectByHash(Members members, String callId) {
+		final int[] hashes = members.ringHashes;
+		if (hashes.length == 0) {
+			return null;
+		}
+		int index = Arrays.binarySearch(hashes, hash(callId == null ? "" : callId));
+		if (index < 0) {
+			index = -index - 1;
+		}
+		// the first member in rotation, clockwise
+		for (int i = 0; i < hashes.length; i++) {
+			final Member member = members.ringMembers[(index + i) % hashes.length];
+			if (member.inRotation) {
+				return member;
+			}
+		}
+		return null;
+	}
+
+	private static int hash(String s) {
+		int h = s.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "PeerPool[ name = " + name + ", selection = " + selection + ", members = "
+				+ Arrays.toString(members.members) + " ]";
+	}
+}
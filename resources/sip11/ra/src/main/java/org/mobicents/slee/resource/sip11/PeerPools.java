@@ -0,0 +1,325 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.ClientTransaction;
+import javax.sip.ListeningPoint;
+import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+import net.java.slee.resource.sip.PeerPool;
+
+import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener;
+
+/**
+ * The peer pools of an RA entity, the ones of the RA configuration and the
+ * ones created by applications. Members are taken out of rotation after
+ * consecutive transaction timeouts, and probed with OPTIONS periodically,
+ * being re-admitted once these answer with other than 408 or 503.
+ * 
+ * Pools are configured in the form
+ * <code>trunks=10.0.0.1:5060*2,10.0.0.2:5060/TCP;carriers/hash=10.0.1.1:5060</code>,
+ * where each pool has a name, optionally followed by <code>/hash</code> for
+ * the {@link PeerPool.Selection#CALL_ID_HASH} selection, and its members, in
+ * the form <code>host:port[/transport][*weight]</code>, with UDP and 1 as
+ * default transport and weight.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerPools {
+
+	/**
+	 * the default number of consecutive timeouts to take a member out of rotation
+	 */
+	public static final int DEFAULT_MAX_FAILURES = 3;
+
+	/**
+	 * the default interval between probes of members out of rotation, in seconds
+	 */
+	public static final int DEFAULT_PROBE_INTERVAL = 30;
+
+	private final ConcurrentHashMap<String, PeerPoolImpl> pools = new ConcurrentHashMap<String, PeerPoolImpl>();
+
+	private final int maxFailures;
+
+	private final long probeInterval;
+
+	private final SleeSipProviderImpl providerWrapper;
+
+	private final Tracer tracer;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * 
+	 * @param config
+	 *            the pools config, may be null
+	 * @param maxFailures
+	 * @param probeInterval
+	 *            in seconds
+	 * @param providerWrapper
+	 * @param tracer
+	 * @throws IllegalArgumentException
+	 *             if the pools config is not valid
+	 */
+	public PeerPools(String config, int maxFailures, int probeInterval, SleeSipProviderImpl providerWrapper,
+			Tracer tracer) throws IllegalArgumentException {
+		if (config != null) {
+			pools.putAll(parsePools(config));
+		}
+		this.maxFailures = maxFailures;
+		this.probeInterval = probeInterval * 1000L;
+		this.providerWrapper = providerWrapper;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Parses the pools config.
+	 * 
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the config is not valid
+	 */
+	static Map<String, PeerPoolImpl> parsePools(String config) throws IllegalArgumentException {
+		final Map<String, PeerPoolImpl> pools = new LinkedHashMap<String, PeerPoolImpl>();
+		for (String entry : config.split(";")) {
+			entry = entry.trim();
+			if (entry.length() == 0) {
+				continue;
+			}
+			final int eq = entry.indexOf('=');
+			if (eq < 1) {
+				throw new IllegalArgumentException("invalid peer pool " + entry);
+			}
+			String name = entry.substring(0, eq).trim();
+			PeerPool.Selection selection = PeerPool.Selection.LEAST_OUTSTANDING;
+			final int slash = name.indexOf('/');
+			if (slash > 0) {
+				if (!"hash".equalsIgnoreCase(name.substring(slash + 1).trim())) {
+					throw new IllegalArgumentException("invalid peer pool selection " + name);
+				}
+				selection = PeerPool.Selection.CALL_ID_HASH;
+				name = name.substring(0, slash).trim();
+			}
+			if (pools.containsKey(name)) {
+				throw new IllegalArgumentException("duplicated peer pool " + name);
+			}
+			final PeerPoolImpl pool = new PeerPoolImpl(name, selection);
+			for (String member : entry.substring(eq + 1).split(",")) {
+				member = member.trim();
+				if (member.length() > 0) {
+					addMember(pool, member);
+				}
+			}
+			pools.put(name, pool);
+		}
+		return pools;
+	}
+
+	private static void addMember(PeerPoolImpl pool, String member) throws IllegalArgumentException {
+		String entry = member;
+		int weight = 1;
+		final int star = entry.indexOf('*');
+		if (star > 0) {
+			try {
+				weight = Integer.parseInt(entry.substring(star + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("peer pool member with invalid weight " + member, e);
+			}
+			entry = entry.substring(0, star).trim();
+		}
+		String transport = ListeningPoint.UDP;
+		final int slash = entry.indexOf('/');
+		if (slash > 0) {
+			transport = entry.substring(slash + 1).trim().toUpperCase();
+			entry = entry.substring(0, slash).trim();
+		}
+		final int colon = entry.lastIndexOf(':');
+		if (colon < 1 || colon < entry.lastIndexOf(']')) {
+			throw new IllegalArgumentException("peer pool member without port " + member);
+		}
+		String host = entry.substring(0, colon);
+		if (host.charAt(0) == '[' && host.charAt(host.length() - 1) == ']') {
+			host = host.substring(1, host.length() - 1);
+		}
+		final int port;
+		try {
+			port = Integer.parseInt(entry.substring(colon + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("peer pool member with invalid port " + member, e);
+		}
+		pool.addMember(host, port, transport, weight);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @param selection
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a pool with the same name exists
+	 */
+	public PeerPoolImpl create(String name, PeerPool.Selection selection) throws IllegalArgumentException {
+		final PeerPoolImpl pool = new PeerPoolImpl(name, selection);
+		if (pools.putIfAbsent(name, pool) != null) {
+			throw new IllegalArgumentException("peer pool " + name + " already exists");
+		}
+		return pool;
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public PeerPoolImpl get(String name) {
+		return pools.get(name);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public boolean remove(String name) {
+		return pools.remove(name) != null;
+	}
+
+	/**
+	 * Accounts a transaction timeout of the specified member.
+	 * 
+	 * @param member
+	 */
+	public void transactionTimedOut(PeerPoolImpl.Member member) {
+		if (member.failed(maxFailures)) {
+			tracer.warning("Peer pool member " + member + " taken out of rotation, after " + maxFailures
+					+ " consecutive transaction timeouts");
+		}
+	}
+
+	/**
+	 * Starts probing the members out of rotation.
+	 */
+	public synchronized void start() {
+		if (probeInterval <= 0) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "SipRA-PeerPools");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				probe();
+			}
+		}, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops probing.
+	 */
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Probes the members out of rotation, not being probed already.
+	 */
+	void probe() {
+		for (PeerPoolImpl pool : new ArrayList<PeerPoolImpl>(pools.values())) {
+			for (PeerPoolImpl.Member member : pool.getMemberArray()) {
+				if (!member.isInRotation() && member.startProbing()) {
+					try {
+						sendProbe(member);
+					} catch (Throwable e) {
+						member.probeEnded();
+						if (tracer.isFineEnabled()) {
+							tracer.fine("Failed to probe peer pool member " + member, e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void sendProbe(final PeerPoolImpl.Member member) throws Exception {
+		final AddressFactory addressFactory = providerWrapper.getAddressFactory();
+		final HeaderFactory headerFactory = providerWrapper.getHeaderFactory();
+		final ViaHeader via = providerWrapper.getLocalVia(member.getTransport(), providerWrapper.generateBranchId());
+		if (via == null) {
+			throw new IllegalStateException("No " + member.getTransport() + " listening point");
+		}
+		final SipURI uri = addressFactory.createSipURI(null, member.getHost());
+		uri.setPort(member.getPort());
+		uri.setTransportParam(member.getTransport().toLowerCase());
+		final Address to = addressFactory.createAddress(uri);
+		final Address from = addressFactory.createAddress(addressFactory.createSipURI(null, via.getHost()));
+		final Request request = providerWrapper.getMessageFactory().createRequest(uri, Request.OPTIONS,
+				providerWrapper.getNewCallId(), headerFactory.createCSeqHeader(1L, Request.OPTIONS),
+				headerFactory.createFromHeader(from, providerWrapper.generateTag()),
+				headerFactory.createToHeader(to, null), new ArrayList<ViaHeader>(Collections.singletonList(via)),
+				headerFactory.createMaxForwardsHeader(70));
+		final ClientTransaction ct = providerWrapper.getRealProvider().getNewClientTransaction(request);
+		ct.setApplicationData(new ClientTransactionOutcomeListener() {
+			private boolean completed;
+			public synchronized void transactionCompleted(Response response, int statusCode) {
+				if (completed) {
+					return;
+				}
+				completed = true;
+				if (statusCode != Response.REQUEST_TIMEOUT && statusCode != Response.SERVICE_UNAVAILABLE
+						&& !member.isInRotation()) {
+					member.readmit();
+					tracer.info("Peer pool member " + member + " re-admitted in rotation, answered probe with "
+							+ statusCode);
+				}
+				member.probeEnded();
+			}
+		});
+		ct.sendRequest();
+	}
+
+}
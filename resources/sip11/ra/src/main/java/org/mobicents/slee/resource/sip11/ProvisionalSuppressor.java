@@ -0,0 +1,218 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.sip.header.RSeqHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.message.Response;
+
+import net.java.slee.resource.sip.ProvisionalSuppression;
+
+/**
+ * Applies a {@link ProvisionalSuppression} to the responses of a client
+ * transaction. In {@link ProvisionalSuppression.Mode#WINDOW} mode the latest
+ * provisional response received in the window is held, and delivered by a
+ * timer task at the end of the window, unless a final response arrives
+ * before. The held response is delivered without holding the lock, the
+ * responses received meanwhile wait for the delivery to complete, so that
+ * they are not delivered before.
+ * 
+ * @author martins
+ * 
+ */
+public class ProvisionalSuppressor {
+
+	private final ProvisionalSuppression suppression;
+
+	private final Timer timer;
+
+	private final SipResourceAdaptorStatistics statistics;
+
+	// the last delivered provisional response
+	private int lastStatusCode;
+	private String lastToTag;
+	private int lastContentHash;
+
+	private long windowEnd;
+	private Runnable held;
+	private boolean delivering;
+	private boolean completed;
+
+	private long suppressed;
+
+	/**
+	 * 
+	 * @param suppression
+	 * @param timer
+	 *            the timer to deliver held responses, only used in window
+	 *            mode
+	 * @param statistics
+	 *            where suppressed responses are also accounted, may be null
+	 */
+	public ProvisionalSuppressor(ProvisionalSuppression suppression, Timer timer, SipResourceAdaptorStatistics statistics) {
+		this.suppression = suppression;
+		this.timer = timer;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public ProvisionalSuppression getSuppression() {
+		return suppression;
+	}
+
+	/**
+	 * Processes a response received on the client transaction.
+	 * 
+	 * @param response
+	 * @param delivery
+	 *            delivers the response, if held
+	 * @param now
+	 * @return true if the response should be delivered now, false if it was
+	 *         suppressed or held
+	 */
+	public boolean responseReceived(Response response, Runnable delivery, long now) {
+		final int statusCode = response.getStatusCode();
+		synchronized (this) {
+			while (delivering) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (statusCode > 199) {
+				completed = true;
+				if (held != null) {
+					held = null;
+					suppressed();
+				}
+				return true;
+			}
+			if (completed) {
+				return false;
+			}
+			if (response.getHeader(RSeqHeader.NAME) != null) {
+				// reliable, the UAC must PRACK it
+				if (held != null) {
+					held = null;
+					suppressed();
+				}
+				delivered(response, now);
+				return true;
+			}
+			switch (suppression.getMode()) {
+			case REPEATED:
+				if (statusCode == lastStatusCode && equals(lastToTag, ((ToHeader) response.getHeader(ToHeader.NAME)).getTag())
+						&& lastContentHash == contentHash(response)) {
+					suppressed();
+					return false;
+				}
+				delivered(response, now);
+				return true;
+			case WINDOW:
+				if (held != null) {
+					// the held response is superseded
+					held = delivery;
+					suppressed();
+					return false;
+				}
+				if (now >= windowEnd) {
+					delivered(response, now);
+					return true;
+				}
+				held = delivery;
+				timer.schedule(new TimerTask() {
+					@Override
+					public void run() {
+						windowEnded();
+					}
+				}, Math.max(1L, windowEnd - now));
+				return false;
+			default:
+				return true;
+			}
+		}
+	}
+
+	private void suppressed() {
+		suppressed++;
+		if (statistics != null) {
+			statistics.incrementSuppressedProvisionals();
+		}
+	}
+
+	private void delivered(Response response, long now) {
+		lastStatusCode = response.getStatusCode();
+		lastToTag = ((ToHeader) response.getHeader(ToHeader.NAME)).getTag();
+		lastContentHash = contentHash(response);
+		windowEnd = now + suppression.getWindow();
+	}
+
+	/**
+	 * Delivers the held response, if any.
+	 */
+	void windowEnded() {
+		final Runnable held;
+		synchronized (this) {
+			held = this.held;
+			if (held == null) {
+				return;
+			}
+			this.held = null;
+			windowEnd = System.currentTimeMillis() + suppression.getWindow();
+			delivering = true;
+		}
+		try {
+			held.run();
+		} finally {
+			synchronized (this) {
+				delivering = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of provisional responses suppressed
+	 */
+	public synchronized long getSuppressed() {
+		return suppressed;
+	}
+
+	private static int contentHash(Response response) {
+		final byte[] content = response.getRawContent();
+		return content == null ? 0 : Arrays.hashCode(content);
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+}
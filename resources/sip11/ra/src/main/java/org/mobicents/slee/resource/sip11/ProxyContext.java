@@ -0,0 +1,476 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.message.SIPMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+
+import javax.sip.ClientTransaction;
+import javax.sip.address.URI;
+import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+import net.java.slee.resource.sip.ProxyResponseEvent;
+
+import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener;
+import org.mobicents.slee.resource.sip11.wrappers.ServerTransactionWrapper;
+
+/**
+ * The state of a server transaction proxied by the {@link ForkingProxy}: the
+ * target groups, the branches of the current group and the best final
+ * response received so far (RFC 3261 16.7).
+ * 
+ * State changes are done holding the context lock, which also orders the
+ * responses forwarded upstream, while branch requests and CANCELs are sent
+ * after releasing it.
+ * 
+ * @author martins
+ * 
+ */
+public class ProxyContext {
+
+	/**
+	 * A branch of the proxy, set as application data of its client
+	 * transaction.
+	 */
+	public class Branch implements ClientTransactionOutcomeListener {
+
+		private final URI target;
+
+		private ClientTransaction clientTransaction;
+
+		private boolean proceeding;
+
+		private boolean cancelled;
+
+		private boolean completed;
+
+		private TimerTask timerC;
+
+		private Branch(URI target) {
+			this.target = target;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener#transactionCompleted(javax.sip.message.Response, int)
+		 */
+		public void transactionCompleted(Response response, int statusCode) {
+			branchCompleted(this, response, statusCode);
+		}
+
+		/**
+		 * Notifies a provisional response received in the branch.
+		 * 
+		 * @param response
+		 */
+		public void transactionProceeding(Response response) {
+			branchProceeding(this, response);
+		}
+
+		/**
+		 * Notifies the expiration of the branch Timer C.
+		 */
+		void timerCExpired() {
+			branchTimerCExpired(this);
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public URI getTarget() {
+			return target;
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public ClientTransaction getClientTransaction() {
+			return clientTransaction;
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("ProxyBranch[ ").append(target).append(" ]").toString();
+		}
+	}
+
+	private final ForkingProxy proxy;
+
+	private final ServerTransactionWrapper serverTransaction;
+
+	private final Request request;
+
+	private final boolean invite;
+
+	private final List<List<URI>> groups;
+
+	private int nextGroup;
+
+	private final List<Branch> branches = new ArrayList<Branch>();
+
+	private int pendingBranches;
+
+	private Response bestResponse;
+
+	private int bestStatusCode;
+
+	private URI bestTarget;
+
+	private boolean provisionalForwarded;
+
+	private boolean finalResponseForwarded;
+
+	private boolean successForwarded;
+
+	/**
+	 * a 2xx or 6xx was received, or the request was cancelled, no new
+	 * branches are started
+	 */
+	private boolean terminating;
+
+	private boolean completed;
+
+	/**
+	 * 
+	 * @param proxy
+	 * @param serverTransaction
+	 * @param request
+	 *            the request to copy for each branch, already processed as
+	 *            in RFC 3261 16.6, except the Request-URI and Via
+	 * @param groups
+	 *            the target groups, in the order they should be tried
+	 */
+	ProxyContext(ForkingProxy proxy, ServerTransactionWrapper serverTransaction, Request request, List<List<URI>> groups) {
+		this.proxy = proxy;
+		this.serverTransaction = serverTransaction;
+		this.request = request;
+		this.invite = Request.INVITE.equals(request.getMethod());
+		this.groups = groups;
+	}
+
+	/**
+	 * 
+	 * @return the request to copy for each branch
+	 */
+	Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public ServerTransactionWrapper getServerTransaction() {
+		return serverTransaction;
+	}
+
+	/**
+	 * Starts the branches of the first target group.
+	 */
+	void start() {
+		final List<Branch> started;
+		synchronized (this) {
+			started = startNextGroup();
+		}
+		send(started);
+	}
+
+	/**
+	 * Cancels the pending branches, e.g. due to a CANCEL received upstream,
+	 * the best final response is forwarded once all branches complete.
+	 */
+	public void cancel() {
+		final List<Branch> toCancel;
+		synchronized (this) {
+			if (completed || terminating) {
+				return;
+			}
+			terminating = true;
+			toCancel = cancelBranches();
+		}
+		sendCancels(toCancel);
+	}
+
+	/**
+	 * 
+	 * @return true if all branches completed and the final response was
+	 *         forwarded
+	 */
+	public synchronized boolean isCompleted() {
+		return completed;
+	}
+
+	private List<Branch> startNextGroup() {
+		final List<URI> group = groups.get(nextGroup++);
+		final List<Branch> started = new ArrayList<Branch>(group.size());
+		for (URI target : group) {
+			started.add(new Branch(target));
+		}
+		branches.addAll(started);
+		pendingBranches += started.size();
+		return started;
+	}
+
+	private void send(List<Branch> started) {
+		if (started == null) {
+			return;
+		}
+		for (Branch branch : started) {
+			try {
+				final ClientTransaction ct = proxy.createBranchTransaction(this, branch);
+				synchronized (this) {
+					branch.clientTransaction = ct;
+					if (invite) {
+						resetTimerC(branch, ForkingProxy.TIMER_C);
+					}
+				}
+				ct.sendRequest();
+			} catch (Throwable e) {
+				final Tracer tracer = proxy.getTracer();
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Failed to send " + branch + " of " + serverTransaction, e);
+				}
+				branch.transactionCompleted(null, Response.SERVICE_UNAVAILABLE);
+			}
+		}
+	}
+
+	private List<Branch> cancelBranches() {
+		final List<Branch> toCancel = new ArrayList<Branch>();
+		for (Branch branch : branches) {
+			if (!branch.completed && !branch.cancelled) {
+				branch.cancelled = true;
+				// a CANCEL may only be sent after a provisional response
+				if (invite && branch.proceeding) {
+					toCancel.add(branch);
+				}
+			}
+		}
+		return toCancel;
+	}
+
+	private void sendCancels(List<Branch> toCancel) {
+		if (toCancel == null) {
+			return;
+		}
+		for (Branch branch : toCancel) {
+			proxy.sendCancel(branch);
+		}
+	}
+
+	private void branchProceeding(Branch branch, Response response) {
+		boolean cancel = false;
+		synchronized (this) {
+			if (branch.completed) {
+				return;
+			}
+			if (!branch.proceeding) {
+				branch.proceeding = true;
+				cancel = branch.cancelled && invite;
+			}
+			if (response.getStatusCode() > 100) {
+				// RFC 3261 16.7, Timer C is restarted by provisional responses other than 100,
+				// unless the branch was cancelled and only waits for its final response
+				if (invite && !branch.cancelled) {
+					resetTimerC(branch, ForkingProxy.TIMER_C);
+				}
+				if (!finalResponseForwarded) {
+					forwardUpstream(relayed(response), branch.target);
+				}
+			}
+		}
+		if (cancel) {
+			proxy.sendCancel(branch);
+		}
+	}
+
+	/**
+	 * RFC 3261 16.8, a branch which received a provisional response is
+	 * cancelled, otherwise, or if it was already cancelled, it completes as if
+	 * a 408 was received.
+	 * 
+	 * @param branch
+	 */
+	private void branchTimerCExpired(Branch branch) {
+		final boolean cancel;
+		synchronized (this) {
+			if (branch.completed) {
+				return;
+			}
+			cancel = branch.proceeding && !branch.cancelled;
+			if (cancel) {
+				branch.cancelled = true;
+				resetTimerC(branch, ForkingProxy.TIMER_C_CANCEL);
+			}
+		}
+		if (cancel) {
+			proxy.sendCancel(branch);
+		} else {
+			branchCompleted(branch, null, Response.REQUEST_TIMEOUT);
+		}
+	}
+
+	private void resetTimerC(Branch branch, long delay) {
+		if (branch.timerC != null) {
+			branch.timerC.cancel();
+		}
+		branch.timerC = proxy.scheduleTimerC(branch, delay);
+	}
+
+	private void branchCompleted(Branch branch, Response response, int statusCode) {
+		List<Branch> toCancel = null;
+		List<Branch> started = null;
+		synchronized (this) {
+			if (branch.completed) {
+				return;
+			}
+			branch.completed = true;
+			pendingBranches--;
+			if (branch.timerC != null) {
+				branch.timerC.cancel();
+				branch.timerC = null;
+			}
+			if (statusCode > 199 && statusCode < 300) {
+				// 2xx responses are always forwarded
+				forwardUpstream(relayed(response), branch.target);
+				if (!terminating) {
+					terminating = true;
+					toCancel = cancelBranches();
+				}
+			} else {
+				if (isBetter(statusCode, response)) {
+					bestResponse = response;
+					bestStatusCode = statusCode;
+					bestTarget = branch.target;
+				}
+				if (statusCode > 599 && !terminating) {
+					terminating = true;
+					toCancel = cancelBranches();
+				}
+			}
+			if (pendingBranches == 0) {
+				if (!terminating && nextGroup < groups.size()) {
+					started = startNextGroup();
+				} else {
+					complete();
+				}
+			}
+		}
+		sendCancels(toCancel);
+		send(started);
+	}
+
+	/**
+	 * Compares the specified status code with the best one received so far,
+	 * 6xx responses are preferred, otherwise the lowest response class, and
+	 * in the same class a received response is preferred over one the proxy
+	 * synthesized for a failed or timed out branch.
+	 * 
+	 * @param statusCode
+	 * @param response
+	 *            null if synthesized
+	 * @return
+	 */
+	private boolean isBetter(int statusCode, Response response) {
+		if (bestStatusCode == 0) {
+			return true;
+		}
+		if (bestStatusCode > 599) {
+			return false;
+		}
+		if (statusCode > 599) {
+			return true;
+		}
+		final int responseClass = statusCode / 100;
+		final int bestClass = bestStatusCode / 100;
+		return responseClass < bestClass || (responseClass == bestClass && bestResponse == null && response != null);
+	}
+
+	private void complete() {
+		completed = true;
+		proxy.proxyCompleted(this);
+		if (successForwarded) {
+			return;
+		}
+		Response response = null;
+		try {
+			if (bestResponse != null) {
+				response = relayed(bestResponse);
+			} else {
+				response = proxy.getProviderWrapper().getMessageFactory().createResponse(bestStatusCode, serverTransaction.getRequest());
+				((ToHeader) response.getHeader(ToHeader.NAME)).setTag(proxy.getProviderWrapper().generateTag());
+			}
+			if (response.getStatusCode() == Response.SERVICE_UNAVAILABLE) {
+				// RFC 3261 16.7, a 503 is not forwarded, the service of this proxy is available
+				response.setStatusCode(Response.SERVER_INTERNAL_ERROR);
+				response.setReasonPhrase("Server Internal Error");
+			}
+		} catch (Throwable e) {
+			proxy.getTracer().severe("Failed to create the final response of " + serverTransaction, e);
+			return;
+		}
+		forwardUpstream(response, bestResponse != null ? bestTarget : null);
+	}
+
+	private Response relayed(Response response) {
+		final Response relayed = (Response) response.clone();
+		((SIPMessage) relayed).removeFirst(ViaHeader.NAME);
+		return relayed;
+	}
+
+	private void forwardUpstream(Response response, URI target) {
+		final int statusCode = response.getStatusCode();
+		try {
+			if (statusCode > 199 && finalResponseForwarded) {
+				// another 2xx, the server tx is already terminated
+				proxy.getProviderWrapper().getRealProvider().sendResponse(response);
+			} else {
+				serverTransaction.sendResponse(response);
+			}
+		} catch (Throwable e) {
+			final Tracer tracer = proxy.getTracer();
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Failed to forward response upstream in " + serverTransaction, e);
+			}
+		}
+		if (statusCode < 200) {
+			if (provisionalForwarded) {
+				return;
+			}
+			provisionalForwarded = true;
+		} else {
+			finalResponseForwarded = true;
+			if (statusCode < 300) {
+				successForwarded = true;
+			}
+		}
+		proxy.getRa().processProxyResponse(serverTransaction, new ProxyResponseEvent(serverTransaction, response, target));
+	}
+
+}
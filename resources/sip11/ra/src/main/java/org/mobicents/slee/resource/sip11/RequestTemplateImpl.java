@@ -0,0 +1,222 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.header.CSeq;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.ContentLength;
+import gov.nist.javax.sip.header.ContentType;
+import gov.nist.javax.sip.header.From;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.SIPHeaderList;
+import gov.nist.javax.sip.header.To;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.header.ViaList;
+import gov.nist.javax.sip.message.SIPDuplicateHeaderException;
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.sip.SipException;
+import javax.sip.address.Address;
+import javax.sip.address.URI;
+import javax.sip.message.Request;
+
+import net.java.slee.resource.sip.NodeAffinity;
+import net.java.slee.resource.sip.RequestTemplate;
+
+/**
+ * Implementation of the {@link RequestTemplate}, the template headers are
+ * encoded once, and those bytes are shared by all requests created, which
+ * are {@link TemplateRequest}s. Each request has its own copy of the header
+ * objects, thus changing a header of a request never affects others.
+ * 
+ * @author martins
+ * 
+ */
+public class RequestTemplateImpl implements RequestTemplate {
+
+	private final String method;
+	private final URI requestURI;
+	private final Via via;
+	private final From from;
+	private final To to;
+	private final long cseq;
+	private final byte[] content;
+	private final boolean hasContentType;
+
+	/**
+	 * the node embedded in the generated tags, branches and Call-IDs, null if none
+	 */
+	private final String nodeAffinity;
+
+	/**
+	 * the template headers, list headers flattened
+	 */
+	private final SIPHeader[] headers;
+
+	/**
+	 * the encoded template headers
+	 */
+	private final byte[] encodedHeaders;
+
+	/**
+	 * 
+	 * @param prototype
+	 * @throws SipException
+	 *             if the prototype can't be used as template
+	 */
+	public RequestTemplateImpl(Request prototype) throws SipException {
+		this(prototype, null);
+	}
+
+	/**
+	 * 
+	 * @param prototype
+	 * @param nodeAffinity
+	 *            the node to embed in the generated tags, branches and
+	 *            Call-IDs, see {@link NodeAffinity}, null if none
+	 * @throws SipException
+	 *             if the prototype can't be used as template
+	 */
+	public RequestTemplateImpl(Request prototype, String nodeAffinity) throws SipException {
+		this.nodeAffinity = nodeAffinity;
+		if (!(prototype instanceof SIPRequest)) {
+			throw new SipException("the prototype is not a request of the sip stack");
+		}
+		final SIPRequest request = (SIPRequest) prototype;
+		try {
+			request.checkHeaders();
+		} catch (ParseException e) {
+			throw new SipException("invalid prototype", e);
+		}
+		this.method = request.getMethod();
+		if (Request.ACK.equals(method) || Request.CANCEL.equals(method)) {
+			throw new SipException(method + " requests can't be templates");
+		}
+		final ViaList vias = request.getViaHeaders();
+		if (vias.size() != 1) {
+			throw new SipException("the prototype must have a single Via");
+		}
+		if (request.getToTag() != null) {
+			throw new SipException("the prototype must be out of dialog");
+		}
+		this.requestURI = request.getRequestURI();
+		this.via = request.getTopmostVia();
+		this.from = (From) request.getFrom();
+		this.to = (To) request.getTo();
+		this.cseq = request.getCSeq().getSeqNumber();
+		this.content = request.getRawContent();
+		final ContentType contentType = request.getContentTypeHeader();
+		this.hasContentType = contentType != null;
+
+		final List<SIPHeader> headers = new ArrayList<SIPHeader>();
+		final StringBuilder sb = new StringBuilder(512);
+		for (Iterator<SIPHeader> it = request.getHeaders(); it.hasNext();) {
+			final SIPHeader header = it.next();
+			if (header instanceof ViaList || header instanceof From
+					|| header instanceof To || header instanceof CallID
+					|| header instanceof CSeq || header instanceof ContentLength) {
+				continue;
+			}
+			header.encode(sb);
+			if (header instanceof SIPHeaderList) {
+				for (Object element : (SIPHeaderList<?>) header) {
+					headers.add((SIPHeader) element);
+				}
+			} else {
+				headers.add(header);
+			}
+		}
+		this.headers = headers.toArray(new SIPHeader[headers.size()]);
+		final String charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : "UTF-8";
+		try {
+			this.encodedHeaders = sb.toString().getBytes(charset);
+		} catch (UnsupportedEncodingException e) {
+			throw new SipException("unsupported charset " + charset, e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.RequestTemplate#getMethod()
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.RequestTemplate#createRequest(javax.sip.address.URI, javax.sip.address.Address, java.lang.String, long, java.lang.String, byte[])
+	 */
+	public Request createRequest(URI requestURI, Address to, String callId,
+			long cseq, String branch, byte[] content) throws SipException {
+		if (content != null && !hasContentType) {
+			throw new SipException("the template has no content type");
+		}
+		final Utils utils = Utils.getInstance();
+		final TemplateRequest request = new TemplateRequest();
+		request.setMethod(method);
+		if (requestURI == null) {
+			requestURI = (URI) (to != null ? to.getURI() : this.requestURI).clone();
+		}
+		request.setRequestURI(requestURI);
+		try {
+			final Via via = (Via) this.via.clone();
+			via.setBranch(branch != null ? branch : NodeAffinity.encode(utils.generateBranchId(), nodeAffinity));
+			request.setHeader(via);
+			final From from = (From) this.from.clone();
+			from.setTag(NodeAffinity.encode(utils.generateTag(), nodeAffinity));
+			request.setFrom(from);
+			final To toHeader;
+			if (to != null) {
+				toHeader = new To();
+				toHeader.setAddress(to);
+			} else {
+				toHeader = (To) this.to.clone();
+			}
+			request.setTo(toHeader);
+			request.setCallId(callId != null ? callId : NodeAffinity.encodeCallId(utils.generateCallIdentifier(this.via.getHost()), nodeAffinity));
+			request.setCSeq(new CSeq(cseq > 0 ? cseq : this.cseq, method));
+			for (SIPHeader header : headers) {
+				request.attachHeader((SIPHeader) header.clone(), false, false);
+			}
+		} catch (SIPDuplicateHeaderException e) {
+			throw new SipException("invalid template", e);
+		} catch (ParseException e) {
+			throw new SipException("invalid slot value", e);
+		} catch (IllegalArgumentException e) {
+			throw new SipException("invalid slot value", e);
+		}
+		if (content != null) {
+			request.setMessageContent(content);
+		} else if (this.content != null) {
+			request.setMessageContent(this.content);
+		}
+		request.setTemplateHeaders(encodedHeaders);
+		return request;
+	}
+
+}
@@ -0,0 +1,697 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.core.net.AddressResolver;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.stack.HopImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.ClientTransaction;
+import javax.sip.ListeningPoint;
+import javax.sip.SipProvider;
+import javax.sip.TransactionUnavailableException;
+import javax.sip.address.Hop;
+import javax.sip.address.SipURI;
+import javax.sip.address.URI;
+import javax.sip.message.Request;
+import javax.slee.facilities.Tracer;
+
+import net.java.slee.resource.sip.PeerHealth;
+import net.java.slee.resource.sip.ServerLocator;
+
+/**
+ * {@link ServerLocator} implementation, RFC 3263 section 4 for the
+ * transport, port and address selection, and RFC 2782 for the SRV
+ * selection. Lookups are done by a {@link DnsResolver}, in a small pool of
+ * dedicated threads, and both the records and the located servers are
+ * cached with the min TTL of the records used, or with the negative TTL if
+ * nothing was found. Located servers are refreshed in background when 3/4 of
+ * their TTL elapsed, so that servers in use do not expire.
+ * 
+ * The stack only supports choosing the next hop of a request with its
+ * router, so the locator is also the stack {@link AddressResolver}, which
+ * returns the located hop while a client transaction is created with
+ * {@link #getNewClientTransaction(SipProvider, Request, Hop)}, and delegates
+ * to the stack resolver otherwise. Requests to servers not located yet are
+ * not routed by the stack, which would resolve the host blocking the
+ * sending thread, these are sent by the lookup threads, with tasks given to
+ * {@link #whenLocated(URI, Runnable)}.
+ * 
+ * @author martins
+ * 
+ */
+public class ServerLocatorImpl implements ServerLocator, AddressResolver {
+
+	/**
+	 * the default TTL of failed lookups, in seconds
+	 */
+	public static final int DEFAULT_NEGATIVE_TTL = 30;
+
+	/**
+	 * the number of threads doing lookups
+	 */
+	public static final int THREADS = 2;
+
+	private static final int MAX_PENDING = 10000;
+
+	private static final int MAX_CACHE_SIZE = 65536;
+
+	/**
+	 * NAPTR services (RFC 3263 and 7118) and respective transports, in the
+	 * order SRV records are looked up when there are no NAPTR records
+	 */
+	private static final String[][] SERVICES = { { "SIPS+D2T", ListeningPoint.TLS, "_sips._tcp." },
+			{ "SIP+D2T", ListeningPoint.TCP, "_sip._tcp." }, { "SIP+D2U", ListeningPoint.UDP, "_sip._udp." },
+			{ "SIPS+D2W", "WSS", null }, { "SIP+D2W", "WS", null } };
+
+	/**
+	 * A located server, the result of a SRV record, or of an A/AAAA lookup.
+	 */
+	static class Target {
+
+		final int group;
+		final int priority;
+		final int weight;
+		final int port;
+		final String transport;
+		final List<String> addresses;
+
+		Target(int group, int priority, int weight, int port, String transport, List<String> addresses) {
+			this.group = group;
+			this.priority = priority;
+			this.weight = weight;
+			this.port = port;
+			this.transport = transport;
+			this.addresses = addresses;
+		}
+	}
+
+	/**
+	 * Cached lookup results, records or located servers.
+	 */
+	private static class CacheEntry<T> {
+
+		final List<T> values;
+		final long expires;
+		final long refresh;
+
+		CacheEntry(List<T> values, long ttl, long now) {
+			this.values = values;
+			this.expires = now + ttl * 1000L;
+			this.refresh = now + ttl * 750L;
+		}
+	}
+
+	/**
+	 * State of a resolution, the min TTL of the lookups done.
+	 */
+	static class Resolution {
+		long ttl = Long.MAX_VALUE;
+	}
+
+	private static final Comparator<DnsRecord> NAPTR_COMPARATOR = new Comparator<DnsRecord>() {
+		public int compare(DnsRecord o1, DnsRecord o2) {
+			if (o1.getOrder() != o2.getOrder()) {
+				return o1.getOrder() < o2.getOrder() ? -1 : 1;
+			}
+			return o1.getPreference() < o2.getPreference() ? -1 : (o1.getPreference() == o2.getPreference() ? 0 : 1);
+		}
+	};
+
+	private static final Comparator<Target> TARGET_COMPARATOR = new Comparator<Target>() {
+		public int compare(Target o1, Target o2) {
+			if (o1.group != o2.group) {
+				return o1.group < o2.group ? -1 : 1;
+			}
+			return o1.priority < o2.priority ? -1 : (o1.priority == o2.priority ? 0 : 1);
+		}
+	};
+
+	private final DnsResolver resolver;
+	private final Set<String> transports;
+	private final long negativeTtl;
+	private final PeerHealthTable peerHealthTable;
+	private final Tracer tracer;
+
+	private final ConcurrentHashMap<String, CacheEntry<DnsRecord>> records = new ConcurrentHashMap<String, CacheEntry<DnsRecord>>();
+	private final ConcurrentHashMap<String, CacheEntry<Target>> located = new ConcurrentHashMap<String, CacheEntry<Target>>();
+	private final ConcurrentHashMap<String, SipURI> locating = new ConcurrentHashMap<String, SipURI>();
+	/**
+	 * the tasks waiting for servers to be located, guarded by itself
+	 */
+	private final Map<String, List<Runnable>> waiting = new HashMap<String, List<Runnable>>();
+
+	private final ThreadPoolExecutor executor;
+	private final Random random = new Random();
+
+	private final ThreadLocal<Hop> nextHop = new ThreadLocal<Hop>();
+	private AddressResolver stackResolver;
+
+	/**
+	 * 
+	 * @param resolver
+	 * @param transports
+	 *            the transports supported, in upper case
+	 * @param negativeTtl
+	 *            the TTL of failed lookups, in seconds
+	 * @param peerHealthTable
+	 *            the table with the failed peers, may be null
+	 * @param tracer
+	 */
+	public ServerLocatorImpl(DnsResolver resolver, Set<String> transports, int negativeTtl,
+			PeerHealthTable peerHealthTable, Tracer tracer) {
+		this.resolver = resolver;
+		this.transports = transports;
+		this.negativeTtl = negativeTtl;
+		this.peerHealthTable = peerHealthTable;
+		this.tracer = tracer;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "SipRA-ServerLocator-" + threadNumber.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Sets the locator as the address resolver of the specified stack.
+	 * 
+	 * @param sipStack
+	 */
+	public void install(SipStackImpl sipStack) {
+		this.stackResolver = sipStack.getAddressResolver();
+		sipStack.setAddressResolver(this);
+	}
+
+	/**
+	 * Stops the lookup threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Retrieves the current time in ms.
+	 * 
+	 * @return
+	 */
+	long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.ServerLocator#locate(javax.sip.address.URI)
+	 */
+	public void locate(URI uri) {
+		if (uri instanceof SipURI) {
+			final SipURI sipURI = (SipURI) uri;
+			final String key = key(sipURI);
+			final CacheEntry<Target> entry = located.get(key);
+			if (entry == null || currentTime() >= entry.refresh) {
+				startLocating(key, sipURI);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.ServerLocator#getHops(javax.sip.address.URI)
+	 */
+	public List<Hop> getHops(URI uri) {
+		if (!(uri instanceof SipURI)) {
+			return null;
+		}
+		final SipURI sipURI = (SipURI) uri;
+		final String key = key(sipURI);
+		final CacheEntry<Target> entry = located.get(key);
+		final long now = currentTime();
+		if (entry == null || now >= entry.refresh) {
+			startLocating(key, sipURI);
+		}
+		if (entry == null || now >= entry.expires) {
+			return null;
+		}
+		return order(entry.values);
+	}
+
+	/**
+	 * Indicates if locating the servers for the specified URI needs DNS
+	 * lookups, i.e. if it is a SIP URI and its host is not an IP address.
+	 * 
+	 * @param uri
+	 * @return
+	 */
+	public boolean requiresLookup(URI uri) {
+		if (!(uri instanceof SipURI)) {
+			return false;
+		}
+		final SipURI sipURI = (SipURI) uri;
+		final String maddr = sipURI.getMAddrParam();
+		return !isNumeric(maddr != null ? maddr : sipURI.getHost());
+	}
+
+	/**
+	 * Runs the specified task in a lookup thread, once the servers for the
+	 * specified SIP URI are located, or failed to be located, or right away if
+	 * these are already located. The task should then retrieve the servers
+	 * with {@link #getHops(URI)}, which returns null if the servers could not
+	 * be located, e.g. because there were too many lookups pending, in that
+	 * case the task may run in the calling thread.
+	 * 
+	 * @param uri
+	 * @param task
+	 */
+	public void whenLocated(URI uri, Runnable task) {
+		final SipURI sipURI = (SipURI) uri;
+		final String key = key(sipURI);
+		final boolean wait;
+		synchronized (waiting) {
+			final CacheEntry<Target> entry = located.get(key);
+			wait = entry == null || currentTime() >= entry.expires;
+			if (wait) {
+				List<Runnable> tasks = waiting.get(key);
+				if (tasks == null) {
+					tasks = new ArrayList<Runnable>(2);
+					waiting.put(key, tasks);
+				}
+				tasks.add(task);
+			}
+		}
+		if (wait) {
+			startLocating(key, sipURI);
+		} else {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.run();
+			}
+		}
+	}
+
+	private void runWaiting(String key) {
+		final List<Runnable> tasks;
+		synchronized (waiting) {
+			tasks = waiting.remove(key);
+		}
+		if (tasks != null) {
+			for (Runnable task : tasks) {
+				try {
+					task.run();
+				} catch (Throwable e) {
+					tracer.warning("Failed to run task waiting for servers located with " + key, e);
+				}
+			}
+		}
+	}
+
+	private static String key(SipURI uri) {
+		final StringBuilder sb = new StringBuilder(64).append(uri.isSecure() ? "sips:" : "sip:");
+		final String maddr = uri.getMAddrParam();
+		sb.append(maddr != null ? maddr : uri.getHost()).append(':').append(uri.getPort());
+		final String transport = uri.getTransportParam();
+		if (transport != null) {
+			sb.append(';').append(transport);
+		}
+		return sb.toString().toLowerCase();
+	}
+
+	private void startLocating(final String key, SipURI uri) {
+		if (locating.putIfAbsent(key, uri) != null) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					final SipURI uri = locating.get(key);
+					try {
+						final Resolution resolution = new Resolution();
+						final List<Target> targets = resolve(uri, resolution);
+						final long ttl = targets.isEmpty() || resolution.ttl == Long.MAX_VALUE ? negativeTtl : resolution.ttl;
+						if (located.size() >= MAX_CACHE_SIZE) {
+							purge(located);
+						}
+						located.put(key, new CacheEntry<Target>(targets, ttl, currentTime()));
+					} catch (Throwable e) {
+						tracer.warning("Failed to locate servers for " + uri, e);
+					} finally {
+						locating.remove(key);
+						runWaiting(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			locating.remove(key);
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Too many servers being located, not locating " + uri);
+			}
+			runWaiting(key);
+		}
+	}
+
+	/**
+	 * Removes the expired entries from the specified cache, or all if none
+	 * expired.
+	 * 
+	 * @param cache
+	 */
+	private <T> void purge(ConcurrentHashMap<String, CacheEntry<T>> cache) {
+		final long now = currentTime();
+		final int size = cache.size();
+		for (Iterator<CacheEntry<T>> it = cache.values().iterator(); it.hasNext();) {
+			if (now >= it.next().expires) {
+				it.remove();
+			}
+		}
+		if (cache.size() == size) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Locates the servers for the specified URI, blocking.
+	 * 
+	 * @param uri
+	 * @param resolution
+	 * @return
+	 */
+	List<Target> resolve(SipURI uri, Resolution resolution) {
+		final boolean secure = uri.isSecure();
+		final String maddr = uri.getMAddrParam();
+		final String host = maddr != null ? maddr : uri.getHost();
+		final String transportParam = uri.getTransportParam();
+		String transport = transportParam == null ? null : transportParam.toUpperCase();
+		if (secure && ListeningPoint.TCP.equals(transport)) {
+			transport = ListeningPoint.TLS;
+		}
+		if (transport != null && !transports.contains(transport)) {
+			return Collections.emptyList();
+		}
+		final int port = uri.getPort();
+		final String defaultTransport = secure ? ListeningPoint.TLS : ListeningPoint.UDP;
+
+		if (isNumeric(host) || port != -1) {
+			// no SRV, only A/AAAA (RFC 3263 4.1 and 4.2)
+			final String t = transport != null ? transport : defaultTransport;
+			if (!transports.contains(t)) {
+				return Collections.emptyList();
+			}
+			return addressTargets(host, port != -1 ? port : defaultPort(t), t, 0, 0, 0, resolution);
+		}
+
+		final List<Target> targets = new ArrayList<Target>();
+		if (transport == null) {
+			// NAPTR
+			final List<DnsRecord> naptrs = new ArrayList<DnsRecord>(lookup(host, DnsRecord.NAPTR, resolution));
+			Collections.sort(naptrs, NAPTR_COMPARATOR);
+			int group = 0;
+			for (DnsRecord naptr : naptrs) {
+				if (!"s".equalsIgnoreCase(naptr.getFlags())) {
+					continue;
+				}
+				final String t = serviceTransport(naptr.getService(), secure);
+				if (t != null && transports.contains(t)) {
+					srvTargets(naptr.getReplacement(), t, group++, resolution, targets);
+				}
+			}
+			if (group == 0) {
+				// no usable NAPTR, SRV for the supported transports
+				for (String[] service : SERVICES) {
+					if (service[2] != null && transports.contains(service[1]) && (!secure || ListeningPoint.TLS.equals(service[1]))) {
+						srvTargets(service[2] + host, service[1], group++, resolution, targets);
+					}
+				}
+			}
+		} else {
+			for (String[] service : SERVICES) {
+				if (service[1].equals(transport) && service[2] != null) {
+					srvTargets(service[2] + host, transport, 0, resolution, targets);
+				}
+			}
+		}
+		if (targets.isEmpty()) {
+			// no SRV, A/AAAA with the default port
+			final String t = transport != null ? transport : defaultTransport;
+			if (transports.contains(t)) {
+				return addressTargets(host, defaultPort(t), t, 0, 0, 0, resolution);
+			}
+		}
+		return targets;
+	}
+
+	private static String serviceTransport(String service, boolean secure) {
+		for (String[] s : SERVICES) {
+			if (s[0].equalsIgnoreCase(service)) {
+				return !secure || s[0].startsWith("SIPS") ? s[1] : null;
+			}
+		}
+		return null;
+	}
+
+	private void srvTargets(String name, String transport, int group, Resolution resolution, List<Target> targets) {
+		for (DnsRecord srv : lookup(name, DnsRecord.SRV, resolution)) {
+			if (".".equals(srv.getTarget()) || srv.getTarget().length() == 0) {
+				// service explicitly not available
+				continue;
+			}
+			targets.addAll(addressTargets(srv.getTarget(), srv.getPort(), transport, group, srv.getPriority(),
+					srv.getWeight(), resolution));
+		}
+	}
+
+	private List<Target> addressTargets(String host, int port, String transport, int group, int priority,
+			int weight, Resolution resolution) {
+		final List<String> addresses;
+		if (isNumeric(host)) {
+			addresses = Collections.singletonList(host.startsWith("[") ? host.substring(1, host.length() - 1) : host);
+		} else {
+			addresses = new ArrayList<String>(2);
+			for (DnsRecord record : lookup(host, DnsRecord.A, resolution)) {
+				addresses.add(record.getAddress());
+			}
+			for (DnsRecord record : lookup(host, DnsRecord.AAAA, resolution)) {
+				addresses.add(record.getAddress());
+			}
+			if (addresses.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+		return Collections.singletonList(new Target(group, priority, weight, port, transport, addresses));
+	}
+
+	/**
+	 * Looks up records, from the cache if not expired.
+	 * 
+	 * @param name
+	 * @param type
+	 * @param resolution
+	 * @return
+	 */
+	private List<DnsRecord> lookup(String name, int type, Resolution resolution) {
+		final String key = new StringBuilder(name.toLowerCase()).append('/').append(type).toString();
+		final long now = currentTime();
+		CacheEntry<DnsRecord> entry = records.get(key);
+		if (entry == null || now >= entry.expires) {
+			List<DnsRecord> result;
+			try {
+				result = resolver.lookup(name, type);
+			} catch (IOException e) {
+				if (tracer.isFineEnabled()) {
+					tracer.fine("DNS lookup failed", e);
+				}
+				result = Collections.emptyList();
+			}
+			long ttl = Long.MAX_VALUE;
+			for (DnsRecord record : result) {
+				ttl = Math.min(ttl, record.getTtl());
+			}
+			if (result.isEmpty()) {
+				ttl = negativeTtl;
+			}
+			if (records.size() >= MAX_CACHE_SIZE) {
+				purge(records);
+			}
+			entry = new CacheEntry<DnsRecord>(result, ttl, now);
+			records.put(key, entry);
+		}
+		// the remaining TTL
+		resolution.ttl = Math.min(resolution.ttl, Math.max(0, (entry.expires - now) / 1000L));
+		return entry.values;
+	}
+
+	private static boolean isNumeric(String host) {
+		if (host.indexOf(':') >= 0 || host.startsWith("[")) {
+			return true;
+		}
+		for (int i = 0; i < host.length(); i++) {
+			final char c = host.charAt(i);
+			if ((c < '0' || c > '9') && c != '.') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int defaultPort(String transport) {
+		return ListeningPoint.TLS.equals(transport) || "WSS".equals(transport) ? 5061 : 5060;
+	}
+
+	/**
+	 * Orders the targets, by NAPTR order and SRV priority, with weighted
+	 * random selection of targets with the same priority (RFC 2782), and
+	 * moves the hops of failed peers to the end.
+	 * 
+	 * @param targets
+	 * @return
+	 */
+	List<Hop> order(List<Target> targets) {
+		final List<Target> sorted = new ArrayList<Target>(targets);
+		Collections.sort(sorted, TARGET_COMPARATOR);
+		final List<Hop> hops = new ArrayList<Hop>(sorted.size() + 2);
+		List<Hop> failedHops = null;
+		int i = 0;
+		while (i < sorted.size()) {
+			// the targets with the same group and priority
+			int j = i + 1;
+			while (j < sorted.size() && TARGET_COMPARATOR.compare(sorted.get(i), sorted.get(j)) == 0) {
+				j++;
+			}
+			final List<Target> set = new ArrayList<Target>(sorted.subList(i, j));
+			while (!set.isEmpty()) {
+				final Target target = set.remove(select(set));
+				for (String address : target.addresses) {
+					final Hop hop = new HopImpl(address, target.port, target.transport);
+					if (isFailed(hop)) {
+						if (failedHops == null) {
+							failedHops = new ArrayList<Hop>(2);
+						}
+						failedHops.add(hop);
+					} else {
+						hops.add(hop);
+					}
+				}
+			}
+			i = j;
+		}
+		if (failedHops != null) {
+			hops.addAll(failedHops);
+		}
+		return hops;
+	}
+
+	/**
+	 * Selects the index of the next target of a set with the same priority,
+	 * as in RFC 2782: targets with weight 0 have a small chance to be
+	 * selected first, the others are selected with probability proportional
+	 * to their weight.
+	 * 
+	 * @param set
+	 * @return
+	 */
+	private int select(List<Target> set) {
+		int sum = 0;
+		for (Target target : set) {
+			sum += target.weight;
+		}
+		if (sum == 0) {
+			return random.nextInt(set.size());
+		}
+		final int r = random.nextInt(sum + 1);
+		if (r == 0) {
+			// the targets with weight 0 are ordered first
+			for (int i = 0; i < set.size(); i++) {
+				if (set.get(i).weight == 0) {
+					return i;
+				}
+			}
+		}
+		int running = 0;
+		for (int i = 0; i < set.size(); i++) {
+			running += set.get(i).weight;
+			if (running >= r && set.get(i).weight > 0) {
+				return i;
+			}
+		}
+		return set.size() - 1;
+	}
+
+	private boolean isFailed(Hop hop) {
+		if (peerHealthTable == null) {
+			return false;
+		}
+		final PeerHealthTable.Peer peer = peerHealthTable.getPeer(hop.getHost(), hop.getPort(), hop.getTransport());
+		return peer != null && peer.getHealth().getState() == PeerHealth.State.FAILED;
+	}
+
+	/**
+	 * Creates a client transaction for the specified request, sent to the
+	 * specified hop, instead of the one from the stack router.
+	 * 
+	 * @param provider
+	 * @param request
+	 * @param hop
+	 * @return
+	 * @throws TransactionUnavailableException
+	 */
+	public ClientTransaction getNewClientTransaction(SipProvider provider, Request request, Hop hop)
+			throws TransactionUnavailableException {
+		nextHop.set(hop);
+		try {
+			return provider.getNewClientTransaction(request);
+		} finally {
+			nextHop.remove();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.core.net.AddressResolver#resolveAddress(javax.sip.address.Hop)
+	 */
+	public Hop resolveAddress(Hop hop) {
+		final Hop located = nextHop.get();
+		if (located != null) {
+			return located;
+		}
+		return stackResolver != null ? stackResolver.resolveAddress(hop) : hop;
+	}
+
+}
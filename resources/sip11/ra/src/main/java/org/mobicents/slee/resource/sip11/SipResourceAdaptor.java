@@ -25,13 +25,18 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.ObjectName;
 import javax.sip.ClientTransaction;
@@ -44,13 +49,17 @@ import javax.sip.ObjectInUseException;
 import javax.sip.RequestEvent;
 import javax.sip.ResponseEvent;
 import javax.sip.ServerTransaction;
+import javax.sip.SipException;
 import javax.sip.SipFactory;
 import javax.sip.SipProvider;
+import javax.sip.Timeout;
 import javax.sip.TimeoutEvent;
 import javax.sip.Transaction;
 import javax.sip.TransactionState;
 import javax.sip.TransactionTerminatedEvent;
+import javax.sip.address.Hop;
 import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
 import javax.sip.address.URI;
 import javax.sip.header.CSeqHeader;
 import javax.sip.header.CallIdHeader;
@@ -61,6 +70,7 @@ import javax.sip.header.MaxForwardsHeader;
 import javax.sip.header.RouteHeader;
 import javax.sip.header.ToHeader;
 import javax.sip.header.ViaHeader;
+import javax.sip.message.Message;
 import javax.sip.message.MessageFactory;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
@@ -89,29 +99,45 @@ import javax.slee.resource.UnrecognizedActivityHandleException;
 
 import org.mobicents.ext.javax.sip.SipStackImpl;
 import org.mobicents.slee.resource.sip11.wrappers.ACKDummyTransaction;
+import org.mobicents.slee.resource.sip11.wrappers.ActivitylessClientTransactionAppData;
+import org.mobicents.slee.resource.sip11.wrappers.BulkRequestActivityWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.ClientDialogWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener;
 import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.DialogWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.DialogWrapperAppData;
 import org.mobicents.slee.resource.sip11.wrappers.RequestEventWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.ResponseEventWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.PeerActivityWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.ServerTransactionWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.ServerTransactionWrapperAppData;
+import org.mobicents.slee.resource.sip11.wrappers.SharedRequestActivityWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.TimeoutEventWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.TransactionWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.TransactionWrapperAppData;
 import org.mobicents.slee.resource.sip11.wrappers.Wrapper;
 
+import gov.nist.javax.sip.RequestEventExt;
 import gov.nist.javax.sip.ResponseEventExt;
 import gov.nist.javax.sip.SipListenerExt;
-import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.header.HeaderFactoryExt;
 import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
+import gov.nist.javax.sip.stack.SIPDialog;
 import gov.nist.javax.sip.stack.SIPServerTransaction;
 import gov.nist.javax.sip.stack.SIPTransaction;
+import net.java.slee.resource.sip.BulkRequestCompletedEvent;
+import net.java.slee.resource.sip.ClientTransactionOutcomeEvent;
+import net.java.slee.resource.sip.ProxyResponseEvent;
+import net.java.slee.resource.sip.TransportFailureEvent;
 import net.java.slee.resource.sip.CancelRequestEvent;
+import net.java.slee.resource.sip.DialogActivity;
 import net.java.slee.resource.sip.DialogForkedEvent;
 import net.java.slee.resource.sip.DialogTimeoutEvent;
+import net.java.slee.resource.sip.NodeAffinity;
+import net.java.slee.resource.sip.ProvisionalSuppression;
 
 public class SipResourceAdaptor implements
 		SipListenerExt, ResourceAdaptor {
@@ -131,6 +157,92 @@ public class SipResourceAdaptor implements
 	public static final String SIPRA_PROPERTIES_LOCATION = "org.mobicents.slee.resource.sip11.SIPRA_PROPERTIES_LOCATION";
 
 	public static final String SIP_TRACE_LEVEL = "gov.nist.javax.sip.TRACE_LEVEL";
+
+	public static final String EVENT_FIRING_ADDRESS = "org.mobicents.slee.resource.sip11.EVENT_FIRING_ADDRESS";
+
+	public static final String AUTOMATIC_TRYING = "org.mobicents.slee.resource.sip11.AUTOMATIC_TRYING";
+
+	public static final String AUTOMATIC_DIALOG_ACTIONS = "org.mobicents.slee.resource.sip11.AUTOMATIC_DIALOG_ACTIONS";
+
+	public static final String RATE_LIMIT = "org.mobicents.slee.resource.sip11.RATE_LIMIT";
+
+	public static final String RATE_LIMIT_FROM_DOMAIN = "org.mobicents.slee.resource.sip11.RATE_LIMIT_FROM_DOMAIN";
+
+	public static final String RATE_LIMIT_DROP = "org.mobicents.slee.resource.sip11.RATE_LIMIT_DROP";
+
+	public static final String SHARED_ACTIVITY_METHODS = "org.mobicents.slee.resource.sip11.SHARED_ACTIVITY_METHODS";
+
+	public static final String SHARED_ACTIVITIES = "org.mobicents.slee.resource.sip11.SHARED_ACTIVITIES";
+
+	public static final String IDLE_DIALOG_TIMEOUT = "org.mobicents.slee.resource.sip11.IDLE_DIALOG_TIMEOUT";
+
+	public static final String IDLE_DIALOG_BYE = "org.mobicents.slee.resource.sip11.IDLE_DIALOG_BYE";
+
+	public static final String STATISTICS_FLUSH_PERIOD = "org.mobicents.slee.resource.sip11.STATISTICS_FLUSH_PERIOD";
+
+	public static final String TRANSACTION_SPAN_SAMPLE_RATE = "org.mobicents.slee.resource.sip11.TRANSACTION_SPAN_SAMPLE_RATE";
+
+	public static final String TRANSACTION_SPAN_THRESHOLD = "org.mobicents.slee.resource.sip11.TRANSACTION_SPAN_THRESHOLD";
+
+	public static final String TRANSACTION_SPAN_SINK = "org.mobicents.slee.resource.sip11.TRANSACTION_SPAN_SINK";
+
+	public static final String TRANSACTION_SPAN_FILE = "org.mobicents.slee.resource.sip11.TRANSACTION_SPAN_FILE";
+
+	public static final String FLIGHT_RECORDER_EVENTS = "org.mobicents.slee.resource.sip11.FLIGHT_RECORDER_EVENTS";
+
+	public static final String BULK_REQUEST_THREADS = "org.mobicents.slee.resource.sip11.BULK_REQUEST_THREADS";
+
+	public static final String HEADER_CACHE_SIZE = "org.mobicents.slee.resource.sip11.HEADER_CACHE_SIZE";
+
+	public static final String KEEPALIVE_PEERS = "org.mobicents.slee.resource.sip11.KEEPALIVE_PEERS";
+
+	public static final String KEEPALIVE_INTERVAL = "org.mobicents.slee.resource.sip11.KEEPALIVE_INTERVAL";
+
+	public static final String VIA_ALIAS = "org.mobicents.slee.resource.sip11.VIA_ALIAS";
+
+	public static final String TLS_PORT = "org.mobicents.slee.resource.sip11.TLS_PORT";
+
+	public static final String TLS_KEYSTORE = "org.mobicents.slee.resource.sip11.TLS_KEYSTORE";
+
+	public static final String TLS_KEYSTORE_PASSWORD = "org.mobicents.slee.resource.sip11.TLS_KEYSTORE_PASSWORD";
+
+	public static final String TLS_KEYSTORE_TYPE = "org.mobicents.slee.resource.sip11.TLS_KEYSTORE_TYPE";
+
+	public static final String TLS_TRUSTSTORE = "org.mobicents.slee.resource.sip11.TLS_TRUSTSTORE";
+
+	public static final String TLS_TRUSTSTORE_PASSWORD = "org.mobicents.slee.resource.sip11.TLS_TRUSTSTORE_PASSWORD";
+
+	public static final String TLS_PROTOCOLS = "org.mobicents.slee.resource.sip11.TLS_PROTOCOLS";
+
+	public static final String TLS_CIPHER_SUITES = "org.mobicents.slee.resource.sip11.TLS_CIPHER_SUITES";
+
+	public static final String TLS_SESSION_CACHE_SIZE = "org.mobicents.slee.resource.sip11.TLS_SESSION_CACHE_SIZE";
+
+	public static final String TLS_SESSION_TIMEOUT = "org.mobicents.slee.resource.sip11.TLS_SESSION_TIMEOUT";
+
+	public static final String SERVER_LOCATOR = "org.mobicents.slee.resource.sip11.SERVER_LOCATOR";
+
+	public static final String SERVER_LOCATOR_RESOLVER = "org.mobicents.slee.resource.sip11.SERVER_LOCATOR_RESOLVER";
+
+	public static final String SERVER_LOCATOR_NEGATIVE_TTL = "org.mobicents.slee.resource.sip11.SERVER_LOCATOR_NEGATIVE_TTL";
+
+	public static final String PEER_POOLS = "org.mobicents.slee.resource.sip11.PEER_POOLS";
+
+	public static final String PEER_POOL_MAX_FAILURES = "org.mobicents.slee.resource.sip11.PEER_POOL_MAX_FAILURES";
+
+	public static final String PEER_POOL_PROBE_INTERVAL = "org.mobicents.slee.resource.sip11.PEER_POOL_PROBE_INTERVAL";
+
+	public static final String DIALOG_JOURNAL = "org.mobicents.slee.resource.sip11.DIALOG_JOURNAL";
+
+	public static final String DIALOG_JOURNAL_SIZE = "org.mobicents.slee.resource.sip11.DIALOG_JOURNAL_SIZE";
+
+	public static final String DIALOG_JOURNAL_COMPACTION_INTERVAL = "org.mobicents.slee.resource.sip11.DIALOG_JOURNAL_COMPACTION_INTERVAL";
+
+	public static final String NODE_AFFINITY = "org.mobicents.slee.resource.sip11.NODE_AFFINITY";
+
+	public static final String PROVISIONAL_SUPPRESSION = "org.mobicents.slee.resource.sip11.PROVISIONAL_SUPPRESSION";
+
+	private static final String TLS_SECURITY_MANAGER_PROVIDER = "gov.nist.javax.sip.SECURITY_MANAGER_PROVIDER";
 	// Config Properties Values -------------------------------------------
 
 	private int port;
@@ -144,6 +256,160 @@ public class SipResourceAdaptor implements
 	 */
 	private boolean looseDialogSeqValidation = true;
 
+	/**
+	 * builds the addresses where events are fired
+	 */
+	private EventFiringAddressFactory eventFiringAddressFactory = new EventFiringAddressFactory(EventFiringAddressFactory.NAME_ADDR);
+
+	/**
+	 * if true the RA sends 100 Trying to INVITEs before firing the event, default is false
+	 */
+	private boolean automaticTrying = false;
+
+	/**
+	 * the default protocol actions the RA does on its own for dialogs, see {@link DialogActivity#setAutomaticActions(int)}
+	 */
+	private int automaticDialogActions = 0;
+
+	/**
+	 * the per source rate limits config, null if not limited
+	 */
+	private String rateLimit;
+	private boolean rateLimitFromDomain = false;
+	/**
+	 * if true requests exceeding the rate limits are dropped, otherwise rejected with 503
+	 */
+	private boolean rateLimitDrop = false;
+
+	/**
+	 * the methods of out of dialog requests fired on shared activities, empty if none
+	 */
+	private Set<String> sharedActivityMethods = new HashSet<String>();
+	/**
+	 * the number of shared activities, default is 16
+	 */
+	private int sharedActivitiesSize = DEFAULT_SHARED_ACTIVITIES;
+	private static final int DEFAULT_SHARED_ACTIVITIES = 16;
+
+	/**
+	 * the time in seconds a dialog may go without messages, 0 means dialogs are not reaped
+	 */
+	private int idleDialogTimeout = 0;
+	/**
+	 * if true the RA sends BYE to idle dialogs and ends their activities
+	 */
+	private boolean idleDialogBye = false;
+
+	/**
+	 * the period in ms of the statistics flush to the usage parameters
+	 */
+	private int statisticsFlushPeriod = SipResourceAdaptorStatistics.DEFAULT_FLUSH_PERIOD;
+
+	/**
+	 * 1 in each sample rate transaction spans is emitted, 0 means spans are not sampled
+	 */
+	private int transactionSpanSampleRate = 0;
+	/**
+	 * transaction spans taking at least this time in ms are always emitted, 0 means disabled
+	 */
+	private int transactionSpanThreshold = 0;
+	/**
+	 * the class name of the transaction span sink, null for the file sink
+	 */
+	private String transactionSpanSink;
+	/**
+	 * the location passed to the transaction span sink, null for the default file
+	 */
+	private String transactionSpanFile;
+
+	/**
+	 * if true the RA defines and commits Flight Recorder events, when the JVM supports it, default is true
+	 */
+	private boolean flightRecorderEventsEnabled = true;
+
+	/**
+	 * the number of threads sending the requests of bulk fan-outs
+	 */
+	private int bulkRequestThreads = BulkRequestSender.DEFAULT_THREADS;
+
+	/**
+	 * the max number of headers cached by the header factory, 0 disables the cache
+	 */
+	private int headerCacheSize = CachingHeaderFactory.DEFAULT_CAPACITY;
+
+	/**
+	 * the peers kept connected, null if not configured
+	 */
+	private String keepalivePeers;
+	private int keepaliveInterval = ConnectionKeeper.DEFAULT_INTERVAL;
+
+	/**
+	 * if the local Vias of connection oriented transports have the alias param (RFC 5923)
+	 */
+	private boolean viaAlias = false;
+
+	/**
+	 * the port of the TLS listening point, 0 means the same as other transports
+	 */
+	private int tlsPort = 0;
+
+	/**
+	 * stack properties for the TLS transport, from the TLS config properties
+	 */
+	private Properties tlsProperties = new Properties();
+
+	/**
+	 * if out of dialog requests are sent to servers located per RFC 3263
+	 */
+	private boolean serverLocatorEnabled = false;
+	private String serverLocatorResolver;
+	private int serverLocatorNegativeTtl = ServerLocatorImpl.DEFAULT_NEGATIVE_TTL;
+
+	/**
+	 * the RFC 3263 server locator, null if not enabled or the RA entity is not active
+	 */
+	private ServerLocatorImpl serverLocator;
+
+	/**
+	 * the configured peer pools, null if none
+	 */
+	private String peerPoolsConfig;
+	private int peerPoolMaxFailures = PeerPools.DEFAULT_MAX_FAILURES;
+	private int peerPoolProbeInterval = PeerPools.DEFAULT_PROBE_INTERVAL;
+
+	/**
+	 * the peer pools, null if the RA entity is not active
+	 */
+	private PeerPools peerPools;
+
+	/**
+	 * the default suppression of the provisional responses received on client transactions
+	 */
+	private ProvisionalSuppression provisionalSuppression = ProvisionalSuppression.NONE;
+
+	/**
+	 * the node embedded in the generated tags, Call-IDs and branches, null if none
+	 */
+	private String nodeAffinity;
+
+	/**
+	 * the file of the dialog journal, null if not enabled
+	 */
+	private String dialogJournalFile;
+	private int dialogJournalSize = DialogJournal.DEFAULT_SIZE;
+	private int dialogJournalCompactionInterval = DialogJournal.DEFAULT_COMPACTION_INTERVAL;
+
+	/**
+	 * the dialog journal, null if not enabled or the RA entity is not active
+	 */
+	private DialogJournal dialogJournal;
+	private ObjectName dialogJournalObjectName;
+
+	/**
+	 * the client transactions sent to located servers, which may fail over
+	 */
+	private final Set<ClientTransactionWrapper> locatedTransactions = Collections.newSetFromMap(new ConcurrentHashMap<ClientTransactionWrapper, Boolean>());
+
 	/**
 	 * allowed transports
 	 */
@@ -154,6 +420,56 @@ public class SipResourceAdaptor implements
 	 */
 	private SipProvider provider;
 
+	/**
+	 * limits incoming out of dialog requests per source, null if not configured
+	 */
+	private SourceRateLimiter rateLimiter;
+
+	/**
+	 * the activities where out of dialog requests of the shared activity methods are fired, null if not configured
+	 */
+	private SharedRequestActivityWrapper[] sharedActivities;
+
+	/**
+	 * finds idle dialogs, null if not configured
+	 */
+	private IdleDialogReaper idleDialogReaper;
+	private ObjectName rateLimiterObjectName;
+	private ObjectName headerCacheObjectName;
+	private ConnectionKeeper connectionKeeper;
+	private ObjectName connectionKeeperObjectName;
+	private ObjectName tlsSessionManagerObjectName;
+
+	/**
+	 * the transport health of the peers which failed, null if the RA entity is not active
+	 */
+	private PeerHealthTable peerHealthTable;
+
+	/**
+	 * emits the transaction lifecycle timings, null if not configured
+	 */
+	private TransactionSpans transactionSpans;
+
+	/**
+	 * the Flight Recorder events of the RA, null if not configured or not supported
+	 */
+	private FlightRecorderEvents flightRecorderEvents;
+
+	/**
+	 * sends the requests of bulk fan-outs
+	 */
+	private BulkRequestSender bulkRequestSender;
+
+	/**
+	 * forwards requests statelessly, and relays their responses
+	 */
+	private StatelessForwarder statelessForwarder;
+
+	/**
+	 * the proxy core, which forks requests to branches not visible to the slee
+	 */
+	private ForkingProxy forkingProxy;
+
 	/**
 	 * the ra sip provider, which wraps the real one
 	 */
@@ -174,6 +490,12 @@ public class SipResourceAdaptor implements
 	 */
 	private final EventIDFilter eventIDFilter = new EventIDFilter();
 
+	/**
+	 * gauges of the RA internals, exposed through jmx
+	 */
+	private final SipResourceAdaptorIntrospection introspection = new SipResourceAdaptorIntrospection(eventIDFilter, eventIdCache, SipResourceAdaptorIntrospection.DEFAULT_SAMPLE_RATE);
+	private ObjectName introspectionObjectName;
+
 	/**
 	 * 
 	 */
@@ -182,6 +504,12 @@ public class SipResourceAdaptor implements
 	private EventLookupFacility eventLookupFacility;
 	private SipResourceAdaptorStatisticsUsageParameters defaultUsageParameters;
 
+	/**
+	 * the statistics not yet flushed to the usage parameters
+	 */
+	private final SipResourceAdaptorStatistics statistics = new SipResourceAdaptorStatistics();
+	private TimerTask statisticsFlushTask;
+
 	/**
 	 * 
 	 */
@@ -221,6 +549,7 @@ public class SipResourceAdaptor implements
 		allowedTransports.add("tcp");
         allowedTransports.add("ws");
         allowedTransports.add("wss");
+		allowedTransports.add("tls");
         
         // this.stackAddress = "127.0.0.1";
 		// this.stackPrefix = "gov.nist";
@@ -251,6 +580,75 @@ public class SipResourceAdaptor implements
 	 */
 	public void processIOException(IOExceptionEvent arg0) {
 		tracer.severe("processIOException event = "+arg0.toString());
+		final PeerHealthTable peerHealthTable = this.peerHealthTable;
+		if (peerHealthTable == null || arg0.getHost() == null || arg0.getTransport() == null) {
+			return;
+		}
+		final long time = System.currentTimeMillis();
+		final PeerHealthTable.Peer peer = peerHealthTable.failed(arg0.getHost(), arg0.getPort(), arg0.getTransport(), time);
+		if (serverLocator != null) {
+			for (ClientTransactionWrapper ctw : locatedTransactions) {
+				final Hop hop = ctw.getLocatedHop();
+				if (hop != null && hop.getPort() == arg0.getPort() && hop.getHost().equalsIgnoreCase(arg0.getHost())
+						&& hop.getTransport().equalsIgnoreCase(arg0.getTransport())) {
+					failover(ctw);
+				}
+			}
+		}
+		PeerActivityWrapper activity = peer.getActivity();
+		if (activity == null) {
+			final PeerActivityWrapper newActivity = new PeerActivityWrapper(peer, this);
+			if (peer.setActivity(newActivity)) {
+				// stack IO and keepalive threads, there is no SLEE transaction to suspend
+				if (!addActivity(newActivity)) {
+					peer.removeActivity(newActivity);
+					tracer.warning("Failed to create activity for peer " + peer);
+					return;
+				}
+				activity = newActivity;
+			} else {
+				activity = peer.getActivity();
+				if (activity == null) {
+					// recovered meanwhile
+					return;
+				}
+			}
+		}
+		final FireableEventType eventType = eventIdCache.getTransportFailureEventId(eventLookupFacility);
+		if (!filterEvent(eventType, null)) {
+			final TransportFailureEvent event = new TransportFailureEvent(peer.getHost(), peer.getPort(), peer.getTransport(),
+					activity.getHealth().getConsecutiveFailures(), time);
+			try {
+				fireEvent(activity.getActivityHandle(), eventType, event, null, DEFAULT_EVENT_FLAGS);
+			} catch (UnrecognizedActivityHandleException e) {
+				tracer.warning("Failed to fire event " + eventType + ", the activity " + activity + " does not exists in the SLEE");
+			} catch (Throwable e) {
+				tracer.severe("Failed to fire event", e);
+			}
+		}
+	}
+
+	/**
+	 * Accounts a message received from the specified peer, ending its
+	 * activity if it was failed.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 */
+	private void peerReached(String host, int port, String transport) {
+		final PeerHealthTable peerHealthTable = this.peerHealthTable;
+		if (peerHealthTable != null) {
+			final PeerActivityWrapper activity = peerHealthTable.reached(host, port, transport);
+			if (activity != null) {
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Peer " + activity.getPeer() + " recovered");
+				}
+				if (!endActivity(activity)) {
+					tracer.warning("Failed to end " + activity);
+				}
+			}
+		}
 	}
 
 	/*
@@ -259,36 +657,103 @@ public class SipResourceAdaptor implements
 	 */
 	public void processRequest(RequestEvent req) {
 		
+		final TransactionSpans transactionSpans = this.transactionSpans;
+		final long received = transactionSpans != null ? System.nanoTime() : 0;
+
 		if (tracer.isInfoEnabled()) {
 			tracer.info("Received Request:\n"+req.getRequest());
 		}
 
-		// Restcomm Statistics
+		recordFlightEvent(FlightRecorderEvents.REQUEST_RECEIVED, req.getRequest(), null);
+		if (req instanceof RequestEventExt) {
+			final RequestEventExt reqExt = (RequestEventExt) req;
+			peerReached(reqExt.getRemoteIpAddress(), reqExt.getRemotePort(), ((SIPRequest) req.getRequest()).getTopmostVia().getTransport());
+		}
+
+		// get dialog wrapper
+		final Dialog d = req.getDialog();
+		final DialogWrapper dw = getDialogWrapper(d);
+
+		// limit requests per source, except those of existing dialogs, before any state is created
+		final SourceRateLimiter rateLimiter = this.rateLimiter;
+		if (rateLimiter != null && dw == null && !checkRateLimit(rateLimiter, req.getRequest())) {
+			return;
+		}
+
+		// Restcomm Statistics, only requests which passed the rate limits
 		final String method = req.getRequest().getMethod();
 		if (Request.INVITE.equalsIgnoreCase(method)) {
-			this.defaultUsageParameters.incrementCalls(1);
+			this.statistics.incrementCalls();
 		}
 		if (Request.MESSAGE.equalsIgnoreCase(method)) {
-			this.defaultUsageParameters.incrementMessages(1);
+			this.statistics.incrementMessages();
 		}
 
-		// get dialog wrapper
-		final Dialog d = req.getDialog();
-		final DialogWrapper dw = getDialogWrapper(d);
 		if (dw != null && req.getServerTransaction() == null) {
 			if (tracer.isInfoEnabled()) {
 				tracer.info("No server tx found, for in dialog request, assuming it as retransmission and dropping...");
 			}
 			return;
 		}
+		if (dw != null) {
+			dw.touch();
+			dialogUpdated(dw);
+		}
 		
 		if (req.getRequest().getMethod().equals(Request.CANCEL)) {
 			processCancelRequest(req,dw);
 		} else {
-			processNotCancelRequest(req,dw);
+			processNotCancelRequest(req,dw,transactionSpans,received);
 		}
 	}
 
+	/**
+	 * Checks if a request out of the existing dialogs exceeds the rate limits
+	 * of its source, if so it is dropped or rejected with a stateless 503
+	 * response.
+	 * 
+	 * @param rateLimiter
+	 * @param request
+	 * @return true if the request can be processed
+	 */
+	private boolean checkRateLimit(SourceRateLimiter rateLimiter, Request request) {
+		final String method = request.getMethod();
+		if (method.equals(Request.ACK) || method.equals(Request.CANCEL)) {
+			return true;
+		}
+		// a To tag without a dialog is limited as any other request
+		final SIPRequest sipRequest = (SIPRequest) request;
+		InetAddress sourceAddress = sipRequest.getPeerPacketSourceAddress();
+		if (sourceAddress == null) {
+			sourceAddress = sipRequest.getRemoteAddress();
+		}
+		String fromDomain = null;
+		if (rateLimitFromDomain) {
+			final URI fromURI = sipRequest.getFrom().getAddress().getURI();
+			if (fromURI instanceof SipURI) {
+				fromDomain = ((SipURI) fromURI).getHost();
+			}
+		}
+		if (rateLimiter.allow(method, sourceAddress, fromDomain)) {
+			return true;
+		}
+		if (tracer.isFineEnabled()) {
+			tracer.fine("Rate limit exceeded by " + sourceAddress + " (" + fromDomain + "), " + (rateLimitDrop ? "dropping " : "rejecting ") + method);
+		}
+		if (!rateLimitDrop) {
+			try {
+				final Response response = providerWrapper.getMessageFactory().createResponse(Response.SERVICE_UNAVAILABLE, request);
+				final ToHeader toHeader = (ToHeader) response.getHeader(ToHeader.NAME);
+				toHeader.setTag(providerWrapper.generateTag());
+				response.addHeader(providerWrapper.getHeaderFactory().createRetryAfterHeader(rateLimiter.getRetryAfter(method)));
+				provider.sendResponse(response);
+			} catch (Throwable e) {
+				tracer.severe("Failed to reject request exceeding rate limit", e);
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 
 	 * @param req
@@ -322,6 +787,17 @@ public class SipResourceAdaptor implements
 		// get canceled invite stw
 		final SIPServerTransaction inviteST = ((SIPServerTransaction)cancelSTW.getWrappedServerTransaction()).getCanceledInviteTransaction();
 		final ServerTransactionWrapper inviteSTW = (ServerTransactionWrapper) getTransactionWrapper(inviteST);
+		final ProxyContext proxyContext = inviteSTW != null ? inviteSTW.getProxyContext() : null;
+		if (proxyContext != null) {
+			// proxied by the RA, which answers the CANCEL and cancels the branches
+			try {
+				cancelSTW.sendResponse(providerWrapper.getMessageFactory().createResponse(Response.OK, cancelSTW.getRequest()));
+			} catch (Throwable e) {
+				tracer.severe("Failed to send response to CANCEL of proxied INVITE", e);
+			}
+			proxyContext.cancel();
+			return;
+		}
 		// get dialog
 		Wrapper activity = dw;
 		if (activity == null) {
@@ -344,19 +820,21 @@ public class SipResourceAdaptor implements
 			tracer.fine("Activity selected to fire CANCEL event: " + activity);
 		}
 		
-		final CancelRequestEvent REW = new CancelRequestEvent(this.providerWrapper, cancelSTW,
-				inviteSTW, dw, req.getRequest());
 		final int eventsFlags = EventFlags.setRequestEventReferenceReleasedCallback(DEFAULT_EVENT_FLAGS);
-		final FireableEventType eventType = eventIdCache.getEventId(eventLookupFacility, REW.getRequest(), activity.isDialog());
-		if (eventIDFilter.filterEvent(eventType)) {
+		final FireableEventType eventType = eventIdCache.getEventId(eventLookupFacility, req.getRequest(), activity.isDialog());
+		if (filterEvent(eventType, req.getRequest())) {
 			if (tracer.isFineEnabled()) {
 				tracer.fine("Event " + (eventType == null?"null":eventType.getEventType()) + " filtered");
 			}
 			// event filtered
 			processCancelNotHandled(cancelSTW,req.getRequest());
 		} else {
+			final boolean finalResponseSent = (getAutomaticDialogActions(dw) & DialogActivity.AUTOMATIC_CANCEL_RESPONSE) != 0
+					&& sendAutomaticCancelResponses(cancelSTW, inviteSTW);
+			final CancelRequestEvent REW = new CancelRequestEvent(this.providerWrapper, cancelSTW,
+					inviteSTW, dw, req.getRequest(), finalResponseSent);
 			try {
-				fireEvent(activity.getActivityHandle(),eventType,REW,activity.getEventFiringAddress(),eventsFlags);
+				fireEvent(activity.getActivityHandle(),eventType,REW,getEventFiringAddress(activity,eventType),eventsFlags);
 			} catch (Throwable e) {
 				tracer.severe("Failed to fire event",e);
 				// event not fired due to error
@@ -381,8 +859,40 @@ public class SipResourceAdaptor implements
 			throws UnrecognizedActivityHandleException, IllegalEventException,
 			ActivityIsEndingException, NullPointerException, SLEEException,
 			FireEventException {
+		final FlightRecorderEvents flightRecorderEvents = this.flightRecorderEvents;
+		final Object flightRecorderEvent = flightRecorderEvents != null ? flightRecorderEvents.begin(FlightRecorderEvents.EVENT_FIRED) : null;
 	    sleeEndpoint.fireEvent(handle, eventType,
 	            event, address, null, eventFlags);
+		if (flightRecorderEvent != null) {
+			flightRecorderEvents.commit(flightRecorderEvent, FlightRecorderEvents.getMessage(event), handle);
+		}
+	}
+
+	/**
+	 * Commits a Flight Recorder event, if configured and enabled in a running recording.
+	 * @param type see {@link FlightRecorderEvents}
+	 * @param message may be null
+	 * @param handle may be null
+	 */
+	private void recordFlightEvent(int type, Message message, SipActivityHandle handle) {
+		final FlightRecorderEvents flightRecorderEvents = this.flightRecorderEvents;
+		if (flightRecorderEvents != null) {
+			flightRecorderEvents.commit(type, message, handle);
+		}
+	}
+
+	/**
+	 * Checks if an event should be filtered, recording it if so.
+	 * @param eventType
+	 * @param message the message related with the event, may be null
+	 * @return
+	 */
+	private boolean filterEvent(FireableEventType eventType, Message message) {
+		if (eventIDFilter.filterEvent(eventType)) {
+			recordFlightEvent(FlightRecorderEvents.EVENT_FILTERED, message, null);
+			return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -411,8 +921,9 @@ public class SipResourceAdaptor implements
     	if (t == null) {
     		return null;
     	}
-    	final TransactionWrapperAppData twad = (TransactionWrapperAppData) t.getApplicationData();
-    	return twad != null ? twad.getTransactionWrapper(t, this) : null;
+    	final Object appData = t.getApplicationData();
+    	// client txs which are not activities have no wrapper
+    	return appData instanceof TransactionWrapperAppData ? ((TransactionWrapperAppData) appData).getTransactionWrapper(t, this) : null;
 	}
     
 	private void processCancelNotHandled(ServerTransactionWrapper cancelSTW, Request request) {
@@ -421,7 +932,7 @@ public class SipResourceAdaptor implements
             // createResponse(..) method does not generate a To header tag
             ToHeader toHeader = (ToHeader) response.getHeader(ToHeader.NAME);
             if (toHeader.getTag() == null) {
-            	toHeader.setTag(Utils.getInstance().generateTag());
+            	toHeader.setTag(providerWrapper.generateTag());
             }            
             cancelSTW.getWrappedServerTransaction().sendResponse(response);
         } catch (Throwable e) {
@@ -440,12 +951,119 @@ public class SipResourceAdaptor implements
         }
     }
 
+	/**
+	 * Sends 100 Trying to the specified request, if it is an INVITE.
+	 * 
+	 * @param stw
+	 * @param request
+	 * @return true if the response was sent
+	 */
+	private boolean sendAutomaticTrying(ServerTransactionWrapper stw, Request request) {
+		if (!request.getMethod().equals(Request.INVITE) || stw.isAckTransaction()) {
+			return false;
+		}
+		try {
+			final Response response = providerWrapper.getMessageFactory().createResponse(Response.TRYING, request);
+			// no to tag needed in the 100, the wrapper is bypassed to not mess with dialog tags 
+			stw.getWrappedServerTransaction().sendResponse(response);
+			return true;
+		} catch (Throwable e) {
+			tracer.severe("Failed to send automatic 100 Trying", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Answers the specified request with 200 OK, if it is a BYE.
+	 * 
+	 * @param stw
+	 * @param request
+	 * @return true if the response was sent
+	 */
+	private boolean sendAutomaticByeResponse(ServerTransactionWrapper stw, Request request) {
+		if (!request.getMethod().equals(Request.BYE)) {
+			return false;
+		}
+		try {
+			stw.sendResponse(providerWrapper.getMessageFactory().createResponse(Response.OK, request));
+			return true;
+		} catch (Throwable e) {
+			tracer.severe("Failed to send automatic response to BYE", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Answers the CANCEL with 200 OK, and the canceled INVITE with 487 Request Terminated.
+	 * 
+	 * @param cancelSTW
+	 * @param inviteSTW
+	 * @return true if the CANCEL was answered
+	 */
+	private boolean sendAutomaticCancelResponses(ServerTransactionWrapper cancelSTW, ServerTransactionWrapper inviteSTW) {
+		if (inviteSTW == null) {
+			// no matching tx, leave it to the app
+			return false;
+		}
+		final MessageFactory messageFactory = providerWrapper.getMessageFactory();
+		try {
+			cancelSTW.sendResponse(messageFactory.createResponse(Response.OK, cancelSTW.getRequest()));
+		} catch (Throwable e) {
+			tracer.severe("Failed to send automatic response to CANCEL", e);
+			return false;
+		}
+		try {
+			inviteSTW.sendResponse(messageFactory.createResponse(Response.REQUEST_TERMINATED, inviteSTW.getRequest()));
+		} catch (Throwable e) {
+			// the INVITE may already have a final response
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Failed to send automatic 487 response to canceled INVITE", e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the ACK for the specified response, if it is a 2xx to an INVITE.
+	 * 
+	 * @param dw
+	 * @param response
+	 * @return true if the ACK was sent
+	 */
+	private boolean sendAutomaticAck(DialogWrapper dw, Response response) {
+		if (dw == null || (dw.getAutomaticActions() & DialogActivity.AUTOMATIC_ACK) == 0) {
+			return false;
+		}
+		final int statusCode = response.getStatusCode();
+		final CSeqHeader cseq = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
+		if (statusCode < 200 || statusCode > 299 || !cseq.getMethod().equals(Request.INVITE)) {
+			return false;
+		}
+		try {
+			final Dialog d = dw.getWrappedDialog();
+			d.sendAck(d.createAck(cseq.getSeqNumber()));
+			return true;
+		} catch (Throwable e) {
+			tracer.severe("Failed to send automatic ACK", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Retrieves the protocol actions the RA does on its own for the specified dialog.
+	 * @param dw
+	 * @return the RA default if the dialog is null
+	 */
+	private int getAutomaticDialogActions(DialogWrapper dw) {
+		return dw != null ? dw.getAutomaticActions() : automaticDialogActions;
+	}
+
     /**
      *
      * @param req
      * @param dw
      */
-	private void processNotCancelRequest(RequestEvent req, DialogWrapper dw) {	
+	private void processNotCancelRequest(RequestEvent req, DialogWrapper dw, TransactionSpans transactionSpans, long received) {	
 				
 		// get server tx wrapper
 		ServerTransactionWrapper stw = null;
@@ -480,13 +1098,20 @@ public class SipResourceAdaptor implements
 				stw = new ServerTransactionWrapper(st, this);
 			}
 		}
+		if (transactionSpans != null && !stw.isAckTransaction()) {
+			transactionSpans.serverTransactionStarted(stw, received);
+		}
 		
 		Wrapper activity = dw;
 		if (activity == null) {
-			activity = stw;
-			stw.setActivity(true);
-			addActivity(activity);
+			activity = getSharedActivity(req.getRequest());
+			if (activity == null) {
+				activity = stw;
+				stw.setActivity(true);
+				addActivity(activity);
+			}
 		}
+		stw.markSpan(TransactionSpan.SERVER_ACTIVITY);
 		
 		int eventFlags = DEFAULT_EVENT_FLAGS;
 		if (stw.isAckTransaction()) {
@@ -495,9 +1120,8 @@ public class SipResourceAdaptor implements
 		}				
 		
 		final FireableEventType eventType = eventIdCache.getEventId(eventLookupFacility, req.getRequest(), dw != null);
-		final RequestEventWrapper rew = new RequestEventWrapper(this.providerWrapper,stw,dw,req.getRequest());
 		
-		if (eventIDFilter.filterEvent(eventType)) {
+		if (filterEvent(eventType, req.getRequest())) {
 			if (tracer.isFineEnabled()) {
 				tracer.fine("Event " + (eventType==null?"null":eventType.getEventType()) + " filtered");
 			}
@@ -509,8 +1133,15 @@ public class SipResourceAdaptor implements
 			}
 			processTransactionTerminated(stw);
 		} else {
+			// stop INVITE retransmissions right away, instead of waiting for the SBB's response
+			final boolean tryingSent = automaticTrying && sendAutomaticTrying(stw, req.getRequest());
+			final boolean finalResponseSent = dw != null && (dw.getAutomaticActions() & DialogActivity.AUTOMATIC_BYE_RESPONSE) != 0
+					&& sendAutomaticByeResponse(stw, req.getRequest());
+			final RequestEventWrapper rew = new RequestEventWrapper(this.providerWrapper,stw,dw,req.getRequest(),tryingSent,finalResponseSent);
 			try {
-				fireEvent(activity.getActivityHandle(), eventType, rew, activity.getEventFiringAddress(), eventFlags);			
+				// shared activities have no address, the request's server tx has
+				fireEvent(activity.getActivityHandle(), eventType, rew, getEventFiringAddress(dw != null ? dw : stw, eventType), eventFlags);			
+				stw.markSpan(TransactionSpan.SERVER_FIRED);
 			} catch (Throwable e) {
 				// event not fired due to error, let's trace and cleanup state
 				tracer.severe("Failed to fire event",e);
@@ -532,6 +1163,16 @@ public class SipResourceAdaptor implements
 	public void processResponse(ResponseEvent responseEvent) {
 				
 		final ResponseEventExt responseEventExt = (ResponseEventExt)responseEvent;
+		recordFlightEvent(FlightRecorderEvents.RESPONSE_RECEIVED, responseEventExt.getResponse(), null);
+		peerReached(responseEventExt.getRemoteIpAddress(), responseEventExt.getRemotePort(),
+				((SIPResponse) responseEventExt.getResponse()).getTopmostVia().getTransport());
+		
+		// responses to requests forwarded statelessly have no tx, and are relayed right away
+		final StatelessForwarder statelessForwarder = this.statelessForwarder;
+		if (responseEventExt.getClientTransaction() == null && statelessForwarder != null
+				&& statelessForwarder.relayResponse(responseEventExt.getResponse())) {
+			return;
+		}
 		
 		if (responseEventExt.isRetransmission() && responseEventExt.getDialog() != null) {
 			if (tracer.isInfoEnabled()) {
@@ -559,6 +1200,23 @@ public class SipResourceAdaptor implements
 		ClientTransactionWrapper ctw = null;
 		final Dialog d = responseEventExt.getDialog();
 		DialogWrapper dw = getDialogWrapper(d);
+		if (dw != null) {
+			dw.touch();
+			if (dw.updateSessionInterval(response)) {
+				sessionIntervalUpdated(dw);
+			}
+			dialogUpdated(dw);
+		}
+		final ClientTransaction ct = responseEventExt.getClientTransaction();
+		if (ct != null && ct.getApplicationData() instanceof ClientTransactionOutcomeListener) {
+			// client tx which is not an activity, only the outcome is handled, and the provisional responses of proxy branches
+			if (response.getStatusCode() > 199) {
+				((ClientTransactionOutcomeListener) ct.getApplicationData()).transactionCompleted(response, response.getStatusCode());
+			} else if (ct.getApplicationData() instanceof ProxyContext.Branch) {
+				((ProxyContext.Branch) ct.getApplicationData()).transactionProceeding(response);
+			}
+			return;
+		}
 		if (dw != null && dw.isClientDialog()) {			
 			final ClientDialogWrapper cdw = (ClientDialogWrapper) dw;			
 			if (cdw.getState() == DialogState.CONFIRMED) {
@@ -581,20 +1239,17 @@ public class SipResourceAdaptor implements
 		}
 		
 		SipActivityHandle handle = null;
-		Address address = null;
+		Wrapper addressActivity = null;
 		FireableEventType eventType = null;
-		Object event = null;
 		boolean requestEventUnreferenced = false;
 		
-		final ClientTransaction ct = responseEventExt.getClientTransaction();
 		if (ct == null) {
 			// no client tx
 		    if (dw != null) {
 		        // the dialog exists, thus confirmed, ignore the fact that there is no client tx
-		        event = new ResponseEventWrapper(this.providerWrapper, null, dw, response);
 		        eventType = eventIdCache.getEventId(eventLookupFacility, response);
 		        handle = dw.getActivityHandle();
-		        address = dw.getEventFiringAddress();
+		        addressActivity = dw;
 		    }
 		    else {
 		        if (tracer.isInfoEnabled()) {
@@ -615,8 +1270,12 @@ public class SipResourceAdaptor implements
 			if (tracer.isFineEnabled()) {
 				tracer.fine("Received "+response.getStatusCode()+" response on existent client transaction "+ctw.getActivityHandle());
 			}
-			// get address where to fire event
-			address = ctw.getEventFiringAddress();
+			final TransactionSpans transactionSpans = this.transactionSpans;
+			if (transactionSpans != null) {
+				transactionSpans.clientTransactionResponse(ctw, response);
+			}
+			// the address where to fire event is the one of the client tx
+			addressActivity = ctw;
 			// determine what is the handle
 			if (dw != null) {
 				handle = dw.getActivityHandle();
@@ -629,28 +1288,72 @@ public class SipResourceAdaptor implements
 			else {
 				handle = ctw.getActivityHandle();
 			}
-			// create event and type
-			event = new ResponseEventWrapper(this.providerWrapper, ctw, dw, response);
+			// event type, the event itself is only created when fired
 			eventType = eventIdCache.getEventId(eventLookupFacility, response);		
+			// apply the provisional responses suppression
+			ProvisionalSuppressor suppressor = ctw.getProvisionalSuppressor();
+			if (suppressor == null && provisionalSuppression.getMode() != ProvisionalSuppression.Mode.NONE) {
+				suppressor = createProvisionalSuppressor(provisionalSuppression);
+				ctw.setProvisionalSuppressor(suppressor);
+			}
+			if (suppressor != null) {
+				final SipActivityHandle heldHandle = handle;
+				final FireableEventType heldEventType = eventType;
+				final ClientTransactionWrapper heldCtw = ctw;
+				final DialogWrapper heldDw = dw;
+				final Wrapper heldAddressActivity = addressActivity;
+				final Runnable delivery = new Runnable() {
+					public void run() {
+						fireResponseEvent(heldHandle, heldEventType, heldCtw, heldDw, heldAddressActivity, response, false);
+					}
+				};
+				if (!suppressor.responseReceived(response, delivery, System.currentTimeMillis())) {
+					if (tracer.isFineEnabled()) {
+						tracer.fine("Suppressed or held "+response.getStatusCode()+" response on client transaction "+ctw.getActivityHandle());
+					}
+					return;
+				}
+			}
 		}
 
+		fireResponseEvent(handle, eventType, ctw, dw, addressActivity, response, requestEventUnreferenced);
+	}
+
+	/**
+	 * Fires the event of a response received on a client transaction or
+	 * dialog, unless filtered. The event, and with it the automatic ACK, is
+	 * only created once the response is going to be fired.
+	 * 
+	 * @param handle
+	 * @param eventType
+	 * @param ctw
+	 * @param dw
+	 * @param addressActivity
+	 * @param response
+	 * @param requestEventUnreferenced
+	 */
+	private void fireResponseEvent(SipActivityHandle handle, FireableEventType eventType, ClientTransactionWrapper ctw,
+			DialogWrapper dw, Wrapper addressActivity, Response response, boolean requestEventUnreferenced) {
+
 		int eventFlags = DEFAULT_EVENT_FLAGS;
 		if (requestEventUnreferenced) {
 			eventFlags = UNREFERENCED_EVENT_FLAGS;
 		}
 
-		if (eventIDFilter.filterEvent(eventType)) {
+		if (filterEvent(eventType, response)) {
 			if (tracer.isInfoEnabled()) {
 				tracer.info("Event " + (eventType == null?"null":eventType.getEventType()) + " filtered");
 			}
 			// event filtered
 			if (requestEventUnreferenced) {
 				// event was filtered, consider it is unreferenced now
-				processResponseEventUnreferenced((ResponseEventWrapper)event);
+				processResponseEventUnreferenced(ctw);
 			}
 		} else {
+			final ResponseEventWrapper event = new ResponseEventWrapper(this.providerWrapper, ctw, dw, response,
+					sendAutomaticAck(dw, response));
 			try {
-				fireEvent(handle, eventType, event, address,eventFlags);
+				fireEvent(handle, eventType, event, getEventFiringAddress(addressActivity, eventType),eventFlags);
 			}
 			catch (UnrecognizedActivityHandleException e) {
 				tracer.warning("Failed to fire event "+eventType+", the activity "+handle+" does not exists in the SLEE");			
@@ -659,7 +1362,7 @@ public class SipResourceAdaptor implements
 				// event not fired due to error
 				if (requestEventUnreferenced) {
 					// consider event is unreferenced now
-					processResponseEventUnreferenced((ResponseEventWrapper)event);
+					processResponseEventUnreferenced(ctw);
 				}
 			}
 		}
@@ -674,9 +1377,13 @@ public class SipResourceAdaptor implements
 		SipActivityHandle handle = null;
 		FireableEventType eventType = null;
 		Object event = null;
+		ClientTransaction responseTransaction = null;
 		
 		final Dialog forkedDialog = responseEventExt.getDialog();
 		DialogWrapper forkedDialogWrapper = getDialogWrapper(forkedDialog);
+		if (forkedDialogWrapper != null) {
+			forkedDialogWrapper.touch();
+		}
 		final DialogState forkedDialogState = forkedDialog.getState();
 		
 		final SIPClientTransaction originalClientTransaction = (SIPClientTransaction) responseEventExt.getOriginalTransaction();
@@ -696,7 +1403,10 @@ public class SipResourceAdaptor implements
 					final DialogWithIdActivityHandle forkedDialogHandle = new DialogWithIdActivityHandle(forkedDialog.getDialogId());
 					forkedDialogWrapper = new DialogWrapper(forkedDialogHandle, this);
 					forkedDialogWrapper.setWrappedDialog(forkedDialog);
+					forkedDialogWrapper.setAutomaticActions(originalDialogWrapper.getAutomaticActions());
+					forkedDialogWrapper.setFork(true);
 					addActivity(forkedDialogWrapper);
+					recordFlightEvent(FlightRecorderEvents.DIALOG_FORKED, responseEventExt.getResponse(), forkedDialogHandle);
 					// fire dialog fork event in original dialog activity
 					handle = originalDialogWrapper.getActivityHandle();
 					event = new DialogForkedEvent(responseEventExt.getSource(), (ClientTransaction) getTransactionWrapper(originalClientTransaction), originalDialogWrapper, forkedDialogWrapper, responseEventExt.getResponse());			
@@ -721,7 +1431,10 @@ public class SipResourceAdaptor implements
 					final DialogWithIdActivityHandle forkedDialogHandle = new DialogWithIdActivityHandle(forkedDialog.getDialogId());
 					forkedDialogWrapper = new DialogWrapper(forkedDialogHandle, this);
 					forkedDialogWrapper.setWrappedDialog(forkedDialog);
+					forkedDialogWrapper.setAutomaticActions(originalDialogWrapper.getAutomaticActions());
+					forkedDialogWrapper.setFork(true);
 					addActivity(forkedDialogWrapper);
+					recordFlightEvent(FlightRecorderEvents.DIALOG_FORKED, responseEventExt.getResponse(), forkedDialogHandle);
 					// fire dialog fork event in original dialog activity
 					handle = originalDialogWrapper.getActivityHandle();
 					event = new DialogForkedEvent(responseEventExt.getSource(), (ClientTransaction) getTransactionWrapper(originalClientTransaction), originalDialogWrapper, forkedDialogWrapper, responseEventExt.getResponse());			
@@ -754,7 +1467,7 @@ public class SipResourceAdaptor implements
 					}
 					// fire normal event on forked dialog activity
 					handle = forkedDialogWrapper.getActivityHandle();
-					event = new ResponseEventWrapper(responseEventExt.getSource(),(ClientTransaction) getTransactionWrapper(originalClientTransaction),forkedDialogWrapper, responseEventExt.getResponse());			
+					responseTransaction = (ClientTransaction) getTransactionWrapper(originalClientTransaction);
 					eventType = eventIdCache.getEventId(eventLookupFacility, responseEventExt.getResponse());
 				}
 				else {
@@ -770,21 +1483,24 @@ public class SipResourceAdaptor implements
 			else {
 				// not yet confirmed, fire normal event on forked dialog activity
 				handle = forkedDialogWrapper.getActivityHandle();
-				event = new ResponseEventWrapper(responseEventExt.getSource(),(ClientTransaction) getTransactionWrapper(originalClientTransaction),forkedDialogWrapper, responseEventExt.getResponse());			
+				responseTransaction = (ClientTransaction) getTransactionWrapper(originalClientTransaction);
 				eventType = eventIdCache.getEventId(eventLookupFacility, responseEventExt.getResponse());
 			}
 		}
 		
-		// address is common for both dialogs
-		final Address address = forkedDialogWrapper.getEventFiringAddress();;
-
-		if (eventIDFilter.filterEvent(eventType)) {
+		if (filterEvent(eventType, responseEventExt.getResponse())) {
 			if (tracer.isInfoEnabled()) {
 				tracer.info("Event " + (eventType == null?"null":eventType.getEventType()) + " filtered");
 			}
 		} else {
+			if (event == null) {
+				// response event on the forked dialog, only now the automatic ACK may be sent
+				event = new ResponseEventWrapper(responseEventExt.getSource(), responseTransaction, forkedDialogWrapper,
+						responseEventExt.getResponse(), sendAutomaticAck(forkedDialogWrapper, responseEventExt.getResponse()));
+			}
 			try {
-				fireEvent(handle, eventType, event, address, DEFAULT_EVENT_FLAGS);			
+				// address is common for both dialogs
+				fireEvent(handle, eventType, event, getEventFiringAddress(forkedDialogWrapper, eventType), DEFAULT_EVENT_FLAGS);			
 			} 
 			catch (UnrecognizedActivityHandleException e) {
 				tracer.warning("Failed to fire event "+eventType+", the activity "+handle+" does not exists in the SLEE");			
@@ -915,6 +1631,11 @@ public class SipResourceAdaptor implements
 						+ " timer expired");			
 		}
 		
+		if (t.getApplicationData() instanceof ClientTransactionOutcomeListener) {
+			((ClientTransactionOutcomeListener) t.getApplicationData()).transactionCompleted(null, Response.REQUEST_TIMEOUT);
+			return;
+		}
+		
 		TransactionWrapper tw = getTransactionWrapper(t);
 		if (tw == null) {
 			if (tracer.isInfoEnabled()) {
@@ -922,6 +1643,19 @@ public class SipResourceAdaptor implements
 			}
 			return;
 		}
+		if (!timeoutEvent.isServerTransaction() && timeoutEvent.getTimeout() == Timeout.TRANSACTION
+				&& tw instanceof ClientTransactionWrapper) {
+			final ClientTransactionWrapper ctw = (ClientTransactionWrapper) tw;
+			final PeerPoolImpl.Member member = ctw.getPeerPoolMember();
+			final PeerPools peerPools = this.peerPools;
+			if (member != null && peerPools != null) {
+				peerPools.transactionTimedOut(member);
+			}
+			if (failover(ctw)) {
+				return;
+			}
+		}
+		recordFlightEvent(FlightRecorderEvents.TRANSACTION_TIMEOUT, t.getRequest(), tw.getActivityHandle());
 		
 		final TimeoutEventWrapper tew;
 		if (timeoutEvent.isServerTransaction()) {
@@ -935,10 +1669,10 @@ public class SipResourceAdaptor implements
 		final DialogWrapper dw = getDialogWrapper(d);
 		final FireableEventType eventType = eventIdCache.getTransactionTimeoutEventId(
 				eventLookupFacility, dw != null);
-		if (!eventIDFilter.filterEvent(eventType)) {
+		if (!filterEvent(eventType, t.getRequest())) {
 			Wrapper activity = tw.isActivity() ? tw : dw;			
 			try {
-				fireEvent(activity.getActivityHandle(), eventType, tew, activity.getEventFiringAddress(),DEFAULT_EVENT_FLAGS);
+				fireEvent(activity.getActivityHandle(), eventType, tew, getEventFiringAddress(activity, eventType),DEFAULT_EVENT_FLAGS);
 			}
 			catch (UnrecognizedActivityHandleException e) {
 				tracer.warning("Failed to fire event "+eventType+", the activity "+activity+" does not exists in the SLEE");			
@@ -973,6 +1707,12 @@ public class SipResourceAdaptor implements
 			t = txTerminatedEvent.getClientTransaction();
 		}
 		
+		if (t.getApplicationData() instanceof ClientTransactionOutcomeListener) {
+			// no-op if a final response was received, otherwise the request failed
+			((ClientTransactionOutcomeListener) t.getApplicationData()).transactionCompleted(null, Response.SERVICE_UNAVAILABLE);
+			return;
+		}
+
 		final TransactionWrapper tw = getTransactionWrapper(t);
 		if (tw != null) {
 			if (tracer.isInfoEnabled()) {
@@ -988,6 +1728,18 @@ public class SipResourceAdaptor implements
 	}
 
 	private void processTransactionTerminated(TransactionWrapper tw) {
+		if (tw.isClientTransaction()) {
+			locatedTransactions.remove(tw);
+			final PeerPoolImpl.Member member = ((ClientTransactionWrapper) tw).removePeerPoolMember();
+			if (member != null) {
+				final SIPTransaction t = (SIPTransaction) ((ClientTransactionWrapper) tw).getWrappedTransaction();
+				member.transactionEnded(t != null && t.getLastResponse() != null);
+			}
+		}
+		final TransactionSpans transactionSpans = this.transactionSpans;
+		if (transactionSpans != null) {
+			transactionSpans.transactionTerminated(tw);
+		}
 		tw.terminated();
 		if (tw.isActivity()) {
 			endActivity(tw);
@@ -1023,6 +1775,10 @@ public class SipResourceAdaptor implements
 	 * @param dw
 	 */
 	public void processDialogTerminated(DialogWrapper dw) {
+		final DialogJournal dialogJournal = this.dialogJournal;
+		if (dialogJournal != null && dw.getActivityHandle() instanceof DialogWithIdActivityHandle) {
+			dialogJournal.remove(((DialogWithIdActivityHandle) dw.getActivityHandle()).getDialogId());
+		}
 		if (!dw.isEnding()) {
 			if (tracer.isInfoEnabled()) {
 				tracer.info("SIP Dialog " + dw.getActivityHandle() + " terminated");
@@ -1042,24 +1798,7 @@ public class SipResourceAdaptor implements
     	if (d != null) {
 			DialogWrapper dw = getDialogWrapper(d);
 			if (dw != null) {
-				final FireableEventType eventType = eventIdCache
-								.getDialogTimeoutEventId(eventLookupFacility);
-				final DialogTimeoutEvent event = new DialogTimeoutEvent(dw);
-				if (!eventIDFilter.filterEvent(eventType)) {
-					try {
-						fireEvent(dw.getActivityHandle(), eventType, event,
-								  dw.getEventFiringAddress(), DEFAULT_EVENT_FLAGS);
-					} catch (UnrecognizedActivityHandleException e) {
-						tracer.warning("Failed to fire event " + eventType +
-								", the activity " + dw + " does not exists in the SLEE");
-					} catch (Throwable e) {
-						tracer.severe("Failed to fire event", e);
-					}
-				} else {
-					if (tracer.isFineEnabled()) {
-						tracer.fine("Event " + eventType + " filtered.");
-					}
-				}
+				fireDialogTimeout(dw);
 			} else {
 				if (tracer.isFineEnabled()) {
 					tracer.fine("DialogTimoutEvent dropped due to null app data.");
@@ -1068,6 +1807,191 @@ public class SipResourceAdaptor implements
     	}
     }
 
+	/**
+	 * Fires the completion event of a bulk fan-out, and ends its activity.
+	 * @param activity
+	 */
+	public void processBulkRequestCompleted(BulkRequestActivityWrapper activity) {
+		final BulkRequestCompletedEvent event = activity.createCompletedEvent();
+		if (tracer.isFineEnabled()) {
+			tracer.fine(activity + " completed: " + event);
+		}
+		final FireableEventType eventType = eventIdCache.getBulkRequestCompletedEventId(eventLookupFacility, event.getFailed() > 0);
+		if (!filterEvent(eventType, null)) {
+			try {
+				fireEvent(activity.getActivityHandle(), eventType, event, null, DEFAULT_EVENT_FLAGS);
+			} catch (UnrecognizedActivityHandleException e) {
+				tracer.warning("Failed to fire event " + eventType + ", the activity " + activity + " does not exists in the SLEE");
+			} catch (Throwable e) {
+				tracer.severe("Failed to fire event", e);
+			}
+		}
+		if (!endActivity(activity)) {
+			tracer.warning("Failed to end " + activity);
+		}
+	}
+
+	/**
+	 * Accounts the outcome of a client tx which is not an activity, and fires
+	 * it on the outcome activity, if any.
+	 * @param appData
+	 * @param response
+	 * @param statusCode
+	 */
+	public void processClientTransactionOutcome(ActivitylessClientTransactionAppData appData, Response response, int statusCode) {
+		final boolean failed = statusCode < 200 || statusCode > 299;
+		statistics.incrementActivitylessRequests(failed);
+		final SipActivityHandle handle = appData.getOutcomeActivityHandle();
+		if (handle == null) {
+			return;
+		}
+		final FireableEventType eventType = eventIdCache.getClientTransactionOutcomeEventId(eventLookupFacility, failed);
+		if (!filterEvent(eventType, response)) {
+			final ClientTransactionOutcomeEvent event = new ClientTransactionOutcomeEvent(appData.getRequest(), response, statusCode);
+			try {
+				fireEvent(handle, eventType, event, null, DEFAULT_EVENT_FLAGS);
+			} catch (UnrecognizedActivityHandleException e) {
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Failed to fire event " + eventType + ", the outcome activity " + handle + " does not exists in the SLEE");
+				}
+			} catch (Throwable e) {
+				tracer.severe("Failed to fire event", e);
+			}
+		}
+	}
+
+	/**
+	 * Fires a response forwarded by the proxy core on the proxied server tx activity.
+	 * @param stw
+	 * @param event
+	 */
+	public void processProxyResponse(ServerTransactionWrapper stw, ProxyResponseEvent event) {
+		final FireableEventType eventType = eventIdCache.getProxyResponseEventId(eventLookupFacility, event.getResponse().getStatusCode());
+		if (!filterEvent(eventType, event.getResponse())) {
+			try {
+				fireEvent(stw.getActivityHandle(), eventType, event, stw.getEventFiringAddress(), DEFAULT_EVENT_FLAGS);
+			} catch (UnrecognizedActivityHandleException e) {
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Failed to fire event " + eventType + ", the activity " + stw + " does not exists in the SLEE");
+				}
+			} catch (Throwable e) {
+				tracer.severe("Failed to fire event", e);
+			}
+		}
+	}
+
+	private void fireDialogTimeout(DialogWrapper dw) {
+		final FireableEventType eventType = eventIdCache
+						.getDialogTimeoutEventId(eventLookupFacility);
+		final DialogTimeoutEvent event = new DialogTimeoutEvent(dw);
+		if (!filterEvent(eventType, null)) {
+			try {
+				fireEvent(dw.getActivityHandle(), eventType, event,
+						  getEventFiringAddress(dw, eventType), DEFAULT_EVENT_FLAGS);
+			} catch (UnrecognizedActivityHandleException e) {
+				tracer.warning("Failed to fire event " + eventType +
+						", the activity " + dw + " does not exists in the SLEE");
+			} catch (Throwable e) {
+				tracer.severe("Failed to fire event", e);
+			}
+		} else {
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Event " + eventType + " filtered.");
+			}
+		}
+	}
+
+	/**
+	 * Processes a dialog found idle by the {@link IdleDialogReaper}, firing a
+	 * {@link DialogTimeoutEvent} and, if configured, sending BYE and ending
+	 * the dialog activity.
+	 * 
+	 * @param dw
+	 * @return true if the dialog activity was ended
+	 */
+	boolean processDialogIdle(DialogWrapper dw) {
+		if (tracer.isInfoEnabled()) {
+			tracer.info("SIP Dialog " + dw.getActivityHandle() + " idle");
+		}
+		fireDialogTimeout(dw);
+		if (!idleDialogBye) {
+			return false;
+		}
+		final Dialog d = dw.getWrappedDialog();
+		if (d != null) {
+			try {
+				if (d.getState() == DialogState.CONFIRMED) {
+					final Request bye = d.createRequest(Request.BYE);
+					if (tracer.isInfoEnabled()) {
+						tracer.info("Sending request:\n"+bye);
+					}
+					// NOTE: Do not use provider wrapper here, would create activity
+					d.sendRequest(provider.getNewClientTransaction(bye));
+				} else {
+					d.delete();
+				}
+			} catch (Throwable e) {
+				tracer.warning("Failed to release idle dialog " + dw.getActivityHandle(), e);
+			}
+		}
+		processDialogTerminated(dw);
+		return true;
+	}
+
+	/**
+	 * Informs the RA that the RFC 4028 session interval of a dialog changed.
+	 * 
+	 * @param dw
+	 */
+	public void sessionIntervalUpdated(DialogWrapper dw) {
+		final IdleDialogReaper idleDialogReaper = this.idleDialogReaper;
+		if (idleDialogReaper != null) {
+			idleDialogReaper.sessionIntervalUpdated(dw);
+		}
+	}
+
+	/**
+	 * Retrieves the shared activity where the specified out of dialog request
+	 * is fired, requests with the same Call-ID always go to the same activity.
+	 * 
+	 * @param request
+	 * @return null if the request method is not configured to use shared
+	 *         activities
+	 */
+	private SharedRequestActivityWrapper getSharedActivity(Request request) {
+		final SharedRequestActivityWrapper[] sharedActivities = this.sharedActivities;
+		if (sharedActivities == null || !sharedActivityMethods.contains(request.getMethod())) {
+			return null;
+		}
+		final String callId = ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId();
+		return sharedActivities[(callId.hashCode() & Integer.MAX_VALUE) % sharedActivities.length];
+	}
+
+	/**
+	 * Parses the shared activity methods config property, a list of methods
+	 * separated with ",". Methods of requests which may create dialogs, and
+	 * ACK or CANCEL, are not allowed.
+	 * 
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static Set<String> parseSharedActivityMethods(String value) throws IllegalArgumentException {
+		final Set<String> methods = new HashSet<String>();
+		for (String method : value.split(",")) {
+			method = method.trim().toUpperCase();
+			if (method.length() == 0) {
+				continue;
+			}
+			if (method.equals(Request.INVITE) || method.equals(Request.ACK) || method.equals(Request.CANCEL)
+					|| method.equals(Request.SUBSCRIBE) || method.equals(Request.REFER)) {
+				throw new IllegalArgumentException(SHARED_ACTIVITY_METHODS+" config property with invalid method: "+method);
+			}
+			methods.add(method);
+		}
+		return methods;
+	}
+
     // *************** Event Life cycle
 
     /**
@@ -1096,6 +2020,12 @@ public class SipResourceAdaptor implements
 			return false;
 		}
 		activityManagement.put(wrapperActivity.getActivityHandle(), wrapperActivity);
+		introspection.activityStarted(wrapperActivity);
+		recordFlightEvent(FlightRecorderEvents.ACTIVITY_STARTED, null, wrapperActivity.getActivityHandle());
+		final IdleDialogReaper idleDialogReaper = this.idleDialogReaper;
+		if (idleDialogReaper != null && wrapperActivity.isDialog()) {
+			idleDialogReaper.dialogStarted((DialogWrapper) wrapperActivity);
+		}
 		return true;
 	}
 	
@@ -1126,6 +2056,12 @@ public class SipResourceAdaptor implements
 			return false;
 		}
 		activityManagement.put(wrapperActivity.getActivityHandle(), wrapperActivity);
+		introspection.activityStarted(wrapperActivity);
+		recordFlightEvent(FlightRecorderEvents.ACTIVITY_STARTED, null, wrapperActivity.getActivityHandle());
+		final IdleDialogReaper idleDialogReaper = this.idleDialogReaper;
+		if (idleDialogReaper != null && wrapperActivity.isDialog()) {
+			idleDialogReaper.dialogStarted((DialogWrapper) wrapperActivity);
+		}
 		return true;
 	}
 
@@ -1153,7 +2089,7 @@ public class SipResourceAdaptor implements
 			boolean created = false;
 			for (String trans : transports) {
 				ListeningPoint lp = this.sipStack.createListeningPoint(
-						this.stackAddress, this.port, trans);
+						this.stackAddress, tlsPort > 0 && ListeningPoint.TLS.equalsIgnoreCase(trans) ? tlsPort : this.port, trans);
 				if (!created) {
 					this.provider = this.sipStack.createSipProvider(lp);
 					this.provider.addSipListener(this);
@@ -1167,8 +2103,155 @@ public class SipResourceAdaptor implements
 			AddressFactory addressFactory = sipFactory.createAddressFactory();
 			HeaderFactory headerFactory = sipFactory.createHeaderFactory();
 			MessageFactory messageFactory = sipFactory.createMessageFactory();
+			if (headerCacheSize > 0) {
+				final CachingHeaderFactory cachingHeaderFactory = new CachingHeaderFactory((HeaderFactoryExt) headerFactory, headerCacheSize);
+				try {
+					final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=HeaderCache,raEntity="+ObjectName.quote(raContext.getEntityName()));
+					ManagementFactory.getPlatformMBeanServer().registerMBean(cachingHeaderFactory, objectName);
+					this.headerCacheObjectName = objectName;
+				} catch (Throwable e) {
+					tracer.warning("Failed to register header cache mbean", e);
+				}
+				headerFactory = cachingHeaderFactory;
+			}
 
 			this.providerWrapper.raActive(addressFactory, headerFactory, messageFactory, sipStack, provider);
+			this.bulkRequestSender = new BulkRequestSender(providerWrapper, bulkRequestThreads, raContext.getSleeTransactionManager(), tracer);
+			this.statelessForwarder = new StatelessForwarder(providerWrapper, tracer);
+			this.forkingProxy = new ForkingProxy(this, providerWrapper, raContext.getTimer());
+			this.peerHealthTable = new PeerHealthTable(PeerHealthTable.DEFAULT_CAPACITY);
+			if (serverLocatorEnabled) {
+				final DnsResolver resolver = serverLocatorResolver != null ? (DnsResolver) Class.forName(serverLocatorResolver).newInstance()
+						: new JndiDnsResolver();
+				final Set<String> locatorTransports = new HashSet<String>();
+				for (String transport : transports) {
+					locatorTransports.add(transport.toUpperCase());
+				}
+				this.serverLocator = new ServerLocatorImpl(resolver, locatorTransports, serverLocatorNegativeTtl, peerHealthTable, tracer);
+				this.serverLocator.install(sipStack);
+			}
+			this.providerWrapper.setViaAlias(viaAlias);
+			this.providerWrapper.setNodeAffinity(nodeAffinity);
+			this.peerPools = new PeerPools(peerPoolsConfig, peerPoolMaxFailures, peerPoolProbeInterval, providerWrapper, tracer);
+			this.peerPools.start();
+
+			if (dialogJournalFile != null) {
+				final DialogJournal dialogJournal = new DialogJournal(new File(dialogJournalFile), dialogJournalSize * 1024 * 1024, dialogJournalCompactionInterval, tracer);
+				final List<DialogJournal.Entry> entries = dialogJournal.open();
+				if (!entries.isEmpty()) {
+					recoverDialogs(entries, messageFactory);
+				}
+				try {
+					final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=DialogJournal,raEntity="+ObjectName.quote(raContext.getEntityName()));
+					ManagementFactory.getPlatformMBeanServer().registerMBean(dialogJournal, objectName);
+					this.dialogJournalObjectName = objectName;
+				} catch (Throwable e) {
+					tracer.warning("Failed to register dialog journal mbean", e);
+				}
+				this.dialogJournal = dialogJournal;
+			}
+
+			final TlsSessionManager tlsSessionManager = TlsSessionManager.getInstance(raContext.getEntityName());
+			if (tlsSessionManager != null) {
+				// size the session caches before any handshake
+				final int sslContexts = tlsSessionManager.configure(sipStack);
+				if (tracer.isFineEnabled()) {
+					tracer.fine("Configured the session caches of " + sslContexts + " TLS contexts");
+				}
+				try {
+					final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=TlsSessions,raEntity="+ObjectName.quote(raContext.getEntityName()));
+					ManagementFactory.getPlatformMBeanServer().registerMBean(tlsSessionManager, objectName);
+					this.tlsSessionManagerObjectName = objectName;
+				} catch (Throwable e) {
+					tracer.warning("Failed to register TLS session manager mbean", e);
+				}
+			}
+
+			if (keepalivePeers != null) {
+				final ConnectionKeeper connectionKeeper = new ConnectionKeeper(keepalivePeers, keepaliveInterval, this, provider, tracer);
+				try {
+					final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=ConnectionKeeper,raEntity="+ObjectName.quote(raContext.getEntityName()));
+					ManagementFactory.getPlatformMBeanServer().registerMBean(connectionKeeper, objectName);
+					this.connectionKeeperObjectName = objectName;
+				} catch (Throwable e) {
+					tracer.warning("Failed to register connection keeper mbean", e);
+				}
+				connectionKeeper.start();
+				this.connectionKeeper = connectionKeeper;
+			}
+
+			try {
+				final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=Introspection,raEntity="+ObjectName.quote(raContext.getEntityName()));
+				ManagementFactory.getPlatformMBeanServer().registerMBean(introspection, objectName);
+				this.introspectionObjectName = objectName;
+			} catch (Throwable e) {
+				tracer.warning("Failed to register introspection mbean", e);
+			}
+
+			if (rateLimit != null) {
+				final SourceRateLimiter rateLimiter = new SourceRateLimiter(rateLimit, rateLimitFromDomain, SourceRateLimiter.DEFAULT_CAPACITY);
+				try {
+					final ObjectName objectName = new ObjectName("org.mobicents.slee.resource.sip11:type=SourceRateLimiter,raEntity="+ObjectName.quote(raContext.getEntityName()));
+					ManagementFactory.getPlatformMBeanServer().registerMBean(rateLimiter, objectName);
+					this.rateLimiterObjectName = objectName;
+				} catch (Throwable e) {
+					tracer.warning("Failed to register rate limiter mbean", e);
+				}
+				this.rateLimiter = rateLimiter;
+			}
+
+			if (defaultUsageParameters != null) {
+				final SipResourceAdaptorStatisticsUsageParameters usageParameters = defaultUsageParameters;
+				final TimerTask statisticsFlushTask = new TimerTask() {
+					@Override
+					public void run() {
+						try {
+							statistics.flush(usageParameters);
+						} catch (Throwable e) {
+							tracer.warning("Failed to flush statistics", e);
+						}
+					}
+				};
+				raContext.getTimer().scheduleAtFixedRate(statisticsFlushTask, statisticsFlushPeriod, statisticsFlushPeriod);
+				this.statisticsFlushTask = statisticsFlushTask;
+			}
+
+			if (flightRecorderEventsEnabled) {
+				this.flightRecorderEvents = FlightRecorderEvents.create();
+				if (flightRecorderEvents == null && tracer.isFineEnabled()) {
+					tracer.fine("Flight Recorder events not supported by the JVM");
+				}
+			}
+
+			if (transactionSpanSampleRate > 0 || transactionSpanThreshold > 0) {
+				final TransactionSpanSink sink = transactionSpanSink != null ? (TransactionSpanSink) Class.forName(transactionSpanSink).newInstance() : new FileTransactionSpanSink();
+				String location = transactionSpanFile;
+				if (location == null && transactionSpanSink == null) {
+					location = new File(System.getProperty("jboss.server.log.dir", System.getProperty("java.io.tmpdir")), "sip11-" + raContext.getEntityName() + "-spans.bin").getPath();
+				}
+				sink.open(location);
+				this.transactionSpans = new TransactionSpans(sink, transactionSpanSampleRate, transactionSpanThreshold);
+				if (tracer.isInfoEnabled()) {
+					tracer.info("Emitting transaction spans to " + sink.getClass().getName() + (location != null ? " at " + location : ""));
+				}
+			}
+
+			if (idleDialogTimeout > 0) {
+				final IdleDialogReaper idleDialogReaper = new IdleDialogReaper(this, idleDialogTimeout * 1000L);
+				raContext.getTimer().scheduleAtFixedRate(idleDialogReaper, IdleDialogReaper.TICK, IdleDialogReaper.TICK);
+				this.idleDialogReaper = idleDialogReaper;
+			}
+
+			if (!sharedActivityMethods.isEmpty()) {
+				final SharedRequestActivityWrapper[] sharedActivities = new SharedRequestActivityWrapper[sharedActivitiesSize];
+				for (int i = 0; i < sharedActivities.length; i++) {
+					sharedActivities[i] = new SharedRequestActivityWrapper(i, this);
+					if (!addActivity(sharedActivities[i])) {
+						throw new IllegalStateException("failed to start shared activity "+i);
+					}
+				}
+				this.sharedActivities = sharedActivities;
+			}
 
 		} catch (Throwable ex) {
 			String msg = "error in initializing resource adaptor";
@@ -1231,6 +2314,13 @@ public class SipResourceAdaptor implements
 		if (sipTraceLevel != null) {
             properties.setProperty(SIP_TRACE_LEVEL, sipTraceLevel);
         }
+
+		if (transports.contains(ListeningPoint.TLS) || transports.contains("tls")) {
+			if (!properties.containsKey(TLS_SECURITY_MANAGER_PROVIDER)) {
+				properties.setProperty(TLS_SECURITY_MANAGER_PROVIDER, TlsSessionManager.class.getName());
+			}
+			properties.putAll(tlsProperties);
+		}
 		return properties;
 	}
 
@@ -1242,6 +2332,108 @@ public class SipResourceAdaptor implements
 	public synchronized void raInactive() {
 
 		this.provider.removeSipListener(this);
+
+		if (this.idleDialogReaper != null) {
+			this.idleDialogReaper.cancel();
+			this.idleDialogReaper = null;
+		}
+
+		if (this.statisticsFlushTask != null) {
+			this.statisticsFlushTask.cancel();
+			this.statisticsFlushTask = null;
+			try {
+				statistics.flush(defaultUsageParameters);
+			} catch (Throwable e) {
+				tracer.warning("Failed to flush statistics", e);
+			}
+		}
+
+		if (this.transactionSpans != null) {
+			this.transactionSpans.close();
+			this.transactionSpans = null;
+		}
+
+		if (this.flightRecorderEvents != null) {
+			this.flightRecorderEvents.close();
+			this.flightRecorderEvents = null;
+		}
+
+		if (this.bulkRequestSender != null) {
+			this.bulkRequestSender.shutdown();
+			this.bulkRequestSender = null;
+		}
+		this.statelessForwarder = null;
+		this.forkingProxy = null;
+		this.peerHealthTable = null;
+		if (this.serverLocator != null) {
+			this.serverLocator.shutdown();
+			this.serverLocator = null;
+		}
+		this.locatedTransactions.clear();
+		if (this.peerPools != null) {
+			this.peerPools.stop();
+			this.peerPools = null;
+		}
+		if (this.dialogJournal != null) {
+			final DialogJournal dialogJournal = this.dialogJournal;
+			this.dialogJournal = null;
+			dialogJournal.close();
+		}
+		if (this.dialogJournalObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.dialogJournalObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister dialog journal mbean", e);
+			}
+			this.dialogJournalObjectName = null;
+		}
+		if (this.connectionKeeper != null) {
+			this.connectionKeeper.stop();
+			this.connectionKeeper = null;
+		}
+		if (this.connectionKeeperObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.connectionKeeperObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister connection keeper mbean", e);
+			}
+			this.connectionKeeperObjectName = null;
+		}
+		if (this.tlsSessionManagerObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.tlsSessionManagerObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister TLS session manager mbean", e);
+			}
+			this.tlsSessionManagerObjectName = null;
+		}
+		TlsSessionManager.removeInstance(raContext.getEntityName());
+
+		this.rateLimiter = null;
+		if (this.rateLimiterObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.rateLimiterObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister rate limiter mbean", e);
+			}
+			this.rateLimiterObjectName = null;
+		}
+		if (this.headerCacheObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.headerCacheObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister header cache mbean", e);
+			}
+			this.headerCacheObjectName = null;
+		}
+		if (this.introspectionObjectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.introspectionObjectName);
+			} catch (Throwable e) {
+				tracer.warning("Failed to unregister introspection mbean", e);
+			}
+			this.introspectionObjectName = null;
+		}
 		
 		ListeningPoint[] listeningPoints = this.provider.getListeningPoints();
 		
@@ -1282,6 +2474,23 @@ public class SipResourceAdaptor implements
 		if (tracer.isFineEnabled()) {
 			tracer.fine("Object for entity named "+raContext.getEntityName()+" is stopping. "+activityManagement);
 		}
+
+		// the shared activities never end on their own
+		final SharedRequestActivityWrapper[] sharedActivities = this.sharedActivities;
+		if (sharedActivities != null) {
+			this.sharedActivities = null;
+			for (SharedRequestActivityWrapper sharedActivity : sharedActivities) {
+				endActivity(sharedActivity);
+			}
+		}
+
+		// neither the activities of failed peers
+		final PeerHealthTable peerHealthTable = this.peerHealthTable;
+		if (peerHealthTable != null) {
+			for (PeerActivityWrapper peerActivity : peerHealthTable.clear()) {
+				endActivity(peerActivity);
+			}
+		}
 		
 	}
 
@@ -1302,7 +2511,7 @@ public class SipResourceAdaptor implements
                 // if there is no tag, we must generate it
                 ToHeader toHeader = (ToHeader) txDoesNotExistsResponse.getHeader(ToHeader.NAME);
                 if (toHeader.getTag() == null) {
-                	toHeader.setTag(Utils.getInstance().generateTag());
+                	toHeader.setTag(providerWrapper.generateTag());
                 }
                 ServerTransactionWrapper stw = (ServerTransactionWrapper) getActivity(ah);
                 // provider.sendResponse(txDoesNotExistsResponse);
@@ -1336,7 +2545,7 @@ public class SipResourceAdaptor implements
 
 		if(event instanceof ResponseEventWrapper) {
 			final ResponseEventWrapper rew = (ResponseEventWrapper) event;
-			processResponseEventUnreferenced(rew);	
+			processResponseEventUnreferenced((ClientTransactionWrapper) rew.getClientTransaction());	
 		}
 		else if(event instanceof RequestEventWrapper) {
 			final RequestEventWrapper rew = (RequestEventWrapper) event;
@@ -1357,11 +2566,9 @@ public class SipResourceAdaptor implements
 	}
 	
 	/**
-	 * @param rew
+	 * @param ctw
 	 */
-	private void processResponseEventUnreferenced(ResponseEventWrapper rew) {
-		final ClientTransactionWrapper ctw = (ClientTransactionWrapper) rew
-				.getClientTransaction();
+	private void processResponseEventUnreferenced(ClientTransactionWrapper ctw) {
 		if (!ctw.isActivity()) {
 			// a client tx that is not activity must be removed from dialog here
 			final DialogWrapper dw = ctw.getDialogWrapper();
@@ -1436,6 +2643,183 @@ public class SipResourceAdaptor implements
         if (p != null && p.getValue() != null) {
             this.sipTraceLevel = (String) p.getValue();
         }
+
+		p = properties.getProperty(EVENT_FIRING_ADDRESS);
+		if (p != null && p.getValue() != null) {
+			this.eventFiringAddressFactory = new EventFiringAddressFactory((String) p.getValue());
+		}
+
+		p = properties.getProperty(AUTOMATIC_TRYING);
+		if (p != null && p.getValue() != null) {
+			this.automaticTrying = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(AUTOMATIC_DIALOG_ACTIONS);
+		if (p != null && p.getValue() != null) {
+			this.automaticDialogActions = parseAutomaticDialogActions((String) p.getValue());
+		}
+
+		p = properties.getProperty(RATE_LIMIT);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.rateLimit = (String) p.getValue();
+		}
+
+		p = properties.getProperty(RATE_LIMIT_FROM_DOMAIN);
+		if (p != null && p.getValue() != null) {
+			this.rateLimitFromDomain = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(RATE_LIMIT_DROP);
+		if (p != null && p.getValue() != null) {
+			this.rateLimitDrop = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(SHARED_ACTIVITY_METHODS);
+		if (p != null && p.getValue() != null) {
+			this.sharedActivityMethods = parseSharedActivityMethods((String) p.getValue());
+		}
+
+		p = properties.getProperty(SHARED_ACTIVITIES);
+		if (p != null && p.getValue() != null) {
+			this.sharedActivitiesSize = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(IDLE_DIALOG_TIMEOUT);
+		if (p != null && p.getValue() != null) {
+			this.idleDialogTimeout = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(IDLE_DIALOG_BYE);
+		if (p != null && p.getValue() != null) {
+			this.idleDialogBye = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(STATISTICS_FLUSH_PERIOD);
+		if (p != null && p.getValue() != null) {
+			this.statisticsFlushPeriod = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(TRANSACTION_SPAN_SAMPLE_RATE);
+		if (p != null && p.getValue() != null) {
+			this.transactionSpanSampleRate = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(TRANSACTION_SPAN_THRESHOLD);
+		if (p != null && p.getValue() != null) {
+			this.transactionSpanThreshold = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(TRANSACTION_SPAN_SINK);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.transactionSpanSink = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(TRANSACTION_SPAN_FILE);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.transactionSpanFile = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(FLIGHT_RECORDER_EVENTS);
+		if (p != null && p.getValue() != null) {
+			this.flightRecorderEventsEnabled = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(BULK_REQUEST_THREADS);
+		if (p != null && p.getValue() != null) {
+			this.bulkRequestThreads = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(HEADER_CACHE_SIZE);
+		if (p != null && p.getValue() != null) {
+			this.headerCacheSize = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(KEEPALIVE_PEERS);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.keepalivePeers = (String) p.getValue();
+		}
+
+		p = properties.getProperty(KEEPALIVE_INTERVAL);
+		if (p != null && p.getValue() != null) {
+			this.keepaliveInterval = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(VIA_ALIAS);
+		if (p != null && p.getValue() != null) {
+			this.viaAlias = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(TLS_PORT);
+		if (p != null && p.getValue() != null) {
+			this.tlsPort = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(SERVER_LOCATOR);
+		if (p != null && p.getValue() != null) {
+			this.serverLocatorEnabled = (Boolean) p.getValue();
+		}
+
+		p = properties.getProperty(SERVER_LOCATOR_RESOLVER);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.serverLocatorResolver = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(SERVER_LOCATOR_NEGATIVE_TTL);
+		if (p != null && p.getValue() != null) {
+			this.serverLocatorNegativeTtl = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(PEER_POOLS);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.peerPoolsConfig = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(PEER_POOL_MAX_FAILURES);
+		if (p != null && p.getValue() != null) {
+			this.peerPoolMaxFailures = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(PEER_POOL_PROBE_INTERVAL);
+		if (p != null && p.getValue() != null) {
+			this.peerPoolProbeInterval = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(DIALOG_JOURNAL);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.dialogJournalFile = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(DIALOG_JOURNAL_SIZE);
+		if (p != null && p.getValue() != null) {
+			this.dialogJournalSize = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(DIALOG_JOURNAL_COMPACTION_INTERVAL);
+		if (p != null && p.getValue() != null) {
+			this.dialogJournalCompactionInterval = (Integer) p.getValue();
+		}
+
+		p = properties.getProperty(NODE_AFFINITY);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.nodeAffinity = ((String) p.getValue()).trim();
+		}
+
+		p = properties.getProperty(PROVISIONAL_SUPPRESSION);
+		if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+			this.provisionalSuppression = ProvisionalSuppression.parse((String) p.getValue());
+		}
+
+		final Properties tlsProperties = new Properties();
+		addTlsProperty(properties, TLS_KEYSTORE, "javax.net.ssl.keyStore", tlsProperties);
+		addTlsProperty(properties, TLS_KEYSTORE_PASSWORD, "javax.net.ssl.keyStorePassword", tlsProperties);
+		addTlsProperty(properties, TLS_KEYSTORE_TYPE, "javax.net.ssl.keyStoreType", tlsProperties);
+		addTlsProperty(properties, TLS_TRUSTSTORE, "javax.net.ssl.trustStore", tlsProperties);
+		addTlsProperty(properties, TLS_TRUSTSTORE_PASSWORD, "javax.net.ssl.trustStorePassword", tlsProperties);
+		addTlsProperty(properties, TLS_PROTOCOLS, "gov.nist.javax.sip.TLS_CLIENT_PROTOCOLS", tlsProperties);
+		addTlsProperty(properties, TLS_CIPHER_SUITES, "gov.nist.javax.sip.ENABLED_CIPHER_SUITES", tlsProperties);
+		addTlsProperty(properties, TLS_SESSION_CACHE_SIZE, TLS_SESSION_CACHE_SIZE, tlsProperties);
+		addTlsProperty(properties, TLS_SESSION_TIMEOUT, TLS_SESSION_TIMEOUT, tlsProperties);
+		this.tlsProperties = tlsProperties;
         
 		tracer.info("RA entity named "+raContext.getEntityName()+" bound to port " + this.port);
 		
@@ -1449,6 +2833,77 @@ public class SipResourceAdaptor implements
 		this.port = -1;
 		this.stackAddress = null;
 		this.transports.clear();
+		this.eventFiringAddressFactory = new EventFiringAddressFactory(EventFiringAddressFactory.NAME_ADDR);
+		this.automaticTrying = false;
+		this.automaticDialogActions = 0;
+		this.rateLimit = null;
+		this.rateLimitFromDomain = false;
+		this.rateLimitDrop = false;
+		this.sharedActivityMethods = new HashSet<String>();
+		this.sharedActivitiesSize = DEFAULT_SHARED_ACTIVITIES;
+		this.idleDialogTimeout = 0;
+		this.idleDialogBye = false;
+		this.statisticsFlushPeriod = SipResourceAdaptorStatistics.DEFAULT_FLUSH_PERIOD;
+		this.transactionSpanSampleRate = 0;
+		this.transactionSpanThreshold = 0;
+		this.transactionSpanSink = null;
+		this.transactionSpanFile = null;
+		this.flightRecorderEventsEnabled = true;
+		this.bulkRequestThreads = BulkRequestSender.DEFAULT_THREADS;
+		this.headerCacheSize = CachingHeaderFactory.DEFAULT_CAPACITY;
+		this.keepalivePeers = null;
+		this.keepaliveInterval = ConnectionKeeper.DEFAULT_INTERVAL;
+		this.viaAlias = false;
+		this.tlsPort = 0;
+		this.tlsProperties = new Properties();
+		this.serverLocatorEnabled = false;
+		this.serverLocatorResolver = null;
+		this.serverLocatorNegativeTtl = ServerLocatorImpl.DEFAULT_NEGATIVE_TTL;
+		this.peerPoolsConfig = null;
+		this.peerPoolMaxFailures = PeerPools.DEFAULT_MAX_FAILURES;
+		this.peerPoolProbeInterval = PeerPools.DEFAULT_PROBE_INTERVAL;
+		this.dialogJournalFile = null;
+		this.dialogJournalSize = DialogJournal.DEFAULT_SIZE;
+		this.dialogJournalCompactionInterval = DialogJournal.DEFAULT_COMPACTION_INTERVAL;
+		this.nodeAffinity = null;
+		this.provisionalSuppression = ProvisionalSuppression.NONE;
+	}
+
+	/**
+	 * Copies a TLS config property, if set, to the stack properties.
+	 * @param properties
+	 * @param name
+	 * @param stackName
+	 * @param tlsProperties
+	 */
+	private static void addTlsProperty(ConfigProperties properties, String name, String stackName, Properties tlsProperties) {
+		final Property p = properties.getProperty(name);
+		if (p != null && p.getValue() != null && p.getValue().toString().trim().length() > 0) {
+			tlsProperties.setProperty(stackName, p.getValue().toString().trim());
+		}
+	}
+
+	/**
+	 * Parses the automatic dialog actions config property, a list of "bye", "ack" and "cancel" separated with ","
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException
+	 */
+	private static int parseAutomaticDialogActions(String value) throws IllegalArgumentException {
+		int actions = 0;
+		for (String action : value.split(",")) {
+			action = action.trim().toLowerCase();
+			if (action.equals("bye")) {
+				actions |= DialogActivity.AUTOMATIC_BYE_RESPONSE;
+			} else if (action.equals("ack")) {
+				actions |= DialogActivity.AUTOMATIC_ACK;
+			} else if (action.equals("cancel")) {
+				actions |= DialogActivity.AUTOMATIC_CANCEL_RESPONSE;
+			} else if (action.length() > 0) {
+				throw new IllegalArgumentException(AUTOMATIC_DIALOG_ACTIONS+" config property with invalid value: "+value);
+			}
+		}
+		return actions;
 	}
 	
 	/*
@@ -1496,6 +2951,154 @@ public class SipResourceAdaptor implements
 				throw new IllegalArgumentException(TRANSPORTS_BIND+" config property with invalid value: "+transports);
 			}
 			
+			// check event firing address format
+			Property p = properties.getProperty(EVENT_FIRING_ADDRESS);
+			if (p != null && p.getValue() != null) {
+				new EventFiringAddressFactory((String) p.getValue());
+			}
+
+			// check automatic dialog actions
+			p = properties.getProperty(AUTOMATIC_DIALOG_ACTIONS);
+			if (p != null && p.getValue() != null) {
+				parseAutomaticDialogActions((String) p.getValue());
+			}
+
+			// check rate limits
+			p = properties.getProperty(RATE_LIMIT);
+			if (p != null && p.getValue() != null) {
+				new SourceRateLimiter((String) p.getValue(), false, SourceRateLimiter.SET_SIZE);
+			}
+
+			// check shared activities
+			p = properties.getProperty(SHARED_ACTIVITY_METHODS);
+			if (p != null && p.getValue() != null) {
+				parseSharedActivityMethods((String) p.getValue());
+			}
+			p = properties.getProperty(SHARED_ACTIVITIES);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 1) {
+				throw new IllegalArgumentException(SHARED_ACTIVITIES+" config property with invalid value: "+p.getValue());
+			}
+
+			// check idle dialog timeout
+			p = properties.getProperty(IDLE_DIALOG_TIMEOUT);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(IDLE_DIALOG_TIMEOUT+" config property with invalid value: "+p.getValue());
+			}
+
+			// check statistics flush period
+			p = properties.getProperty(STATISTICS_FLUSH_PERIOD);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 1) {
+				throw new IllegalArgumentException(STATISTICS_FLUSH_PERIOD+" config property with invalid value: "+p.getValue());
+			}
+
+			// check bulk request threads
+			p = properties.getProperty(BULK_REQUEST_THREADS);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 1) {
+				throw new IllegalArgumentException(BULK_REQUEST_THREADS+" config property with invalid value: "+p.getValue());
+			}
+
+			// check header cache size
+			p = properties.getProperty(HEADER_CACHE_SIZE);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(HEADER_CACHE_SIZE+" config property with invalid value: "+p.getValue());
+			}
+
+			// check keepalive peers and interval
+			p = properties.getProperty(KEEPALIVE_PEERS);
+			if (p != null && p.getValue() != null) {
+				ConnectionKeeper.parsePeers((String) p.getValue());
+			}
+			p = properties.getProperty(KEEPALIVE_INTERVAL);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(KEEPALIVE_INTERVAL+" config property with invalid value: "+p.getValue());
+			}
+
+			// check tls
+			p = properties.getProperty(TLS_PORT);
+			if (p != null && p.getValue() != null && ((Integer) p.getValue() < 0 || (Integer) p.getValue() > 65535)) {
+				throw new IllegalArgumentException(TLS_PORT+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(TLS_SESSION_CACHE_SIZE);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(TLS_SESSION_CACHE_SIZE+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(TLS_SESSION_TIMEOUT);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(TLS_SESSION_TIMEOUT+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(SERVER_LOCATOR_RESOLVER);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0
+					&& !DnsResolver.class.isAssignableFrom(Class.forName(((String) p.getValue()).trim()))) {
+				throw new IllegalArgumentException(SERVER_LOCATOR_RESOLVER+" config property with invalid value, not a DnsResolver: "+p.getValue());
+			}
+			p = properties.getProperty(SERVER_LOCATOR_NEGATIVE_TTL);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(SERVER_LOCATOR_NEGATIVE_TTL+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(PEER_POOLS);
+			if (p != null && p.getValue() != null) {
+				PeerPools.parsePools((String) p.getValue());
+			}
+			p = properties.getProperty(PEER_POOL_MAX_FAILURES);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 1) {
+				throw new IllegalArgumentException(PEER_POOL_MAX_FAILURES+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(PEER_POOL_PROBE_INTERVAL);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(PEER_POOL_PROBE_INTERVAL+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(DIALOG_JOURNAL);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+				final File parent = new File(((String) p.getValue()).trim()).getAbsoluteFile().getParentFile();
+				if (parent == null || !parent.isDirectory()) {
+					throw new IllegalArgumentException(DIALOG_JOURNAL+" config property with invalid value, directory does not exist: "+p.getValue());
+				}
+			}
+			p = properties.getProperty(DIALOG_JOURNAL_SIZE);
+			if (p != null && p.getValue() != null && ((Integer) p.getValue() < 1 || (Integer) p.getValue() > 1024)) {
+				throw new IllegalArgumentException(DIALOG_JOURNAL_SIZE+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(DIALOG_JOURNAL_COMPACTION_INTERVAL);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 1) {
+				throw new IllegalArgumentException(DIALOG_JOURNAL_COMPACTION_INTERVAL+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(NODE_AFFINITY);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0
+					&& !NodeAffinity.isValidNode(((String) p.getValue()).trim())) {
+				throw new IllegalArgumentException(NODE_AFFINITY+" config property with invalid value, not 1 to "+NodeAffinity.MAX_NODE_LENGTH+" letters, digits or '-': "+p.getValue());
+			}
+			p = properties.getProperty(PROVISIONAL_SUPPRESSION);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+				ProvisionalSuppression.parse((String) p.getValue());
+			}
+			p = properties.getProperty(TLS_KEYSTORE);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0
+					&& !new File(((String) p.getValue()).trim()).isFile()) {
+				throw new IllegalArgumentException(TLS_KEYSTORE+" config property with invalid value, file not found: "+p.getValue());
+			}
+			p = properties.getProperty(TLS_TRUSTSTORE);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0
+					&& !new File(((String) p.getValue()).trim()).isFile()) {
+				throw new IllegalArgumentException(TLS_TRUSTSTORE+" config property with invalid value, file not found: "+p.getValue());
+			}
+
+			// check transaction spans
+			p = properties.getProperty(TRANSACTION_SPAN_SAMPLE_RATE);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(TRANSACTION_SPAN_SAMPLE_RATE+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(TRANSACTION_SPAN_THRESHOLD);
+			if (p != null && p.getValue() != null && (Integer) p.getValue() < 0) {
+				throw new IllegalArgumentException(TRANSACTION_SPAN_THRESHOLD+" config property with invalid value: "+p.getValue());
+			}
+			p = properties.getProperty(TRANSACTION_SPAN_SINK);
+			if (p != null && p.getValue() != null && ((String) p.getValue()).trim().length() > 0) {
+				final Class<?> sinkClass = Class.forName(((String) p.getValue()).trim());
+				if (!TransactionSpanSink.class.isAssignableFrom(sinkClass)) {
+					throw new IllegalArgumentException(TRANSACTION_SPAN_SINK+" config property with invalid value: "+p.getValue());
+				}
+			}
+
 			// verify existence of sipra.properties file
 			if (sipRaPropertiesLocation!=null) {
 				File f = new File(sipRaPropertiesLocation);
@@ -1510,6 +3113,23 @@ public class SipResourceAdaptor implements
 	}
 	
 	//	EVENT FILTERING
+
+	/**
+	 * Retrieves the address where an event of the specified type is fired on
+	 * the specified activity. The address is only used by the container to
+	 * select initial events, thus it is only computed if there is an active
+	 * service receiving the event type as initial event.
+	 * 
+	 * @param activity
+	 * @param eventType
+	 * @return
+	 */
+	private Address getEventFiringAddress(Wrapper activity, FireableEventType eventType) {
+		if (activity == null || eventFiringAddressFactory.isNone() || !eventIDFilter.isInitialEvent(eventType)) {
+			return null;
+		}
+		return activity.getEventFiringAddress();
+	}
 	
 	/*
 	 * (non-Javadoc)
@@ -1600,6 +3220,318 @@ public class SipResourceAdaptor implements
 	public SipActivityManagement getActivityManagement() {
 		return activityManagement;
 	}
+
+	/**
+	 * @return the default protocol actions the RA does on its own for dialogs
+	 */
+	public int getAutomaticDialogActions() {
+		return automaticDialogActions;
+	}
+
+	/**
+	 * @return the gauges of the RA internals
+	 */
+	public SipResourceAdaptorIntrospection getIntrospection() {
+		return introspection;
+	}
+
+	/**
+	 * @return the emitter of transaction lifecycle timings, null if not configured
+	 */
+	public TransactionSpans getTransactionSpans() {
+		return transactionSpans;
+	}
+
+	/**
+	 * @return the sender of bulk fan-out requests
+	 */
+	public BulkRequestSender getBulkRequestSender() {
+		return bulkRequestSender;
+	}
+
+	/**
+	 * @return the stateless forwarder of requests
+	 */
+	public StatelessForwarder getStatelessForwarder() {
+		return statelessForwarder;
+	}
+
+	/**
+	 * @return the proxy core
+	 */
+	public ForkingProxy getForkingProxy() {
+		return forkingProxy;
+	}
+
+	/**
+	 * @return the RFC 3263 server locator, null if not enabled or the RA entity is not active
+	 */
+	public ServerLocatorImpl getServerLocator() {
+		return serverLocator;
+	}
+
+	/**
+	 * @return the peer pools, null if the RA entity is not active
+	 */
+	public PeerPools getPeerPools() {
+		return peerPools;
+	}
+
+	/**
+	 * Creates the suppressor of the provisional responses of a client
+	 * transaction.
+	 * 
+	 * @param suppression
+	 * @return
+	 */
+	public ProvisionalSuppressor createProvisionalSuppressor(ProvisionalSuppression suppression) {
+		return new ProvisionalSuppressor(suppression, raContext.getTimer(), statistics);
+	}
+
+	/**
+	 * Journals the state of the specified dialog, if the dialog journal is
+	 * enabled, the dialog is confirmed and its state changed since last
+	 * journaled.
+	 * 
+	 * @param dw
+	 */
+	public void dialogUpdated(DialogWrapper dw) {
+		final DialogJournal dialogJournal = this.dialogJournal;
+		if (dialogJournal != null && dw.getActivityHandle() instanceof DialogWithIdActivityHandle && dw.isJournalStale()) {
+			dialogJournal.update(((DialogWithIdActivityHandle) dw.getActivityHandle()).getDialogId(), dw.getWrappedDialog());
+		}
+	}
+
+	/**
+	 * Recreates the journaled dialogs, and starts their activities, spreading
+	 * the work over the available processors.
+	 * 
+	 * @param entries
+	 * @param messageFactory
+	 * @throws InterruptedException
+	 */
+	private void recoverDialogs(final List<DialogJournal.Entry> entries, final MessageFactory messageFactory) throws InterruptedException {
+		final long start = System.currentTimeMillis();
+		final SipProviderImpl sipProvider = (SipProviderImpl) provider;
+		final ViaHeader via = providerWrapper.getLocalVia(transports.iterator().next(), providerWrapper.generateBranchId());
+		final AtomicInteger recovered = new AtomicInteger();
+		final Thread[] threads = new Thread[Math.min(Runtime.getRuntime().availableProcessors(), entries.size())];
+		for (int i = 0; i < threads.length; i++) {
+			final int first = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = first; j < entries.size(); j += threads.length) {
+						final DialogJournal.Entry entry = entries.get(j);
+						try {
+							final SIPDialog d = entry.createDialog(sipProvider, messageFactory, via);
+							if (disableSequenceNumberValidation()) {
+								d.disableSequenceNumberValidation();
+							}
+							final DialogWrapper dw = new DialogWrapper(new DialogWithIdActivityHandle(entry.getDialogId()), SipResourceAdaptor.this);
+							dw.setWrappedDialog(d);
+							// recovery threads, there is no SLEE transaction to suspend
+							if (addActivity(dw)) {
+								recovered.incrementAndGet();
+							}
+						} catch (Throwable e) {
+							tracer.warning("Failed to recover dialog " + entry.getDialogId(), e);
+						}
+					}
+				}
+			}, "SipRA-DialogRecovery-" + i);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		tracer.info("Recovered " + recovered.get() + " of " + entries.size() + " journaled dialogs in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Tracks a client transaction sent to a located server, until it
+	 * terminates, so it may fail over on transport failures.
+	 * 
+	 * @param ctw
+	 */
+	public void locatedTransactionStarted(ClientTransactionWrapper ctw) {
+		locatedTransactions.add(ctw);
+	}
+
+	/**
+	 * Sends the request of the specified client transaction to the next
+	 * located server, if no response was received yet.
+	 * 
+	 * @param ctw
+	 * @return true if the request was sent to another server
+	 */
+	private boolean failover(ClientTransactionWrapper ctw) {
+		final ServerLocatorImpl serverLocator = this.serverLocator;
+		if (serverLocator == null) {
+			return false;
+		}
+		synchronized (ctw) {
+			final ClientTransaction ct = ctw.getWrappedClientTransaction();
+			if (ct == null || ((SIPTransaction) ct).getLastResponse() != null || ct.getDialog() != null) {
+				return false;
+			}
+			Hop hop;
+			while ((hop = ctw.nextLocatedHop()) != null) {
+				try {
+					final Request request = (Request) ct.getRequest().clone();
+					((ViaHeader) request.getHeader(ViaHeader.NAME)).setBranch(providerWrapper.generateBranchId());
+					final SIPClientTransaction newCt = providerWrapper.getNewClientTransaction(serverLocator, request, hop);
+					ctw.replaceWrappedTransaction(newCt);
+					newCt.sendRequest();
+					if (tracer.isFineEnabled()) {
+						tracer.fine("Failed over " + ctw.getActivityHandle() + " to " + hop);
+					}
+					return true;
+				} catch (Throwable e) {
+					tracer.warning("Failed to fail over " + ctw.getActivityHandle() + " to " + hop, e);
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Sends the request of the specified client transaction, created while
+	 * the servers for the request were not located yet, once these are
+	 * located, from the lookup threads.
+	 * 
+	 * @param ctw
+	 * @throws SipException
+	 *             if the server locator is not available
+	 */
+	public void sendWhenLocated(final ClientTransactionWrapper ctw) throws SipException {
+		final ServerLocatorImpl serverLocator = this.serverLocator;
+		final URI uri = ctw.getLocatingURI();
+		if (serverLocator == null || uri == null) {
+			throw new SipException("Servers for " + uri + " can't be located");
+		}
+		serverLocator.whenLocated(uri, new Runnable() {
+			public void run() {
+				sendLocated(serverLocator, ctw);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the wrapped transaction of the specified client transaction,
+	 * which was never sent, with one to the first located server that
+	 * accepts the request, as in {@link #failover(ClientTransactionWrapper)},
+	 * or routed by the stack if no servers were found. If the request can't
+	 * be sent the transaction times out.
+	 * 
+	 * @param serverLocator
+	 * @param ctw
+	 */
+	private void sendLocated(ServerLocatorImpl serverLocator, ClientTransactionWrapper ctw) {
+		synchronized (ctw) {
+			final URI uri = ctw.getLocatingURI();
+			final SIPClientTransaction ct = (SIPClientTransaction) ctw.getWrappedClientTransaction();
+			if (uri == null || ct == null) {
+				// sent already, or the activity ended
+				return;
+			}
+			ctw.setLocatingURI(null);
+			final ClientDialogWrapper dw = ctw.removePendingDialog();
+			final List<Hop> hops = serverLocator.getHops(uri);
+			if (hops != null && !hops.isEmpty()) {
+				ctw.setLocatedHops(hops);
+				Hop hop = ctw.getLocatedHop();
+				while (hop != null) {
+					try {
+						final Request request = (Request) ct.getRequest().clone();
+						((ViaHeader) request.getHeader(ViaHeader.NAME)).setBranch(providerWrapper.generateBranchId());
+						if (sendLocated(ctw, ct, providerWrapper.getNewClientTransaction(serverLocator, request, hop), dw)) {
+							locatedTransactionStarted(ctw);
+							return;
+						}
+					} catch (Throwable e) {
+						tracer.warning("Failed to send " + ctw.getActivityHandle() + " to " + hop, e);
+					}
+					hop = ctw.nextLocatedHop();
+				}
+			} else if (hops != null) {
+				// no servers found, the stack resolves the host in this thread
+				try {
+					final Request request = (Request) ct.getRequest().clone();
+					((ViaHeader) request.getHeader(ViaHeader.NAME)).setBranch(providerWrapper.generateBranchId());
+					if (sendLocated(ctw, ct, (SIPClientTransaction) provider.getNewClientTransaction(request), dw)) {
+						return;
+					}
+				} catch (Throwable e) {
+					tracer.warning("Failed to send " + ctw.getActivityHandle(), e);
+				}
+			}
+			// the request was not sent, and the transaction never started
+			processTimeout(new TimeoutEvent(provider, ct, Timeout.TRANSACTION));
+			try {
+				ct.terminate();
+			} catch (ObjectInUseException e) {
+				tracer.warning("Failed to terminate " + ctw.getActivityHandle(), e);
+			}
+			processTransactionTerminated(ctw);
+		}
+	}
+
+	/**
+	 * Sends a request with the specified new transaction, which replaces the
+	 * one of the specified client transaction if the request is sent.
+	 * 
+	 * @param ctw
+	 * @param ct
+	 *            the transaction created when the servers were not located
+	 * @param newCt
+	 * @param dw
+	 *            the dialog to create with the new transaction, may be null
+	 * @return true if the request was sent
+	 */
+	private boolean sendLocated(ClientTransactionWrapper ctw, SIPClientTransaction ct, SIPClientTransaction newCt,
+			ClientDialogWrapper dw) {
+		ctw.replaceWrappedTransaction(newCt);
+		try {
+			if (dw != null) {
+				final SIPDialog d = (SIPDialog) provider.getNewDialog(newCt);
+				if (disableSequenceNumberValidation()) {
+					d.disableSequenceNumberValidation();
+				}
+				dw.setWrappedDialog(d);
+			}
+			newCt.sendRequest();
+		} catch (SipException e) {
+			tracer.warning("Failed to send " + ctw.getActivityHandle(), e);
+			// events of the new transaction are dropped
+			ctw.replaceWrappedTransaction(ct);
+			if (dw != null) {
+				dw.setWrappedDialog(null);
+			}
+			return false;
+		}
+		// never sent, removed from the stack without events
+		try {
+			ct.terminate();
+		} catch (ObjectInUseException e) {
+			tracer.warning("Failed to terminate " + ct, e);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the transport health of the peers, null if the RA entity is not active
+	 */
+	public PeerHealthTable getPeerHealthTable() {
+		return peerHealthTable;
+	}
+
+	/**
+	 * @return the factory of the addresses where events are fired
+	 */
+	public EventFiringAddressFactory getEventFiringAddressFactory() {
+		return eventFiringAddressFactory;
+	}
 	
 	// ACTIVITY MANAGEMENT
 	
@@ -1609,6 +3541,8 @@ public class SipResourceAdaptor implements
 	 */
 	public void activityEnded(ActivityHandle activityHandle) {
 		final Wrapper activity = activityManagement.remove((SipActivityHandle) activityHandle);
+		introspection.activityEnded((SipActivityHandle) activityHandle, activity);
+		recordFlightEvent(FlightRecorderEvents.ACTIVITY_ENDED, null, (SipActivityHandle) activityHandle);
 		if (activity != null) {
 			activity.clear();			
 		}
@@ -22,10 +22,17 @@
 
 package org.mobicents.slee.resource.sip11;
 
+import java.nio.charset.Charset;
+
 import javax.slee.resource.ActivityHandle;
 
 public class SipResourceAdaptorActivityHandleUtils {
 
+	/**
+	 * the charset used to store handle identifiers in compact form
+	 */
+	private static final Charset ID_CHARSET = Charset.forName("UTF-8");
+
 	public static boolean isUnconfirmedDialogActivityHandle(ActivityHandle activityHandle) {
 		return activityHandle.getClass() == DialogWithoutIdActivityHandle.class;		
 	}
@@ -38,4 +45,125 @@ public class SipResourceAdaptorActivityHandleUtils {
 		return activityHandle.getClass() == TransactionActivityHandle.class;		
 	}
 	
+	// COMPACT IDENTIFIERS
+
+	/**
+	 * Encodes an activity handle identifier, such as a dialog or transaction
+	 * id, in the compact byte form stored by the handles.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public static byte[] encodeId(String id) {
+		return id.getBytes(ID_CHARSET);
+	}
+
+	/**
+	 * Builds the {@link String} form of an identifier stored in compact form.
+	 * 
+	 * @param id
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static String decodeId(byte[] id, int offset, int length) {
+		return new String(id, offset, length, ID_CHARSET);
+	}
+
+	/**
+	 * Computes the 128 bit MurmurHash3 (x64 variant) of the specified
+	 * identifier bytes, continuing from the specified hash state, which
+	 * allows hashing of identifiers composed of multiple components.
+	 * 
+	 * @param data
+	 * @param seed1
+	 * @param seed2
+	 * @return an array with the high and low 64 bits of the hash
+	 */
+	@SuppressWarnings("fallthrough")
+	public static long[] hashId(byte[] data, long seed1, long seed2) {
+		final int length = data.length;
+		final int blocks = length >>> 4;
+		long h1 = seed1;
+		long h2 = seed2;
+		for (int i = 0; i < blocks; i++) {
+			final int offset = i << 4;
+			long k1 = getLong(data, offset);
+			long k2 = getLong(data, offset + 8);
+			k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+			h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+			k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+			h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+		}
+		// tail
+		final int tail = blocks << 4;
+		long k1 = 0;
+		long k2 = 0;
+		// each case falls through to mix the remaining tail bytes
+		switch (length & 15) {
+		case 15: k2 ^= ((long) data[tail + 14] & 0xff) << 48;
+		case 14: k2 ^= ((long) data[tail + 13] & 0xff) << 40;
+		case 13: k2 ^= ((long) data[tail + 12] & 0xff) << 32;
+		case 12: k2 ^= ((long) data[tail + 11] & 0xff) << 24;
+		case 11: k2 ^= ((long) data[tail + 10] & 0xff) << 16;
+		case 10: k2 ^= ((long) data[tail + 9] & 0xff) << 8;
+		case 9: k2 ^= ((long) data[tail + 8] & 0xff);
+			k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+		case 8: k1 ^= ((long) data[tail + 7] & 0xff) << 56;
+		case 7: k1 ^= ((long) data[tail + 6] & 0xff) << 48;
+		case 6: k1 ^= ((long) data[tail + 5] & 0xff) << 40;
+		case 5: k1 ^= ((long) data[tail + 4] & 0xff) << 32;
+		case 4: k1 ^= ((long) data[tail + 3] & 0xff) << 24;
+		case 3: k1 ^= ((long) data[tail + 2] & 0xff) << 16;
+		case 2: k1 ^= ((long) data[tail + 1] & 0xff) << 8;
+		case 1: k1 ^= ((long) data[tail] & 0xff);
+			k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+		}
+		// finalization
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	/**
+	 * Folds a 128 bit identifier hash into the 32 bit hash code used in tables.
+	 * 
+	 * @param hashHigh
+	 * @param hashLow
+	 * @return
+	 */
+	public static int hashCode(long hashHigh, long hashLow) {
+		final long h = hashHigh ^ hashLow;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private static long getLong(byte[] data, int offset) {
+		return ((long) data[offset] & 0xff)
+				| (((long) data[offset + 1] & 0xff) << 8)
+				| (((long) data[offset + 2] & 0xff) << 16)
+				| (((long) data[offset + 3] & 0xff) << 24)
+				| (((long) data[offset + 4] & 0xff) << 32)
+				| (((long) data[offset + 5] & 0xff) << 40)
+				| (((long) data[offset + 6] & 0xff) << 48)
+				| (((long) data[offset + 7] & 0xff) << 56);
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
 }
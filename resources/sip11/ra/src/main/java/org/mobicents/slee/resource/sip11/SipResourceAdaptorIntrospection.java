@@ -0,0 +1,295 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mobicents.slee.resource.sip11.wrappers.BulkRequestActivityWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.DialogWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.PeerActivityWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.TransactionWrapper;
+import org.mobicents.slee.resource.sip11.wrappers.Wrapper;
+
+/**
+ * Keeps cheap gauges of the activities of a SIP RA entity, updated when
+ * activities are started and ended, and exposes those and other RA internals
+ * through JMX.
+ * 
+ * To find leaked activities without a table of all activities, one of each
+ * {@link #DEFAULT_SAMPLE_RATE} started activities is sampled, up to
+ * {@link #MAX_SAMPLES}, and forgotten once it ends.
+ * 
+ * @author martins
+ *
+ */
+public class SipResourceAdaptorIntrospection implements SipResourceAdaptorIntrospectionMBean {
+
+	/**
+	 * one of each 64 started activities is sampled
+	 */
+	public static final int DEFAULT_SAMPLE_RATE = 64;
+
+	/**
+	 * max number of sampled activities
+	 */
+	public static final int MAX_SAMPLES = 4096;
+
+	private static final int DIALOG = 0;
+	private static final int CLIENT_DIALOG = 1;
+	private static final int FORKED_DIALOG = 2;
+	private static final int SERVER_TRANSACTION = 3;
+	private static final int CLIENT_TRANSACTION = 4;
+	private static final int SHARED_REQUEST = 5;
+	private static final int BULK_REQUEST = 6;
+	private static final int PEER = 7;
+	private static final int PENDING_DELETE = 8;
+	private static final int STARTED = 9;
+	private static final int ENDED = 10;
+	private static final int COUNTERS = 11;
+
+	// counters are a cache line apart, to not contend on updates from different threads
+	private static final int STRIDE = 16;
+
+	private static final String[] TYPES = { "Dialog", "ClientDialog", "ForkedDialog",
+			"ServerTransaction", "ClientTransaction", "SharedRequestActivity", "BulkRequestActivity", "PeerActivity" };
+
+	private final AtomicLongArray counters = new AtomicLongArray(COUNTERS * STRIDE);
+
+	private final AtomicLong sampleSequence = new AtomicLong();
+	private final int sampleMask;
+	private final ConcurrentHashMap<SipActivityHandle, Long> samples = new ConcurrentHashMap<SipActivityHandle, Long>();
+
+	private final EventIDFilter eventIDFilter;
+	private final EventIDCache eventIDCache;
+
+	/**
+	 * 
+	 * @param eventIDFilter
+	 * @param eventIDCache
+	 * @param sampleRate
+	 *            one of each sampleRate activities is sampled, rounded to a
+	 *            power of 2
+	 */
+	public SipResourceAdaptorIntrospection(EventIDFilter eventIDFilter, EventIDCache eventIDCache, int sampleRate) {
+		this.eventIDFilter = eventIDFilter;
+		this.eventIDCache = eventIDCache;
+		int rate = 1;
+		while (rate < sampleRate) {
+			rate <<= 1;
+		}
+		this.sampleMask = rate - 1;
+	}
+
+	private static int typeOf(Wrapper activity) {
+		if (activity.isDialog()) {
+			return ((DialogWrapper) activity).isClientDialog() ? CLIENT_DIALOG : DIALOG;
+		}
+		if (activity instanceof TransactionWrapper) {
+			return ((TransactionWrapper) activity).isClientTransaction() ? CLIENT_TRANSACTION : SERVER_TRANSACTION;
+		}
+		if (activity instanceof BulkRequestActivityWrapper) {
+			return BULK_REQUEST;
+		}
+		return activity instanceof PeerActivityWrapper ? PEER : SHARED_REQUEST;
+	}
+
+	/**
+	 * Accounts a started activity.
+	 * @param activity
+	 */
+	public void activityStarted(Wrapper activity) {
+		counters.incrementAndGet(typeOf(activity) * STRIDE);
+		if (activity.isDialog() && ((DialogWrapper) activity).isFork()) {
+			counters.incrementAndGet(FORKED_DIALOG * STRIDE);
+		}
+		counters.incrementAndGet(STARTED * STRIDE);
+		if ((sampleSequence.getAndIncrement() & sampleMask) == 0 && samples.size() < MAX_SAMPLES) {
+			samples.put(activity.getActivityHandle(), Long.valueOf(System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Accounts an ended activity.
+	 * @param handle
+	 * @param activity
+	 *            the activity object, null if it was not known by the RA
+	 */
+	public void activityEnded(SipActivityHandle handle, Wrapper activity) {
+		if (activity != null) {
+			counters.decrementAndGet(typeOf(activity) * STRIDE);
+			if (activity.isDialog() && ((DialogWrapper) activity).isFork()) {
+				counters.decrementAndGet(FORKED_DIALOG * STRIDE);
+			}
+		}
+		counters.incrementAndGet(ENDED * STRIDE);
+		// lock free check, most ended activities were not sampled
+		if (samples.containsKey(handle)) {
+			samples.remove(handle);
+		}
+	}
+
+	/**
+	 * Accounts a dialog which delete started or stopped waiting for ongoing client transactions.
+	 * @param pending
+	 */
+	public void pendingDelete(boolean pending) {
+		if (pending) {
+			counters.incrementAndGet(PENDING_DELETE * STRIDE);
+		} else {
+			counters.decrementAndGet(PENDING_DELETE * STRIDE);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getDialogActivities()
+	 */
+	public long getDialogActivities() {
+		return counters.get(DIALOG * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getClientDialogActivities()
+	 */
+	public long getClientDialogActivities() {
+		return counters.get(CLIENT_DIALOG * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getForkedDialogActivities()
+	 */
+	public long getForkedDialogActivities() {
+		return counters.get(FORKED_DIALOG * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getServerTransactionActivities()
+	 */
+	public long getServerTransactionActivities() {
+		return counters.get(SERVER_TRANSACTION * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getClientTransactionActivities()
+	 */
+	public long getClientTransactionActivities() {
+		return counters.get(CLIENT_TRANSACTION * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getSharedRequestActivities()
+	 */
+	public long getSharedRequestActivities() {
+		return counters.get(SHARED_REQUEST * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getBulkRequestActivities()
+	 */
+	public long getBulkRequestActivities() {
+		return counters.get(BULK_REQUEST * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getPeerActivities()
+	 */
+	public long getPeerActivities() {
+		return counters.get(PEER * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getPendingDeleteDialogs()
+	 */
+	public long getPendingDeleteDialogs() {
+		return counters.get(PENDING_DELETE * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getStartedActivities()
+	 */
+	public long getStartedActivities() {
+		return counters.get(STARTED * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getEndedActivities()
+	 */
+	public long getEndedActivities() {
+		return counters.get(ENDED * STRIDE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#getOldestActivities(int)
+	 */
+	public String[] getOldestActivities(int count) {
+		final List<Map.Entry<SipActivityHandle, Long>> oldest = new ArrayList<Map.Entry<SipActivityHandle, Long>>(samples.entrySet());
+		Collections.sort(oldest, new Comparator<Map.Entry<SipActivityHandle, Long>>() {
+			public int compare(Map.Entry<SipActivityHandle, Long> o1, Map.Entry<SipActivityHandle, Long> o2) {
+				return o1.getValue().compareTo(o2.getValue());
+			}
+		});
+		final long now = System.currentTimeMillis();
+		final int size = Math.min(count, oldest.size());
+		final String[] result = new String[size];
+		for (int i = 0; i < size; i++) {
+			final Map.Entry<SipActivityHandle, Long> entry = oldest.get(i);
+			final Wrapper activity = entry.getKey().getActivity();
+			result[i] = new StringBuilder(entry.getKey().toString())
+				.append(' ').append(activity != null ? TYPES[typeOf(activity)] : "-")
+				.append(' ').append(now - entry.getValue().longValue()).toString();
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#dumpEventFilter()
+	 */
+	public String[] dumpEventFilter() {
+		return eventIDFilter.dump();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SipResourceAdaptorIntrospectionMBean#dumpEventTypeCache()
+	 */
+	public String[] dumpEventTypeCache() {
+		return eventIDCache.dump();
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the internals of a SIP RA entity.
+ * 
+ * @author martins
+ *
+ */
+public interface SipResourceAdaptorIntrospectionMBean {
+
+	/**
+	 * Retrieves the number of UAS dialog activities, forks included.
+	 * @return
+	 */
+	public long getDialogActivities();
+
+	/**
+	 * Retrieves the number of UAC dialog activities.
+	 * @return
+	 */
+	public long getClientDialogActivities();
+
+	/**
+	 * Retrieves the number of dialog activities created for forks of UAC dialogs.
+	 * @return
+	 */
+	public long getForkedDialogActivities();
+
+	/**
+	 * Retrieves the number of server transaction activities.
+	 * @return
+	 */
+	public long getServerTransactionActivities();
+
+	/**
+	 * Retrieves the number of client transaction activities.
+	 * @return
+	 */
+	public long getClientTransactionActivities();
+
+	/**
+	 * Retrieves the number of shared request activities.
+	 * @return
+	 */
+	public long getSharedRequestActivities();
+
+	/**
+	 * Retrieves the number of bulk request fan-out activities.
+	 * @return
+	 */
+	public long getBulkRequestActivities();
+
+	/**
+	 * Retrieves the number of failed peer activities.
+	 * @return
+	 */
+	public long getPeerActivities();
+
+	/**
+	 * Retrieves the number of dialogs which delete is waiting for ongoing client transactions.
+	 * @return
+	 */
+	public long getPendingDeleteDialogs();
+
+	/**
+	 * Retrieves the number of activities started since the RA entity was created.
+	 * @return
+	 */
+	public long getStartedActivities();
+
+	/**
+	 * Retrieves the number of activities ended since the RA entity was created.
+	 * @return
+	 */
+	public long getEndedActivities();
+
+	/**
+	 * Retrieves the oldest of the sampled live activities, each in the form
+	 * "handle type age(ms)". Only a fraction of the activities is sampled.
+	 * @param count
+	 * @return
+	 */
+	public String[] getOldestActivities(int count);
+
+	/**
+	 * Retrieves the event filter contents, each in the form
+	 * "event type -> services", with initial event services marked with *.
+	 * @return
+	 */
+	public String[] dumpEventFilter();
+
+	/**
+	 * Retrieves the event type cache contents, each in the form "event name -> event type".
+	 * @return
+	 */
+	public String[] dumpEventTypeCache();
+
+}
@@ -0,0 +1,109 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * The RA statistics, kept in local {@link StripedCounter}s and periodically
+ * flushed to the container's {@link SipResourceAdaptorStatisticsUsageParameters},
+ * which updates may be synchronized or transactional, and thus should stay
+ * out of the message processing path.
+ * 
+ * @author martins
+ * 
+ */
+public class SipResourceAdaptorStatistics {
+
+	/**
+	 * the default flush period, in ms
+	 */
+	public static final int DEFAULT_FLUSH_PERIOD = 1000;
+
+	private final StripedCounter calls = new StripedCounter();
+	private final StripedCounter messages = new StripedCounter();
+	private final StripedCounter activitylessRequestsCompleted = new StripedCounter();
+	private final StripedCounter activitylessRequestsFailed = new StripedCounter();
+	private final StripedCounter suppressedProvisionals = new StripedCounter();
+
+	/**
+	 * Accounts a received INVITE.
+	 */
+	public void incrementCalls() {
+		calls.increment();
+	}
+
+	/**
+	 * Accounts a received MESSAGE.
+	 */
+	public void incrementMessages() {
+		messages.increment();
+	}
+
+	/**
+	 * Accounts the outcome of a request sent in a client transaction which
+	 * is not an activity.
+	 * 
+	 * @param failed
+	 *            if the request did not get a 2xx response
+	 */
+	public void incrementActivitylessRequests(boolean failed) {
+		if (failed) {
+			activitylessRequestsFailed.increment();
+		} else {
+			activitylessRequestsCompleted.increment();
+		}
+	}
+
+	/**
+	 * Accounts a provisional response suppressed on a client transaction.
+	 */
+	public void incrementSuppressedProvisionals() {
+		suppressedProvisionals.increment();
+	}
+
+	/**
+	 * Pushes the statistics accounted since the last flush to the specified
+	 * usage parameters.
+	 * 
+	 * @param usageParameters
+	 */
+	public void flush(SipResourceAdaptorStatisticsUsageParameters usageParameters) {
+		final long calls = this.calls.sumThenReset();
+		if (calls != 0) {
+			usageParameters.incrementCalls(calls);
+		}
+		final long messages = this.messages.sumThenReset();
+		if (messages != 0) {
+			usageParameters.incrementMessages(messages);
+		}
+		final long activitylessRequestsCompleted = this.activitylessRequestsCompleted.sumThenReset();
+		if (activitylessRequestsCompleted != 0) {
+			usageParameters.incrementActivitylessRequestsCompleted(activitylessRequestsCompleted);
+		}
+		final long activitylessRequestsFailed = this.activitylessRequestsFailed.sumThenReset();
+		if (activitylessRequestsFailed != 0) {
+			usageParameters.incrementActivitylessRequestsFailed(activitylessRequestsFailed);
+		}
+		final long suppressedProvisionals = this.suppressedProvisionals.sumThenReset();
+		if (suppressedProvisionals != 0) {
+			usageParameters.incrementSuppressedProvisionals(suppressedProvisionals);
+		}
+	}
+
+}
@@ -25,5 +25,8 @@ public interface SipResourceAdaptorStatisticsUsageParameters {
 
     public void incrementCalls(long value);
     public void incrementMessages(long value);
+    public void incrementActivitylessRequestsCompleted(long value);
+    public void incrementActivitylessRequestsFailed(long value);
+    public void incrementSuppressedProvisionals(long value);
 
 }
@@ -27,6 +27,7 @@ import gov.nist.javax.sip.ListeningPointImpl;
 import gov.nist.javax.sip.Utils;
 import gov.nist.javax.sip.address.SipUri;
 import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.stack.HopImpl;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
 import gov.nist.javax.sip.stack.SIPServerTransaction;
 
@@ -34,6 +35,7 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.text.ParseException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TooManyListenersException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -54,10 +56,15 @@ import javax.sip.TransactionUnavailableException;
 import javax.sip.TransportAlreadySupportedException;
 import javax.sip.address.Address;
 import javax.sip.address.AddressFactory;
+import javax.sip.address.Hop;
 import javax.sip.address.SipURI;
+import javax.sip.address.URI;
 import javax.sip.header.CallIdHeader;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ContentTypeHeader;
 import javax.sip.header.FromHeader;
 import javax.sip.header.HeaderFactory;
+import javax.sip.header.RouteHeader;
 import javax.sip.header.ToHeader;
 import javax.sip.header.ViaHeader;
 import javax.sip.message.MessageFactory;
@@ -65,10 +72,20 @@ import javax.sip.message.Request;
 import javax.sip.message.Response;
 import javax.slee.facilities.Tracer;
 
+import net.java.slee.resource.sip.BulkRequestActivity;
 import net.java.slee.resource.sip.CancelRequestEvent;
 import net.java.slee.resource.sip.DialogActivity;
+import net.java.slee.resource.sip.NodeAffinity;
+import net.java.slee.resource.sip.PeerActivity;
+import net.java.slee.resource.sip.PeerHealth;
+import net.java.slee.resource.sip.PeerPool;
+import net.java.slee.resource.sip.ProvisionalSuppression;
+import net.java.slee.resource.sip.RequestTemplate;
+import net.java.slee.resource.sip.ServerLocator;
 import net.java.slee.resource.sip.SleeSipProvider;
 
+import org.mobicents.slee.resource.sip11.wrappers.ActivitylessClientTransactionAppData;
+import org.mobicents.slee.resource.sip11.wrappers.BulkRequestActivityWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionWrapper;
 import org.mobicents.slee.resource.sip11.wrappers.DialogWrapper;
 import org.mobicents.ext.javax.sip.SipStackImpl;
@@ -91,6 +108,8 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 	protected SipProvider provider = null;
 	protected final Tracer tracer;
 	private boolean active;
+	private boolean viaAlias;
+	private String nodeAffinity;
 	
 	public SleeSipProviderImpl(SipResourceAdaptor ra) {
 		this.ra = ra;
@@ -117,6 +136,75 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		this.active = false;
 	}
 	
+	/**
+	 * Sets if the local Vias of connection oriented transports have the
+	 * alias param (RFC 5923), so that the peer reuses the connection to send
+	 * requests back.
+	 * 
+	 * @param viaAlias
+	 */
+	public void setViaAlias(boolean viaAlias) {
+		this.viaAlias = viaAlias;
+	}
+
+	/**
+	 * Sets the node token embedded in the local tags, Call-IDs and Via
+	 * branches generated by the RA, see {@link NodeAffinity}.
+	 * 
+	 * @param nodeAffinity
+	 *            null to not embed a node
+	 */
+	public void setNodeAffinity(String nodeAffinity) {
+		this.nodeAffinity = nodeAffinity;
+	}
+
+	/**
+	 * Generates a local tag, with the node affinity if configured.
+	 * 
+	 * @return
+	 */
+	public String generateTag() {
+		return NodeAffinity.encode(Utils.getInstance().generateTag(), nodeAffinity);
+	}
+
+	/**
+	 * Generates a Via branch, with the node affinity if configured.
+	 * 
+	 * @return
+	 */
+	public String generateBranchId() {
+		return NodeAffinity.encode(Utils.getInstance().generateBranchId(), nodeAffinity);
+	}
+
+	/**
+	 * Sets a branch with the node affinity in the top Via of the specified
+	 * request, if it has none, instead of leaving it to the stack.
+	 * 
+	 * @param request
+	 * @throws TransactionUnavailableException
+	 */
+	private void setAffinityBranch(Request request) throws TransactionUnavailableException {
+		if (nodeAffinity != null) {
+			final ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+			if (via != null && via.getBranch() == null) {
+				try {
+					via.setBranch(generateBranchId());
+				} catch (ParseException e) {
+					throw new TransactionUnavailableException(e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	private void addViaAlias(ViaHeader via) throws ParseException {
+		if (viaAlias && via != null) {
+			final String transport = via.getTransport();
+			if (ListeningPoint.TCP.equalsIgnoreCase(transport) || ListeningPoint.TLS.equalsIgnoreCase(transport)) {
+				via.setParameter("alias", null);
+			}
+		}
+	}
+
 	private void checkState() throws IllegalStateException {
 		if (!active) {
 			throw new IllegalStateException("ra not active");
@@ -191,8 +279,10 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		final ListeningPoint lp = provider.getListeningPoint(transport);
 		if (lp != null) {
 			try {
-				return headerFactory.createViaHeader(lp.getIPAddress(), lp
+				final ViaHeader via = headerFactory.createViaHeader(lp.getIPAddress(), lp
 						.getPort(), lp.getTransport(), branch);
+				addViaAlias(via);
+				return via;
 			} catch (ParseException e) {
 				tracer.severe(e.getMessage(), e);
 			} catch (InvalidArgumentException e) {
@@ -212,7 +302,12 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 			InvalidArgumentException {
 		checkState();
 		final ListeningPointImpl lp = (ListeningPointImpl) provider.getListeningPoints()[0];
-		return lp != null ? lp.createViaHeader() : null;
+		if (lp == null) {
+			return null;
+		}
+		final ViaHeader via = lp.createViaHeader();
+		addViaAlias(via);
+		return via;
 	}
 
 	/*
@@ -339,7 +434,15 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 	 */
 	public CallIdHeader getNewCallId() {
 		checkState();
-		return this.provider.getNewCallId();
+		final CallIdHeader callId = this.provider.getNewCallId();
+		if (nodeAffinity != null) {
+			try {
+				callId.setCallId(NodeAffinity.encodeCallId(callId.getCallId(), nodeAffinity));
+			} catch (ParseException e) {
+				tracer.severe(e.getMessage(), e);
+			}
+		}
+		return callId;
 	}
 
 	/*
@@ -420,10 +523,38 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 			throws TransactionUnavailableException {
 		
 		checkState();
-		final SIPClientTransaction ct = (SIPClientTransaction) provider.getNewClientTransaction(request);
+		setAffinityBranch(request);
+		final ServerLocatorImpl serverLocator = ra.getServerLocator();
+		final URI target = serverLocator != null ? getLocatorTarget(request) : null;
+		List<Hop> hops = target != null ? serverLocator.getHops(target) : null;
+		if (hops != null && hops.isEmpty()) {
+			hops = null;
+		}
+		// if the servers are not located the stack would resolve the host, blocking this thread
+		final boolean locating = hops == null && target != null && serverLocator.requiresLookup(target);
+		final SIPClientTransaction ct;
+		if (hops != null) {
+			ct = getNewClientTransaction(serverLocator, request, hops.get(0));
+		} else if (locating) {
+			// replaced when the request is sent, once the servers are located
+			ct = getNewClientTransaction(serverLocator, request, getLocalHop(request));
+		} else {
+			ct = (SIPClientTransaction) provider.getNewClientTransaction(request);
+		}
 		final ClientTransactionWrapper ctw = new ClientTransactionWrapper(ct,
 				ra);
+		if (locating) {
+			ctw.setLocatingURI(target);
+		}
+		final TransactionSpans transactionSpans = ra.getTransactionSpans();
+		if (transactionSpans != null) {
+			transactionSpans.clientTransactionStarted(ctw);
+		}
 		ctw.setActivity(true);
+		if (hops != null) {
+			ctw.setLocatedHops(hops);
+			ra.locatedTransactionStarted(ctw);
+		}
 
 		final DialogWrapper dw = ctw.getDialogWrapper();
 		if (dw != null) {
@@ -438,6 +569,78 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		return ctw;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#getNewClientTransaction(javax.sip.message.Request, java.lang.String)
+	 */
+	public ClientTransaction getNewClientTransaction(Request request, String pool)
+			throws TransactionUnavailableException {
+		checkState();
+		final PeerPoolImpl peerPool = ra.getPeerPools().get(pool);
+		if (peerPool == null) {
+			throw new TransactionUnavailableException("No peer pool named " + pool);
+		}
+		final PeerPoolImpl.Member member = peerPool.select(((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId());
+		if (member == null) {
+			throw new TransactionUnavailableException("No member of peer pool " + pool + " in rotation");
+		}
+		ClientTransactionWrapper ctw = null;
+		boolean routed = false;
+		try {
+			final SipURI routeURI = addressFactory.createSipURI(null, member.getHost());
+			routeURI.setPort(member.getPort());
+			routeURI.setTransportParam(member.getTransport().toLowerCase());
+			routeURI.setLrParam();
+			request.addFirst(headerFactory.createRouteHeader(addressFactory.createAddress(routeURI)));
+			routed = true;
+			ctw = (ClientTransactionWrapper) getNewClientTransaction(request);
+		} catch (TransactionUnavailableException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new TransactionUnavailableException("Failed to route request to peer pool member " + member, e);
+		} finally {
+			if (ctw == null) {
+				// leave the request as it was given
+				if (routed) {
+					request.removeFirst(RouteHeader.NAME);
+				}
+				member.transactionEnded(false);
+			}
+		}
+		// released when the transaction terminates, or its activity ends if never sent
+		ctw.setPeerPoolMember(member);
+		return ctw;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#setProvisionalSuppression(javax.sip.ClientTransaction, net.java.slee.resource.sip.ProvisionalSuppression)
+	 */
+	public void setProvisionalSuppression(ClientTransaction ct, ProvisionalSuppression suppression)
+			throws IllegalArgumentException {
+		checkState();
+		if (!(ct instanceof ClientTransactionWrapper)) {
+			throw new IllegalArgumentException(ct + " is not a client transaction of this RA");
+		}
+		((ClientTransactionWrapper) ct).setProvisionalSuppressor(suppression != null ? ra
+				.createProvisionalSuppressor(suppression) : null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#getSuppressedProvisionals(javax.sip.ClientTransaction)
+	 */
+	public long getSuppressedProvisionals(ClientTransaction ct) throws IllegalArgumentException {
+		if (!(ct instanceof ClientTransactionWrapper)) {
+			throw new IllegalArgumentException(ct + " is not a client transaction of this RA");
+		}
+		final ProvisionalSuppressor suppressor = ((ClientTransactionWrapper) ct).getProvisionalSuppressor();
+		return suppressor != null ? suppressor.getSuppressed() : 0;
+	}
+
 	/**
 	 * Creates a new {@link ClientTransactionWrapper} bound to a
 	 * {@link DialogWrapper}, which is not an activity in SLEE.
@@ -450,9 +653,14 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 	public ClientTransactionWrapper getNewDialogActivityClientTransaction(
 			DialogWrapper dialogWrapper, Request request)
 			throws TransactionUnavailableException {
+		setAffinityBranch(request);
 		final SIPClientTransaction ct = (SIPClientTransaction) provider.getNewClientTransaction(request);
 		final ClientTransactionWrapper ctw = new ClientTransactionWrapper(ct,
 				ra);
+		final TransactionSpans transactionSpans = ra.getTransactionSpans();
+		if (transactionSpans != null) {
+			transactionSpans.clientTransactionStarted(ctw);
+		}
 		dialogWrapper.addOngoingTransaction(ctw);
 		return ctw;
 	}
@@ -519,7 +727,7 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		if (localTag == null) {
 			// some hacking in jsip, we need a dialog id now and the real dialog
 			// does not have a local tag
-			localTag = Utils.getInstance().generateTag();
+			localTag = generateTag();
 			dialogId = ((SIPRequest) st.getRequest()).getDialogId(
 				true, localTag);
 		}
@@ -538,13 +746,23 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		final FromHeader fh = (FromHeader)r.getHeader(FromHeader.NAME);
 		String localTag = fh.getTag();
 		if(localTag == null) {
-			localTag = Utils.getInstance().generateTag();
+			localTag = generateTag();
 			try {				
 				fh.setTag(localTag);
 			} catch (ParseException e) {
 				throw new SipException("Failed to set local tag.", e);
 			}
 		}		
+		synchronized (ctw) {
+			if (ctw.getLocatingURI() != null) {
+				// the dialog is created with the transaction sending the request, once its servers are located
+				final DialogWrapper dw = _getNewDialog(fh.getAddress(), localTag,
+						((ToHeader) r.getHeader(ToHeader.NAME)).getAddress(), (CallIdHeader) r.getHeader(CallIdHeader.NAME));
+				dw.addOngoingTransaction(ctw);
+				ctw.setPendingDialog((ClientDialogWrapper) dw);
+				return dw;
+			}
+		}
 		final Dialog d = provider.getNewDialog(ctw.getWrappedTransaction());
 		if(ra.disableSequenceNumberValidation())
 		{
@@ -575,8 +793,7 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		if (to == null) {
 			throw new IllegalArgumentException("To address cant be null");
 		}
-		return _getNewDialog(from, gov.nist.javax.sip.Utils.getInstance()
-				.generateTag(), to, null);
+		return _getNewDialog(from, generateTag(), to, null);
 	}
 
 	/*
@@ -598,7 +815,7 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 			callIdHeader = incomingDialog.getCallId();
 		}
 
-		return _getNewDialog(incomingDialog.getRemoteParty(), Utils.getInstance().generateTag(), incomingDialog.getLocalParty(), callIdHeader);
+		return _getNewDialog(incomingDialog.getRemoteParty(), generateTag(), incomingDialog.getLocalParty(), callIdHeader);
 	}
 
 	/**
@@ -612,7 +829,7 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 	private DialogWrapper _getNewDialog(Address from, String localTag,
 			Address to, CallIdHeader callIdHeader) throws SipException {
 		if (callIdHeader == null) {
-			callIdHeader = provider.getNewCallId();
+			callIdHeader = getNewCallId();
 		}
 		final DialogWithoutIdActivityHandle h = new DialogWithoutIdActivityHandle(callIdHeader.getCallId(),
 				localTag);
@@ -620,8 +837,7 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		dw.setLocalTag(localTag);
 		dw.setFromAddress(from);
 		dw.setToAddress(to);
-		dw.setCustomCallId(callIdHeader == null ? provider.getNewCallId()
-						: callIdHeader);
+		dw.setCustomCallId(callIdHeader);
 		if (!ra.addSuspendedActivity(dw)) {
 			throw new SipException("Failed to create activity.");
 		}
@@ -696,7 +912,302 @@ public class SleeSipProviderImpl implements SleeSipProvider {
 		throw new UnsupportedOperationException();
 	}
 	
+	/**
+	 * Indicates if the specified uri points to one of the listening points
+	 * of the provider, e.g. to pop a Route header set by the previous hop.
+	 * 
+	 * @param uri
+	 * @return
+	 */
+	public boolean isLocalURI(URI uri) {
+		if (!(uri instanceof SipURI)) {
+			return false;
+		}
+		final SipURI sipURI = (SipURI) uri;
+		for (ListeningPoint lp : provider.getListeningPoints()) {
+			if (lp.getIPAddress().equals(sipURI.getHost())
+					&& (sipURI.getPort() == lp.getPort() || (sipURI.getPort() == -1 && lp.getPort() == 5060))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public SipStackImpl getSipStackImpl() {
 	    return this.stack;
 	}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#sendBulkRequest(java.lang.String,
+	 * java.util.List, javax.sip.header.ContentTypeHeader, byte[])
+	 */
+	public BulkRequestActivity sendBulkRequest(String method,
+			List<DialogActivity> dialogs, ContentTypeHeader contentType,
+			byte[] content) throws SipException {
+		checkState();
+		if (method == null || dialogs == null || dialogs.isEmpty()) {
+			throw new IllegalArgumentException("method and dialogs are required");
+		}
+		if (content != null && contentType == null) {
+			throw new IllegalArgumentException("content without content type");
+		}
+		final BulkRequestActivityWrapper activity = startBulkRequestActivity(dialogs.size());
+		ra.getBulkRequestSender().send(activity, method, dialogs, contentType, content);
+		return activity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#sendBulkRequest(javax.sip.message.Request,
+	 * java.util.List)
+	 */
+	public BulkRequestActivity sendBulkRequest(Request template,
+			List<Address> targets) throws SipException {
+		checkState();
+		if (template == null || targets == null || targets.isEmpty()) {
+			throw new IllegalArgumentException("template and targets are required");
+		}
+		final BulkRequestActivityWrapper activity = startBulkRequestActivity(targets.size());
+		ra.getBulkRequestSender().send(activity, template, targets);
+		return activity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#sendRequestWithoutActivity(javax.sip.message.Request,
+	 * java.lang.Object)
+	 */
+	public void sendRequestWithoutActivity(Request request,
+			Object outcomeActivity) throws SipException {
+		checkState();
+		if (request == null) {
+			throw new IllegalArgumentException("null request");
+		}
+		final String method = request.getMethod();
+		if (Request.INVITE.equals(method) || Request.ACK.equals(method)) {
+			throw new IllegalArgumentException(method + " requests need a client transaction activity");
+		}
+		SipActivityHandle outcomeActivityHandle = null;
+		if (outcomeActivity != null) {
+			outcomeActivityHandle = (SipActivityHandle) ra.getActivityHandle(outcomeActivity);
+			if (outcomeActivityHandle == null) {
+				throw new IllegalArgumentException(outcomeActivity + " is not an activity of this RA");
+			}
+		}
+		final ClientTransaction ct = provider.getNewClientTransaction(request);
+		ct.setApplicationData(new ActivitylessClientTransactionAppData(ra, request, outcomeActivityHandle));
+		final Dialog dialog = ct.getDialog();
+		if (dialog != null) {
+			final DialogWrapper dw = ra.getDialogWrapper(dialog);
+			if (dw != null) {
+				dw.touch();
+			}
+			dialog.sendRequest(ct);
+			if (dw != null) {
+				ra.dialogUpdated(dw);
+			}
+		} else {
+			ct.sendRequest();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#forwardStateless(javax.sip.message.Request,
+	 * javax.sip.address.URI)
+	 */
+	public void forwardStateless(Request request, URI nextHop)
+			throws SipException {
+		checkState();
+		if (request == null) {
+			throw new IllegalArgumentException("null request");
+		}
+		ra.getStatelessForwarder().forward(request, nextHop);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#proxyRequest(javax.sip.ServerTransaction,
+	 * java.util.List)
+	 */
+	public void proxyRequest(ServerTransaction serverTransaction,
+			List<ContactHeader> targets) throws SipException {
+		checkState();
+		if (!(serverTransaction instanceof ServerTransactionWrapper)) {
+			throw new IllegalArgumentException("not a server transaction of this RA");
+		}
+		ra.getForkingProxy().proxy((ServerTransactionWrapper) serverTransaction, targets);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#createRequestTemplate(javax.sip.message.Request)
+	 */
+	public RequestTemplate createRequestTemplate(Request prototype)
+			throws SipException {
+		if (prototype == null) {
+			throw new IllegalArgumentException("null prototype");
+		}
+		return new RequestTemplateImpl(prototype, nodeAffinity);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#getPeerHealth(java.lang.String,
+	 * int, java.lang.String)
+	 */
+	public PeerHealth getPeerHealth(String host, int port, String transport) {
+		checkState();
+		final PeerHealthTable.Peer peer = ra.getPeerHealthTable().getPeer(host, port, transport);
+		return peer != null ? peer.getHealth() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#getFailedPeers()
+	 */
+	public List<PeerHealth> getFailedPeers() {
+		checkState();
+		return ra.getPeerHealthTable().getFailedPeers();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.java.slee.resource.sip.SleeSipProvider#getPeerActivity(java.lang.String,
+	 * int, java.lang.String)
+	 */
+	public PeerActivity getPeerActivity(String host, int port, String transport) {
+		checkState();
+		final PeerHealthTable.Peer peer = ra.getPeerHealthTable().getPeer(host, port, transport);
+		return peer != null ? peer.getActivity() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#getServerLocator()
+	 */
+	public ServerLocator getServerLocator() {
+		checkState();
+		return ra.getServerLocator();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#createPeerPool(java.lang.String, net.java.slee.resource.sip.PeerPool.Selection)
+	 */
+	public PeerPool createPeerPool(String name, PeerPool.Selection selection) throws IllegalArgumentException {
+		checkState();
+		return ra.getPeerPools().create(name, selection);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#getPeerPool(java.lang.String)
+	 */
+	public PeerPool getPeerPool(String name) {
+		checkState();
+		return ra.getPeerPools().get(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see net.java.slee.resource.sip.SleeSipProvider#removePeerPool(java.lang.String)
+	 */
+	public boolean removePeerPool(String name) {
+		checkState();
+		return ra.getPeerPools().remove(name);
+	}
+
+	/**
+	 * Retrieves the URI which servers are located for the specified request,
+	 * the one of its top Route or Request-URI, if the request is out of
+	 * dialog.
+	 * 
+	 * @param request
+	 * @return null if the request should be routed by the stack
+	 */
+	private URI getLocatorTarget(Request request) {
+		final String method = request.getMethod();
+		if (method.equals(Request.ACK) || method.equals(Request.CANCEL)
+				|| ((ToHeader) request.getHeader(ToHeader.NAME)).getTag() != null) {
+			// the CANCEL goes where the INVITE went
+			return null;
+		}
+		final RouteHeader route = (RouteHeader) request.getHeader(RouteHeader.NAME);
+		return route != null ? route.getAddress().getURI() : request.getRequestURI();
+	}
+
+	/**
+	 * Retrieves the hop of the listening point with the transport of the
+	 * specified request, for client transactions which are created but not
+	 * sent, without resolving hosts.
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private Hop getLocalHop(Request request) {
+		final ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+		ListeningPoint lp = via != null ? provider.getListeningPoint(via.getTransport()) : null;
+		if (lp == null) {
+			lp = provider.getListeningPoints()[0];
+		}
+		return new HopImpl(lp.getIPAddress(), lp.getPort(), lp.getTransport());
+	}
+
+	/**
+	 * Creates a client transaction for the specified request, sent to the
+	 * specified located server, replacing the top Via if its transport is not
+	 * the server's one.
+	 * 
+	 * @param serverLocator
+	 * @param request
+	 * @param hop
+	 * @return
+	 * @throws TransactionUnavailableException
+	 */
+	SIPClientTransaction getNewClientTransaction(ServerLocatorImpl serverLocator, Request request, Hop hop)
+			throws TransactionUnavailableException {
+		final ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
+		if (via != null && !hop.getTransport().equalsIgnoreCase(via.getTransport())) {
+			final ViaHeader localVia = getLocalVia(hop.getTransport(), via.getBranch());
+			if (localVia != null) {
+				request.removeFirst(ViaHeader.NAME);
+				try {
+					request.addFirst(localVia);
+				} catch (SipException e) {
+					throw new TransactionUnavailableException(e.getMessage(), e);
+				}
+			}
+		}
+		return (SIPClientTransaction) serverLocator.getNewClientTransaction(provider, request, hop);
+	}
+
+	private BulkRequestActivityWrapper startBulkRequestActivity(int total) throws SipException {
+		final BulkRequestActivityWrapper activity = new BulkRequestActivityWrapper(Utils.getInstance().generateTag(), total, ra);
+		if (!ra.addSuspendedActivity(activity)) {
+			throw new SipException("Failed to create activity.");
+		}
+		return activity;
+	}
 }
@@ -0,0 +1,415 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.sip.message.Request;
+
+/**
+ * Per source token bucket rate limiter for incoming out of dialog requests.
+ *
+ * The buckets live in a fixed size table of primitive arrays, organized in
+ * sets of {@link #SET_SIZE} slots. A source (its IP address or From domain,
+ * plus the request method) hashes to a single set, and when the set is full
+ * the least recently used bucket of the set is evicted. Each slot keeps the
+ * source itself, so sources with the same hash never share a bucket. Bucket
+ * state is a single long, updated with CAS, so checking a request needs no
+ * locks.
+ *
+ * Rates are configured per method, in the form
+ * <code>INVITE=50:100,REGISTER=20,*=200</code>, where each value is the
+ * number of requests per second, optionally followed by the burst size (by
+ * default the same as the rate), and <code>*</code> applies to the methods
+ * not listed.
+ *
+ * @author martins
+ *
+ */
+public class SourceRateLimiter implements SourceRateLimiterMBean {
+
+	/**
+	 * slots per set
+	 */
+	public static final int SET_SIZE = 8;
+
+	/**
+	 * default number of slots
+	 */
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	private static final String[] METHODS = { Request.INVITE,
+			Request.REGISTER, Request.SUBSCRIBE, Request.MESSAGE,
+			Request.OPTIONS, Request.NOTIFY, Request.PUBLISH, Request.REFER,
+			Request.INFO, Request.UPDATE };
+	private static final int OTHER_METHODS = METHODS.length;
+
+	// bucket state layout, refill clock in ms (upper bits) and tokens in 1/16 units (lower bits)
+	private static final int TOKEN_BITS = 24;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+	private static final int TOKEN_UNIT = 16;
+
+	// key layout
+	private static final long KEY_USED = 1L << 63;
+	private static final long KEY_DOMAIN = 1L << 62;
+
+	// acquire results which are not a slot
+	private static final int REJECTED = -1;
+	private static final int NOT_TRACKED = -2;
+
+	/**
+	 * tokens (in 1/16 units) per second and burst per method, 0 rate means not limited
+	 */
+	private final long[] rates = new long[OTHER_METHODS + 1];
+	private final long[] bursts = new long[OTHER_METHODS + 1];
+
+	private final int mask;
+	private final AtomicLongArray keys;
+	private final AtomicLongArray states;
+	private final AtomicLongArray rejections;
+	private final AtomicReferenceArray<Object> sources;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final boolean limitFromDomain;
+
+	private final long epoch = System.nanoTime();
+
+	/**
+	 *
+	 * @param rates
+	 *            the rates config
+	 * @param limitFromDomain
+	 *            if true requests are also limited per From domain
+	 * @param capacity
+	 *            the max number of buckets, rounded to a power of 2
+	 * @throws IllegalArgumentException
+	 *             if the rates config is not valid
+	 */
+	public SourceRateLimiter(String rates, boolean limitFromDomain, int capacity) throws IllegalArgumentException {
+		parseRates(rates);
+		this.limitFromDomain = limitFromDomain;
+		int size = SET_SIZE;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.keys = new AtomicLongArray(size);
+		this.states = new AtomicLongArray(size);
+		this.rejections = new AtomicLongArray(size);
+		this.sources = new AtomicReferenceArray<Object>(size);
+	}
+
+	private void parseRates(String config) throws IllegalArgumentException {
+		long defaultRate = 0;
+		long defaultBurst = 0;
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = -1;
+		}
+		for (String entry : config.split(",")) {
+			entry = entry.trim();
+			if (entry.length() == 0) {
+				continue;
+			}
+			final int eq = entry.indexOf('=');
+			if (eq < 1) {
+				throw new IllegalArgumentException("invalid rate limit " + entry);
+			}
+			final String method = entry.substring(0, eq).trim().toUpperCase();
+			final String value = entry.substring(eq + 1).trim();
+			final int colon = value.indexOf(':');
+			final long rate;
+			final long burst;
+			try {
+				rate = Long.parseLong(colon < 0 ? value : value.substring(0, colon));
+				burst = colon < 0 ? rate : Long.parseLong(value.substring(colon + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid rate limit " + entry, e);
+			}
+			if (rate < 1 || burst < 1 || burst * TOKEN_UNIT > TOKEN_MASK) {
+				throw new IllegalArgumentException("invalid rate limit " + entry);
+			}
+			if (method.equals("*")) {
+				defaultRate = rate * TOKEN_UNIT;
+				defaultBurst = burst * TOKEN_UNIT;
+			} else {
+				final int index = methodIndex(method);
+				if (index == OTHER_METHODS) {
+					throw new IllegalArgumentException("rate limit for unsupported method " + method);
+				}
+				rates[index] = rate * TOKEN_UNIT;
+				bursts[index] = burst * TOKEN_UNIT;
+			}
+		}
+		for (int i = 0; i < rates.length; i++) {
+			if (rates[i] < 0) {
+				rates[i] = defaultRate;
+				bursts[i] = defaultBurst;
+			}
+		}
+	}
+
+	private static int methodIndex(String method) {
+		for (int i = 0; i < METHODS.length; i++) {
+			if (METHODS[i].equals(method)) {
+				return i;
+			}
+		}
+		return OTHER_METHODS;
+	}
+
+	/**
+	 * Checks if a request from the specified source is allowed.
+	 *
+	 * @param method
+	 * @param sourceAddress
+	 *            the IP address the request came from
+	 * @param fromDomain
+	 *            the host of the request From uri, may be null
+	 * @return true if allowed, false if the request exceeds the source rate
+	 */
+	public boolean allow(String method, InetAddress sourceAddress, String fromDomain) {
+		final int methodIndex = methodIndex(method);
+		final long rate = rates[methodIndex];
+		if (rate == 0) {
+			return true;
+		}
+		final long now = (System.nanoTime() - epoch) / 1000000L;
+		final long methodBits = ((long) methodIndex) << 32;
+		final long burst = bursts[methodIndex];
+		long sourceKey = 0;
+		int sourceSlot = NOT_TRACKED;
+		if (sourceAddress != null) {
+			sourceKey = KEY_USED | methodBits | addressBits(sourceAddress.getAddress());
+			sourceSlot = acquire(sourceKey, sourceAddress, rate, burst, now);
+			if (sourceSlot == REJECTED) {
+				rejected.incrementAndGet();
+				return false;
+			}
+		}
+		if (limitFromDomain && fromDomain != null
+				&& acquire(KEY_USED | KEY_DOMAIN | methodBits | (fromDomain.hashCode() & 0xFFFFFFFFL),
+						fromDomain, rate, burst, now) == REJECTED) {
+			// the request does not pass, the source address should not be charged for it
+			if (sourceSlot >= 0) {
+				refund(sourceSlot, sourceKey, burst);
+			}
+			rejected.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Folds the address bytes to 32 bits, IPv4 addresses are kept as is.
+	 * 
+	 * @param address
+	 * @return
+	 */
+	private static long addressBits(byte[] address) {
+		int bits = 0;
+		for (int i = 0; i < address.length; i++) {
+			if ((i & 3) == 0) {
+				bits = bits * 31;
+			}
+			bits ^= (address[i] & 0xFF) << (24 - ((i & 3) << 3));
+		}
+		return bits & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Retrieves the number of seconds a rejected source should wait, for the
+	 * specified method.
+	 *
+	 * @param method
+	 * @return
+	 */
+	public int getRetryAfter(String method) {
+		final long rate = rates[methodIndex(method)];
+		return rate == 0 ? 1 : (int) Math.max(1, (TOKEN_UNIT + rate - 1) / rate);
+	}
+
+	/**
+	 * Takes a token from the bucket of the specified source.
+	 * 
+	 * @param key
+	 * @param source
+	 * @param rate
+	 * @param burst
+	 * @param now
+	 * @return the slot of the bucket, {@link #NOT_TRACKED} if the request was
+	 *         allowed without a bucket, or {@link #REJECTED}
+	 */
+	private int acquire(long key, Object source, long rate, long burst, long now) {
+		final int set = (int) mix(key) & mask & ~(SET_SIZE - 1);
+		int slot = -1;
+		int free = -1;
+		int lru = -1;
+		long lruClock = Long.MAX_VALUE;
+		for (int i = set; i < set + SET_SIZE; i++) {
+			final long k = keys.get(i);
+			if (k == key && source.equals(sources.get(i))) {
+				slot = i;
+				break;
+			}
+			if (k == 0) {
+				if (free < 0) {
+					free = i;
+				}
+			} else {
+				final long clock = states.get(i) >>> TOKEN_BITS;
+				if (clock < lruClock) {
+					lruClock = clock;
+					lru = i;
+				}
+			}
+		}
+		if (slot < 0) {
+			// new source, take a free slot or evict the least recently used one
+			slot = free >= 0 ? free : lru;
+			final long previous = keys.get(slot);
+			if (!keys.compareAndSet(slot, previous, key)) {
+				// lost a race for the slot, let the request pass
+				return NOT_TRACKED;
+			}
+			states.set(slot, (now << TOKEN_BITS) | burst);
+			rejections.set(slot, 0);
+			sources.set(slot, source);
+		}
+		while (true) {
+			final long state = states.get(slot);
+			final long clock = state >>> TOKEN_BITS;
+			long tokens = state & TOKEN_MASK;
+			long newClock = clock;
+			if (now > clock) {
+				// no need to go beyond the time needed to fill the bucket
+				final long elapsed = Math.min(now - clock, 1000L * burst / rate + 1);
+				final long refill = elapsed * rate / 1000L;
+				if (refill > 0) {
+					if (tokens + refill >= burst) {
+						tokens = burst;
+						newClock = now;
+					} else {
+						tokens += refill;
+						// keep the refill remainder
+						newClock = clock + refill * 1000L / rate;
+					}
+				}
+			}
+			final boolean allowed = tokens >= TOKEN_UNIT;
+			if (allowed) {
+				tokens -= TOKEN_UNIT;
+			}
+			if (states.compareAndSet(slot, state, (newClock << TOKEN_BITS) | tokens)) {
+				if (!allowed) {
+					rejections.incrementAndGet(slot);
+					return REJECTED;
+				}
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token previously taken from the specified slot, unless
+	 * the slot was meanwhile taken by another source.
+	 * 
+	 * @param slot
+	 * @param key
+	 * @param burst
+	 */
+	private void refund(int slot, long key, long burst) {
+		while (keys.get(slot) == key) {
+			final long state = states.get(slot);
+			final long tokens = Math.min(burst, (state & TOKEN_MASK) + TOKEN_UNIT);
+			if (states.compareAndSet(slot, state, (state & ~TOKEN_MASK) | tokens)) {
+				return;
+			}
+		}
+	}
+
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SourceRateLimiterMBean#getRejectedRequests()
+	 */
+	public long getRejectedRequests() {
+		return rejected.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SourceRateLimiterMBean#getTrackedSources()
+	 */
+	public int getTrackedSources() {
+		int count = 0;
+		for (int i = 0; i < keys.length(); i++) {
+			if (keys.get(i) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.SourceRateLimiterMBean#getTopOffenders(int)
+	 */
+	public String[] getTopOffenders(int count) {
+		final List<long[]> offenders = new ArrayList<long[]>();
+		for (int i = 0; i < keys.length(); i++) {
+			final long key = keys.get(i);
+			final long rejections = this.rejections.get(i);
+			if (key != 0 && rejections > 0) {
+				offenders.add(new long[] { i, rejections, key });
+			}
+		}
+		Collections.sort(offenders, new Comparator<long[]>() {
+			public int compare(long[] o1, long[] o2) {
+				return o1[1] < o2[1] ? 1 : (o1[1] == o2[1] ? 0 : -1);
+			}
+		});
+		final int size = Math.min(count, offenders.size());
+		final String[] result = new String[size];
+		for (int i = 0; i < size; i++) {
+			final long[] offender = offenders.get(i);
+			final int methodIndex = (int) ((offender[2] & ~(KEY_USED | KEY_DOMAIN)) >>> 32);
+			final Object source = sources.get((int) offender[0]);
+			result[i] = new StringBuilder(source instanceof InetAddress ? ((InetAddress) source).getHostAddress() : String.valueOf(source))
+				.append(' ').append(methodIndex < METHODS.length ? METHODS[methodIndex] : "*")
+				.append(' ').append(offender[1]).toString();
+		}
+		return result;
+	}
+
+}
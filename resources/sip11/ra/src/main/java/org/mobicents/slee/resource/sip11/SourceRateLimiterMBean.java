@@ -0,0 +1,50 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the {@link SourceRateLimiter}.
+ * 
+ * @author martins
+ *
+ */
+public interface SourceRateLimiterMBean {
+
+	/**
+	 * Retrieves the number of requests rejected since the RA entity was activated.
+	 * @return
+	 */
+	public long getRejectedRequests();
+
+	/**
+	 * Retrieves the number of sources currently tracked.
+	 * @return
+	 */
+	public int getTrackedSources();
+
+	/**
+	 * Retrieves the sources with most rejected requests, each in the form
+	 * "source method rejections".
+	 * @param count
+	 * @return
+	 */
+	public String[] getTopOffenders(int count);
+
+}
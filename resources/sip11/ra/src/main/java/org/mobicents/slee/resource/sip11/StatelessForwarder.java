@@ -0,0 +1,248 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+import gov.nist.javax.sip.stack.SIPTransaction;
+
+import javax.sip.InvalidArgumentException;
+import javax.sip.ListeningPoint;
+import javax.sip.ObjectInUseException;
+import javax.sip.SipException;
+import javax.sip.address.Address;
+import javax.sip.address.SipURI;
+import javax.sip.address.URI;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.MaxForwardsHeader;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+/**
+ * Stateless proxy forwarding (RFC 3261 16.11), requests are sent with a Via
+ * which branch is derived from the incoming request, and no client
+ * transactions, and the responses to such requests are relayed upstream by
+ * popping the top Via, before the RA looks for any transaction or dialog.
+ * 
+ * Since the branch is deterministic, retransmissions of a request, and the
+ * CANCEL and non 2xx ACK of an INVITE, are forwarded with the same branch,
+ * matching the downstream server transaction.
+ * 
+ * @author martins
+ * 
+ */
+public class StatelessForwarder {
+
+	/**
+	 * the branch prefix of requests forwarded statelessly, after the magic
+	 * cookie
+	 */
+	public static final String BRANCH_PREFIX = "z9hG4bKsl";
+
+	private static final String MAGIC_COOKIE = "z9hG4bK";
+
+	private static final int DEFAULT_MAX_FORWARDS = 70;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final SleeSipProviderImpl providerWrapper;
+
+	private final Tracer tracer;
+
+	/**
+	 * 
+	 * @param providerWrapper
+	 * @param tracer
+	 */
+	public StatelessForwarder(SleeSipProviderImpl providerWrapper, Tracer tracer) {
+		this.providerWrapper = providerWrapper;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Forwards the specified request statelessly. The request is not changed,
+	 * a copy is forwarded, and if it was received in a server transaction
+	 * the transaction is terminated, ending its activity.
+	 * 
+	 * @param request
+	 * @param nextHop
+	 *            if not null a loose route to it is pushed, otherwise the
+	 *            request is routed by its Route headers or Request-URI
+	 * @throws SipException
+	 *             if Max-Forwards reached zero or the request can't be sent
+	 */
+	public void forward(Request request, URI nextHop) throws SipException {
+		final Request forwarded = (Request) request.clone();
+		// route pre processing, the top route is us
+		final RouteHeader route = (RouteHeader) forwarded.getHeader(RouteHeader.NAME);
+		if (route != null && providerWrapper.isLocalURI(route.getAddress().getURI())) {
+			((SIPMessage) forwarded).removeFirst(RouteHeader.NAME);
+		}
+		final MaxForwardsHeader maxForwards = (MaxForwardsHeader) forwarded.getHeader(MaxForwardsHeader.NAME);
+		try {
+			if (maxForwards == null) {
+				forwarded.setHeader(providerWrapper.getHeaderFactory().createMaxForwardsHeader(DEFAULT_MAX_FORWARDS));
+			} else {
+				maxForwards.decrementMaxForwards();
+			}
+			if (nextHop != null) {
+				final URI routeURI = (URI) nextHop.clone();
+				if (routeURI instanceof SipURI) {
+					((SipURI) routeURI).setLrParam();
+				}
+				final Address routeAddress = providerWrapper.getAddressFactory().createAddress(routeURI);
+				forwarded.addFirst(providerWrapper.getHeaderFactory().createRouteHeader(routeAddress));
+			}
+		} catch (InvalidArgumentException e) {
+			throw new SipException("Failed to forward request", e);
+		}
+		final ViaHeader via = providerWrapper.getLocalVia(getTransport(nextHop != null ? nextHop : request.getRequestURI(), request), createBranch(request, nextHop));
+		if (via == null) {
+			throw new SipException("No listening point for the transport to " + (nextHop != null ? nextHop : request.getRequestURI()));
+		}
+		forwarded.addFirst(via);
+		providerWrapper.getRealProvider().sendRequest(forwarded);
+		terminateServerTransaction(request);
+	}
+
+	private void terminateServerTransaction(Request request) {
+		if (Request.ACK.equals(request.getMethod())) {
+			return;
+		}
+		final SIPTransaction t = providerWrapper.getSipStackImpl().findTransaction((SIPRequest) request, true);
+		if (t instanceof SIPServerTransaction) {
+			try {
+				t.terminate();
+			} catch (ObjectInUseException e) {
+				tracer.warning("Failed to terminate server transaction of request forwarded statelessly", e);
+			}
+		}
+	}
+
+	/**
+	 * Relays the specified response upstream, if it is a response to a
+	 * request forwarded statelessly.
+	 * 
+	 * @param response
+	 * @return true if the response was to a request forwarded statelessly,
+	 *         false otherwise
+	 */
+	public boolean relayResponse(Response response) {
+		final ViaHeader topVia = (ViaHeader) response.getHeader(ViaHeader.NAME);
+		if (topVia == null) {
+			return false;
+		}
+		final String branch = topVia.getBranch();
+		if (branch == null || !branch.startsWith(BRANCH_PREFIX)) {
+			return false;
+		}
+		((SIPMessage) response).removeFirst(ViaHeader.NAME);
+		if (response.getHeader(ViaHeader.NAME) == null) {
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Dropping response to request forwarded statelessly, without Via to relay it:\n" + response);
+			}
+			return true;
+		}
+		try {
+			providerWrapper.getRealProvider().sendResponse(response);
+		} catch (SipException e) {
+			if (tracer.isFineEnabled()) {
+				tracer.fine("Failed to relay response to request forwarded statelessly", e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the branch for the forwarded request, a hash of the incoming
+	 * branch, or of the request key fields if the request came from a pre
+	 * RFC 3261 client, and of the next hop.
+	 * 
+	 * @param request
+	 * @param nextHop
+	 * @return
+	 */
+	static String createBranch(Request request, URI nextHop) {
+		long hash = FNV_OFFSET;
+		final ViaHeader topVia = (ViaHeader) request.getHeader(ViaHeader.NAME);
+		final String branch = topVia != null ? topVia.getBranch() : null;
+		if (branch != null && branch.startsWith(MAGIC_COOKIE)) {
+			hash = hash(hash, branch);
+		} else {
+			hash = hash(hash, request.getRequestURI().toString());
+			if (topVia != null) {
+				hash = hash(hash, topVia.getHost());
+				hash = hash(hash, Integer.toString(topVia.getPort()));
+			}
+			hash = hash(hash, ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId());
+			hash = hash(hash, Long.toString(((CSeqHeader) request.getHeader(CSeqHeader.NAME)).getSeqNumber()));
+			hash = hash(hash, ((FromHeader) request.getHeader(FromHeader.NAME)).getTag());
+			hash = hash(hash, ((ToHeader) request.getHeader(ToHeader.NAME)).getTag());
+		}
+		if (nextHop != null) {
+			hash = hash(hash, nextHop.toString());
+		}
+		return BRANCH_PREFIX + Long.toHexString(hash);
+	}
+
+	private static long hash(long hash, String s) {
+		if (s != null) {
+			for (int i = 0; i < s.length(); i++) {
+				hash ^= s.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		// separator, so that fields do not shift into each other
+		hash ^= 0xff;
+		return hash * FNV_PRIME;
+	}
+
+	/**
+	 * Retrieves the transport to send a request to the specified target, the
+	 * target transport param, TLS for a sips uri, or the transport the request
+	 * was received.
+	 * 
+	 * @param target
+	 * @param request
+	 * @return
+	 */
+	static String getTransport(URI target, Request request) {
+		if (target instanceof SipURI) {
+			final SipURI sipURI = (SipURI) target;
+			if (sipURI.getTransportParam() != null) {
+				return sipURI.getTransportParam();
+			}
+			if (sipURI.isSecure()) {
+				return ListeningPoint.TLS;
+			}
+		}
+		final ViaHeader topVia = (ViaHeader) request.getHeader(ViaHeader.NAME);
+		return topVia != null ? topVia.getTransport() : ListeningPoint.UDP;
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter split in cells, a cache line apart, each updated by a subset of
+ * the threads, so that concurrent updates rarely contend. Reading the value
+ * sums all cells.
+ * 
+ * @author martins
+ * 
+ */
+public class StripedCounter {
+
+	private static final int STRIPES;
+	static {
+		int stripes = 1;
+		while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+			stripes <<= 1;
+		}
+		STRIPES = stripes;
+	}
+
+	// cells are 128 bytes apart
+	private static final int PAD = 16;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+	private static int cell() {
+		final long id = Thread.currentThread().getId();
+		return ((int) (id ^ (id >>> 16)) & (STRIPES - 1)) * PAD;
+	}
+
+	/**
+	 * Adds the specified value to the counter.
+	 * 
+	 * @param value
+	 */
+	public void add(long value) {
+		cells.getAndAdd(cell(), value);
+	}
+
+	/**
+	 * Adds one to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Retrieves the current value of the counter.
+	 * 
+	 * @return
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PAD);
+		}
+		return sum;
+	}
+
+	/**
+	 * Retrieves the current value of the counter and resets it to zero,
+	 * updates concurrent with the reset are not lost.
+	 * 
+	 * @return
+	 */
+	public long sumThenReset() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.getAndSet(i * PAD, 0);
+		}
+		return sum;
+	}
+
+}
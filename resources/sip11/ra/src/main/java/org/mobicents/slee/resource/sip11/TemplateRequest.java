@@ -0,0 +1,264 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.core.InternalErrorHandler;
+import gov.nist.javax.sip.header.CSeq;
+import gov.nist.javax.sip.header.CallID;
+import gov.nist.javax.sip.header.ContentLength;
+import gov.nist.javax.sip.header.From;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.SIPHeaderList;
+import gov.nist.javax.sip.header.To;
+import gov.nist.javax.sip.header.Via;
+import gov.nist.javax.sip.message.SIPDuplicateHeaderException;
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import javax.sip.SipException;
+import javax.sip.header.Header;
+
+/**
+ * A request created from a {@link RequestTemplateImpl}. When sent, only the
+ * request line and the slot headers are encoded, and spliced with the
+ * encoded template headers. Once headers are added or removed, or a template
+ * header is retrieved, since it may be changed in place, the request is
+ * fully encoded, as any other request.
+ * 
+ * @author martins
+ * 
+ */
+class TemplateRequest extends SIPRequest {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAX_BUILDER_CAPACITY = 8192;
+
+	private static final ThreadLocal<StringBuilder> BUILDERS = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(512);
+		}
+	};
+
+	/**
+	 * the encoded template headers, null if the request headers changed
+	 */
+	private byte[] templateHeaders;
+
+	/**
+	 * Sets the encoded template headers, the template headers must be
+	 * already attached.
+	 * 
+	 * @param templateHeaders
+	 */
+	void setTemplateHeaders(byte[] templateHeaders) {
+		this.templateHeaders = templateHeaders;
+	}
+
+	/**
+	 * Indicates if the request is encoded from the template.
+	 * 
+	 * @return
+	 */
+	boolean isTemplateEncoded() {
+		return templateHeaders != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.javax.sip.message.SIPRequest#encodeAsBytes(java.lang.String)
+	 */
+	@Override
+	public byte[] encodeAsBytes(String transport) {
+		final byte[] templateHeaders = this.templateHeaders;
+		if (templateHeaders == null || isNullRequest()) {
+			return super.encodeAsBytes(transport);
+		}
+		final Via via = getTopmostVia();
+		try {
+			via.setTransport(transport);
+		} catch (ParseException e) {
+			InternalErrorHandler.handleException(e);
+		}
+		final byte[] content = getRawContent();
+		final int contentLength = content == null ? 0 : content.length;
+		StringBuilder sb = BUILDERS.get();
+		if (sb.capacity() > MAX_BUILDER_CAPACITY) {
+			// do not retain the builder of an unusually large request
+			sb = new StringBuilder(512);
+			BUILDERS.set(sb);
+		}
+		sb.setLength(0);
+		requestLine.encode(sb);
+		via.encode(sb);
+		fromHeader.encode(sb);
+		toHeader.encode(sb);
+		callIdHeader.encode(sb);
+		cSeqHeader.encode(sb);
+		final byte[] slots;
+		final byte[] tail;
+		try {
+			slots = sb.toString().getBytes(getCharset());
+			sb.setLength(0);
+			tail = sb.append("Content-Length: ").append(contentLength).append("\r\n\r\n").toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			InternalErrorHandler.handleException(e);
+			return null;
+		}
+		final byte[] bytes = new byte[slots.length + templateHeaders.length + tail.length + contentLength];
+		System.arraycopy(slots, 0, bytes, 0, slots.length);
+		int offset = slots.length;
+		System.arraycopy(templateHeaders, 0, bytes, offset, templateHeaders.length);
+		offset += templateHeaders.length;
+		System.arraycopy(tail, 0, bytes, offset, tail.length);
+		if (contentLength > 0) {
+			System.arraycopy(content, 0, bytes, offset + tail.length, contentLength);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Indicates if the header with the specified name is a slot header, which
+	 * is always encoded from the request, in long or compact form.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private static boolean isSlotHeader(String name) {
+		if (name.length() == 1) {
+			final char c = Character.toLowerCase(name.charAt(0));
+			return c == 'v' || c == 'f' || c == 't' || c == 'i' || c == 'l';
+		}
+		return name.equalsIgnoreCase(Via.NAME) || name.equalsIgnoreCase(From.NAME)
+				|| name.equalsIgnoreCase(To.NAME) || name.equalsIgnoreCase(CallID.NAME)
+				|| name.equalsIgnoreCase(CSeq.NAME) || name.equalsIgnoreCase(ContentLength.NAME);
+	}
+
+	// the methods which expose template headers, which may then be changed in place
+
+	@Override
+	public Header getHeader(String headerName) {
+		if (templateHeaders != null && !isSlotHeader(headerName)) {
+			templateHeaders = null;
+		}
+		return super.getHeader(headerName);
+	}
+
+	@Override
+	public ListIterator<SIPHeader> getHeaders(String headerName) {
+		if (templateHeaders != null && !isSlotHeader(headerName)) {
+			templateHeaders = null;
+		}
+		return super.getHeaders(headerName);
+	}
+
+	@Override
+	public Iterator<SIPHeader> getHeaders() {
+		templateHeaders = null;
+		return super.getHeaders();
+	}
+
+	// the methods which change the request headers, after which the template encoding is not valid
+
+	@Override
+	public void attachHeader(SIPHeader header, boolean replaceFlag) throws SIPDuplicateHeaderException {
+		templateHeaders = null;
+		super.attachHeader(header, replaceFlag);
+	}
+
+	@Override
+	public void attachHeader(SIPHeader header, boolean replaceFlag, boolean top) throws SIPDuplicateHeaderException {
+		templateHeaders = null;
+		super.attachHeader(header, replaceFlag, top);
+	}
+
+	@Override
+	public void setHeader(Header header) {
+		templateHeaders = null;
+		super.setHeader(header);
+	}
+
+	@Override
+	public void setHeader(SIPHeaderList<Via> header) {
+		templateHeaders = null;
+		super.setHeader(header);
+	}
+
+	@Override
+	public void setHeaders(List<SIPHeader> headers) {
+		templateHeaders = null;
+		super.setHeaders(headers);
+	}
+
+	@Override
+	public void addHeader(Header header) {
+		templateHeaders = null;
+		super.addHeader(header);
+	}
+
+	@Override
+	public void addHeader(String header) {
+		templateHeaders = null;
+		super.addHeader(header);
+	}
+
+	@Override
+	public void addFirst(Header header) throws SipException, NullPointerException {
+		templateHeaders = null;
+		super.addFirst(header);
+	}
+
+	@Override
+	public void addLast(Header header) throws SipException, NullPointerException {
+		templateHeaders = null;
+		super.addLast(header);
+	}
+
+	@Override
+	public void removeHeader(String headerName) {
+		templateHeaders = null;
+		super.removeHeader(headerName);
+	}
+
+	@Override
+	public void removeHeader(String headerName, boolean top) {
+		templateHeaders = null;
+		super.removeHeader(headerName, top);
+	}
+
+	@Override
+	public void removeFirst(String headerName) throws NullPointerException {
+		templateHeaders = null;
+		super.removeFirst(headerName);
+	}
+
+	@Override
+	public void removeLast(String headerName) {
+		templateHeaders = null;
+		super.removeLast(headerName);
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hierarchical timing wheel, with {@link #LEVELS} levels of {@link #SLOTS}
+ * slots each. A timer is placed in the lowest level that covers its deadline,
+ * and moves to the level below each time the wheel enters the range of its
+ * slot, thus scheduling, cancelling and expiring a timer are all O(1).
+ * 
+ * Timers are scheduled and cancelled from any thread, while the wheel itself
+ * is only touched by the thread invoking {@link #advance(long)}: new timers are
+ * queued and only placed in the wheel on the next advance. The wheel does not
+ * support moving a timer, instead the {@link Listener} of an expired timer may
+ * return a new deadline, which makes it cheap to track deadlines that change
+ * often, such as the last activity of a dialog: updates only need to store
+ * the new time, and the timer is rescheduled once, when it expires.
+ * 
+ * @author martins
+ * 
+ * @param <T>
+ *            the type of the timer targets
+ */
+public class TimingWheel<T> {
+
+	/**
+	 * Receives the timers expired.
+	 * 
+	 * @param <T>
+	 */
+	public interface Listener<T> {
+
+		/**
+		 * A timer for the specified target expired.
+		 * 
+		 * @param target
+		 * @param now
+		 *            the current time, in ms
+		 * @return the new deadline of the timer, in ms, if greater than now
+		 *         the timer is rescheduled, otherwise it is discarded
+		 */
+		public long expired(T target, long now);
+
+	}
+
+	/**
+	 * A timer scheduled in the wheel.
+	 * 
+	 * @param <T>
+	 */
+	public static class Timer<T> {
+
+		private volatile T target;
+		private long deadline;
+		private Timer<T> next;
+
+		private Timer(T target, long deadline) {
+			this.target = target;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timer, releasing its target.
+		 */
+		public void cancel() {
+			target = null;
+		}
+
+		/**
+		 * Indicates if the timer was cancelled or expired without being
+		 * rescheduled.
+		 * 
+		 * @return
+		 */
+		public boolean isCancelled() {
+			return target == null;
+		}
+	}
+
+	public static final int SLOT_BITS = 6;
+	public static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	public static final int LEVELS = 4;
+
+	private final long tickMillis;
+	private final Listener<T> listener;
+
+	private final Timer<T>[][] wheel;
+	private final ConcurrentLinkedQueue<Timer<T>> scheduled = new ConcurrentLinkedQueue<Timer<T>>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * the last tick processed, only accessed by the advancing thread
+	 */
+	private long tick = -1;
+
+	/**
+	 * 
+	 * @param tickMillis
+	 *            the duration of a tick, the wheel resolution
+	 * @param listener
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickMillis, Listener<T> listener) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("invalid tick " + tickMillis);
+		}
+		this.tickMillis = tickMillis;
+		this.listener = listener;
+		this.wheel = (Timer<T>[][]) new Timer<?>[LEVELS][SLOTS];
+	}
+
+	/**
+	 * Schedules a timer for the specified target.
+	 * 
+	 * @param target
+	 * @param deadline
+	 *            the time when it expires, in ms
+	 * @return
+	 */
+	public Timer<T> schedule(T target, long deadline) {
+		if (target == null) {
+			throw new NullPointerException("null target");
+		}
+		final Timer<T> timer = new Timer<T>(target, deadline);
+		size.incrementAndGet();
+		scheduled.offer(timer);
+		return timer;
+	}
+
+	/**
+	 * Retrieves the number of timers in the wheel, cancelled timers included
+	 * until their slot is reached.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Advances the wheel to the specified time, expiring all timers with
+	 * deadlines up to it. Must not be invoked concurrently.
+	 * 
+	 * @param now
+	 *            the current time, in ms
+	 */
+	public void advance(long now) {
+		final long nowTick = now / tickMillis;
+		if (tick < 0) {
+			tick = nowTick;
+		}
+		Timer<T> timer;
+		while ((timer = scheduled.poll()) != null) {
+			place(timer, tick + 1);
+		}
+		while (tick < nowTick) {
+			tick++;
+			// move down the timers of the higher levels which range starts now
+			for (int level = 1; level < LEVELS; level++) {
+				final int shift = level * SLOT_BITS;
+				if ((tick & ((1L << shift) - 1)) != 0) {
+					break;
+				}
+				final int slot = (int) (tick >>> shift) & SLOT_MASK;
+				timer = wheel[level][slot];
+				wheel[level][slot] = null;
+				while (timer != null) {
+					final Timer<T> next = timer.next;
+					// the slot of the current tick is not yet expired
+					place(timer, tick);
+					timer = next;
+				}
+			}
+			final int slot = (int) tick & SLOT_MASK;
+			timer = wheel[0][slot];
+			wheel[0][slot] = null;
+			while (timer != null) {
+				final Timer<T> next = timer.next;
+				expire(timer, now);
+				timer = next;
+			}
+		}
+	}
+
+	private void expire(Timer<T> timer, long now) {
+		final T target = timer.target;
+		if (target != null) {
+			long deadline;
+			try {
+				deadline = listener.expired(target, now);
+			} catch (RuntimeException e) {
+				deadline = 0;
+			}
+			if (deadline > now && !timer.isCancelled()) {
+				timer.deadline = deadline;
+				place(timer, tick + 1);
+				return;
+			}
+			timer.target = null;
+		}
+		size.decrementAndGet();
+	}
+
+	private void place(Timer<T> timer, long minTick) {
+		timer.next = null;
+		if (timer.isCancelled()) {
+			size.decrementAndGet();
+			return;
+		}
+		// never expire before the deadline, nor in a slot already expired
+		final long deadlineTick = Math.max((timer.deadline + tickMillis - 1) / tickMillis, minTick);
+		final long delta = deadlineTick - tick;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= (1L << ((level + 1) * SLOT_BITS))) {
+			level++;
+		}
+		// timers beyond the wheel range wait in the last slot of the highest level
+		final long slotTick = level == LEVELS - 1 && delta >= (1L << (LEVELS * SLOT_BITS)) ? tick
+				+ (1L << (LEVELS * SLOT_BITS)) - 1 : deadlineTick;
+		final int slot = (int) (slotTick >>> (level * SLOT_BITS)) & SLOT_MASK;
+		timer.next = wheel[level][slot];
+		wheel[level][slot] = timer;
+	}
+
+}
@@ -0,0 +1,482 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.core.net.DefaultSecurityManagerProvider;
+import gov.nist.javax.sip.ListeningPointImpl;
+import gov.nist.javax.sip.stack.MessageProcessor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.sip.SipStack;
+
+/**
+ * Security manager provider for the stack TLS transport, which sizes the
+ * session resumption caches of the stack SSL contexts, and counts full
+ * handshakes.
+ * 
+ * The stack creates its SSL contexts internally, with the key and trust
+ * managers from this provider, so these are wrapped to detect full
+ * handshakes, since resumed ones neither choose a local certificate nor check
+ * the peer's one. The RA sizes the session contexts with
+ * {@link #configure(SipStack)} once the stack listening points are created,
+ * before any handshake, the session contexts of message processors not
+ * known are reached through the sessions of the first full handshakes, once
+ * these are cached. Nothing is configured for the whole JVM.
+ * 
+ * The stack instantiates the provider by class name, thus the RA retrieves
+ * it with {@link #getInstance(String)}, using the stack name.
+ * 
+ * @author martins
+ * 
+ */
+public class TlsSessionManager extends DefaultSecurityManagerProvider implements TlsSessionManagerMBean {
+
+	/**
+	 * the default max number of sessions in each cache
+	 */
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+
+	/**
+	 * the default session timeout, in seconds
+	 */
+	public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+	private static final String STACK_NAME = "javax.sip.STACK_NAME";
+
+	/**
+	 * max number of handshake sessions waiting to reach their session context
+	 */
+	private static final int MAX_PENDING_SESSIONS = 64;
+
+	/**
+	 * session value which marks a handshake as already counted
+	 */
+	private static final String COUNTED = TlsSessionManager.class.getName();
+
+	private static final ConcurrentHashMap<String, TlsSessionManager> instances = new ConcurrentHashMap<String, TlsSessionManager>();
+
+	/**
+	 * Retrieves the provider created by the stack with the specified name.
+	 * 
+	 * @param stackName
+	 * @return null if there is no such stack, or it does not use this provider
+	 */
+	public static TlsSessionManager getInstance(String stackName) {
+		return instances.get(stackName);
+	}
+
+	/**
+	 * Removes the provider of the stack with the specified name.
+	 * 
+	 * @param stackName
+	 */
+	public static void removeInstance(String stackName) {
+		instances.remove(stackName);
+	}
+
+	private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+	private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+
+	private final List<SSLSessionContext> sessionContexts = new CopyOnWriteArrayList<SSLSessionContext>();
+	private final Queue<SSLSession> pendingSessions = new ConcurrentLinkedQueue<SSLSession>();
+
+	private final AtomicLong serverHandshakes = new AtomicLong();
+	private final AtomicLong clientHandshakes = new AtomicLong();
+
+	// full handshakes of the current and previous second
+	private final AtomicLong rateSecond = new AtomicLong();
+	private final AtomicLong rateCount = new AtomicLong();
+	private volatile long lastRateCount;
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.core.net.DefaultSecurityManagerProvider#init(java.util.Properties)
+	 */
+	@Override
+	public void init(Properties properties) throws GeneralSecurityException, IOException {
+		super.init(properties);
+		String p = properties.getProperty(SipResourceAdaptor.TLS_SESSION_CACHE_SIZE);
+		if (p != null) {
+			sessionCacheSize = Integer.parseInt(p);
+		}
+		p = properties.getProperty(SipResourceAdaptor.TLS_SESSION_TIMEOUT);
+		if (p != null) {
+			sessionTimeout = Integer.parseInt(p);
+		}
+		p = properties.getProperty(STACK_NAME);
+		if (p != null) {
+			instances.put(p, this);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.core.net.DefaultSecurityManagerProvider#getKeyManagers(boolean)
+	 */
+	@Override
+	public KeyManager[] getKeyManagers(boolean client) {
+		final KeyManager[] keyManagers = super.getKeyManagers(client);
+		if (keyManagers == null || client) {
+			// as client the key manager is only used for client auth
+			return keyManagers;
+		}
+		final KeyManager[] result = new KeyManager[keyManagers.length];
+		for (int i = 0; i < keyManagers.length; i++) {
+			result[i] = keyManagers[i] instanceof X509ExtendedKeyManager ? new ServerKeyManager(
+					(X509ExtendedKeyManager) keyManagers[i]) : keyManagers[i];
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see gov.nist.core.net.DefaultSecurityManagerProvider#getTrustManagers(boolean)
+	 */
+	@Override
+	public TrustManager[] getTrustManagers(boolean client) {
+		final TrustManager[] trustManagers = super.getTrustManagers(client);
+		if (trustManagers == null || !client) {
+			// as server the trust manager is only used for client auth
+			return trustManagers;
+		}
+		final TrustManager[] result = new TrustManager[trustManagers.length];
+		for (int i = 0; i < trustManagers.length; i++) {
+			result[i] = trustManagers[i] instanceof X509ExtendedTrustManager ? new ClientTrustManager(
+					(X509ExtendedTrustManager) trustManagers[i]) : trustManagers[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Sizes the session caches of the SSL contexts created by the TLS message
+	 * processors of the specified stack.
+	 * 
+	 * @param sipStack
+	 * @return the number of SSL contexts configured
+	 */
+	public int configure(SipStack sipStack) {
+		int configured = 0;
+		for (Iterator<?> it = sipStack.getListeningPoints(); it.hasNext();) {
+			final Object listeningPoint = it.next();
+			if (!(listeningPoint instanceof ListeningPointImpl)) {
+				continue;
+			}
+			final MessageProcessor messageProcessor = ((ListeningPointImpl) listeningPoint).getMessageProcessor();
+			// the stack keeps its server and client contexts in non public fields
+			for (Class<?> c = messageProcessor.getClass(); c != MessageProcessor.class && c != null; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (field.getType() != SSLContext.class) {
+						continue;
+					}
+					try {
+						field.setAccessible(true);
+						final SSLContext context = (SSLContext) field.get(messageProcessor);
+						if (context != null) {
+							configure(context);
+							configured++;
+						}
+					} catch (Exception e) {
+						// the session context is configured on the first handshakes
+					}
+				}
+			}
+		}
+		return configured;
+	}
+
+	/**
+	 * Sizes the server and client session caches of the specified SSL
+	 * context.
+	 * 
+	 * @param context
+	 */
+	void configure(SSLContext context) {
+		configure(context.getServerSessionContext());
+		configure(context.getClientSessionContext());
+	}
+
+	private void configure(SSLSessionContext sessionContext) {
+		synchronized (sessionContexts) {
+			if (!sessionContexts.contains(sessionContext)) {
+				sessionContext.setSessionCacheSize(sessionCacheSize);
+				sessionContext.setSessionTimeout(sessionTimeout);
+				sessionContexts.add(sessionContext);
+			}
+		}
+	}
+
+	/**
+	 * Accounts a full handshake, and keeps its session to configure the
+	 * session context, once the session is cached.
+	 * 
+	 * @param session
+	 *            the handshake session, may be null
+	 * @param server
+	 */
+	void fullHandshake(SSLSession session, boolean server) {
+		configureSessionContexts();
+		if (session != null) {
+			if (session.getValue(COUNTED) != null) {
+				// the key manager may be asked for more than one key type
+				return;
+			}
+			session.putValue(COUNTED, Boolean.TRUE);
+			if (pendingSessions.size() < MAX_PENDING_SESSIONS) {
+				pendingSessions.add(session);
+			}
+		}
+		(server ? serverHandshakes : clientHandshakes).incrementAndGet();
+		final long second = System.nanoTime() / 1000000000L;
+		final long rateSecond = this.rateSecond.get();
+		if (second != rateSecond && this.rateSecond.compareAndSet(rateSecond, second)) {
+			lastRateCount = second == rateSecond + 1 ? rateCount.getAndSet(1) : 0;
+			rateCount.set(1);
+		} else {
+			rateCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Configures the session contexts of the pending sessions already cached.
+	 */
+	private void configureSessionContexts() {
+		if (pendingSessions.isEmpty()) {
+			return;
+		}
+		for (Iterator<SSLSession> it = pendingSessions.iterator(); it.hasNext();) {
+			final SSLSession session = it.next();
+			final SSLSessionContext sessionContext = session.getSessionContext();
+			if (sessionContext != null) {
+				configure(sessionContext);
+				it.remove();
+			} else if (!session.isValid()) {
+				it.remove();
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getServerHandshakes()
+	 */
+	public long getServerHandshakes() {
+		return serverHandshakes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getClientHandshakes()
+	 */
+	public long getClientHandshakes() {
+		return clientHandshakes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getHandshakeRate()
+	 */
+	public long getHandshakeRate() {
+		final long second = System.nanoTime() / 1000000000L;
+		final long rateSecond = this.rateSecond.get();
+		if (second == rateSecond) {
+			return lastRateCount;
+		}
+		return second == rateSecond + 1 ? rateCount.get() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getCachedSessions()
+	 */
+	public int getCachedSessions() {
+		configureSessionContexts();
+		int count = 0;
+		for (SSLSessionContext sessionContext : sessionContexts) {
+			for (Enumeration<byte[]> e = sessionContext.getIds(); e.hasMoreElements(); e.nextElement()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getSessionCacheSize()
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#getSessionTimeout()
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.TlsSessionManagerMBean#clear()
+	 */
+	public void clear() {
+		configureSessionContexts();
+		for (SSLSessionContext sessionContext : sessionContexts) {
+			for (Enumeration<byte[]> e = sessionContext.getIds(); e.hasMoreElements();) {
+				final SSLSession session = sessionContext.getSession(e.nextElement());
+				if (session != null) {
+					session.invalidate();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Key manager which accounts the full handshakes done as server.
+	 */
+	private class ServerKeyManager extends X509ExtendedKeyManager {
+
+		private final X509ExtendedKeyManager keyManager;
+
+		ServerKeyManager(X509ExtendedKeyManager keyManager) {
+			this.keyManager = keyManager;
+		}
+
+		@Override
+		public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+			fullHandshake(engine != null ? engine.getHandshakeSession() : null, true);
+			return keyManager.chooseEngineServerAlias(keyType, issuers, engine);
+		}
+
+		@Override
+		public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+			fullHandshake(socket instanceof SSLSocket ? ((SSLSocket) socket).getHandshakeSession() : null, true);
+			return keyManager.chooseServerAlias(keyType, issuers, socket);
+		}
+
+		@Override
+		public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+			return keyManager.chooseEngineClientAlias(keyType, issuers, engine);
+		}
+
+		@Override
+		public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+			return keyManager.chooseClientAlias(keyType, issuers, socket);
+		}
+
+		@Override
+		public String[] getClientAliases(String keyType, Principal[] issuers) {
+			return keyManager.getClientAliases(keyType, issuers);
+		}
+
+		@Override
+		public String[] getServerAliases(String keyType, Principal[] issuers) {
+			return keyManager.getServerAliases(keyType, issuers);
+		}
+
+		@Override
+		public X509Certificate[] getCertificateChain(String alias) {
+			return keyManager.getCertificateChain(alias);
+		}
+
+		@Override
+		public PrivateKey getPrivateKey(String alias) {
+			return keyManager.getPrivateKey(alias);
+		}
+	}
+
+	/**
+	 * Trust manager which accounts the full handshakes done as client.
+	 */
+	private class ClientTrustManager extends X509ExtendedTrustManager {
+
+		private final X509ExtendedTrustManager trustManager;
+
+		ClientTrustManager(X509ExtendedTrustManager trustManager) {
+			this.trustManager = trustManager;
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+			fullHandshake(engine != null ? engine.getHandshakeSession() : null, false);
+			trustManager.checkServerTrusted(chain, authType, engine);
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+			fullHandshake(socket instanceof SSLSocket ? ((SSLSocket) socket).getHandshakeSession() : null, false);
+			trustManager.checkServerTrusted(chain, authType, socket);
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			fullHandshake(null, false);
+			trustManager.checkServerTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType, engine);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType, socket);
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			trustManager.checkClientTrusted(chain, authType);
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return trustManager.getAcceptedIssuers();
+		}
+	}
+
+}
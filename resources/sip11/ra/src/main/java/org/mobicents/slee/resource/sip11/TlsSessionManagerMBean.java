@@ -0,0 +1,74 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+/**
+ * JMX view of the {@link TlsSessionManager}.
+ * 
+ * @author martins
+ *
+ */
+public interface TlsSessionManagerMBean {
+
+	/**
+	 * Retrieves the number of full handshakes done as server, i.e. the ones
+	 * not resumed from the session cache.
+	 * @return
+	 */
+	public long getServerHandshakes();
+
+	/**
+	 * Retrieves the number of full handshakes done as client.
+	 * @return
+	 */
+	public long getClientHandshakes();
+
+	/**
+	 * Retrieves the number of full handshakes, server and client, done in the
+	 * last second.
+	 * @return
+	 */
+	public long getHandshakeRate();
+
+	/**
+	 * Retrieves the number of sessions in the server and client session caches.
+	 * @return
+	 */
+	public int getCachedSessions();
+
+	/**
+	 * Retrieves the max number of sessions in each session cache, 0 means no limit.
+	 * @return
+	 */
+	public int getSessionCacheSize();
+
+	/**
+	 * Retrieves the timeout of cached sessions, in seconds.
+	 * @return
+	 */
+	public int getSessionTimeout();
+
+	/**
+	 * Removes all sessions from the caches, forcing full handshakes.
+	 */
+	public void clear();
+
+}
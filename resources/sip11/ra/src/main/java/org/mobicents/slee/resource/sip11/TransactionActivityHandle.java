@@ -23,11 +23,14 @@
 package org.mobicents.slee.resource.sip11;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 import javax.sip.Transaction;
 
 /**
- * The {@link SipActivityHandle} for {@link Transaction} activity.
+ * The {@link SipActivityHandle} for {@link Transaction} activity. The
+ * transaction id is kept in compact form, the {@link String} form is only
+ * built when requested.
  * 
  * @author martins
  * 
@@ -37,32 +40,40 @@ public abstract class TransactionActivityHandle extends SipActivityHandle implem
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	
 	/**
-	 * the transaction's id
+	 * the transaction's id, in compact form
 	 */
-	private final String txId;
+	private final byte[] txId;
+
+	/**
+	 * the 128 bit hash of the transaction's id
+	 */
+	private final long hashHigh;
+	private final long hashLow;
 	
 	/**
 	 * 
-	 * @param branchId
-	 * @param method
+	 * @param txId
 	 */
 	public TransactionActivityHandle(String txId) {
 		if (txId == null) {
 			throw new NullPointerException("null tx id");
 		}
-		this.txId = txId;		
+		this.txId = SipResourceAdaptorActivityHandleUtils.encodeId(txId);
+		final long[] hash = SipResourceAdaptorActivityHandleUtils.hashId(this.txId, 0L, 0L);
+		this.hashHigh = hash[0];
+		this.hashLow = hash[1];
 	}
 
 	public String getTxId() {
-		return txId;
+		return SipResourceAdaptorActivityHandleUtils.decodeId(txId, 0, txId.length);
 	}
 
 	@Override
 	public int hashCode() {
-		return txId.hashCode();
+		return SipResourceAdaptorActivityHandleUtils.hashCode(hashHigh, hashLow);
 	}
 
 	@Override
@@ -74,14 +85,14 @@ public abstract class TransactionActivityHandle extends SipActivityHandle implem
 		if (getClass() != obj.getClass())
 			return false;
 		final TransactionActivityHandle other = (TransactionActivityHandle) obj;
-		if (!txId.equals(other.txId))
+		if (hashLow != other.hashLow || hashHigh != other.hashHigh)
 			return false;
-		return true;
+		return Arrays.equals(txId, other.txId);
 	}
 
 	@Override
 	public String toString() {
-		return txId;
+		return getTxId();
 	}
 
 }
@@ -0,0 +1,191 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The timings of a SIP transaction lifecycle, as emitted by
+ * {@link TransactionSpans}. Each phase is the offset in microseconds from the
+ * transaction start, or -1 if the phase was not reached.
+ *
+ * For server transactions the span starts when the request is received, and
+ * the phases are the activity creation, the return of the event firing, the
+ * first response sent by the application and the transaction termination.
+ * For client transactions the span starts when the transaction is created,
+ * and the phases are the request sending, the first provisional response, the
+ * final response and the transaction termination.
+ *
+ * @author martins
+ *
+ */
+public class TransactionSpan {
+
+	public static final int SERVER_ACTIVITY = 1;
+	public static final int SERVER_FIRED = 2;
+	public static final int SERVER_RESPONDED = 3;
+
+	public static final int CLIENT_SENT = 1;
+	public static final int CLIENT_PROVISIONAL = 2;
+	public static final int CLIENT_FINAL = 3;
+
+	public static final int TERMINATED = 4;
+
+	/**
+	 * the number of phases in a span
+	 */
+	public static final int PHASES = 4;
+
+	private final boolean client;
+	private final String method;
+	private final String callId;
+	private final long startTime;
+	private final int[] phases;
+
+	/**
+	 *
+	 * @param client
+	 * @param method
+	 * @param callId
+	 * @param startTime
+	 *            the wall clock time of the span start, in ms
+	 * @param phases
+	 *            the phase offsets in microseconds, -1 if not reached
+	 */
+	public TransactionSpan(boolean client, String method, String callId, long startTime, int[] phases) {
+		if (phases.length != PHASES) {
+			throw new IllegalArgumentException("a span has "+PHASES+" phases");
+		}
+		this.client = client;
+		this.method = method;
+		this.callId = callId;
+		this.startTime = startTime;
+		this.phases = phases;
+	}
+
+	public boolean isClient() {
+		return client;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getCallId() {
+		return callId;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Retrieves the offset of the specified phase, in microseconds.
+	 *
+	 * @param phase
+	 *            from 1 to {@link #PHASES}
+	 * @return -1 if the phase was not reached
+	 */
+	public int getPhase(int phase) {
+		return phases[phase - 1];
+	}
+
+	/**
+	 * Retrieves the offset of the final response, in microseconds, or of the
+	 * last phase reached if the transaction had no final response. The
+	 * termination of a transaction which was answered is not accounted, it
+	 * may come long after, e.g. on Timer J.
+	 *
+	 * @return
+	 */
+	public int getDuration() {
+		return getDuration(phases);
+	}
+
+	static int getDuration(int[] phases) {
+		// the same phase for server and client txs
+		final int responded = phases[SERVER_RESPONDED - 1];
+		if (responded >= 0) {
+			return responded;
+		}
+		int duration = 0;
+		for (int phase : phases) {
+			if (phase > duration) {
+				duration = phase;
+			}
+		}
+		return duration;
+	}
+
+	/**
+	 * Writes the span as a compact binary record: the type byte (0 for server
+	 * and 1 for client txs), the start time, the method and call id, and the
+	 * phase offsets.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(client ? 1 : 0);
+		out.writeLong(startTime);
+		out.writeUTF(method);
+		out.writeUTF(callId);
+		out.writeByte(PHASES);
+		for (int phase : phases) {
+			out.writeInt(phase);
+		}
+	}
+
+	/**
+	 * Reads a span written with {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static TransactionSpan read(DataInput in) throws IOException {
+		final boolean client = in.readByte() != 0;
+		final long startTime = in.readLong();
+		final String method = in.readUTF();
+		final String callId = in.readUTF();
+		final int size = in.readByte();
+		if (size != PHASES) {
+			throw new IOException("unexpected number of phases "+size);
+		}
+		final int[] phases = new int[size];
+		for (int i = 0; i < size; i++) {
+			phases[i] = in.readInt();
+		}
+		return new TransactionSpan(client, method, callId, startTime, phases);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(128).append(client ? "client " : "server ")
+			.append(method).append(' ').append(callId).append(" @").append(startTime);
+		for (int phase : phases) {
+			sb.append(' ').append(phase);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.io.IOException;
+
+/**
+ * The destination of the transaction spans emitted by the RA. Implementations
+ * are created through a public no-args constructor, and
+ * {@link #span(TransactionSpan)} is invoked from the SIP stack and SBB
+ * threads, thus must not block.
+ *
+ * @author martins
+ *
+ */
+public interface TransactionSpanSink {
+
+	/**
+	 * Opens the sink.
+	 *
+	 * @param location
+	 *            the configured location, may be null
+	 * @throws IOException
+	 */
+	public void open(String location) throws IOException;
+
+	/**
+	 * Consumes a span.
+	 *
+	 * @param span
+	 */
+	public void span(TransactionSpan span);
+
+	/**
+	 * Closes the sink, no more spans are consumed.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,158 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.header.CallIdHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.mobicents.slee.resource.sip11.wrappers.TransactionWrapper;
+
+/**
+ * Emits the lifecycle timings of SIP transactions to a
+ * {@link TransactionSpanSink}, telling if latency is in the stack, the
+ * container event queue or the SBBs.
+ *
+ * The RA takes monotonic timestamps at each phase of a transaction, stored in
+ * primitive fields of its {@link TransactionWrapper}, and when the
+ * transaction completes a span is emitted if the transaction is sampled, 1 in
+ * each sample rate, or if it took longer than the slow threshold.
+ *
+ * @author martins
+ *
+ */
+public class TransactionSpans {
+
+	private final TransactionSpanSink sink;
+
+	private final int sampleRate;
+
+	private final long threshold;
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong emitted = new AtomicLong();
+
+	/**
+	 *
+	 * @param sink
+	 *            where the spans are emitted
+	 * @param sampleRate
+	 *            1 in each sample rate spans is emitted, 0 to emit only slow
+	 *            ones
+	 * @param threshold
+	 *            spans taking at least this time in ms are always emitted, 0
+	 *            to emit only sampled ones
+	 */
+	public TransactionSpans(TransactionSpanSink sink, int sampleRate, long threshold) {
+		this.sink = sink;
+		this.sampleRate = sampleRate;
+		this.threshold = threshold * 1000L;
+	}
+
+	/**
+	 * Starts the span of a server transaction.
+	 *
+	 * @param tw
+	 * @param received
+	 *            the {@link System#nanoTime()} when the request was received
+	 */
+	public void serverTransactionStarted(TransactionWrapper tw, long received) {
+		tw.startSpan(received);
+	}
+
+	/**
+	 * Starts the span of a client transaction, when it is created.
+	 *
+	 * @param tw
+	 */
+	public void clientTransactionStarted(TransactionWrapper tw) {
+		tw.startSpan(System.nanoTime());
+	}
+
+	/**
+	 * Marks the reception of a response on a client transaction, emitting the
+	 * span if the response is final.
+	 *
+	 * @param tw
+	 * @param response
+	 */
+	public void clientTransactionResponse(TransactionWrapper tw, Response response) {
+		if (response.getStatusCode() < 200) {
+			tw.markSpan(TransactionSpan.CLIENT_PROVISIONAL);
+		} else {
+			tw.markSpan(TransactionSpan.CLIENT_FINAL);
+			emit(tw);
+		}
+	}
+
+	/**
+	 * Marks the termination of a transaction and emits its span, if not
+	 * emitted already.
+	 *
+	 * @param tw
+	 */
+	public void transactionTerminated(TransactionWrapper tw) {
+		tw.markSpan(TransactionSpan.TERMINATED);
+		emit(tw);
+	}
+
+	private void emit(TransactionWrapper tw) {
+		final long start = tw.getSpanStart();
+		if (start == 0 || !tw.endSpan()) {
+			// not started or already emitted
+			return;
+		}
+		final int[] phases = new int[TransactionSpan.PHASES];
+		for (int i = 0; i < phases.length; i++) {
+			final long time = tw.getSpanTime(i + 1);
+			phases[i] = time == 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, (time - start) / 1000L);
+		}
+		final int duration = TransactionSpan.getDuration(phases);
+		final boolean sampled = sampleRate > 0 && completed.incrementAndGet() % sampleRate == 0;
+		if (!sampled && (threshold == 0 || duration < threshold)) {
+			return;
+		}
+		final Request request = tw.getRequest();
+		final CallIdHeader callIdHeader = (CallIdHeader) request.getHeader(CallIdHeader.NAME);
+		sink.span(new TransactionSpan(tw.isClientTransaction(), request.getMethod(),
+				callIdHeader != null ? callIdHeader.getCallId() : "", System.currentTimeMillis() - (System.nanoTime() - start) / 1000000L, phases));
+		emitted.incrementAndGet();
+	}
+
+	/**
+	 * Retrieves the number of spans emitted.
+	 *
+	 * @return
+	 */
+	public long getEmitted() {
+		return emitted.get();
+	}
+
+	/**
+	 * Closes the sink.
+	 */
+	public void close() {
+		sink.close();
+	}
+
+}
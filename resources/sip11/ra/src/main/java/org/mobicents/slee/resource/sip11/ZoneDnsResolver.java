@@ -0,0 +1,169 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory {@link DnsResolver}, which answers from a zone of records added
+ * to it, e.g. to locate servers without a DNS server in test or lab setups.
+ * Records are added with {@link #add(DnsRecord)} or parsed from zone lines,
+ * in the form <code>name ttl type rdata</code>:
+ * 
+ * <pre>
+ * example.com 300 NAPTR 10 50 "s" "SIP+D2T" "" _sip._tcp.example.com
+ * _sip._tcp.example.com 300 SRV 10 60 5060 sip1.example.com
+ * sip1.example.com 300 A 192.0.2.1
+ * </pre>
+ * 
+ * @author martins
+ * 
+ */
+public class ZoneDnsResolver implements DnsResolver {
+
+	private final ConcurrentHashMap<String, List<DnsRecord>> zone = new ConcurrentHashMap<String, List<DnsRecord>>();
+
+	private final AtomicLong lookups = new AtomicLong();
+
+	public ZoneDnsResolver() {
+	}
+
+	/**
+	 * 
+	 * @param lines
+	 *            the zone lines, separated by new lines
+	 * @throws IllegalArgumentException
+	 *             if a line is not valid
+	 */
+	public ZoneDnsResolver(String lines) throws IllegalArgumentException {
+		for (String line : lines.split("\n")) {
+			line = line.trim();
+			if (line.length() > 0 && line.charAt(0) != ';') {
+				add(parse(line));
+			}
+		}
+	}
+
+	/**
+	 * Parses a zone line.
+	 * 
+	 * @param line
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the line is not valid
+	 */
+	static DnsRecord parse(String line) throws IllegalArgumentException {
+		final String[] fields = line.split("\\s+", 4);
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("invalid zone line " + line);
+		}
+		final int type;
+		if ("NAPTR".equalsIgnoreCase(fields[2])) {
+			type = DnsRecord.NAPTR;
+		} else if ("SRV".equalsIgnoreCase(fields[2])) {
+			type = DnsRecord.SRV;
+		} else if ("A".equalsIgnoreCase(fields[2])) {
+			type = DnsRecord.A;
+		} else if ("AAAA".equalsIgnoreCase(fields[2])) {
+			type = DnsRecord.AAAA;
+		} else {
+			throw new IllegalArgumentException("unsupported record type in zone line " + line);
+		}
+		final DnsRecord record;
+		try {
+			record = JndiDnsResolver.parse(fields[0], type, fields[3]);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("invalid zone line " + line, e);
+		}
+		if (record == null) {
+			throw new IllegalArgumentException("invalid zone line " + line);
+		}
+		final long ttl;
+		try {
+			ttl = Long.parseLong(fields[1]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid ttl in zone line " + line, e);
+		}
+		switch (type) {
+		case DnsRecord.NAPTR:
+			return DnsRecord.naptr(record.getName(), ttl, record.getOrder(), record.getPreference(),
+					record.getFlags(), record.getService(), record.getReplacement());
+		case DnsRecord.SRV:
+			return DnsRecord.srv(record.getName(), ttl, record.getPriority(), record.getWeight(), record.getPort(),
+					record.getTarget());
+		default:
+			return DnsRecord.address(record.getName(), ttl, record.getAddress());
+		}
+	}
+
+	private static String key(String name, int type) {
+		return new StringBuilder(name.toLowerCase()).append('/').append(type).toString();
+	}
+
+	/**
+	 * Adds a record to the zone.
+	 * 
+	 * @param record
+	 */
+	public void add(DnsRecord record) {
+		final String key = key(record.getName(), record.getType());
+		synchronized (zone) {
+			final List<DnsRecord> records = zone.get(key);
+			final List<DnsRecord> newRecords = records == null ? new ArrayList<DnsRecord>(1) : new ArrayList<DnsRecord>(records);
+			newRecords.add(record);
+			zone.put(key, Collections.unmodifiableList(newRecords));
+		}
+	}
+
+	/**
+	 * Removes all records of the specified name and type from the zone.
+	 * 
+	 * @param name
+	 * @param type
+	 */
+	public void remove(String name, int type) {
+		zone.remove(key(name, type));
+	}
+
+	/**
+	 * Retrieves the number of lookups done.
+	 * 
+	 * @return
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.DnsResolver#lookup(java.lang.String, int)
+	 */
+	public List<DnsRecord> lookup(String name, int type) {
+		lookups.incrementAndGet();
+		final List<DnsRecord> records = zone.get(key(name, type));
+		return records == null ? Collections.<DnsRecord> emptyList() : records;
+	}
+
+}
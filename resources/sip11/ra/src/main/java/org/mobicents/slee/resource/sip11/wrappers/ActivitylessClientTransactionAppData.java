@@ -0,0 +1,90 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.mobicents.slee.resource.sip11.SipActivityHandle;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+/**
+ * The application data of a client transaction created with
+ * {@link net.java.slee.resource.sip.SleeSipProvider#sendRequestWithoutActivity(Request, Object)},
+ * which hands the transaction outcome to the RA, to be fired on the outcome
+ * activity chosen by the application.
+ * 
+ * @author martins
+ * 
+ */
+public class ActivitylessClientTransactionAppData implements ClientTransactionOutcomeListener {
+
+	private final SipResourceAdaptor ra;
+
+	private final Request request;
+
+	private final SipActivityHandle outcomeActivityHandle;
+
+	private final AtomicBoolean completed = new AtomicBoolean();
+
+	/**
+	 * 
+	 * @param ra
+	 * @param request
+	 * @param outcomeActivityHandle
+	 *            the handle of the activity where the outcome is fired, null
+	 *            if the outcome is only accounted
+	 */
+	public ActivitylessClientTransactionAppData(SipResourceAdaptor ra, Request request, SipActivityHandle outcomeActivityHandle) {
+		this.ra = ra;
+		this.request = request;
+		this.outcomeActivityHandle = outcomeActivityHandle;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener#transactionCompleted(javax.sip.message.Response, int)
+	 */
+	public void transactionCompleted(Response response, int statusCode) {
+		if (completed.compareAndSet(false, true)) {
+			ra.processClientTransactionOutcome(this, response, statusCode);
+		}
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public Request getRequest() {
+		return request;
+	}
+
+	/**
+	 * 
+	 * @return the handle of the activity where the outcome is fired, null if
+	 *         the outcome is only accounted
+	 */
+	public SipActivityHandle getOutcomeActivityHandle() {
+		return outcomeActivityHandle;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.message.Response;
+import javax.slee.Address;
+
+import net.java.slee.resource.sip.BulkRequestActivity;
+import net.java.slee.resource.sip.BulkRequestCompletedEvent;
+
+import org.mobicents.slee.resource.sip11.BulkRequestActivityHandle;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+/**
+ * The activity of a bulk request fan-out. Each request of the fan-out is
+ * tracked by a {@link Member}, set as application data of its client
+ * transaction, and once all members complete the RA fires the completion
+ * event and ends the activity.
+ * 
+ * @author martins
+ * 
+ */
+public class BulkRequestActivityWrapper extends Wrapper implements BulkRequestActivity {
+
+	/**
+	 * A request of the fan-out.
+	 */
+	public static class Member implements ClientTransactionOutcomeListener {
+
+		private final BulkRequestActivityWrapper activity;
+		private final Object target;
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		private Member(BulkRequestActivityWrapper activity, Object target) {
+			this.activity = activity;
+			this.target = target;
+		}
+
+		/**
+		 * Completes the request, if not completed yet.
+		 * 
+		 * @param statusCode
+		 *            the final response status code, or 408 for a timeout
+		 *            and 503 for a failure to build or send the request
+		 */
+		public void complete(int statusCode) {
+			if (completed.compareAndSet(false, true)) {
+				activity.memberCompleted(target, statusCode);
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.mobicents.slee.resource.sip11.wrappers.ClientTransactionOutcomeListener#transactionCompleted(javax.sip.message.Response, int)
+		 */
+		public void transactionCompleted(Response response, int statusCode) {
+			complete(statusCode);
+		}
+
+		/**
+		 * 
+		 * @return
+		 */
+		public Object getTarget() {
+			return target;
+		}
+	}
+
+	private final int total;
+
+	private final AtomicInteger pending;
+
+	private final AtomicInteger succeeded = new AtomicInteger();
+
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private final ConcurrentLinkedQueue<BulkRequestCompletedEvent.Failure> failures = new ConcurrentLinkedQueue<BulkRequestCompletedEvent.Failure>();
+
+	/**
+	 * 
+	 * @param id
+	 * @param total
+	 *            the number of requests in the fan-out
+	 * @param ra
+	 */
+	public BulkRequestActivityWrapper(String id, int total, SipResourceAdaptor ra) {
+		super(new BulkRequestActivityHandle(id), ra);
+		this.total = total;
+		this.pending = new AtomicInteger(total);
+	}
+
+	/**
+	 * Creates the member tracking the request for the specified target.
+	 * 
+	 * @param target
+	 * @return
+	 */
+	public Member createMember(Object target) {
+		return new Member(this, target);
+	}
+
+	private void memberCompleted(Object target, int statusCode) {
+		if (statusCode > 199 && statusCode < 300) {
+			succeeded.incrementAndGet();
+		} else {
+			failures.add(new BulkRequestCompletedEvent.Failure(target, statusCode));
+			failed.incrementAndGet();
+		}
+		if (pending.decrementAndGet() == 0) {
+			ra.processBulkRequestCompleted(this);
+		}
+	}
+
+	/**
+	 * Creates the event signaling the completion of the fan-out.
+	 * 
+	 * @return
+	 */
+	public BulkRequestCompletedEvent createCompletedEvent() {
+		return new BulkRequestCompletedEvent(total, succeeded.get(), new ArrayList<BulkRequestCompletedEvent.Failure>(failures));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.BulkRequestActivity#getId()
+	 */
+	public String getId() {
+		return ((BulkRequestActivityHandle) activityHandle).getId();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.BulkRequestActivity#getTotal()
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.BulkRequestActivity#getSucceeded()
+	 */
+	public int getSucceeded() {
+		return succeeded.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.BulkRequestActivity#getFailed()
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.BulkRequestActivity#isCompleted()
+	 */
+	public boolean isCompleted() {
+		return pending.get() == 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isDialog()
+	 */
+	@Override
+	public boolean isDialog() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isAckTransaction()
+	 */
+	@Override
+	public boolean isAckTransaction() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#getEventFiringAddress()
+	 */
+	@Override
+	public Address getEventFiringAddress() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("BulkRequestActivity[ ").append(activityHandle).append(" ]").toString();
+	}
+
+}
@@ -27,6 +27,7 @@ import gov.nist.javax.sip.message.SIPRequest;
 import org.mobicents.slee.resource.sip11.DialogWithoutIdActivityHandle;
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
 import org.mobicents.slee.resource.sip11.SleeSipProviderImpl;
+import org.mobicents.slee.resource.sip11.TransactionSpan;
 import org.mobicents.slee.resource.sip11.Utils;
 
 import javax.sip.ClientTransaction;
@@ -131,7 +132,7 @@ public class ClientDialogWrapper extends DialogWrapper {
 				eventFiringAddress = super.getEventFiringAddress();
 			} else {
 				// outgoing dialog where the wrapped dialog does not exists yet
-				eventFiringAddress = ClientTransactionWrapper.getEventFiringAddress(fromAddress);
+				eventFiringAddress = ra.getEventFiringAddressFactory().createAddress(fromAddress);
 			}
 		}
 		return eventFiringAddress;
@@ -471,6 +472,7 @@ public class ClientDialogWrapper extends DialogWrapper {
 					+ request);
 		}
 		
+		ctw.markSpan(TransactionSpan.CLIENT_SENT);
 		final boolean createDialog = wrappedDialog == null;
 		if (createDialog) {
 			setWrappedDialog(provider.getRealProvider().getNewDialog(
@@ -504,6 +506,7 @@ public class ClientDialogWrapper extends DialogWrapper {
 					+ request);
 		}
 		
+		ctw.markSpan(TransactionSpan.CLIENT_SENT);
 		final boolean createDialog = wrappedDialog == null;
 
 		if (createDialog) {
@@ -515,6 +518,13 @@ public class ClientDialogWrapper extends DialogWrapper {
 			}
 			if (request.getMethod().equals(Request.INVITE))
 				lastCancelableTransactionId = ctw.getActivityHandle();
+			if (ctw.getLocatingURI() != null) {
+				// the dialog is created with the transaction sending the request, once its servers are located
+				this.addOngoingTransaction(ctw);
+				ctw.setPendingDialog(this);
+				ra.sendWhenLocated(ctw);
+				return;
+			}
 			setWrappedDialog(provider.getRealProvider().getNewDialog(
 					ctw.getWrappedTransaction()));
 			this.addOngoingTransaction(ctw);
@@ -0,0 +1,48 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import javax.sip.message.Response;
+
+/**
+ * Application data of client transactions which are not activities, and thus
+ * have no {@link ClientTransactionWrapper}. The RA only notifies the
+ * transaction outcome, provisional responses are dropped.
+ * 
+ * @author martins
+ * 
+ */
+public interface ClientTransactionOutcomeListener {
+
+	/**
+	 * Notifies the outcome of the transaction, implementations must ignore
+	 * all but the first notification, since the transaction terminated event
+	 * is always notified, as a failure.
+	 * 
+	 * @param response
+	 *            the final response, null if the transaction timed out or
+	 *            the request could not be sent
+	 * @param statusCode
+	 *            the final response status code, or 408 for a timeout and
+	 *            503 for a failure to send the request
+	 */
+	public void transactionCompleted(Response response, int statusCode);
+
+}
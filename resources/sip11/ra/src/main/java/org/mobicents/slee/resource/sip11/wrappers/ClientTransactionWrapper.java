@@ -23,17 +23,23 @@ package org.mobicents.slee.resource.sip11.wrappers;
 
 import gov.nist.javax.sip.stack.SIPClientTransaction;
 
+import java.util.List;
+
 import javax.sip.ClientTransaction;
 import javax.sip.SipException;
 import javax.sip.Transaction;
+import javax.sip.address.Hop;
+import javax.sip.address.URI;
 import javax.sip.header.FromHeader;
 import javax.sip.message.Request;
 import javax.slee.Address;
-import javax.slee.AddressPlan;
 import javax.slee.facilities.Tracer;
 
 import org.mobicents.slee.resource.sip11.ClientTransactionActivityHandle;
+import org.mobicents.slee.resource.sip11.PeerPoolImpl;
+import org.mobicents.slee.resource.sip11.ProvisionalSuppressor;
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+import org.mobicents.slee.resource.sip11.TransactionSpan;
 
 /**
  *
@@ -61,6 +67,32 @@ public class ClientTransactionWrapper extends TransactionWrapper implements
      */
     private String associatedServerTransactionId;
 
+    /**
+     * the servers located for the request, if sent with the server locator
+     */
+    private transient List<Hop> locatedHops;
+    private transient int locatedHop;
+
+    /**
+     * the URI which servers are being located, before sending the request
+     */
+    private transient volatile URI locatingURI;
+
+    /**
+     * the dialog created with the transaction sending the request, once its servers are located
+     */
+    private transient ClientDialogWrapper pendingDialog;
+
+    /**
+     * the peer pool member the request was sent to, if sent to a pool
+     */
+    private transient PeerPoolImpl.Member peerPoolMember;
+
+    /**
+     * the provisional responses suppression, null if the RA default
+     */
+    private transient volatile ProvisionalSuppressor provisionalSuppressor;
+
     /**
      *
      * @param wrappedTransaction
@@ -96,6 +128,141 @@ public class ClientTransactionWrapper extends TransactionWrapper implements
         return wrappedTransaction;
     }
 
+    /**
+     * Replaces the wrapped transaction, when the request is sent again to
+     * another server, so that the events of the new transaction are fired on
+     * this activity, and the ones of the replaced transaction are dropped.
+     *
+     * @param transaction
+     */
+    public void replaceWrappedTransaction(SIPClientTransaction transaction) {
+        validateWrappedTransaction();
+        final Object appData = wrappedTransaction.getApplicationData();
+        wrappedTransaction.setApplicationData(null);
+        transaction.setApplicationData(appData);
+        wrappedTransaction = transaction;
+    }
+
+    /**
+     * Sets the servers located for the request, the first is the one where
+     * the request is sent.
+     *
+     * @param hops
+     */
+    public void setLocatedHops(List<Hop> hops) {
+        this.locatedHops = hops;
+        this.locatedHop = 0;
+    }
+
+    /**
+     * Retrieves the located server where the request is sent.
+     *
+     * @return null if the request was not sent with the server locator
+     */
+    public Hop getLocatedHop() {
+        final List<Hop> hops = locatedHops;
+        return hops != null && locatedHop < hops.size() ? hops.get(locatedHop) : null;
+    }
+
+    /**
+     * Moves to the next located server, to fail over.
+     *
+     * @return the next server, null if there are no more
+     */
+    public Hop nextLocatedHop() {
+        final List<Hop> hops = locatedHops;
+        if (hops == null || locatedHop + 1 >= hops.size()) {
+            return null;
+        }
+        return hops.get(++locatedHop);
+    }
+
+    /**
+     * Sets the URI which servers are being located, the wrapped transaction
+     * is then never sent, it is replaced by one to a located server when the
+     * request is sent.
+     *
+     * @param uri
+     *            null once the servers are located
+     */
+    public void setLocatingURI(URI uri) {
+        this.locatingURI = uri;
+    }
+
+    /**
+     *
+     * @return null if the servers for the request are not being located
+     */
+    public URI getLocatingURI() {
+        return locatingURI;
+    }
+
+    /**
+     * Sets the dialog to create with the transaction sending the request,
+     * once its servers are located.
+     *
+     * @param dialogWrapper
+     */
+    public void setPendingDialog(ClientDialogWrapper dialogWrapper) {
+        this.pendingDialog = dialogWrapper;
+    }
+
+    /**
+     * Retrieves and clears the dialog to create with the transaction sending
+     * the request.
+     *
+     * @return null if there is none
+     */
+    public ClientDialogWrapper removePendingDialog() {
+        final ClientDialogWrapper dialogWrapper = pendingDialog;
+        pendingDialog = null;
+        return dialogWrapper;
+    }
+
+    /**
+     *
+     * @param member
+     */
+    public void setPeerPoolMember(PeerPoolImpl.Member member) {
+        this.peerPoolMember = member;
+    }
+
+    /**
+     * 
+     * @return the peer pool member the request was sent to, null if not sent to a pool
+     */
+    public PeerPoolImpl.Member getPeerPoolMember() {
+        return peerPoolMember;
+    }
+
+    /**
+     * Retrieves and clears the peer pool member the request was sent to, so
+     * the end of the transaction is accounted once.
+     *
+     * @return null if not sent to a pool, or already cleared
+     */
+    public synchronized PeerPoolImpl.Member removePeerPoolMember() {
+        final PeerPoolImpl.Member member = peerPoolMember;
+        peerPoolMember = null;
+        return member;
+    }
+
+    /**
+     *
+     * @param provisionalSuppressor
+     */
+    public void setProvisionalSuppressor(ProvisionalSuppressor provisionalSuppressor) {
+        this.provisionalSuppressor = provisionalSuppressor;
+    }
+
+    /**
+     *
+     * @return null if the RA default applies
+     */
+    public ProvisionalSuppressor getProvisionalSuppressor() {
+        return provisionalSuppressor;
+    }
+
     @Override
     public boolean isAckTransaction() {
         return false;
@@ -104,22 +271,12 @@ public class ClientTransactionWrapper extends TransactionWrapper implements
     @Override
     public Address getEventFiringAddress() {
         if (eventFiringAddress == null) {
-            eventFiringAddress = ClientTransactionWrapper.getEventFiringAddress(((FromHeader) wrappedTransaction.getRequest().getHeader(FromHeader.NAME))
+            eventFiringAddress = ra.getEventFiringAddressFactory().createAddress(((FromHeader) wrappedTransaction.getRequest().getHeader(FromHeader.NAME))
                     .getAddress());
         }
         return eventFiringAddress;
     }
 
-    /**
-     *
-     * @param fromAddress
-     * @return
-     */
-    public static javax.slee.Address getEventFiringAddress(javax.sip.address.Address fromAddress) {
-        return new javax.slee.Address(AddressPlan.SIP,
-                fromAddress.toString());
-    }
-
     //  javax.sip.ClientTransaction interface
     /*
 	 * Helper to validate the wrapped transaction, before interacting with it.
@@ -164,6 +321,12 @@ public class ClientTransactionWrapper extends TransactionWrapper implements
         if (tracer.isInfoEnabled()) {
             tracer.info(toString() + " sending request:\n" + getRequest());
         }
+        markSpan(TransactionSpan.CLIENT_SENT);
+        if (locatingURI != null) {
+            // sent by the lookup threads, instead of resolving the host here
+            ra.sendWhenLocated(this);
+            return;
+        }
         wrappedTransaction.sendRequest();
     }
 
@@ -211,6 +374,12 @@ public class ClientTransactionWrapper extends TransactionWrapper implements
     @Override
     public void clear() {
         super.clear();
+        locatingURI = null;
+        // the transaction ended without terminating, e.g. it was never sent
+        final PeerPoolImpl.Member member = removePeerPoolMember();
+        if (member != null) {
+            member.transactionEnded(wrappedTransaction != null && ((SIPClientTransaction) wrappedTransaction).getLastResponse() != null);
+        }
         if (wrappedTransaction != null) {
             wrappedTransaction.setApplicationData(null);
         }
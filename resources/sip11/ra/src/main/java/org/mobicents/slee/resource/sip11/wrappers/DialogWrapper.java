@@ -28,10 +28,13 @@ import gov.nist.javax.sip.header.ViaList;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.stack.SIPServerTransaction;
 import net.java.slee.resource.sip.DialogActivity;
+import net.java.slee.resource.sip.SessionTimers;
 import org.mobicents.slee.resource.sip11.ServerTransactionActivityHandle;
 import org.mobicents.slee.resource.sip11.SipActivityHandle;
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
 import org.mobicents.slee.resource.sip11.SleeSipProviderImpl;
+import org.mobicents.slee.resource.sip11.TimingWheel;
+import org.mobicents.slee.resource.sip11.TransactionSpan;
 import org.mobicents.slee.resource.sip11.Utils;
 
 import javax.sip.ClientTransaction;
@@ -49,6 +52,7 @@ import javax.sip.address.SipURI;
 import javax.sip.address.URI;
 import javax.sip.header.CallIdHeader;
 import javax.sip.header.ContactHeader;
+import javax.sip.header.CSeqHeader;
 import javax.sip.header.ContentTypeHeader;
 import javax.sip.header.FromHeader;
 import javax.sip.header.Header;
@@ -58,7 +62,6 @@ import javax.sip.header.ToHeader;
 import javax.sip.header.ViaHeader;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
-import javax.slee.AddressPlan;
 import javax.slee.facilities.Tracer;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -120,12 +123,45 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 	 */
 	private boolean pendingDelete = false;
 
+	/**
+	 * the protocol actions the RA does on its own for this dialog
+	 */
+	private volatile int automaticActions;
+
+	/**
+	 * indicates if the dialog was created for a fork of a UAC dialog
+	 */
+	private boolean fork = false;
+
+	/**
+	 * the time of the last message received in the dialog, in ms
+	 */
+	private volatile long lastActivity = System.currentTimeMillis();
+
+	/**
+	 * the RFC 4028 session interval negotiated, in seconds, 0 if none
+	 */
+	private volatile int sessionInterval;
+
+	/**
+	 * the idle reaper timer, if any
+	 */
+	private volatile TimingWheel.Timer<DialogWrapper> idleTimer;
+
+	/**
+	 * the CSeqs and remote target of the dialog last journaled
+	 */
+	private transient long journaledLocalSeq = -1;
+	private transient long journaledRemoteSeq = -1;
+	private transient Address journaledRemoteTarget;
+
 	/**
 	 * 
 	 */
 	public DialogWrapper(SipActivityHandle sipActivityHandle, SipResourceAdaptor ra) {
 		super(sipActivityHandle,ra);
 		this.terminateOnByeCached = null;
+		this.automaticActions = ra.getAutomaticDialogActions();
 		if (tracer == null) {
 			tracer = ra.getTracer(DialogWrapper.class.getSimpleName());
 		}
@@ -140,7 +176,7 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 	@Override
 	public javax.slee.Address getEventFiringAddress() {
 		if (eventFiringAddress == null) {
-			eventFiringAddress = new javax.slee.Address(AddressPlan.SIP, wrappedDialog.getLocalParty().toString());			
+			eventFiringAddress = ra.getEventFiringAddressFactory().createAddress(wrappedDialog.getLocalParty());
 		}
 		return eventFiringAddress;
 	}	
@@ -321,7 +357,9 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 		if (tracer.isInfoEnabled()) {
 			tracer.info(String.valueOf(ctw)+" sending request:\n"+request);
 		}
-		wrappedDialog.sendRequest(ctw.getWrappedClientTransaction());				
+		ctw.markSpan(TransactionSpan.CLIENT_SENT);
+		wrappedDialog.sendRequest(ctw.getWrappedClientTransaction());
+		ra.dialogUpdated(this);
 		return ctw;
 	}
 
@@ -360,7 +398,10 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 		if (tracer.isInfoEnabled()) {
 			tracer.info(String.valueOf(ct)+" sending request:\n"+request);
 		}
-		wrappedDialog.sendRequest(((ClientTransactionWrapper)ct).getWrappedClientTransaction());		
+		final ClientTransactionWrapper ctw = (ClientTransactionWrapper) ct;
+		ctw.markSpan(TransactionSpan.CLIENT_SENT);
+		wrappedDialog.sendRequest(ctw.getWrappedClientTransaction());
+		ra.dialogUpdated(this);
 	}
 	
 	/*
@@ -454,6 +495,22 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 		}
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.DialogActivity#setAutomaticActions(int)
+	 */
+	public void setAutomaticActions(int actions) {
+		this.automaticActions = actions;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.DialogActivity#getAutomaticActions()
+	 */
+	public int getAutomaticActions() {
+		return automaticActions;
+	}
+
 	// Dialog Methods
 	
 	/*
@@ -486,7 +543,12 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 	 */
 	public void delete() {
 		
-		if (pendingDelete = (ongoingClientTransactions != null && !ongoingClientTransactions.isEmpty())) {
+		final boolean pendingDelete = ongoingClientTransactions != null && !ongoingClientTransactions.isEmpty();
+		if (pendingDelete != this.pendingDelete) {
+			this.pendingDelete = pendingDelete;
+			ra.getIntrospection().pendingDelete(pendingDelete);
+		}
+		if (pendingDelete) {
 			// ongoing client txs, need those to end first
 			return;
 		}
@@ -738,6 +800,14 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 			wrappedDialog = null;
 		}
 		ongoingClientTransactions = null;
+		if (idleTimer != null) {
+			idleTimer.cancel();
+			idleTimer = null;
+		}
+		if (pendingDelete) {
+			pendingDelete = false;
+			ra.getIntrospection().pendingDelete(false);
+		}
 		localTag = null;
 		lastCancelableTransactionId = null;
 		eventFiringAddress = null;
@@ -779,6 +849,108 @@ public class DialogWrapper extends Wrapper implements DialogActivity {
 		}
 	}
 	
+	/**
+	 * Updates the time of the last message received in the dialog.
+	 */
+	public void touch() {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Retrieves the time of the last message received in the dialog, in ms.
+	 * @return
+	 */
+	public long getLastActivity() {
+		return lastActivity;
+	}
+
+	/**
+	 * Checks if the wrapped dialog is confirmed and its CSeqs or remote
+	 * target changed since the last time it was journaled, the other state
+	 * journaled does not change once the dialog is confirmed.
+	 * @return true if the dialog should be journaled
+	 */
+	public synchronized boolean isJournalStale() {
+		final Dialog wrappedDialog = this.wrappedDialog;
+		if (wrappedDialog == null || wrappedDialog.getState() != DialogState.CONFIRMED) {
+			return false;
+		}
+		final long localSeq = wrappedDialog.getLocalSeqNumber();
+		final long remoteSeq = wrappedDialog.getRemoteSeqNumber();
+		// the stack replaces the remote target on target refreshes
+		final Address remoteTarget = wrappedDialog.getRemoteTarget();
+		if (localSeq == journaledLocalSeq && remoteSeq == journaledRemoteSeq && remoteTarget == journaledRemoteTarget) {
+			return false;
+		}
+		journaledLocalSeq = localSeq;
+		journaledRemoteSeq = remoteSeq;
+		journaledRemoteTarget = remoteTarget;
+		return true;
+	}
+
+	/**
+	 * Retrieves the RFC 4028 session interval negotiated for the dialog.
+	 * @return the session interval in seconds, 0 if none
+	 */
+	public int getSessionInterval() {
+		return sessionInterval;
+	}
+
+	/**
+	 * Learns the session interval from a 2xx response to INVITE or UPDATE,
+	 * sent or received in the dialog. A 2xx without Session-Expires turns off
+	 * the session timer.
+	 * @param response
+	 * @return true if the session interval changed
+	 */
+	public boolean updateSessionInterval(Response response) {
+		final int statusCode = response.getStatusCode();
+		if (statusCode > 199 && statusCode < 300) {
+			final String method = ((CSeqHeader) response.getHeader(CSeqHeader.NAME)).getMethod();
+			if (Request.INVITE.equals(method) || Request.UPDATE.equals(method)) {
+				final int sessionExpires = SessionTimers.getSessionExpires(response);
+				final int sessionInterval = sessionExpires > 0 ? sessionExpires : 0;
+				if (sessionInterval != this.sessionInterval) {
+					this.sessionInterval = sessionInterval;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public TimingWheel.Timer<DialogWrapper> getIdleTimer() {
+		return idleTimer;
+	}
+
+	/**
+	 * 
+	 * @param idleTimer
+	 */
+	public void setIdleTimer(TimingWheel.Timer<DialogWrapper> idleTimer) {
+		this.idleTimer = idleTimer;
+	}
+
+	/**
+	 * Indicates if the dialog was created for a fork of a UAC dialog.
+	 * @return
+	 */
+	public boolean isFork() {
+		return fork;
+	}
+
+	/**
+	 * 
+	 * @param fork
+	 */
+	public void setFork(boolean fork) {
+		this.fork = fork;
+	}
+
 	/**
 	 * Indicates if the dialog is UAC. 
 	 * @return
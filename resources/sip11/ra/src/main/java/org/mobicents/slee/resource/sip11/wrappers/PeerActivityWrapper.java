@@ -0,0 +1,123 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import javax.slee.Address;
+
+import net.java.slee.resource.sip.PeerActivity;
+import net.java.slee.resource.sip.PeerHealth;
+
+import org.mobicents.slee.resource.sip11.PeerActivityHandle;
+import org.mobicents.slee.resource.sip11.PeerHealthTable;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+/**
+ * The activity of a failed peer, where its transport failures are fired.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerActivityWrapper extends Wrapper implements PeerActivity {
+
+	private final PeerHealthTable.Peer peer;
+
+	/**
+	 * 
+	 * @param peer
+	 * @param ra
+	 */
+	public PeerActivityWrapper(PeerHealthTable.Peer peer, SipResourceAdaptor ra) {
+		super(new PeerActivityHandle(peer.getKey()), ra);
+		this.peer = peer;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public PeerHealthTable.Peer getPeer() {
+		return peer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerActivity#getHost()
+	 */
+	public String getHost() {
+		return peer.getHost();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerActivity#getPort()
+	 */
+	public int getPort() {
+		return peer.getPort();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerActivity#getTransport()
+	 */
+	public String getTransport() {
+		return peer.getTransport();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.PeerActivity#getHealth()
+	 */
+	public PeerHealth getHealth() {
+		return peer.getHealth();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isDialog()
+	 */
+	@Override
+	public boolean isDialog() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isAckTransaction()
+	 */
+	@Override
+	public boolean isAckTransaction() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#getEventFiringAddress()
+	 */
+	@Override
+	public Address getEventFiringAddress() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PeerActivity[ ").append(activityHandle).append(" ]").toString();
+	}
+
+}
@@ -27,16 +27,28 @@ import javax.sip.RequestEvent;
 import javax.sip.ServerTransaction;
 import javax.sip.message.Request;
 
+import net.java.slee.resource.sip.AutomaticResponseEvent;
+
 /**
  * @author B. Baranowski
  */
-public class RequestEventWrapper extends RequestEvent {
+public class RequestEventWrapper extends RequestEvent implements AutomaticResponseEvent {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * indicates if the RA already sent the 100 Trying response
+	 */
+	private final boolean tryingSent;
+
+	/**
+	 * indicates if the RA already sent the final response
+	 */
+	private final boolean finalResponseSent;
+
 	/**
 	 * 
 	 * @param source
@@ -45,7 +57,38 @@ public class RequestEventWrapper extends RequestEvent {
 	 * @param event
 	 */
 	public RequestEventWrapper(Object source, ServerTransaction serverTx, Dialog dialog, Request event) {
+		this(source, serverTx, dialog, event, false, false);
+	}
+
+	/**
+	 * 
+	 * @param source
+	 * @param serverTx
+	 * @param dialog
+	 * @param event
+	 * @param tryingSent
+	 * @param finalResponseSent
+	 */
+	public RequestEventWrapper(Object source, ServerTransaction serverTx, Dialog dialog, Request event, boolean tryingSent, boolean finalResponseSent) {
 		super(source, serverTx, dialog, event);
+		this.tryingSent = tryingSent;
+		this.finalResponseSent = finalResponseSent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.AutomaticResponseEvent#isTryingSent()
+	 */
+	public boolean isTryingSent() {
+		return tryingSent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.AutomaticResponseEvent#isFinalResponseSent()
+	 */
+	public boolean isFinalResponseSent() {
+		return finalResponseSent;
 	}
 	
 	@Override	
@@ -27,17 +27,24 @@ import javax.sip.Dialog;
 import javax.sip.ResponseEvent;
 import javax.sip.message.Response;
 
+import net.java.slee.resource.sip.AutomaticAckEvent;
+
 /**
  * 
  *
  */
-public class ResponseEventWrapper extends ResponseEvent {
+public class ResponseEventWrapper extends ResponseEvent implements AutomaticAckEvent {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * indicates if the RA already sent the ACK
+	 */
+	private final boolean ackSent;
+
 	/**
 	 * 
 	 * @param source
@@ -46,7 +53,28 @@ public class ResponseEventWrapper extends ResponseEvent {
 	 * @param event
 	 */
 	public ResponseEventWrapper(Object source, ClientTransaction clientTx, Dialog dialog, Response event) {
+		this(source, clientTx, dialog, event, false);
+	}
+
+	/**
+	 * 
+	 * @param source
+	 * @param clientTx
+	 * @param dialog
+	 * @param event
+	 * @param ackSent
+	 */
+	public ResponseEventWrapper(Object source, ClientTransaction clientTx, Dialog dialog, Response event, boolean ackSent) {
 		super(source, clientTx, dialog, event);
+		this.ackSent = ackSent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.AutomaticAckEvent#isAckSent()
+	 */
+	public boolean isAckSent() {
+		return ackSent;
 	}
 	
 	@Override
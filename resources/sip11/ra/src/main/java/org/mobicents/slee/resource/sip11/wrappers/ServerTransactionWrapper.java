@@ -34,11 +34,12 @@ import javax.sip.header.ToHeader;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 import javax.slee.Address;
-import javax.slee.AddressPlan;
 import javax.slee.facilities.Tracer;
 
+import org.mobicents.slee.resource.sip11.ProxyContext;
 import org.mobicents.slee.resource.sip11.ServerTransactionActivityHandle;
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+import org.mobicents.slee.resource.sip11.TransactionSpan;
 
 /**
  *
@@ -63,6 +64,8 @@ public class ServerTransactionWrapper extends TransactionWrapper implements Serv
 
     private transient ServerTransaction wrappedTransaction;
 
+    private transient volatile ProxyContext proxyContext;
+
     /**
      *
      * @param wrappedTransaction
@@ -119,6 +122,24 @@ public class ServerTransactionWrapper extends TransactionWrapper implements Serv
         this.wrappedTransaction = wrappedTransaction;
     }
 
+    /**
+     * Retrieves the state of the RA proxy core, if the transaction is being
+     * proxied.
+     *
+     * @return
+     */
+    public ProxyContext getProxyContext() {
+        return proxyContext;
+    }
+
+    /**
+     *
+     * @param proxyContext
+     */
+    public void setProxyContext(ProxyContext proxyContext) {
+        this.proxyContext = proxyContext;
+    }
+
     @Override
     public boolean isAckTransaction() {
         return ackTransaction;
@@ -147,9 +168,9 @@ public class ServerTransactionWrapper extends TransactionWrapper implements Serv
      */
     public Address getEventFiringAddress() {
         if (eventFiringAddress == null) {
-            eventFiringAddress = new Address(AddressPlan.SIP,
+            eventFiringAddress = ra.getEventFiringAddressFactory().createAddress(
                     ((ToHeader) wrappedTransaction.getRequest().getHeader(ToHeader.NAME))
-                    .getAddress().toString());
+                    .getAddress());
         }
         return eventFiringAddress;
     }
@@ -170,11 +191,15 @@ public class ServerTransactionWrapper extends TransactionWrapper implements Serv
     public void sendResponse(Response arg0) throws SipException, InvalidArgumentException {
 
         validateWrappedTransaction();
+        markSpan(TransactionSpan.SERVER_RESPONDED);
 
         final Dialog d = wrappedTransaction.getDialog();
         if (d != null) {
             final DialogWrapper dw = ra.getDialogWrapper(d);
             if (dw != null) {
+                if (dw.updateSessionInterval(arg0)) {
+                    ra.sessionIntervalUpdated(dw);
+                }
                 final int statusCode = arg0.getStatusCode();
                 if (this.getRequest().getMethod().equals(Request.CANCEL) && (statusCode < 300 && statusCode > 199) && dw.getState() == null) {
                     dw.delete();
@@ -193,6 +218,12 @@ public class ServerTransactionWrapper extends TransactionWrapper implements Serv
             tracer.info(toString() + " sending response:\n" + arg0);
         }
         wrappedTransaction.sendResponse(arg0);
+        if (d != null && arg0.getStatusCode() / 100 == 2) {
+            final DialogWrapper dw = ra.getDialogWrapper(d);
+            if (dw != null) {
+                ra.dialogUpdated(dw);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,88 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import javax.slee.Address;
+
+import net.java.slee.resource.sip.SharedRequestActivity;
+
+import org.mobicents.slee.resource.sip11.SharedRequestActivityHandle;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+/**
+ * A long lived activity where out of dialog requests are fired, instead of on
+ * their server transactions.
+ * 
+ * @author martins
+ * 
+ */
+public class SharedRequestActivityWrapper extends Wrapper implements SharedRequestActivity {
+
+	/**
+	 * 
+	 * @param index
+	 * @param ra
+	 */
+	public SharedRequestActivityWrapper(int index, SipResourceAdaptor ra) {
+		super(new SharedRequestActivityHandle(index), ra);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.java.slee.resource.sip.SharedRequestActivity#getIndex()
+	 */
+	public int getIndex() {
+		return ((SharedRequestActivityHandle) activityHandle).getIndex();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isDialog()
+	 */
+	@Override
+	public boolean isDialog() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#isAckTransaction()
+	 */
+	@Override
+	public boolean isAckTransaction() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.slee.resource.sip11.wrappers.Wrapper#getEventFiringAddress()
+	 */
+	@Override
+	public Address getEventFiringAddress() {
+		// the address is taken from each request's server transaction
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("SharedRequestActivity[ ").append(activityHandle).append(" ]").toString();
+	}
+
+}
@@ -24,6 +24,7 @@ package org.mobicents.slee.resource.sip11.wrappers;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.sip.Dialog;
 import javax.sip.ObjectInUseException;
@@ -33,6 +34,8 @@ import javax.sip.message.Request;
 
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
 import org.mobicents.slee.resource.sip11.TransactionActivityHandle;
+import org.mobicents.slee.resource.sip11.TransactionSpan;
+import org.mobicents.slee.resource.sip11.TransactionSpans;
 
 /**
  * The base class for client and server transaction wrappers.
@@ -51,6 +54,17 @@ public abstract class TransactionWrapper extends Wrapper implements Transaction
 	 */
 	private transient boolean activity = false;
 	
+	/**
+	 * the {@link System#nanoTime()} of the tx lifecycle phases, see {@link TransactionSpans}, 0 if not reached,
+	 * written and read by stack and SLEE threads
+	 */
+	private transient volatile long spanStart;
+	private transient volatile long spanTime1;
+	private transient volatile long spanTime2;
+	private transient volatile long spanTime3;
+	private transient volatile long spanTime4;
+	private transient final AtomicBoolean spanEnded = new AtomicBoolean();
+	
 	/**
 	 * 
 	 * @param activityHandle
@@ -86,6 +100,74 @@ public abstract class TransactionWrapper extends Wrapper implements Transaction
 		this.activity = activity;
 	}
 	
+	/**
+	 * Starts the lifecycle span of the tx, if not started yet.
+	 * @param time the {@link System#nanoTime()} of the start
+	 */
+	public void startSpan(long time) {
+		if (spanStart == 0) {
+			spanStart = time;
+		}
+	}
+	
+	/**
+	 * Marks the time of a phase of the lifecycle span, if the span was started and the phase not reached yet. 
+	 * @param phase see {@link TransactionSpan}
+	 */
+	public void markSpan(int phase) {
+		if (spanStart == 0) {
+			return;
+		}
+		switch (phase) {
+		case 1:
+			if (spanTime1 == 0) spanTime1 = System.nanoTime();
+			break;
+		case 2:
+			if (spanTime2 == 0) spanTime2 = System.nanoTime();
+			break;
+		case 3:
+			if (spanTime3 == 0) spanTime3 = System.nanoTime();
+			break;
+		default:
+			if (spanTime4 == 0) spanTime4 = System.nanoTime();
+			break;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the {@link System#nanoTime()} of the lifecycle span start, 0 if not started
+	 */
+	public long getSpanStart() {
+		return spanStart;
+	}
+	
+	/**
+	 * 
+	 * @param phase see {@link TransactionSpan}
+	 * @return the {@link System#nanoTime()} of the phase, 0 if not reached
+	 */
+	public long getSpanTime(int phase) {
+		switch (phase) {
+		case 1:
+			return spanTime1;
+		case 2:
+			return spanTime2;
+		case 3:
+			return spanTime3;
+		default:
+			return spanTime4;
+		}
+	}
+	
+	/**
+	 * Ends the lifecycle span.
+	 * @return false if the span was already ended
+	 */
+	public boolean endSpan() {
+		return spanEnded.compareAndSet(false, true);
+	}
+	
 	/**
 	 * 
 	 * @return
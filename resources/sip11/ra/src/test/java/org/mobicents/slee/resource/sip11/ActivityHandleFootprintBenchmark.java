@@ -0,0 +1,114 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Rough heap footprint benchmark for the SIP RA activity handles, measuring
+ * the retained size of a table of handles keyed the same way the container
+ * keys its activity table, before and after the String forms of the handles
+ * are requested, as logging and the dialog journal do. Not a unit test, run
+ * it with:
+ *
+ * <pre>
+ * java -Xmx1g -cp ... org.mobicents.slee.resource.sip11.ActivityHandleFootprintBenchmark [handles]
+ * </pre>
+ *
+ * @author martins
+ *
+ */
+public class ActivityHandleFootprintBenchmark {
+
+	private static final int DEFAULT_HANDLES = 200000;
+
+	public static void main(String[] args) {
+		final int handles = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HANDLES;
+		// warm up allocation paths and class loading
+		measure("warmup", handles / 10, 0, true);
+		System.out.println("handles per table: " + handles);
+		for (int type = 0; type < 4; type++) {
+			measure(null, handles, type, false);
+			measure(null, handles, type, true);
+		}
+	}
+
+	private static void measure(String label, int handles, int type, boolean accessors) {
+		final String[] callIds = new String[handles];
+		for (int i = 0; i < handles; i++) {
+			// typical call id as generated by the stack, host part included
+			callIds[i] = UUID.randomUUID().toString().replace("-", "") + "@192.168.1.100";
+		}
+		final long before = usedHeap();
+		final Map<Object, Object> table = new HashMap<Object, Object>(handles * 2);
+		for (int i = 0; i < handles; i++) {
+			final SipActivityHandle handle;
+			switch (type) {
+			case 0:
+				handle = new DialogWithIdActivityHandle(callIds[i] + ":" + Integer.toHexString(i) + "a1b2c3:" + Integer.toHexString(i) + "d4e5f6");
+				break;
+			case 1:
+				handle = new DialogWithoutIdActivityHandle(callIds[i], Integer.toHexString(i) + "a1b2c3");
+				break;
+			case 2:
+				handle = new ServerTransactionActivityHandle("z9hg4bk" + Integer.toHexString(i) + "f0e1d2c3b4a5968778695a4b3c2d1e0f");
+				break;
+			default:
+				handle = new ClientTransactionActivityHandle("z9hg4bk" + Integer.toHexString(i) + "f0e1d2c3b4a5968778695a4b3c2d1e0f");
+				break;
+			}
+			table.put(handle, handle);
+		}
+		long length = 0;
+		if (accessors) {
+			for (Object handle : table.keySet()) {
+				length += handle instanceof DialogWithIdActivityHandle ? ((DialogWithIdActivityHandle) handle).getDialogId().length()
+						: handle instanceof TransactionActivityHandle ? ((TransactionActivityHandle) handle).getTxId().length()
+								: handle.toString().length();
+			}
+		}
+		final long after = usedHeap();
+		if (label == null) {
+			label = table.keySet().iterator().next().getClass().getSimpleName() + (accessors ? " (String form requested)" : "");
+		}
+		if (!"warmup".equals(label)) {
+			System.out.println(label + ": ~" + ((after - before) / handles) + " bytes per handle (including table entry)");
+		}
+		// keep both alive until measured
+		if (table.size() != handles || callIds.length != handles || length < 0) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,67 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class ActivityHandleTest {
+
+	private static final String CALL_ID = "a84b4c76e66710@pc33.atlanta.com";
+
+	@Test
+	public void testDialogWithIdHandle() {
+		String dialogId = CALL_ID + ":1928301774:314159";
+		DialogWithIdActivityHandle h1 = new DialogWithIdActivityHandle(dialogId);
+		DialogWithIdActivityHandle h2 = new DialogWithIdActivityHandle(new String(dialogId));
+		assertEquals(h1, h2);
+		assertEquals(h1.hashCode(), h2.hashCode());
+		assertEquals(dialogId, h1.getDialogId());
+		assertEquals(dialogId, h1.toString());
+		assertFalse(h1.equals(new DialogWithIdActivityHandle(CALL_ID + ":1928301774:314158")));
+	}
+
+	@Test
+	public void testDialogWithoutIdHandle() throws Exception {
+		DialogWithoutIdActivityHandle h1 = new DialogWithoutIdActivityHandle(CALL_ID, "1928301774");
+		DialogWithoutIdActivityHandle h2 = new DialogWithoutIdActivityHandle(new String(CALL_ID), "1928301774");
+		assertEquals(h1, h2);
+		assertEquals(h1.hashCode(), h2.hashCode());
+		assertEquals(CALL_ID + ":1928301774:null", h1.toString());
+		assertFalse(h1.equals(new DialogWithoutIdActivityHandle(CALL_ID, "1928301775")));
+		// externalizable round trip
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(h1);
+		out.close();
+		Object h3 = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(h1, h3);
+		assertEquals(h1.hashCode(), h3.hashCode());
+	}
+
+	@Test
+	public void testTransactionHandles() {
+		String branch = "z9hG4bK776asdhds";
+		ServerTransactionActivityHandle sth = new ServerTransactionActivityHandle(branch);
+		ClientTransactionActivityHandle cth = new ClientTransactionActivityHandle(branch);
+		assertEquals(sth, new ServerTransactionActivityHandle(new String(branch)));
+		assertEquals(sth.hashCode(), new ServerTransactionActivityHandle(branch).hashCode());
+		assertEquals(branch, sth.getTxId());
+		assertFalse(sth.equals(cth));
+	}
+
+	@Test
+	public void testSharedRequestActivityHandle() {
+		SharedRequestActivityHandle h1 = new SharedRequestActivityHandle(3);
+		assertEquals(h1, new SharedRequestActivityHandle(3));
+		assertEquals(h1.hashCode(), new SharedRequestActivityHandle(3).hashCode());
+		assertFalse(h1.equals(new SharedRequestActivityHandle(4)));
+		assertFalse(h1.isReplicated());
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.header.HeaderFactoryExt;
+
+import javax.sip.SipFactory;
+import javax.sip.header.HeaderFactory;
+
+/**
+ * Compares creating headers with the stack's header factory, against
+ * creating them with a {@link CachingHeaderFactory}, when the header is
+ * cached (hit), and with unique values, which are never cached (miss). Not
+ * a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... org.mobicents.slee.resource.sip11.CachingHeaderFactoryBenchmark [headers]
+ * </pre>
+ *
+ * @author martins
+ *
+ */
+public class CachingHeaderFactoryBenchmark {
+
+	private static final int DEFAULT_HEADERS = 1000000;
+
+	private static final String[] CASES = { "createHeader(Content-Type)", "createHeader(Event)",
+			"createHeader(Supported)", "createContentTypeHeader", "createAcceptHeader", "createEventHeader",
+			"createSupportedHeader", "createExpiresHeader" };
+
+	public static void main(String[] args) throws Exception {
+		final int headers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HEADERS;
+		final SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		final HeaderFactoryExt headerFactory = (HeaderFactoryExt) sipFactory.createHeaderFactory();
+		// warm up
+		for (int i = 0; i < 3; i++) {
+			for (int c = 0; c < CASES.length; c++) {
+				run(headerFactory, c, headers / 10, false);
+				run(headerFactory, c, headers / 10, true);
+				run(new CachingHeaderFactory(headerFactory, CachingHeaderFactory.DEFAULT_CAPACITY), c, headers / 10, false);
+				run(new CachingHeaderFactory(headerFactory, CachingHeaderFactory.DEFAULT_CAPACITY), c, headers / 10, true);
+			}
+		}
+		for (int c = 0; c < CASES.length; c++) {
+			long start = System.nanoTime();
+			run(headerFactory, c, headers, false);
+			final long direct = System.nanoTime() - start;
+			start = System.nanoTime();
+			run(new CachingHeaderFactory(headerFactory, CachingHeaderFactory.DEFAULT_CAPACITY), c, headers, false);
+			final long hit = System.nanoTime() - start;
+			start = System.nanoTime();
+			run(headerFactory, c, headers, true);
+			final long directUnique = System.nanoTime() - start;
+			start = System.nanoTime();
+			run(new CachingHeaderFactory(headerFactory, CachingHeaderFactory.DEFAULT_CAPACITY), c, headers, true);
+			final long miss = System.nanoTime() - start;
+			System.out.println(CASES[c] + ": direct " + (direct / headers) + " ns, hit " + (hit / headers)
+					+ " ns, direct unique " + (directUnique / headers) + " ns, miss " + (miss / headers) + " ns");
+		}
+	}
+
+	private static int run(HeaderFactory headerFactory, int c, int headers, boolean unique) throws Exception {
+		int hash = 0;
+		for (int i = 0; i < headers; i++) {
+			final String value = unique ? ("v" + i) : "presence";
+			final Object header;
+			switch (c) {
+			case 0:
+				header = headerFactory.createHeader("Content-Type", unique ? "application/x" + i : "application/sdp");
+				break;
+			case 1:
+				header = headerFactory.createHeader("Event", value);
+				break;
+			case 2:
+				header = headerFactory.createHeader("Supported", value);
+				break;
+			case 3:
+				header = headerFactory.createContentTypeHeader("application", unique ? "x" + i : "sdp");
+				break;
+			case 4:
+				header = headerFactory.createAcceptHeader("application", unique ? "x" + i : "pidf+xml");
+				break;
+			case 5:
+				header = headerFactory.createEventHeader(value);
+				break;
+			case 6:
+				header = headerFactory.createSupportedHeader(value);
+				break;
+			default:
+				header = headerFactory.createExpiresHeader(unique ? i : 3600);
+				break;
+			}
+			hash += header.hashCode();
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.javax.sip.header.HeaderFactoryExt;
+
+import javax.sip.SipFactory;
+import javax.sip.header.ContentTypeHeader;
+import javax.sip.header.ExpiresHeader;
+import javax.sip.header.Header;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CachingHeaderFactoryTest {
+
+	private static HeaderFactoryExt headerFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		headerFactory = (HeaderFactoryExt) sipFactory.createHeaderFactory();
+	}
+
+	@Test
+	public void testHitsAndClones() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 16);
+		Header h1 = factory.createHeader("Content-Type", "application/sdp");
+		Header h2 = factory.createHeader("Content-Type", "application/sdp");
+		assertNotSame(h1, h2);
+		assertEquals(h1, h2);
+		assertEquals(headerFactory.createContentTypeHeader("application", "sdp"), h2);
+		Header h3 = factory.createHeader("Event", "presence");
+		Header h4 = factory.createHeader("Event", "presence");
+		assertNotSame(h3, h4);
+		assertEquals(h3, h4);
+		assertEquals(2, factory.getHits());
+		assertEquals(2, factory.getMisses());
+		assertEquals(0.5, factory.getHitRatio(), 0);
+		assertEquals(2, factory.getSize());
+	}
+
+	@Test
+	public void testCopyOnHandOut() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 16);
+		ExpiresHeader h1 = (ExpiresHeader) factory.createHeader("Expires", "3600");
+		h1.setExpires(0);
+		assertEquals(3600, ((ExpiresHeader) factory.createHeader("Expires", "3600")).getExpires());
+		ContentTypeHeader h2 = (ContentTypeHeader) factory.createHeader("Content-Type", "text/plain");
+		h2.setParameter("charset", "UTF-8");
+		assertEquals(null, ((ContentTypeHeader) factory.createHeader("Content-Type", "text/plain")).getParameter("charset"));
+	}
+
+	@Test
+	public void testUniqueValuesNotCached() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 16);
+		factory.createHeader("Call-ID", "a84b4c76e66710@pc33.atlanta.com");
+		factory.createHeader("Via", "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds");
+		factory.createHeader("From", "<sip:alice@atlanta.com>;tag=1928301774");
+		assertEquals(0, factory.getSize());
+		assertEquals(0, factory.getMisses());
+		// names are case insensitive, compact forms included
+		factory.createHeader("EVENT", "presence");
+		factory.createHeader("o", "presence");
+		assertEquals(2, factory.getSize());
+	}
+
+	@Test
+	public void testTypedHeadersNotCached() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 16);
+		factory.createContentTypeHeader("application", "sdp");
+		factory.createAcceptHeader("application", "pidf+xml");
+		factory.createEventHeader("presence");
+		factory.createSupportedHeader("eventlist");
+		factory.createExpiresHeader(3600);
+		assertEquals(0, factory.getSize());
+		assertEquals(0, factory.getMisses());
+	}
+
+	@Test
+	public void testStripes() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 1024);
+		for (int i = 0; i < 4096; i++) {
+			factory.createHeader("Expires", Integer.toString(i));
+		}
+		assertTrue(factory.getSize() <= 1024);
+		assertEquals(4096 - factory.getSize(), factory.getEvictions());
+		assertEquals(3600, ((ExpiresHeader) factory.createHeader("Expires", "3600")).getExpires());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		CachingHeaderFactory factory = new CachingHeaderFactory(headerFactory, 2);
+		factory.createHeader("Expires", "1");
+		factory.createHeader("Expires", "2");
+		// 1 becomes the most recently used
+		factory.createHeader("Expires", "1");
+		factory.createHeader("Expires", "3");
+		assertEquals(2, factory.getSize());
+		assertEquals(1, factory.getEvictions());
+		factory.createHeader("Expires", "1");
+		assertEquals(2, factory.getHits());
+		factory.createHeader("Expires", "2");
+		assertEquals(2, factory.getHits());
+		assertEquals(4, factory.getMisses());
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import gov.nist.javax.sip.ListeningPointExt;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.sip.IOExceptionEvent;
+import javax.sip.SipProvider;
+import javax.slee.facilities.Tracer;
+
+import org.junit.Test;
+
+public class ConnectionKeeperTest {
+
+	@Test
+	public void testParsePeers() {
+		List<ConnectionKeeper.Peer> peers = ConnectionKeeper.parsePeers(" 10.0.0.1:5060, trunk.example.com:5061/tls,[2001:db8::1]:5060/TCP,");
+		assertEquals(3, peers.size());
+		assertEquals("10.0.0.1:5060/TCP", peers.get(0).toString());
+		assertEquals("trunk.example.com:5061/TLS", peers.get(1).toString());
+		assertEquals("2001:db8::1", peers.get(2).host);
+		assertEquals(5060, peers.get(2).port);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUdpPeer() {
+		ConnectionKeeper.parsePeers("10.0.0.1:5060/UDP");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParsePeerWithoutPort() {
+		ConnectionKeeper.parsePeers("[2001:db8::1]");
+	}
+
+	@Test
+	public void testKeepalive() throws Exception {
+		SipProvider provider = mock(SipProvider.class);
+		ListeningPointExt lp = mock(ListeningPointExt.class);
+		when(provider.getListeningPoint("TCP")).thenReturn(lp);
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		ConnectionKeeper keeper = new ConnectionKeeper("10.0.0.1:5060,10.0.0.2:5060", 30, ra, provider, mock(Tracer.class));
+		doThrow(new IOException("connection refused")).when(lp).sendHeartbeat("10.0.0.2", 5060);
+		for (ConnectionKeeper.Peer peer : keeper.getPeerList()) {
+			keeper.keepalive(peer);
+		}
+		verify(lp).sendHeartbeat("10.0.0.1", 5060);
+		verify(ra).processIOException(any(IOExceptionEvent.class));
+		assertEquals(1, keeper.getConnectedPeers());
+		assertEquals(1, keeper.getKeepalives());
+		assertEquals(1, keeper.getFailures());
+		assertEquals(30, keeper.getInterval());
+		String[] peers = keeper.getPeers();
+		assertTrue(peers[0], peers[0].startsWith("10.0.0.1:5060/TCP connected keepalives=1 failures=0"));
+		assertTrue(peers[1], peers[1].startsWith("10.0.0.2:5060/TCP disconnected keepalives=0 failures=1"));
+	}
+
+	@Test
+	public void testNoListeningPoint() {
+		SipProvider provider = mock(SipProvider.class);
+		ConnectionKeeper keeper = new ConnectionKeeper("10.0.0.1:5061/TLS", 30, mock(SipResourceAdaptor.class), provider, mock(Tracer.class));
+		keeper.keepalive(keeper.getPeerList().get(0));
+		assertEquals(0, keeper.getConnectedPeers());
+		assertEquals(1, keeper.getFailures());
+		assertFalse(keeper.getPeers()[0].contains(" connected"));
+	}
+
+}
@@ -0,0 +1,214 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.stack.SIPDialog;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sip.DialogState;
+import javax.sip.SipFactory;
+import javax.sip.SipStack;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.slee.facilities.Tracer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DialogJournalTest {
+
+	private SipStack sipStack;
+	private SipProviderImpl provider;
+	private MessageFactory messageFactory;
+	private ViaHeader via;
+	private File file;
+	private DialogJournal journal;
+
+	@Before
+	public void before() throws Exception {
+		final DatagramSocket socket = new DatagramSocket(0);
+		final int port = socket.getLocalPort();
+		socket.close();
+		final SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		final Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", "DialogJournalTest");
+		sipStack = sipFactory.createSipStack(properties);
+		provider = (SipProviderImpl) sipStack.createSipProvider(sipStack.createListeningPoint("127.0.0.1", port, "udp"));
+		messageFactory = sipFactory.createMessageFactory();
+		via = sipFactory.createHeaderFactory().createViaHeader("127.0.0.1", port, "udp", "z9hG4bK1");
+		file = File.createTempFile("dialogs", ".journal");
+		file.delete();
+	}
+
+	@After
+	public void after() {
+		if (journal != null) {
+			journal.close();
+		}
+		sipStack.stop();
+		file.delete();
+	}
+
+	private static DialogJournal.Entry entry(int i, String method, String... routeSet) {
+		final String callId = "call" + i + "@10.0.0.1";
+		return new DialogJournal.Entry(callId + ":local" + i + ":remote" + i, callId, "local" + i, "remote" + i,
+				"<sip:alice@10.0.0.1>", "\"Bob\" <sip:bob@10.0.0.2>", "<sip:bob@10.0.0.3:5070;transport=tcp>", method,
+				10 + i, 20 + i, routeSet);
+	}
+
+	private static List<String> routeSet(SIPDialog dialog) {
+		final List<String> routeSet = new ArrayList<String>();
+		for (Iterator<?> it = dialog.getRouteSet(); it.hasNext();) {
+			routeSet.add(((SIPHeader) it.next()).getHeaderValue().trim());
+		}
+		return routeSet;
+	}
+
+	private List<DialogJournal.Entry> reopen(int size) throws Exception {
+		journal.close();
+		journal = new DialogJournal(file, size, 60, mock(Tracer.class));
+		return journal.open();
+	}
+
+	@Test
+	public void testRecovery() throws Exception {
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		assertTrue(journal.open().isEmpty());
+
+		final DialogJournal.Entry invite = entry(1, Request.INVITE, "<sip:p1.example.com;lr>", "<sip:10.0.0.9:5080;lr>");
+		SIPDialog dialog = invite.createDialog(provider, messageFactory, via);
+		assertEquals(DialogState.CONFIRMED, dialog.getState());
+		assertEquals(invite.getDialogId().toLowerCase(), dialog.getDialogId().toLowerCase());
+		assertEquals("sip:bob@10.0.0.3:5070;transport=tcp", dialog.getRemoteTarget().getURI().toString());
+		assertEquals(2, routeSet(dialog).size());
+		assertEquals("<sip:p1.example.com;lr>", routeSet(dialog).get(0));
+		assertEquals(11, dialog.getLocalSeqNumber());
+		assertEquals(21, dialog.getRemoteSeqNumber());
+
+		journal.update(invite.getDialogId(), dialog);
+		final DialogJournal.Entry subscribe = entry(2, Request.SUBSCRIBE);
+		final SIPDialog subscription = subscribe.createDialog(provider, messageFactory, via);
+		journal.update(subscribe.getDialogId(), subscription);
+		journal.update(subscribe.getDialogId(), subscription);
+
+		List<DialogJournal.Entry> entries = reopen(4096);
+		assertEquals(2, entries.size());
+		assertEquals(2, journal.getRecoveredDialogs());
+		assertEquals(2, journal.getJournaledDialogs());
+		dialog.delete();
+		subscription.delete();
+
+		dialog = entries.get(0).createDialog(provider, messageFactory, via);
+		assertEquals(invite.getDialogId().toLowerCase(), dialog.getDialogId().toLowerCase());
+		assertEquals("\"Bob\" <sip:bob@10.0.0.2>", dialog.getRemoteParty().toString().trim());
+		assertEquals(routeSet(dialog).toString(), "[<sip:p1.example.com;lr>, <sip:10.0.0.9:5080;lr>]");
+		assertEquals(21, dialog.getRemoteSeqNumber());
+		// the next request of the recovered dialog follows the journaled CSeq
+		final Request bye = dialog.createRequest(Request.BYE);
+		assertEquals(12, ((CSeqHeader) bye.getHeader(CSeqHeader.NAME)).getSeqNumber());
+		assertEquals("sip:bob@10.0.0.3:5070;transport=tcp", bye.getRequestURI().toString());
+
+		// a terminated dialog is not recovered
+		journal.remove(invite.getDialogId());
+		entries = reopen(4096);
+		assertEquals(1, entries.size());
+		assertEquals(subscribe.getDialogId(), entries.get(0).getDialogId());
+	}
+
+	@Test
+	public void testCompactionAndGrowth() throws Exception {
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		journal.open();
+		final List<SIPDialog> dialogs = new ArrayList<SIPDialog>();
+		for (int i = 0; i < 200; i++) {
+			final DialogJournal.Entry entry = entry(i, Request.INVITE, "<sip:p1.example.com;lr>");
+			final SIPDialog dialog = entry.createDialog(provider, messageFactory, via);
+			dialogs.add(dialog);
+			for (int j = 0; j < 5; j++) {
+				journal.update(entry.getDialogId(), dialog);
+			}
+		}
+		for (int i = 0; i < 100; i++) {
+			journal.remove(entry(i, Request.INVITE).getDialogId());
+		}
+		final List<DialogJournal.Entry> entries = reopen(4096);
+		assertEquals(100, entries.size());
+		assertEquals(entry(100, Request.INVITE).getDialogId(), entries.get(0).getDialogId());
+		assertTrue(journal.getCompactions() > 0);
+		assertTrue(journal.getFileSize() > 4096);
+		// only the live records after compaction
+		assertTrue(journal.getUsedBytes() < 100 * 300);
+		assertEquals(0, journal.getDroppedUpdates());
+	}
+
+	@Test
+	public void testRemovalAfterSnapshot() throws Exception {
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		journal.open();
+		final DialogJournal.Entry entry = entry(1, Request.INVITE);
+		final SIPDialog dialog = entry.createDialog(provider, messageFactory, via);
+		for (int i = 0; i < 1000; i++) {
+			journal.update(entry.getDialogId(), dialog);
+		}
+		// the removal is journaled apart, the snapshots queued before it are skipped
+		journal.remove(entry.getDialogId());
+		assertTrue(reopen(4096).isEmpty());
+		assertEquals(0, journal.getDroppedUpdates());
+	}
+
+	@Test
+	public void testTornRecord() throws Exception {
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		journal.open();
+		final DialogJournal.Entry entry = entry(1, Request.INVITE);
+		journal.update(entry.getDialogId(), entry.createDialog(provider, messageFactory, via));
+		assertEquals(1, reopen(4096).size());
+		final long used = journal.getUsedBytes();
+		journal.close();
+		journal = null;
+
+		// a record which length was written but not all of its data
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(used);
+			raf.writeInt(100);
+			raf.writeInt(12345);
+			raf.write(new byte[] { 1, 0, 3 });
+		} finally {
+			raf.close();
+		}
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		final List<DialogJournal.Entry> entries = journal.open();
+		assertEquals(1, entries.size());
+		assertEquals(entry.getDialogId(), entries.get(0).getDialogId());
+		assertEquals(used, journal.getUsedBytes());
+	}
+
+	@Test
+	public void testNotConfirmed() throws Exception {
+		journal = new DialogJournal(file, 4096, 60, mock(Tracer.class));
+		journal.open();
+		final SIPDialog dialog = entry(1, Request.INVITE).createDialog(provider, messageFactory, via);
+		dialog.setState(SIPDialog.EARLY_STATE);
+		journal.update(dialog.getDialogId(), dialog);
+		journal.update(dialog.getDialogId(), null);
+		assertTrue(reopen(4096).isEmpty());
+		assertEquals(0, journal.getRecoveredDialogs());
+	}
+
+}
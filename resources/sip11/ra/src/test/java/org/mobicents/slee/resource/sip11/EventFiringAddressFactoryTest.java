@@ -0,0 +1,61 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.sip.SipFactory;
+import javax.sip.address.AddressFactory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class EventFiringAddressFactoryTest {
+
+	private static AddressFactory addressFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		addressFactory = sipFactory.createAddressFactory();
+	}
+
+	@Test
+	public void testNone() throws Exception {
+		EventFiringAddressFactory factory = new EventFiringAddressFactory("none");
+		assertNull(factory.createAddress(addressFactory.createAddress("<sip:alice@atlanta.com>")));
+	}
+
+	@Test
+	public void testNameAddr() throws Exception {
+		EventFiringAddressFactory factory = new EventFiringAddressFactory(null);
+		javax.sip.address.Address address = addressFactory.createAddress("\"Alice\" <sip:alice@atlanta.com;transport=tcp>");
+		assertEquals(address.toString(), factory.createAddress(address).getAddressString());
+	}
+
+	@Test
+	public void testUserHost() throws Exception {
+		EventFiringAddressFactory factory = new EventFiringAddressFactory("user-host");
+		assertEquals("sip:alice@atlanta.com", factory.createAddress(
+				addressFactory.createAddress("\"Alice\" <sip:alice@Atlanta.com:5061;transport=tcp>")).getAddressString());
+		assertEquals("sip:+1-212-555-0101@atlanta.com", factory.createAddress(
+				addressFactory.createAddress("<sip:+1-212-555-0101@atlanta.com;user=phone>")).getAddressString());
+	}
+
+	@Test
+	public void testE164() throws Exception {
+		EventFiringAddressFactory factory = new EventFiringAddressFactory("E164");
+		assertEquals("sip:+12125550101@atlanta.com", factory.createAddress(
+				addressFactory.createAddress("<sip:+1-212-555-0101@atlanta.com;user=phone>")).getAddressString());
+		assertEquals("sip:alice@atlanta.com", factory.createAddress(
+				addressFactory.createAddress("<sip:alice@atlanta.com>")).getAddressString());
+		assertEquals("tel:+12125550101", factory.createAddress(
+				addressFactory.createAddress("<tel:+1-212-555-0101>")).getAddressString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownFormat() {
+		new EventFiringAddressFactory("foo");
+	}
+
+}
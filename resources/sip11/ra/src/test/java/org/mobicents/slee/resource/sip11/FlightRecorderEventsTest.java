@@ -0,0 +1,68 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class FlightRecorderEventsTest {
+
+	@Test
+	public void testSettings() throws Exception {
+		Class<?> configurationClass = flightRecorderClass("jdk.jfr.Configuration");
+		Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream(FlightRecorderEvents.SETTINGS_RESOURCE), "UTF-8");
+		try {
+			Object configuration = configurationClass.getMethod("create", Reader.class).invoke(null, reader);
+			Map<?, ?> settings = (Map<?, ?>) configurationClass.getMethod("getSettings").invoke(configuration);
+			for (String name : FlightRecorderEvents.NAMES) {
+				assertEquals("true", settings.get(FlightRecorderEvents.NAME_PREFIX + name + "#enabled"));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testEnabledByRecording() throws Exception {
+		Class<?> recordingClass = flightRecorderClass("jdk.jfr.Recording");
+		FlightRecorderEvents events = FlightRecorderEvents.create();
+		assertNotNull(events);
+		try {
+			assertFalse(events.isEnabled(FlightRecorderEvents.EVENT_FIRED));
+			assertEquals(null, events.begin(FlightRecorderEvents.EVENT_FIRED));
+			Object recording = recordingClass.newInstance();
+			recordingClass.getMethod("enable", String.class).invoke(recording, FlightRecorderEvents.NAME_PREFIX + "SipEventFired");
+			recordingClass.getMethod("start").invoke(recording);
+			try {
+				assertTrue(events.isEnabled(FlightRecorderEvents.EVENT_FIRED));
+				assertFalse(events.isEnabled(FlightRecorderEvents.DIALOG_FORKED));
+				Object event = events.begin(FlightRecorderEvents.EVENT_FIRED);
+				assertNotNull(event);
+				events.commit(event, "INVITE", 0, "DialogWithIdActivityHandle", 1);
+			} finally {
+				recordingClass.getMethod("stop").invoke(recording);
+				recordingClass.getMethod("close").invoke(recording);
+			}
+			assertFalse(events.isEnabled(FlightRecorderEvents.EVENT_FIRED));
+		} finally {
+			events.close();
+		}
+	}
+
+	private static Class<?> flightRecorderClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			Assume.assumeTrue(false);
+			return null;
+		}
+	}
+
+}
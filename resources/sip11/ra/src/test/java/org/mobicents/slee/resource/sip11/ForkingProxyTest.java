@@ -0,0 +1,226 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sip.ClientTransaction;
+import javax.sip.SipFactory;
+import javax.sip.address.AddressFactory;
+import javax.sip.address.URI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+import net.java.slee.resource.sip.ProxyResponseEvent;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mobicents.slee.resource.sip11.wrappers.ServerTransactionWrapper;
+
+public class ForkingProxyTest {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@biloxi.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static MessageFactory messageFactory;
+	private static AddressFactory addressFactory;
+	private static HeaderFactory headerFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		messageFactory = sipFactory.createMessageFactory();
+		addressFactory = sipFactory.createAddressFactory();
+		headerFactory = sipFactory.createHeaderFactory();
+	}
+
+	private ContactHeader contact(String uri, float q) throws Exception {
+		ContactHeader contact = headerFactory.createContactHeader(addressFactory.createAddress(uri));
+		if (q >= 0) {
+			contact.setQValue(q);
+		}
+		return contact;
+	}
+
+	/**
+	 * a response received in a branch, with the branch Via on top
+	 */
+	private Response response(int statusCode, Request request) throws Exception {
+		Response response = messageFactory.createResponse(statusCode, request);
+		response.addFirst(headerFactory.createViaHeader("10.0.0.1", 5060, "udp", "z9hG4bKbranch"));
+		return response;
+	}
+
+	@Test
+	public void testGroupTargets() throws Exception {
+		List<ContactHeader> targets = new ArrayList<ContactHeader>();
+		targets.add(contact("sip:bob@192.0.2.4", 0.5f));
+		targets.add(contact("sip:bob@192.0.2.1", -1));
+		targets.add(contact("sip:bob@192.0.2.2", 1.0f));
+		targets.add(contact("sip:bob@192.0.2.3", 0.5f));
+		List<List<URI>> groups = ForkingProxy.groupTargets(targets);
+		assertEquals(2, groups.size());
+		assertEquals("[sip:bob@192.0.2.1, sip:bob@192.0.2.2]", groups.get(0).toString());
+		assertEquals("[sip:bob@192.0.2.4, sip:bob@192.0.2.3]", groups.get(1).toString());
+	}
+
+	@Test
+	public void testSerialFailover() throws Exception {
+		Request request = messageFactory.createRequest(INVITE);
+		ForkingProxy proxy = mock(ForkingProxy.class);
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		when(proxy.getRa()).thenReturn(ra);
+		when(proxy.getTracer()).thenReturn(mock(Tracer.class));
+		when(proxy.createBranchTransaction(any(ProxyContext.class), any(ProxyContext.Branch.class))).thenReturn(mock(ClientTransaction.class));
+		ServerTransactionWrapper stw = mock(ServerTransactionWrapper.class);
+		List<ContactHeader> targets = new ArrayList<ContactHeader>();
+		targets.add(contact("sip:bob@192.0.2.1", 1.0f));
+		targets.add(contact("sip:bob@192.0.2.2", 1.0f));
+		targets.add(contact("sip:bob@192.0.2.3", 0.5f));
+		ProxyContext context = new ProxyContext(proxy, stw, request, ForkingProxy.groupTargets(targets));
+		context.start();
+		ArgumentCaptor<ProxyContext.Branch> branches = ArgumentCaptor.forClass(ProxyContext.Branch.class);
+		verify(proxy, times(2)).createBranchTransaction(any(ProxyContext.class), branches.capture());
+		branches.getAllValues().get(0).transactionCompleted(response(486, request), 486);
+		branches.getAllValues().get(1).transactionCompleted(response(404, request), 404);
+		// the second group is tried
+		verify(proxy, times(3)).createBranchTransaction(any(ProxyContext.class), branches.capture());
+		assertFalse(context.isCompleted());
+		verify(stw, never()).sendResponse(any(Response.class));
+		branches.getValue().transactionCompleted(null, Response.REQUEST_TIMEOUT);
+		assertTrue(context.isCompleted());
+		// the best response is the first of the lowest class
+		ArgumentCaptor<Response> forwarded = ArgumentCaptor.forClass(Response.class);
+		verify(stw).sendResponse(forwarded.capture());
+		assertEquals(486, forwarded.getValue().getStatusCode());
+		assertEquals("z9hG4bK776asdhds", ((ViaHeader) forwarded.getValue().getHeader(ViaHeader.NAME)).getBranch());
+		ArgumentCaptor<ProxyResponseEvent> event = ArgumentCaptor.forClass(ProxyResponseEvent.class);
+		verify(ra).processProxyResponse(any(ServerTransactionWrapper.class), event.capture());
+		assertEquals("sip:bob@192.0.2.1", event.getValue().getTarget().toString());
+	}
+
+	@Test
+	public void testSuccessCancelsBranches() throws Exception {
+		Request request = messageFactory.createRequest(INVITE);
+		ForkingProxy proxy = mock(ForkingProxy.class);
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		when(proxy.getRa()).thenReturn(ra);
+		when(proxy.getTracer()).thenReturn(mock(Tracer.class));
+		when(proxy.createBranchTransaction(any(ProxyContext.class), any(ProxyContext.Branch.class))).thenReturn(mock(ClientTransaction.class));
+		ServerTransactionWrapper stw = mock(ServerTransactionWrapper.class);
+		List<ContactHeader> targets = new ArrayList<ContactHeader>();
+		targets.add(contact("sip:bob@192.0.2.1", -1));
+		targets.add(contact("sip:bob@192.0.2.2", -1));
+		targets.add(contact("sip:bob@192.0.2.3", -1));
+		ProxyContext context = new ProxyContext(proxy, stw, request, ForkingProxy.groupTargets(targets));
+		context.start();
+		ArgumentCaptor<ProxyContext.Branch> branches = ArgumentCaptor.forClass(ProxyContext.Branch.class);
+		verify(proxy, times(3)).createBranchTransaction(any(ProxyContext.class), branches.capture());
+		ProxyContext.Branch b1 = branches.getAllValues().get(0);
+		ProxyContext.Branch b2 = branches.getAllValues().get(1);
+		ProxyContext.Branch b3 = branches.getAllValues().get(2);
+		b1.transactionProceeding(response(180, request));
+		b2.transactionProceeding(response(180, request));
+		b2.transactionCompleted(response(200, request), 200);
+		// the proceeding branch is cancelled right away, the other once it proceeds
+		verify(proxy).sendCancel(b1);
+		verify(proxy, never()).sendCancel(b3);
+		b3.transactionProceeding(response(183, request));
+		verify(proxy).sendCancel(b3);
+		b1.transactionCompleted(response(487, request), 487);
+		b3.transactionCompleted(response(487, request), 487);
+		assertTrue(context.isCompleted());
+		// the 180s and the 200 are forwarded, the 183 after the 2xx and the 487s are not
+		ArgumentCaptor<Response> forwarded = ArgumentCaptor.forClass(Response.class);
+		verify(stw, times(3)).sendResponse(forwarded.capture());
+		assertEquals(200, forwarded.getValue().getStatusCode());
+		// first provisional and the 2xx fired
+		verify(ra, times(2)).processProxyResponse(any(ServerTransactionWrapper.class), any(ProxyResponseEvent.class));
+	}
+
+	@Test
+	public void testTimerC() throws Exception {
+		Request request = messageFactory.createRequest(INVITE);
+		ForkingProxy proxy = mock(ForkingProxy.class);
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		when(proxy.getRa()).thenReturn(ra);
+		when(proxy.getTracer()).thenReturn(mock(Tracer.class));
+		when(proxy.getProviderWrapper()).thenReturn(mock(SleeSipProviderImpl.class));
+		when(proxy.createBranchTransaction(any(ProxyContext.class), any(ProxyContext.Branch.class))).thenReturn(mock(ClientTransaction.class));
+		final AtomicInteger cancelled = new AtomicInteger();
+		TimerTask timerC = new TimerTask() {
+			@Override
+			public void run() {
+			}
+			@Override
+			public boolean cancel() {
+				cancelled.incrementAndGet();
+				return true;
+			}
+		};
+		when(proxy.scheduleTimerC(any(ProxyContext.Branch.class), anyLong())).thenReturn(timerC);
+		ServerTransactionWrapper stw = mock(ServerTransactionWrapper.class);
+		List<ContactHeader> targets = new ArrayList<ContactHeader>();
+		targets.add(contact("sip:bob@192.0.2.1", -1));
+		targets.add(contact("sip:bob@192.0.2.2", -1));
+		ProxyContext context = new ProxyContext(proxy, stw, request, ForkingProxy.groupTargets(targets));
+		context.start();
+		ArgumentCaptor<ProxyContext.Branch> branches = ArgumentCaptor.forClass(ProxyContext.Branch.class);
+		verify(proxy, times(2)).createBranchTransaction(any(ProxyContext.class), branches.capture());
+		ProxyContext.Branch b1 = branches.getAllValues().get(0);
+		ProxyContext.Branch b2 = branches.getAllValues().get(1);
+		verify(proxy).scheduleTimerC(b1, ForkingProxy.TIMER_C);
+		verify(proxy).scheduleTimerC(b2, ForkingProxy.TIMER_C);
+		// a 100 does not restart Timer C, other provisional responses do
+		b1.transactionProceeding(response(100, request));
+		verify(proxy).scheduleTimerC(eq(b1), anyLong());
+		b1.transactionProceeding(response(180, request));
+		b1.transactionProceeding(response(183, request));
+		verify(proxy, times(3)).scheduleTimerC(b1, ForkingProxy.TIMER_C);
+		assertEquals(2, cancelled.get());
+		// a branch without provisional responses times out
+		b2.timerCExpired();
+		verify(proxy, never()).sendCancel(b2);
+		assertFalse(context.isCompleted());
+		// a proceeding branch is cancelled
+		b1.timerCExpired();
+		verify(proxy).sendCancel(b1);
+		verify(proxy).scheduleTimerC(b1, ForkingProxy.TIMER_C_CANCEL);
+		// the 487 received is forwarded, not the 408 of the timed out branch
+		b1.transactionCompleted(response(487, request), 487);
+		assertTrue(context.isCompleted());
+		ArgumentCaptor<Response> forwarded = ArgumentCaptor.forClass(Response.class);
+		verify(stw, times(3)).sendResponse(forwarded.capture());
+		assertEquals(487, forwarded.getValue().getStatusCode());
+		// late responses of the timed out branch are ignored
+		b2.transactionCompleted(response(487, request), 487);
+		verify(stw, times(3)).sendResponse(any(Response.class));
+	}
+
+}
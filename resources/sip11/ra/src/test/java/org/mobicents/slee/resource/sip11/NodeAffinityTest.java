@@ -0,0 +1,66 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.javax.sip.message.SIPRequest;
+
+import javax.sip.SipFactory;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+
+import net.java.slee.resource.sip.NodeAffinity;
+
+import org.junit.Test;
+
+public class NodeAffinityTest {
+
+	@Test
+	public void testEncodeDecode() {
+		assertEquals("a84b4c76~nnode-1", NodeAffinity.encode("a84b4c76", "node-1"));
+		assertEquals("node-1", NodeAffinity.decode("a84b4c76~nnode-1"));
+		assertEquals("z9hG4bK776asdhds", NodeAffinity.encode("z9hG4bK776asdhds", null));
+		assertEquals("3848276298~nN2@10.0.0.1", NodeAffinity.encodeCallId("3848276298@10.0.0.1", "N2"));
+		assertEquals("N2", NodeAffinity.decodeCallId("3848276298~nN2@10.0.0.1"));
+		assertEquals("N2", NodeAffinity.decodeCallId(NodeAffinity.encodeCallId("3848276298", "N2")));
+		// the host part is not decoded
+		assertNull(NodeAffinity.decodeCallId("3848276298@a~nb"));
+		assertEquals("b", NodeAffinity.decode("3848276298@a~nb"));
+	}
+
+	@Test
+	public void testForeignValues() {
+		assertNull(NodeAffinity.decode(null));
+		assertNull(NodeAffinity.decode("1928301774"));
+		assertNull(NodeAffinity.decode("1928301774~n"));
+		assertNull(NodeAffinity.decode("1928301774~nnode.1"));
+		assertNull(NodeAffinity.decodeCallId("a84b4c76e66710@pc33.atlanta.com"));
+		assertNull(NodeAffinity.decodeCallId("a84b4c76~n@pc33.atlanta.com"));
+		assertTrue(NodeAffinity.isValidNode("node-1"));
+		assertFalse(NodeAffinity.isValidNode(""));
+		assertFalse(NodeAffinity.isValidNode("node~1"));
+		assertFalse(NodeAffinity.isValidNode("012345678901234567890123456789012"));
+	}
+
+	@Test
+	public void testRequestTemplate() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		MessageFactory messageFactory = sipFactory.createMessageFactory();
+		RequestTemplateImpl template = new RequestTemplateImpl(RequestTemplateTest.createPrototype(
+				sipFactory.createAddressFactory(), sipFactory.createHeaderFactory(), messageFactory), "node1");
+		Request request = messageFactory.createRequest(new String(((SIPRequest) template.createRequest(null, null,
+				null, 0, null, null)).encodeAsBytes("UDP"), "UTF-8"));
+		assertEquals("node1", NodeAffinity.decode(((FromHeader) request.getHeader(FromHeader.NAME)).getTag()));
+		String branch = ((ViaHeader) request.getHeader(ViaHeader.NAME)).getBranch();
+		assertTrue(branch.startsWith("z9hG4bK"));
+		assertEquals("node1", NodeAffinity.decode(branch));
+		assertEquals("node1", NodeAffinity.decodeCallId(((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId()));
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.java.slee.resource.sip.PeerHealth;
+
+import org.junit.Test;
+import org.mobicents.slee.resource.sip11.wrappers.PeerActivityWrapper;
+
+public class PeerHealthTableTest {
+
+	@Test
+	public void testFailureAndRecovery() {
+		PeerHealthTable table = new PeerHealthTable(16);
+		assertNull(table.reached("192.168.1.2", 5060, "tcp"));
+		PeerHealthTable.Peer peer = table.failed("192.168.1.2", 5060, "tcp", 1000L);
+		assertSame(peer, table.failed("192.168.1.2", 5060, "TCP", 2000L));
+		PeerHealth health = peer.getHealth();
+		assertEquals(PeerHealth.State.FAILED, health.getState());
+		assertEquals(2, health.getConsecutiveFailures());
+		assertEquals(2000L, health.getLastFailureTime());
+		assertEquals("TCP", health.getTransport());
+		assertEquals(1, table.getFailedPeers().size());
+
+		PeerActivityWrapper activity = new PeerActivityWrapper(peer, null);
+		assertTrue(peer.setActivity(activity));
+		assertFalse(peer.setActivity(new PeerActivityWrapper(peer, null)));
+		assertEquals(new PeerActivityHandle("192.168.1.2:5060/TCP"), activity.getActivityHandle());
+
+		// another transport is another peer
+		assertNull(table.reached("192.168.1.2", 5060, "udp"));
+		assertSame(activity, table.reached("192.168.1.2", 5060, "TCP"));
+		assertNull(peer.getActivity());
+		health = table.getPeer("192.168.1.2", 5060, "tcp").getHealth();
+		assertEquals(PeerHealth.State.AVAILABLE, health.getState());
+		assertEquals(0, health.getConsecutiveFailures());
+		assertEquals(2000L, health.getLastFailureTime());
+		assertTrue(table.getFailedPeers().isEmpty());
+		assertNull(table.reached("192.168.1.2", 5060, "tcp"));
+		// a recovered peer without failures can't get an activity
+		assertFalse(peer.setActivity(activity));
+	}
+
+	@Test
+	public void testCapacity() {
+		PeerHealthTable table = new PeerHealthTable(2);
+		table.failed("10.0.0.1", 5060, "tcp", 1L);
+		table.failed("10.0.0.2", 5060, "tcp", 1L);
+		table.reached("10.0.0.1", 5060, "tcp");
+		// the available peer is removed to make room
+		table.failed("10.0.0.3", 5060, "tcp", 1L);
+		assertEquals(2, table.size());
+		assertNull(table.getPeer("10.0.0.1", 5060, "tcp"));
+		assertNotNull(table.getPeer("10.0.0.2", 5060, "tcp"));
+		// failed peers are kept
+		table.failed("10.0.0.4", 5060, "tcp", 1L);
+		assertEquals(3, table.size());
+		assertEquals(3, table.getFailedPeers().size());
+	}
+
+	@Test
+	public void testClear() {
+		PeerHealthTable table = new PeerHealthTable(16);
+		PeerHealthTable.Peer peer = table.failed("10.0.0.1", 5060, "tls", 1L);
+		PeerActivityWrapper activity = new PeerActivityWrapper(peer, null);
+		peer.setActivity(activity);
+		table.failed("10.0.0.2", 5060, "tls", 1L);
+		assertEquals(1, table.clear().size());
+		assertEquals(0, table.size());
+		assertNull(table.reached("10.0.0.1", 5060, "tls"));
+	}
+
+}
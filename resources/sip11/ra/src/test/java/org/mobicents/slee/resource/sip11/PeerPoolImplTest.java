@@ -0,0 +1,140 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.java.slee.resource.sip.PeerPool;
+import net.java.slee.resource.sip.PeerPoolMember;
+
+import org.junit.Test;
+
+public class PeerPoolImplTest {
+
+	@Test
+	public void testLeastOutstanding() {
+		PeerPoolImpl pool = new PeerPoolImpl("trunks", PeerPool.Selection.LEAST_OUTSTANDING);
+		assertNull(pool.select("a"));
+		pool.addMember("10.0.0.1", 5060, "udp", 2);
+		pool.addMember("10.0.0.2", 5060, "tcp", 1);
+		// outstanding transactions are kept at 2:1
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < 300; i++) {
+			String key = pool.select(null).toString();
+			counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+		}
+		assertEquals(200, counts.get("10.0.0.1:5060/UDP").intValue());
+		assertEquals(100, counts.get("10.0.0.2:5060/TCP").intValue());
+
+		// a member with transactions ending faster gets more
+		pool = new PeerPoolImpl("trunks", PeerPool.Selection.LEAST_OUTSTANDING);
+		pool.addMember("10.0.0.1", 5060, "udp", 1);
+		pool.addMember("10.0.0.2", 5060, "udp", 1);
+		PeerPoolImpl.Member slow = pool.select(null);
+		int fast = 0;
+		for (int i = 0; i < 10; i++) {
+			PeerPoolImpl.Member member = pool.select(null);
+			if (member != slow) {
+				fast++;
+				member.transactionEnded(true);
+			}
+		}
+		assertEquals(10, fast);
+		assertEquals(1, slow.getOutstanding());
+	}
+
+	@Test
+	public void testCallIdHash() {
+		PeerPoolImpl pool = new PeerPoolImpl("carriers", PeerPool.Selection.CALL_ID_HASH);
+		pool.addMember("10.0.1.1", 5060, "udp", 1);
+		pool.addMember("10.0.1.2", 5060, "udp", 1);
+		pool.addMember("10.0.1.3", 5060, "udp", 2);
+		Map<String, String> selected = new HashMap<String, String>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < 4000; i++) {
+			String callId = "call" + i + "@192.168.1.100";
+			String key = pool.select(callId).toString();
+			assertEquals(key, pool.select(callId).toString());
+			selected.put(callId, key);
+			counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+		}
+		// shares roughly proportional to weights
+		assertTrue(counts.toString(), counts.get("10.0.1.3:5060/UDP") > 1600);
+		assertTrue(counts.toString(), counts.get("10.0.1.1:5060/UDP") > 700);
+
+		// only the calls of a removed member move
+		assertTrue(pool.removeMember("10.0.1.2", 5060, "UDP"));
+		assertFalse(pool.removeMember("10.0.1.2", 5060, "UDP"));
+		for (Map.Entry<String, String> entry : selected.entrySet()) {
+			String key = pool.select(entry.getKey()).toString();
+			if (!entry.getValue().equals("10.0.1.2:5060/UDP")) {
+				assertEquals(entry.getValue(), key);
+			} else {
+				assertFalse(key.equals("10.0.1.2:5060/UDP"));
+			}
+		}
+	}
+
+	@Test
+	public void testRotation() {
+		PeerPoolImpl pool = new PeerPoolImpl("trunks", PeerPool.Selection.CALL_ID_HASH);
+		pool.addMember("10.0.0.1", 5060, null, 1);
+		pool.addMember("10.0.0.2", 5060, null, 1);
+		PeerPoolImpl.Member member = pool.select("abc");
+		assertFalse(member.failed(3));
+		assertFalse(member.failed(3));
+		// an answered transaction resets the failures
+		member.transactionEnded(true);
+		assertFalse(member.failed(3));
+		assertFalse(member.failed(3));
+		assertTrue(member.failed(3));
+		assertFalse(member.failed(3));
+		assertFalse(member.isInRotation());
+		PeerPoolImpl.Member other = pool.select("abc");
+		assertNotNull(other);
+		assertTrue(other != member);
+		assertTrue(other.failed(1));
+		assertNull(pool.select("abc"));
+		member.readmit();
+		assertSame(member, pool.select("abc"));
+
+		for (PeerPoolMember snapshot : pool.getMembers()) {
+			assertEquals("UDP", snapshot.getTransport());
+			assertEquals(snapshot.getHost().equals(member.getHost()), snapshot.isInRotation());
+		}
+	}
+
+	@Test
+	public void testParsePools() {
+		Map<String, PeerPoolImpl> pools = PeerPools
+				.parsePools("trunks=10.0.0.1:5060*2, 10.0.0.2:5061/tcp ;carriers/hash=[2001:db8::1]:5060/TLS*3");
+		assertEquals(2, pools.size());
+		PeerPoolImpl trunks = pools.get("trunks");
+		assertEquals(PeerPool.Selection.LEAST_OUTSTANDING, trunks.getSelection());
+		assertEquals(2, trunks.getMembers().size());
+		assertEquals(2, trunks.getMembers().get(0).getWeight());
+		assertEquals("TCP", trunks.getMembers().get(1).getTransport());
+		assertEquals(5061, trunks.getMembers().get(1).getPort());
+		PeerPoolImpl carriers = pools.get("carriers");
+		assertEquals(PeerPool.Selection.CALL_ID_HASH, carriers.getSelection());
+		assertEquals("2001:db8::1", carriers.getMembers().get(0).getHost());
+		assertEquals(3, carriers.getMembers().get(0).getWeight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWeight() {
+		PeerPools.parsePools("trunks=10.0.0.1:5060*0");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingPort() {
+		PeerPools.parsePools("trunks=10.0.0.1");
+	}
+
+}
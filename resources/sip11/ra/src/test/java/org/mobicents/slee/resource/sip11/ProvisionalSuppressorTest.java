@@ -0,0 +1,201 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sip.SipFactory;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Response;
+
+import net.java.slee.resource.sip.ProvisionalSuppression;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ProvisionalSuppressorTest {
+
+	private static MessageFactory messageFactory;
+
+	private final Timer timer = new Timer(true);
+
+	private final List<Integer> delivered = new ArrayList<Integer>();
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		messageFactory = sipFactory.createMessageFactory();
+	}
+
+	@After
+	public void after() {
+		timer.cancel();
+	}
+
+	private static Response response(int statusCode, String sdp, boolean reliable) throws Exception {
+		StringBuilder sb = new StringBuilder("SIP/2.0 ").append(statusCode).append(" Provisional\r\n")
+				.append("Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n")
+				.append("From: <sip:alice@atlanta.com>;tag=1928301774\r\n")
+				.append("To: <sip:bob@biloxi.com>;tag=a6c85cf\r\n")
+				.append("Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n")
+				.append("CSeq: 314159 INVITE\r\n");
+		if (reliable) {
+			sb.append("Require: 100rel\r\nRSeq: 1\r\n");
+		}
+		if (sdp != null) {
+			sb.append("Content-Type: application/sdp\r\nContent-Length: ").append(sdp.length()).append("\r\n\r\n")
+					.append(sdp);
+		} else {
+			sb.append("Content-Length: 0\r\n\r\n");
+		}
+		return messageFactory.createResponse(sb.toString());
+	}
+
+	private boolean receive(ProvisionalSuppressor suppressor, final Response response, long now) {
+		return suppressor.responseReceived(response, new Runnable() {
+			public void run() {
+				synchronized (delivered) {
+					delivered.add(response.getStatusCode());
+				}
+			}
+		}, now);
+	}
+
+	@Test
+	public void testNone() throws Exception {
+		ProvisionalSuppressor suppressor = new ProvisionalSuppressor(ProvisionalSuppression.NONE, timer, null);
+		assertTrue(receive(suppressor, response(180, null, false), 0));
+		assertTrue(receive(suppressor, response(180, null, false), 0));
+		assertEquals(0, suppressor.getSuppressed());
+	}
+
+	@Test
+	public void testRepeated() throws Exception {
+		SipResourceAdaptorStatistics statistics = new SipResourceAdaptorStatistics();
+		ProvisionalSuppressor suppressor = new ProvisionalSuppressor(ProvisionalSuppression.REPEATED, timer, statistics);
+		assertTrue(receive(suppressor, response(180, null, false), 0));
+		assertFalse(receive(suppressor, response(180, null, false), 0));
+		assertFalse(receive(suppressor, response(180, null, false), 0));
+		assertTrue(receive(suppressor, response(183, "v=0\r\no=a 1 1 IN IP4 10.0.0.1\r\n", false), 0));
+		assertFalse(receive(suppressor, response(183, "v=0\r\no=a 1 1 IN IP4 10.0.0.1\r\n", false), 0));
+		// the SDP changed
+		assertTrue(receive(suppressor, response(183, "v=0\r\no=a 1 2 IN IP4 10.0.0.1\r\n", false), 0));
+		// reliable provisionals are always delivered
+		assertTrue(receive(suppressor, response(183, "v=0\r\no=a 1 2 IN IP4 10.0.0.1\r\n", true), 0));
+		assertTrue(receive(suppressor, response(200, null, false), 0));
+		// late provisionals after the final response
+		assertFalse(receive(suppressor, response(180, null, false), 0));
+		assertEquals(3, suppressor.getSuppressed());
+	}
+
+	@Test
+	public void testWindow() throws Exception {
+		ProvisionalSuppressor suppressor = new ProvisionalSuppressor(ProvisionalSuppression.window(100), timer, null);
+		long now = System.currentTimeMillis();
+		assertTrue(receive(suppressor, response(100, null, false), now));
+		// collapsed, only the latest is delivered at the end of the window
+		assertFalse(receive(suppressor, response(180, null, false), now + 10));
+		assertFalse(receive(suppressor, response(183, null, false), now + 20));
+		assertEquals(1, suppressor.getSuppressed());
+		for (int i = 0; i < 100 && delivered.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		synchronized (delivered) {
+			assertEquals(1, delivered.size());
+			assertEquals(183, delivered.get(0).intValue());
+		}
+		// a final response discards the held provisional
+		assertFalse(receive(suppressor, response(180, null, false), System.currentTimeMillis()));
+		assertTrue(receive(suppressor, response(486, null, false), System.currentTimeMillis()));
+		assertEquals(2, suppressor.getSuppressed());
+		Thread.sleep(200);
+		assertEquals(1, delivered.size());
+	}
+
+	@Test
+	public void testFinalAfterHeldDelivery() throws Exception {
+		final ProvisionalSuppressor suppressor = new ProvisionalSuppressor(ProvisionalSuppression.window(50), timer, null);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		long now = System.currentTimeMillis();
+		assertTrue(receive(suppressor, response(100, null, false), now));
+		assertFalse(suppressor.responseReceived(response(180, null, false), new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				synchronized (delivered) {
+					delivered.add(180);
+				}
+			}
+		}, now + 10));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// the held delivery does not hold the lock
+		assertEquals(0, suppressor.getSuppressed());
+
+		final Response ok = response(200, null, false);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					if (receive(suppressor, ok, System.currentTimeMillis())) {
+						synchronized (delivered) {
+							delivered.add(200);
+						}
+						return true;
+					}
+					return false;
+				}
+			});
+			// the final response waits for the held delivery
+			try {
+				future.get(100, TimeUnit.MILLISECONDS);
+				fail();
+			} catch (TimeoutException e) {
+				// expected
+			}
+			release.countDown();
+			assertTrue(future.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+		synchronized (delivered) {
+			assertEquals(2, delivered.size());
+			assertEquals(180, delivered.get(0).intValue());
+			assertEquals(200, delivered.get(1).intValue());
+		}
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals(ProvisionalSuppression.NONE, ProvisionalSuppression.parse("none"));
+		assertEquals(ProvisionalSuppression.REPEATED, ProvisionalSuppression.parse(" Repeated "));
+		ProvisionalSuppression window = ProvisionalSuppression.parse("window:250");
+		assertEquals(ProvisionalSuppression.Mode.WINDOW, window.getMode());
+		assertEquals(250, window.getWindow());
+		assertEquals(window, ProvisionalSuppression.parse(window.toString()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		ProvisionalSuppression.parse("window:0");
+	}
+
+}
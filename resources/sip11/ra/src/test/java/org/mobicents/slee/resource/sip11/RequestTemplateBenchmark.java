@@ -0,0 +1,119 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.slee.resource.sip11;
+
+import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sip.SipFactory;
+import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+
+/**
+ * Compares building and encoding MWI NOTIFY requests with the message and
+ * header factories, against creating them from a {@link RequestTemplateImpl}.
+ * Not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... org.mobicents.slee.resource.sip11.RequestTemplateBenchmark [requests]
+ * </pre>
+ *
+ * @author martins
+ *
+ */
+public class RequestTemplateBenchmark {
+
+	private static final int DEFAULT_REQUESTS = 200000;
+
+	private static AddressFactory addressFactory;
+	private static HeaderFactory headerFactory;
+	private static MessageFactory messageFactory;
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REQUESTS;
+		final SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		addressFactory = sipFactory.createAddressFactory();
+		headerFactory = sipFactory.createHeaderFactory();
+		messageFactory = sipFactory.createMessageFactory();
+		final Address[] targets = new Address[1024];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = addressFactory.createAddress("<sip:user" + i + "@atlanta.com>");
+		}
+		final RequestTemplateImpl template = new RequestTemplateImpl(
+				RequestTemplateTest.createPrototype(addressFactory, headerFactory, messageFactory));
+		final byte[] body = "Messages-Waiting: yes\r\nVoice-Message: 2/8 (0/2)\r\n".getBytes();
+		// warm up
+		for (int i = 0; i < 3; i++) {
+			runObjectModel(targets, body, requests / 10);
+			runTemplate(template, targets, body, requests / 10);
+		}
+		for (int i = 0; i < 3; i++) {
+			long start = System.nanoTime();
+			runObjectModel(targets, body, requests);
+			final long objectModel = System.nanoTime() - start;
+			start = System.nanoTime();
+			runTemplate(template, targets, body, requests);
+			final long templates = System.nanoTime() - start;
+			System.out.println("object model: " + (objectModel / requests) + " ns/request, template: "
+					+ (templates / requests) + " ns/request, speedup " + ((double) objectModel / templates));
+		}
+	}
+
+	private static long runObjectModel(Address[] targets, byte[] body, int requests) throws Exception {
+		final Utils utils = Utils.getInstance();
+		final Address from = addressFactory.createAddress("<sip:voicemail@atlanta.com>");
+		long bytes = 0;
+		for (int i = 0; i < requests; i++) {
+			final Address to = targets[i & (targets.length - 1)];
+			final List<ViaHeader> vias = new ArrayList<ViaHeader>(1);
+			vias.add(headerFactory.createViaHeader("192.168.1.100", 5060, "udp", utils.generateBranchId()));
+			final Request request = messageFactory.createRequest(to.getURI(), Request.NOTIFY,
+					headerFactory.createCallIdHeader(utils.generateCallIdentifier("192.168.1.100")),
+					headerFactory.createCSeqHeader(1L, Request.NOTIFY),
+					headerFactory.createFromHeader(from, utils.generateTag()), headerFactory.createToHeader(to, null), vias,
+					headerFactory.createMaxForwardsHeader(70),
+					headerFactory.createContentTypeHeader("application", "simple-message-summary"), body);
+			request.addHeader(headerFactory.createEventHeader("message-summary"));
+			request.addHeader(headerFactory.createSubscriptionStateHeader("terminated"));
+			request.addHeader(headerFactory.createHeader("Route", "<sip:proxy1.atlanta.com;lr>"));
+			request.addHeader(headerFactory.createHeader("Route", "<sip:proxy2.atlanta.com;lr>"));
+			bytes += ((SIPRequest) request).encodeAsBytes("UDP").length;
+		}
+		return bytes;
+	}
+
+	private static long runTemplate(RequestTemplateImpl template, Address[] targets, byte[] body, int requests) throws Exception {
+		long bytes = 0;
+		for (int i = 0; i < requests; i++) {
+			final Request request = template.createRequest(null, targets[i & (targets.length - 1)], null, 1L, null, body);
+			bytes += ((SIPRequest) request).encodeAsBytes("UDP").length;
+		}
+		return bytes;
+	}
+
+}
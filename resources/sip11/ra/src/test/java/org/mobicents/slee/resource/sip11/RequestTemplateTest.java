@@ -0,0 +1,147 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+import javax.sip.SipException;
+import javax.sip.SipFactory;
+import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.EventHeader;
+import javax.sip.header.ExtensionHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.RouteHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RequestTemplateTest {
+
+	private static AddressFactory addressFactory;
+	private static HeaderFactory headerFactory;
+	private static MessageFactory messageFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		addressFactory = sipFactory.createAddressFactory();
+		headerFactory = sipFactory.createHeaderFactory();
+		messageFactory = sipFactory.createMessageFactory();
+	}
+
+	static Request createPrototype(AddressFactory addressFactory, HeaderFactory headerFactory, MessageFactory messageFactory) throws Exception {
+		Address from = addressFactory.createAddress("<sip:voicemail@atlanta.com>");
+		Address to = addressFactory.createAddress("<sip:alice@atlanta.com>");
+		List<ViaHeader> vias = new ArrayList<ViaHeader>();
+		vias.add(headerFactory.createViaHeader("192.168.1.100", 5060, "udp", null));
+		Request request = messageFactory.createRequest(to.getURI(), Request.NOTIFY,
+				headerFactory.createCallIdHeader("prototype@192.168.1.100"), headerFactory.createCSeqHeader(1L, Request.NOTIFY),
+				headerFactory.createFromHeader(from, null), headerFactory.createToHeader(to, null), vias,
+				headerFactory.createMaxForwardsHeader(70), headerFactory.createContentTypeHeader("application", "simple-message-summary"),
+				"Messages-Waiting: no\r\n".getBytes());
+		request.addHeader(headerFactory.createEventHeader("message-summary"));
+		request.addHeader(headerFactory.createSubscriptionStateHeader("terminated"));
+		request.addHeader(headerFactory.createHeader("Route", "<sip:proxy1.atlanta.com;lr>"));
+		request.addHeader(headerFactory.createHeader("Route", "<sip:proxy2.atlanta.com;lr>"));
+		return request;
+	}
+
+	private static Request parse(Request request) throws Exception {
+		return messageFactory.createRequest(new String(((SIPRequest) request).encodeAsBytes("UDP"), "UTF-8"));
+	}
+
+	@Test
+	public void testSlots() throws Exception {
+		RequestTemplateImpl template = new RequestTemplateImpl(createPrototype(addressFactory, headerFactory, messageFactory));
+		assertEquals(Request.NOTIFY, template.getMethod());
+		Address bob = addressFactory.createAddress("<sip:bob@biloxi.com>");
+		byte[] body = "Messages-Waiting: yes\r\nVoice-Message: 2/8 (0/2)\r\n".getBytes();
+		Request request = template.createRequest(null, bob, "call1@192.168.1.100", 7, "z9hG4bKtemplate1", body);
+		assertTrue(((TemplateRequest) request).isTemplateEncoded());
+		Request parsed = parse(request);
+		assertEquals("sip:bob@biloxi.com", parsed.getRequestURI().toString());
+		assertEquals(bob.getURI(), ((ToHeader) parsed.getHeader("To")).getAddress().getURI());
+		assertEquals("call1@192.168.1.100", ((CallIdHeader) parsed.getHeader("Call-ID")).getCallId());
+		assertEquals(7, ((CSeqHeader) parsed.getHeader("CSeq")).getSeqNumber());
+		assertEquals("z9hG4bKtemplate1", ((ViaHeader) parsed.getHeader("Via")).getBranch());
+		assertNotNull(((FromHeader) parsed.getHeader("From")).getTag());
+		assertEquals("message-summary", ((EventHeader) parsed.getHeader("Event")).getEventType());
+		assertEquals(body.length, parsed.getContentLength().getContentLength());
+		assertEquals(new String(body), new String(parsed.getRawContent()));
+		int routes = 0;
+		for (ListIterator<?> it = parsed.getHeaders(RouteHeader.NAME); it.hasNext(); it.next()) {
+			routes++;
+		}
+		assertEquals(2, routes);
+		// the same as the full encoding
+		assertEquals(parse(request), messageFactory.createRequest(request.toString()));
+	}
+
+	@Test
+	public void testPrototypeValues() throws Exception {
+		RequestTemplateImpl template = new RequestTemplateImpl(createPrototype(addressFactory, headerFactory, messageFactory));
+		Request r1 = template.createRequest(null, null, null, 0, null, null);
+		Request r2 = template.createRequest(null, null, null, 0, null, null);
+		Request parsed = parse(r1);
+		assertEquals("sip:alice@atlanta.com", parsed.getRequestURI().toString());
+		assertEquals(1, ((CSeqHeader) parsed.getHeader("CSeq")).getSeqNumber());
+		assertEquals("Messages-Waiting: no\r\n", new String(parsed.getRawContent()));
+		assertFalse(r1.getHeader("Call-ID").equals(r2.getHeader("Call-ID")));
+		assertFalse(((ViaHeader) r1.getHeader("Via")).getBranch().equals(((ViaHeader) r2.getHeader("Via")).getBranch()));
+	}
+
+	@Test
+	public void testChangedHeaders() throws Exception {
+		RequestTemplateImpl template = new RequestTemplateImpl(createPrototype(addressFactory, headerFactory, messageFactory));
+		Request request = template.createRequest(null, null, null, 0, null, null);
+		request.removeHeader(RouteHeader.NAME);
+		request.addHeader(headerFactory.createHeader("X-Test", "1"));
+		assertFalse(((TemplateRequest) request).isTemplateEncoded());
+		Request parsed = parse(request);
+		assertEquals(null, parsed.getHeader(RouteHeader.NAME));
+		assertEquals("1", ((ExtensionHeader) parsed.getHeader("X-Test")).getValue());
+		// other requests of the template are not affected
+		assertNotNull(parse(template.createRequest(null, null, null, 0, null, null)).getHeader(RouteHeader.NAME));
+	}
+
+	@Test
+	public void testHeaderChangedInPlace() throws Exception {
+		RequestTemplateImpl template = new RequestTemplateImpl(createPrototype(addressFactory, headerFactory, messageFactory));
+		Request r1 = template.createRequest(null, null, null, 0, null, null);
+		Request r2 = template.createRequest(null, null, null, 0, null, null);
+		// slot headers do not expose template headers
+		r1.getHeader(CallIdHeader.NAME);
+		assertTrue(((TemplateRequest) r1).isTemplateEncoded());
+		((EventHeader) r1.getHeader(EventHeader.NAME)).setEventType("presence");
+		assertFalse(((TemplateRequest) r1).isTemplateEncoded());
+		assertEquals("presence", ((EventHeader) parse(r1).getHeader(EventHeader.NAME)).getEventType());
+		// the other request of the template is not affected
+		assertTrue(((TemplateRequest) r2).isTemplateEncoded());
+		assertEquals("message-summary", ((EventHeader) parse(r2).getHeader(EventHeader.NAME)).getEventType());
+		assertEquals("message-summary", ((EventHeader) parse(template.createRequest(null, null, null, 0, null, null)).getHeader(EventHeader.NAME)).getEventType());
+	}
+
+	@Test(expected = SipException.class)
+	public void testInDialogPrototype() throws Exception {
+		Request prototype = createPrototype(addressFactory, headerFactory, messageFactory);
+		((ToHeader) prototype.getHeader("To")).setTag("1234");
+		new RequestTemplateImpl(prototype);
+	}
+
+}
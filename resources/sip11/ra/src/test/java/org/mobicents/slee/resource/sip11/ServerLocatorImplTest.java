@@ -0,0 +1,269 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.SipFactory;
+import javax.sip.address.AddressFactory;
+import javax.sip.address.Hop;
+import javax.sip.address.SipURI;
+import javax.slee.facilities.Tracer;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ServerLocatorImplTest {
+
+	private static final String ZONE = "example.com 300 NAPTR 10 50 \"s\" \"SIP+D2U\" \"\" _sip._udp.example.com\n"
+			+ "example.com 300 NAPTR 20 50 \"s\" \"SIP+D2T\" \"\" _sip._tcp.example.com\n"
+			+ "example.com 300 NAPTR 30 50 \"s\" \"SIPS+D2T\" \"\" _sips._tcp.example.com\n"
+			+ "_sip._udp.example.com 300 SRV 10 0 5060 udp.example.com\n"
+			+ "_sip._tcp.example.com 300 SRV 10 0 5070 tcp1.example.com\n"
+			+ "_sip._tcp.example.com 60 SRV 20 0 5070 tcp2.example.com\n"
+			+ "_sips._tcp.example.com 300 SRV 10 0 5061 tls.example.com\n"
+			+ "udp.example.com 300 A 192.0.2.1\n"
+			+ "tcp1.example.com 300 A 192.0.2.2\n"
+			+ "tcp2.example.com 300 A 192.0.2.3\n"
+			+ "tcp2.example.com 300 AAAA 2001:db8::3\n"
+			+ "tls.example.com 300 A 192.0.2.4\n"
+			+ "_sip._tcp.srv.com 300 SRV 10 0 5080 a.srv.com\n"
+			+ "a.srv.com 300 A 192.0.2.5\n"
+			+ "a.com 300 A 192.0.2.6\n";
+
+	private static AddressFactory addressFactory;
+
+	private ServerLocatorImpl locator;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		addressFactory = sipFactory.createAddressFactory();
+	}
+
+	@After
+	public void after() {
+		if (locator != null) {
+			locator.shutdown();
+		}
+	}
+
+	private static Set<String> transports(String... transports) {
+		return new HashSet<String>(Arrays.asList(transports));
+	}
+
+	private static SipURI uri(String uri) throws Exception {
+		return (SipURI) addressFactory.createURI(uri);
+	}
+
+	private static List<Hop> locate(ServerLocatorImpl locator, SipURI uri) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			final List<Hop> hops = locator.getHops(uri);
+			if (hops != null) {
+				return hops;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("not located " + uri);
+	}
+
+	private static void assertHop(String host, int port, String transport, Hop hop) {
+		assertEquals(host, hop.getHost());
+		assertEquals(port, hop.getPort());
+		assertEquals(transport, hop.getTransport());
+	}
+
+	@Test
+	public void testNaptr() throws Exception {
+		locator = new ServerLocatorImpl(new ZoneDnsResolver(ZONE), transports("UDP", "TCP", "TLS"), 30, null,
+				mock(Tracer.class));
+		assertNull(locator.getHops(uri("sip:alice@example.com")));
+		List<Hop> hops = locate(locator, uri("sip:alice@example.com"));
+		assertEquals(5, hops.size());
+		assertHop("192.0.2.1", 5060, "UDP", hops.get(0));
+		assertHop("192.0.2.2", 5070, "TCP", hops.get(1));
+		assertHop("192.0.2.3", 5070, "TCP", hops.get(2));
+		assertHop("[2001:db8::3]", 5070, "TCP", hops.get(3));
+		assertHop("192.0.2.4", 5061, "TLS", hops.get(4));
+
+		// the NAPTR of unsupported transports are skipped, sips only uses TLS
+		locator.shutdown();
+		locator = new ServerLocatorImpl(new ZoneDnsResolver(ZONE), transports("TCP", "TLS"), 30, null,
+				mock(Tracer.class));
+		hops = locate(locator, uri("sip:alice@example.com"));
+		assertEquals(4, hops.size());
+		assertHop("192.0.2.2", 5070, "TCP", hops.get(0));
+		hops = locate(locator, uri("sips:alice@example.com"));
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.4", 5061, "TLS", hops.get(0));
+
+		// transport param skips NAPTR
+		hops = locate(locator, uri("sip:alice@example.com;transport=tcp"));
+		assertEquals(3, hops.size());
+		assertHop("192.0.2.2", 5070, "TCP", hops.get(0));
+		// unsupported transport
+		assertEquals(0, locate(locator, uri("sip:alice@example.com;transport=udp")).size());
+	}
+
+	@Test
+	public void testWhenLocated() throws Exception {
+		final ZoneDnsResolver resolver = new ZoneDnsResolver(ZONE);
+		locator = new ServerLocatorImpl(resolver, transports("UDP", "TCP", "TLS"), 30, null, mock(Tracer.class));
+		final SipURI uri = uri("sip:alice@example.com");
+		assertTrue(locator.requiresLookup(uri));
+		assertFalse(locator.requiresLookup(uri("sip:alice@192.0.2.9")));
+		assertFalse(locator.requiresLookup(uri("sip:alice@example.com;maddr=192.0.2.9")));
+		final BlockingQueue<List<Hop>> located = new LinkedBlockingQueue<List<Hop>>();
+		final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+		final Runnable task = new Runnable() {
+			public void run() {
+				threads.add(Thread.currentThread().getName());
+				located.add(locator.getHops(uri));
+			}
+		};
+		// both wait for the same lookup
+		locator.whenLocated(uri, task);
+		locator.whenLocated(uri, task);
+		for (int i = 0; i < 2; i++) {
+			assertEquals(5, located.poll(5, TimeUnit.SECONDS).size());
+			assertTrue(threads.poll().startsWith("SipRA-ServerLocator-"));
+		}
+		final long lookups = resolver.getLookups();
+		// already located
+		locator.whenLocated(uri, task);
+		assertEquals(5, located.poll(5, TimeUnit.SECONDS).size());
+		assertTrue(threads.poll().startsWith("SipRA-ServerLocator-"));
+		assertEquals(lookups, resolver.getLookups());
+		// nothing found
+		final SipURI nowhere = uri("sip:nowhere.com");
+		locator.whenLocated(nowhere, new Runnable() {
+			public void run() {
+				located.add(locator.getHops(nowhere));
+			}
+		});
+		assertEquals(0, located.poll(5, TimeUnit.SECONDS).size());
+	}
+
+	@Test
+	public void testNumericHostAndPort() throws Exception {
+		final ZoneDnsResolver resolver = new ZoneDnsResolver(ZONE);
+		locator = new ServerLocatorImpl(resolver, transports("UDP", "TCP"), 30, null, mock(Tracer.class));
+		List<Hop> hops = locate(locator, uri("sip:alice@192.0.2.9"));
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.9", 5060, "UDP", hops.get(0));
+		assertEquals(0, resolver.getLookups());
+		hops = locate(locator, uri("sip:alice@[2001:db8::9]:5062;transport=tcp"));
+		assertHop("[2001:db8::9]", 5062, "TCP", hops.get(0));
+		// explicit port, only A/AAAA
+		hops = locate(locator, uri("sip:alice@example.com:5090"));
+		assertEquals(0, hops.size());
+		hops = locate(locator, uri("sip:alice@a.com:5090"));
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.6", 5090, "UDP", hops.get(0));
+	}
+
+	@Test
+	public void testFallbacks() throws Exception {
+		locator = new ServerLocatorImpl(new ZoneDnsResolver(ZONE), transports("UDP", "TCP"), 30, null,
+				mock(Tracer.class));
+		// no NAPTR, SRV
+		List<Hop> hops = locate(locator, uri("sip:bob@srv.com"));
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.5", 5080, "TCP", hops.get(0));
+		// no NAPTR and SRV, A with the default port
+		hops = locate(locator, uri("sip:bob@a.com"));
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.6", 5060, "UDP", hops.get(0));
+	}
+
+	@Test
+	public void testWeightedSelection() throws Exception {
+		final ZoneDnsResolver resolver = new ZoneDnsResolver("_sip._udp.w.com 300 SRV 10 90 5060 a.w.com\n"
+				+ "_sip._udp.w.com 300 SRV 10 10 5060 b.w.com\n"
+				+ "_sip._udp.w.com 300 SRV 20 50 5060 c.w.com\n"
+				+ "a.w.com 300 A 192.0.2.1\n" + "b.w.com 300 A 192.0.2.2\n" + "c.w.com 300 A 192.0.2.3\n");
+		locator = new ServerLocatorImpl(resolver, transports("UDP"), 30, null, mock(Tracer.class));
+		final SipURI uri = uri("sip:w.com");
+		locate(locator, uri);
+		int first = 0;
+		for (int i = 0; i < 1000; i++) {
+			final List<Hop> hops = locator.getHops(uri);
+			assertEquals(3, hops.size());
+			assertEquals("192.0.2.3", hops.get(2).getHost());
+			if (hops.get(0).getHost().equals("192.0.2.1")) {
+				first++;
+			}
+		}
+		assertTrue("selected first " + first, first > 820 && first < 970);
+	}
+
+	@Test
+	public void testNegativeCaching() throws Exception {
+		final ZoneDnsResolver resolver = new ZoneDnsResolver(ZONE);
+		locator = new ServerLocatorImpl(resolver, transports("UDP"), 30, null, mock(Tracer.class));
+		assertEquals(0, locate(locator, uri("sip:nowhere.com")).size());
+		final long lookups = resolver.getLookups();
+		assertTrue(lookups > 0);
+		assertEquals(0, locate(locator, uri("sip:nowhere.com")).size());
+		// the other uri of the same domain does not need lookups either
+		assertEquals(0, locate(locator, uri("sip:alice@nowhere.com")).size());
+		assertEquals(lookups, resolver.getLookups());
+	}
+
+	@Test
+	public void testTtlExpiry() throws Exception {
+		final ZoneDnsResolver resolver = new ZoneDnsResolver(ZONE);
+		final long[] time = { 1000000L };
+		locator = new ServerLocatorImpl(resolver, transports("TCP"), 30, null, mock(Tracer.class)) {
+			@Override
+			long currentTime() {
+				return time[0];
+			}
+		};
+		final SipURI uri = uri("sip:example.com");
+		assertEquals(3, locate(locator, uri).size());
+		final long lookups = resolver.getLookups();
+		// min TTL is the 30s of the negative AAAA lookups, still cached before expiry
+		time[0] += 25000L;
+		assertEquals(3, locator.getHops(uri).size());
+		resolver.remove("_sip._tcp.example.com", DnsRecord.SRV);
+		resolver.add(DnsRecord.srv("_sip._tcp.example.com", 300, 10, 0, 5070, "tcp1.example.com"));
+		// expired
+		time[0] += 3600000L;
+		assertNull(locator.getHops(uri));
+		final List<Hop> hops = locate(locator, uri);
+		assertEquals(1, hops.size());
+		assertHop("192.0.2.2", 5070, "TCP", hops.get(0));
+		assertTrue(resolver.getLookups() > lookups);
+	}
+
+	@Test
+	public void testFailedPeersLast() throws Exception {
+		final PeerHealthTable peerHealthTable = new PeerHealthTable(16);
+		locator = new ServerLocatorImpl(new ZoneDnsResolver(ZONE), transports("TCP"), 30, peerHealthTable,
+				mock(Tracer.class));
+		final SipURI uri = uri("sip:example.com");
+		assertHop("192.0.2.2", 5070, "TCP", locate(locator, uri).get(0));
+		peerHealthTable.failed("192.0.2.2", 5070, "tcp", System.currentTimeMillis());
+		final List<Hop> hops = locator.getHops(uri);
+		assertNotNull(hops);
+		assertHop("192.0.2.3", 5070, "TCP", hops.get(0));
+		assertHop("192.0.2.2", 5070, "TCP", hops.get(2));
+		peerHealthTable.reached("192.0.2.2", 5070, "tcp");
+		assertHop("192.0.2.2", 5070, "TCP", locator.getHops(uri).get(0));
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.sip.SipFactory;
+import javax.sip.header.HeaderFactory;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+
+import net.java.slee.resource.sip.SessionTimers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SessionTimersTest {
+
+	private static HeaderFactory headerFactory;
+	private static MessageFactory messageFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		headerFactory = sipFactory.createHeaderFactory();
+		messageFactory = sipFactory.createMessageFactory();
+	}
+
+	private static Request createInvite(String extraHeaders) throws Exception {
+		return messageFactory.createRequest("INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "To: <sip:bob@biloxi.com>\r\n"
+				+ "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+				+ "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+				+ "CSeq: 314159 INVITE\r\n"
+				+ extraHeaders
+				+ "Content-Length: 0\r\n\r\n");
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		Request invite = createInvite("Session-Expires: 1800;refresher=uac\r\nMin-SE: 600\r\n");
+		assertEquals(1800, SessionTimers.getSessionExpires(invite));
+		assertEquals(SessionTimers.REFRESHER_UAC, SessionTimers.getRefresher(invite));
+		assertEquals(600, SessionTimers.getMinSE(invite));
+		Request plain = createInvite("");
+		assertEquals(-1, SessionTimers.getSessionExpires(plain));
+		assertNull(SessionTimers.getRefresher(plain));
+	}
+
+	@Test
+	public void testNegotiate() throws Exception {
+		assertEquals(-1, SessionTimers.negotiateSessionInterval(createInvite("Session-Expires: 100\r\n"), 300, 1800));
+		assertEquals(900, SessionTimers.negotiateSessionInterval(createInvite("Session-Expires: 3600\r\n"), 90, 900));
+		assertEquals(1200, SessionTimers.negotiateSessionInterval(createInvite("Session-Expires: 3600\r\nMin-SE: 1200\r\n"), 90, 900));
+		assertEquals(1800, SessionTimers.negotiateSessionInterval(createInvite(""), 90, 1800));
+	}
+
+	@Test
+	public void testSet() throws Exception {
+		Request invite = createInvite("");
+		SessionTimers.setSessionExpires(headerFactory, invite, 1800, SessionTimers.REFRESHER_UAS);
+		SessionTimers.setMinSE(headerFactory, invite, 90);
+		assertEquals(1800, SessionTimers.getSessionExpires(invite));
+		assertEquals(SessionTimers.REFRESHER_UAS, SessionTimers.getRefresher(invite));
+		assertEquals(90, SessionTimers.getMinSE(invite));
+		assertEquals(1768000, SessionTimers.getExpirationTime(1800));
+	}
+
+}
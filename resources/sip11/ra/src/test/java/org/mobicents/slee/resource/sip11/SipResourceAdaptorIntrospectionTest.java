@@ -0,0 +1,45 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mobicents.slee.resource.sip11.wrappers.SharedRequestActivityWrapper;
+
+public class SipResourceAdaptorIntrospectionTest {
+
+	@Test
+	public void testGauges() {
+		SipResourceAdaptorIntrospection introspection = new SipResourceAdaptorIntrospection(new EventIDFilter(), new EventIDCache(), 1);
+		SharedRequestActivityWrapper a1 = new SharedRequestActivityWrapper(0, null);
+		SharedRequestActivityWrapper a2 = new SharedRequestActivityWrapper(1, null);
+		introspection.activityStarted(a1);
+		introspection.activityStarted(a2);
+		assertEquals(2, introspection.getSharedRequestActivities());
+		assertEquals(0, introspection.getDialogActivities());
+		introspection.activityEnded(a1.getActivityHandle(), a1);
+		assertEquals(1, introspection.getSharedRequestActivities());
+		assertEquals(2, introspection.getStartedActivities());
+		assertEquals(1, introspection.getEndedActivities());
+		introspection.pendingDelete(true);
+		assertEquals(1, introspection.getPendingDeleteDialogs());
+		introspection.pendingDelete(false);
+		assertEquals(0, introspection.getPendingDeleteDialogs());
+	}
+
+	@Test
+	public void testOldestActivities() {
+		SipResourceAdaptorIntrospection introspection = new SipResourceAdaptorIntrospection(new EventIDFilter(), new EventIDCache(), 1);
+		SharedRequestActivityWrapper a1 = new SharedRequestActivityWrapper(0, null);
+		SharedRequestActivityWrapper a2 = new SharedRequestActivityWrapper(1, null);
+		introspection.activityStarted(a1);
+		introspection.activityStarted(a2);
+		introspection.activityEnded(a2.getActivityHandle(), a2);
+		String[] oldest = introspection.getOldestActivities(10);
+		assertEquals(1, oldest.length);
+		assertTrue(oldest[0], oldest[0].startsWith("shared-request-0 SharedRequestActivity "));
+		assertEquals(0, introspection.dumpEventFilter().length);
+		assertEquals(0, introspection.dumpEventTypeCache().length);
+	}
+
+}
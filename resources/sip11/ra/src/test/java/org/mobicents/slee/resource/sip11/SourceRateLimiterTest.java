@@ -0,0 +1,94 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import javax.sip.message.Request;
+
+import org.junit.Test;
+
+public class SourceRateLimiterTest {
+
+	@Test
+	public void testBurst() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("INVITE=1:3", false, 64);
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.allow(Request.INVITE, source, null));
+		}
+		assertFalse(limiter.allow(Request.INVITE, source, null));
+		// other sources and methods are not affected
+		assertTrue(limiter.allow(Request.INVITE, InetAddress.getByName("10.0.0.2"), null));
+		assertTrue(limiter.allow(Request.REGISTER, source, null));
+		assertEquals(1, limiter.getRejectedRequests());
+		assertEquals(1, limiter.getTopOffenders(10).length);
+		assertEquals("10.0.0.1 INVITE 1", limiter.getTopOffenders(10)[0]);
+	}
+
+	@Test
+	public void testRefill() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("*=100", false, 64);
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+		for (int i = 0; i < 100; i++) {
+			assertTrue(limiter.allow(Request.MESSAGE, source, null));
+		}
+		assertFalse(limiter.allow(Request.MESSAGE, source, null));
+		Thread.sleep(50);
+		assertTrue(limiter.allow(Request.MESSAGE, source, null));
+	}
+
+	@Test
+	public void testFromDomain() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("REGISTER=2", true, 64);
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.1"), "atlanta.com"));
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.2"), "atlanta.com"));
+		assertFalse(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.3"), "atlanta.com"));
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.3"), "biloxi.com"));
+	}
+
+	@Test
+	public void testSameHash() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("REGISTER=1", true, 64);
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertTrue(limiter.allow(Request.REGISTER, null, "Aa"));
+		assertTrue(limiter.allow(Request.REGISTER, null, "BB"));
+		assertFalse(limiter.allow(Request.REGISTER, null, "Aa"));
+		InetAddress source = InetAddress.getByName("fe80::1");
+		assertTrue(limiter.allow(Request.REGISTER, source, null));
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("fe80::1:0:0"), null));
+		assertFalse(limiter.allow(Request.REGISTER, source, null));
+		assertEquals(2, limiter.getRejectedRequests());
+	}
+
+	@Test
+	public void testRejectedNotCharged() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("REGISTER=2", true, 64);
+		InetAddress source = InetAddress.getByName("10.0.0.2");
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.1"), "atlanta.com"));
+		assertTrue(limiter.allow(Request.REGISTER, InetAddress.getByName("10.0.0.1"), "atlanta.com"));
+		// rejected by the domain limit, the source keeps its tokens
+		assertFalse(limiter.allow(Request.REGISTER, source, "atlanta.com"));
+		assertFalse(limiter.allow(Request.REGISTER, source, "atlanta.com"));
+		assertTrue(limiter.allow(Request.REGISTER, source, "biloxi.com"));
+		assertTrue(limiter.allow(Request.REGISTER, source, "chicago.com"));
+		assertFalse(limiter.allow(Request.REGISTER, source, "denver.com"));
+	}
+
+	@Test
+	public void testBoundedSize() throws Exception {
+		SourceRateLimiter limiter = new SourceRateLimiter("INVITE=1", false, 64);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(limiter.allow(Request.INVITE, InetAddress.getByName("10.0." + (i / 256) + "." + (i % 256)), null));
+		}
+		assertTrue(limiter.getTrackedSources() <= 64);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidConfig() {
+		new SourceRateLimiter("INVITE=fast", false, 64);
+	}
+
+}
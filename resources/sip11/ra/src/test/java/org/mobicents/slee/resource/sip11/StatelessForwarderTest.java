@@ -0,0 +1,83 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.sip.SipFactory;
+import javax.sip.SipProvider;
+import javax.sip.address.AddressFactory;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+import javax.slee.facilities.Tracer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class StatelessForwarderTest {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@biloxi.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	private static MessageFactory messageFactory;
+	private static AddressFactory addressFactory;
+	private static HeaderFactory headerFactory;
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		messageFactory = sipFactory.createMessageFactory();
+		addressFactory = sipFactory.createAddressFactory();
+		headerFactory = sipFactory.createHeaderFactory();
+	}
+
+	@Test
+	public void testBranch() throws Exception {
+		Request invite = messageFactory.createRequest(INVITE);
+		Request cancel = messageFactory.createRequest(INVITE.replace("INVITE", "CANCEL"));
+		String branch = StatelessForwarder.createBranch(invite, addressFactory.createURI("sip:as1.biloxi.com"));
+		assertTrue(branch.startsWith(StatelessForwarder.BRANCH_PREFIX));
+		// the CANCEL matches the downstream INVITE transaction
+		assertEquals(branch, StatelessForwarder.createBranch(cancel, addressFactory.createURI("sip:as1.biloxi.com")));
+		assertFalse(branch.equals(StatelessForwarder.createBranch(invite, addressFactory.createURI("sip:as2.biloxi.com"))));
+		// pre RFC 3261 client, the branch comes from the request key
+		Request old = messageFactory.createRequest(INVITE.replace(";branch=z9hG4bK776asdhds", ""));
+		assertEquals(StatelessForwarder.createBranch(old, null), StatelessForwarder.createBranch(old, null));
+		assertFalse(StatelessForwarder.createBranch(old, null).equals(
+				StatelessForwarder.createBranch(messageFactory.createRequest(INVITE.replace(
+						";branch=z9hG4bK776asdhds", "").replace("314159", "314160")), null)));
+	}
+
+	@Test
+	public void testRelayResponse() throws Exception {
+		SleeSipProviderImpl providerWrapper = mock(SleeSipProviderImpl.class);
+		SipProvider provider = mock(SipProvider.class);
+		when(providerWrapper.getRealProvider()).thenReturn(provider);
+		StatelessForwarder forwarder = new StatelessForwarder(providerWrapper, mock(Tracer.class));
+		Request invite = messageFactory.createRequest(INVITE);
+		String branch = StatelessForwarder.createBranch(invite, null);
+		Response response = messageFactory.createResponse(200, invite);
+		// not forwarded statelessly
+		assertFalse(forwarder.relayResponse(response));
+		verify(provider, never()).sendResponse(response);
+		response.addFirst(headerFactory.createViaHeader("10.0.0.1", 5060, "udp", branch));
+		assertTrue(forwarder.relayResponse(response));
+		assertEquals("z9hG4bK776asdhds", ((ViaHeader) response.getHeader(ViaHeader.NAME)).getBranch());
+		verify(provider).sendResponse(response);
+	}
+
+}
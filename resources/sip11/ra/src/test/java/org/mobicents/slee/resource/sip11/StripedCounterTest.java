@@ -0,0 +1,69 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+	@Test
+	public void testConcurrentIncrements() throws Exception {
+		final StripedCounter counter = new StripedCounter();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						counter.increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(800000, counter.sum());
+		assertEquals(800000, counter.sumThenReset());
+		assertEquals(0, counter.sum());
+	}
+
+	@Test
+	public void testFlush() {
+		final long[] flushed = new long[5];
+		SipResourceAdaptorStatisticsUsageParameters usageParameters = new SipResourceAdaptorStatisticsUsageParameters() {
+			public void incrementCalls(long value) {
+				flushed[0] += value;
+			}
+			public void incrementMessages(long value) {
+				flushed[1] += value;
+			}
+			public void incrementActivitylessRequestsCompleted(long value) {
+				flushed[2] += value;
+			}
+			public void incrementActivitylessRequestsFailed(long value) {
+				flushed[3] += value;
+			}
+			public void incrementSuppressedProvisionals(long value) {
+				flushed[4] += value;
+			}
+		};
+		SipResourceAdaptorStatistics statistics = new SipResourceAdaptorStatistics();
+		statistics.incrementCalls();
+		statistics.incrementCalls();
+		statistics.incrementMessages();
+		statistics.incrementActivitylessRequests(false);
+		statistics.incrementActivitylessRequests(true);
+		statistics.incrementActivitylessRequests(true);
+		statistics.incrementSuppressedProvisionals();
+		statistics.flush(usageParameters);
+		assertEquals(2, flushed[0]);
+		assertEquals(1, flushed[1]);
+		assertEquals(1, flushed[2]);
+		assertEquals(2, flushed[3]);
+		assertEquals(1, flushed[4]);
+		statistics.flush(usageParameters);
+		assertEquals(2, flushed[0]);
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	private static class RecordingListener implements TimingWheel.Listener<String> {
+
+		final Map<String, Long> expired = new HashMap<String, Long>();
+		final Map<String, Long> reschedule = new HashMap<String, Long>();
+
+		public long expired(String target, long now) {
+			final Long deadline = reschedule.remove(target);
+			if (deadline != null) {
+				return deadline;
+			}
+			expired.put(target, now);
+			return 0;
+		}
+	}
+
+	@Test
+	public void testExpiresAtDeadline() {
+		RecordingListener listener = new RecordingListener();
+		TimingWheel<String> wheel = new TimingWheel<String>(10, listener);
+		wheel.advance(0);
+		// deadlines in each level of the wheel
+		long[] deadlines = { 50, 630, 650, 41000, 2700000, 170000000 };
+		for (long deadline : deadlines) {
+			wheel.schedule(Long.toString(deadline), deadline);
+		}
+		assertEquals(deadlines.length, wheel.size());
+		for (long now = 0; now <= 170000000; now += 10) {
+			wheel.advance(now);
+			for (long deadline : deadlines) {
+				final String target = Long.toString(deadline);
+				if (now < deadline) {
+					assertTrue(target + " expired at " + now, !listener.expired.containsKey(target));
+				}
+				else if (now == deadline) {
+					assertEquals(Long.valueOf(now), listener.expired.get(target));
+				}
+			}
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testCancelAndReschedule() {
+		RecordingListener listener = new RecordingListener();
+		TimingWheel<String> wheel = new TimingWheel<String>(1000, listener);
+		wheel.advance(0);
+		TimingWheel.Timer<String> cancelled = wheel.schedule("cancelled", 5000);
+		wheel.schedule("rescheduled", 5000);
+		listener.reschedule.put("rescheduled", 100000L);
+		cancelled.cancel();
+		for (long now = 0; now <= 200000; now += 1000) {
+			wheel.advance(now);
+		}
+		assertTrue(!listener.expired.containsKey("cancelled"));
+		assertEquals(Long.valueOf(100000), listener.expired.get("rescheduled"));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testLateAdvance() {
+		RecordingListener listener = new RecordingListener();
+		TimingWheel<String> wheel = new TimingWheel<String>(1000, listener);
+		wheel.advance(0);
+		wheel.schedule("a", 3000);
+		wheel.schedule("b", 300000);
+		// a single advance over several ticks expires everything due
+		wheel.advance(400000);
+		assertEquals(2, listener.expired.size());
+	}
+
+}
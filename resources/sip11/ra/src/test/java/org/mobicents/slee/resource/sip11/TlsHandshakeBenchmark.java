@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.slee.resource.sip11;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Loopback TLS handshake throughput benchmark, comparing full handshakes
+ * against ones resumed from the {@link TlsSessionManager} session caches,
+ * such as the ones of UAs reconnecting after a network failure. The
+ * handshakes are done in memory, between two engines, thus the results show
+ * the CPU cost only. Not a unit test, run it with:
+ *
+ * <pre>
+ * java -cp ... org.mobicents.slee.resource.sip11.TlsHandshakeBenchmark [handshakes]
+ * </pre>
+ *
+ * @author martins
+ *
+ */
+public class TlsHandshakeBenchmark {
+
+	private static final int DEFAULT_HANDSHAKES = 2000;
+
+	public static void main(String[] args) throws Exception {
+		final int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HANDSHAKES;
+		final TlsSessionManager sessionManager = TlsSessionManagerTest.createSessionManager("TlsHandshakeBenchmark",
+				TlsSessionManager.DEFAULT_SESSION_CACHE_SIZE);
+		final SSLContext serverContext = TlsSessionManagerTest.createContext(sessionManager, false);
+		final SSLContext clientContext = TlsSessionManagerTest.createContext(sessionManager, true);
+		// warm up
+		run(sessionManager, clientContext, serverContext, handshakes / 10, false);
+		run(sessionManager, clientContext, serverContext, handshakes / 10, true);
+		System.out.println("handshakes: " + handshakes);
+		for (int i = 0; i < 3; i++) {
+			report("full", run(sessionManager, clientContext, serverContext, handshakes, false), handshakes);
+			report("resumed", run(sessionManager, clientContext, serverContext, handshakes, true), handshakes);
+		}
+		System.out.println("full handshakes done: server " + sessionManager.getServerHandshakes() + ", client "
+				+ sessionManager.getClientHandshakes());
+	}
+
+	private static long run(TlsSessionManager sessionManager, SSLContext clientContext, SSLContext serverContext,
+			int handshakes, boolean resume) throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < handshakes; i++) {
+			if (!resume) {
+				sessionManager.clear();
+			}
+			TlsSessionManagerTest.handshake(clientContext, serverContext);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String label, long nanos, int handshakes) {
+		System.out.println(label + ": " + (handshakes * 1000000000L / nanos) + " handshakes/s, "
+				+ (nanos / handshakes / 1000) + " us per handshake");
+	}
+}
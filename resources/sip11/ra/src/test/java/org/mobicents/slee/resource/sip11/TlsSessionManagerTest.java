@@ -0,0 +1,179 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.sip.SipFactory;
+import javax.sip.SipStack;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TlsSessionManagerTest {
+
+	private static final String STACK_NAME = "TlsSessionManagerTest";
+
+	@After
+	public void after() {
+		TlsSessionManager.removeInstance(STACK_NAME);
+	}
+
+	/**
+	 * Creates and inits a session manager with the test keystore, which is also the truststore.
+	 */
+	static TlsSessionManager createSessionManager(String stackName, int sessionCacheSize) throws Exception {
+		final String keystore = new File(TlsSessionManagerTest.class.getResource("/tls-test.p12").toURI()).getAbsolutePath();
+		final Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", stackName);
+		properties.setProperty("javax.net.ssl.keyStore", keystore);
+		properties.setProperty("javax.net.ssl.keyStorePassword", "changeit");
+		properties.setProperty("javax.net.ssl.keyStoreType", "PKCS12");
+		properties.setProperty("javax.net.ssl.trustStore", keystore);
+		properties.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+		properties.setProperty(SipResourceAdaptor.TLS_SESSION_CACHE_SIZE, Integer.toString(sessionCacheSize));
+		properties.setProperty(SipResourceAdaptor.TLS_SESSION_TIMEOUT, "60");
+		final TlsSessionManager sessionManager = new TlsSessionManager();
+		sessionManager.init(properties);
+		return sessionManager;
+	}
+
+	/**
+	 * Creates a SSL context with the session manager key and trust managers, as the stack does.
+	 */
+	static SSLContext createContext(TlsSessionManager sessionManager, boolean client) throws Exception {
+		final SSLContext context = SSLContext.getInstance("TLS");
+		context.init(sessionManager.getKeyManagers(client), sessionManager.getTrustManagers(client), null);
+		return context;
+	}
+
+	/**
+	 * Does a handshake between two engines, in memory.
+	 */
+	static void handshake(SSLContext clientContext, SSLContext serverContext) throws Exception {
+		final SSLEngine client = clientContext.createSSLEngine("localhost", 5061);
+		client.setUseClientMode(true);
+		final SSLEngine server = serverContext.createSSLEngine();
+		server.setUseClientMode(false);
+		final int packetSize = client.getSession().getPacketBufferSize();
+		final int appSize = client.getSession().getApplicationBufferSize();
+		final ByteBuffer empty = ByteBuffer.allocate(0);
+		final ByteBuffer clientToServer = ByteBuffer.allocate(packetSize);
+		final ByteBuffer serverToClient = ByteBuffer.allocate(packetSize);
+		final ByteBuffer clientApp = ByteBuffer.allocate(appSize);
+		final ByteBuffer serverApp = ByteBuffer.allocate(appSize);
+		client.beginHandshake();
+		server.beginHandshake();
+		for (int i = 0; i < 100; i++) {
+			final boolean produced = transfer(client, empty, clientToServer) | transfer(server, empty, serverToClient);
+			clientToServer.flip();
+			server.unwrap(clientToServer, serverApp);
+			runTasks(server);
+			clientToServer.compact();
+			serverToClient.flip();
+			client.unwrap(serverToClient, clientApp);
+			runTasks(client);
+			serverToClient.compact();
+			if (!produced && clientToServer.position() == 0 && serverToClient.position() == 0
+					&& client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+					&& server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING) {
+				return;
+			}
+		}
+		throw new IllegalStateException("handshake not completed");
+	}
+
+	private static boolean transfer(SSLEngine engine, ByteBuffer empty, ByteBuffer net) throws Exception {
+		final int before = net.position();
+		engine.wrap(empty, net);
+		runTasks(engine);
+		return net.position() > before;
+	}
+
+	private static void runTasks(SSLEngine engine) {
+		Runnable task;
+		while ((task = engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	@Test
+	public void testInstance() throws Exception {
+		final TlsSessionManager sessionManager = createSessionManager(STACK_NAME, 100);
+		assertSame(sessionManager, TlsSessionManager.getInstance(STACK_NAME));
+		assertEquals(100, sessionManager.getSessionCacheSize());
+		assertEquals(60, sessionManager.getSessionTimeout());
+	}
+
+	@Test
+	public void testConfigure() throws Exception {
+		final TlsSessionManager sessionManager = createSessionManager(STACK_NAME, 100);
+		final SSLContext context = createContext(sessionManager, false);
+		// before any handshake
+		sessionManager.configure(context);
+		assertEquals(100, context.getServerSessionContext().getSessionCacheSize());
+		assertEquals(60, context.getServerSessionContext().getSessionTimeout());
+		assertEquals(100, context.getClientSessionContext().getSessionCacheSize());
+		assertEquals(60, context.getClientSessionContext().getSessionTimeout());
+	}
+
+	@Test
+	public void testConfigureStack() throws Exception {
+		final String keystore = new File(TlsSessionManagerTest.class.getResource("/tls-test.p12").toURI()).getAbsolutePath();
+		final Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", STACK_NAME);
+		properties.setProperty("gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY", "gov.nist.javax.sip.stack.NioMessageProcessorFactory");
+		properties.setProperty("gov.nist.javax.sip.SECURITY_MANAGER_PROVIDER", TlsSessionManager.class.getName());
+		properties.setProperty("javax.net.ssl.keyStore", keystore);
+		properties.setProperty("javax.net.ssl.keyStorePassword", "changeit");
+		properties.setProperty("javax.net.ssl.keyStoreType", "PKCS12");
+		properties.setProperty("javax.net.ssl.trustStore", keystore);
+		properties.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+		properties.setProperty(SipResourceAdaptor.TLS_SESSION_CACHE_SIZE, "100");
+		final SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		final SipStack sipStack = sipFactory.createSipStack(properties);
+		try {
+			final ServerSocket socket = new ServerSocket(0);
+			final int port = socket.getLocalPort();
+			socket.close();
+			sipStack.createListeningPoint("127.0.0.1", port, "tls");
+			final TlsSessionManager sessionManager = TlsSessionManager.getInstance(STACK_NAME);
+			// the server and client contexts of the TLS message processor
+			assertEquals(2, sessionManager.configure(sipStack));
+		} finally {
+			sipStack.stop();
+		}
+	}
+
+	@Test
+	public void testResumption() throws Exception {
+		final TlsSessionManager sessionManager = createSessionManager(STACK_NAME, 100);
+		final SSLContext serverContext = createContext(sessionManager, false);
+		final SSLContext clientContext = createContext(sessionManager, true);
+		handshake(clientContext, serverContext);
+		assertEquals(1, sessionManager.getServerHandshakes());
+		assertEquals(1, sessionManager.getClientHandshakes());
+		assertEquals(100, serverContext.getServerSessionContext().getSessionCacheSize());
+		assertTrue(sessionManager.getCachedSessions() > 0);
+		assertEquals(60, clientContext.getClientSessionContext().getSessionTimeout());
+		// resumed
+		handshake(clientContext, serverContext);
+		assertEquals(1, sessionManager.getServerHandshakes());
+		assertEquals(1, sessionManager.getClientHandshakes());
+		// full again once the caches are cleared
+		sessionManager.clear();
+		handshake(clientContext, serverContext);
+		assertEquals(2, sessionManager.getServerHandshakes());
+		assertEquals(2, sessionManager.getClientHandshakes());
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.mobicents.slee.resource.sip11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.junit.Test;
+
+public class TransactionSpanTest {
+
+	private static final String CALL_ID = "a84b4c76e66710@pc33.atlanta.com";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		TransactionSpan span = new TransactionSpan(false, "INVITE", CALL_ID, 1234567890123L, new int[] { 150, 900, 15000, -1 });
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		span.write(new DataOutputStream(bytes));
+		TransactionSpan read = TransactionSpan.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(false, read.isClient());
+		assertEquals("INVITE", read.getMethod());
+		assertEquals(CALL_ID, read.getCallId());
+		assertEquals(1234567890123L, read.getStartTime());
+		assertEquals(900, read.getPhase(TransactionSpan.SERVER_FIRED));
+		assertEquals(-1, read.getPhase(TransactionSpan.TERMINATED));
+		assertEquals(15000, read.getDuration());
+	}
+
+	@Test
+	public void testDuration() {
+		// a responded UDP non INVITE tx terminates on Timer J, that is not part of its duration
+		assertEquals(300, new TransactionSpan(false, "MESSAGE", CALL_ID, 0, new int[] { 100, 200, 300, 32000000 }).getDuration());
+		// not responded, the duration is up to the termination
+		assertEquals(32000000, new TransactionSpan(true, "MESSAGE", CALL_ID, 0, new int[] { 100, -1, -1, 32000000 }).getDuration());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPhases() {
+		new TransactionSpan(true, "MESSAGE", CALL_ID, 0, new int[] { 1 });
+	}
+
+	@Test
+	public void testFileSink() throws Exception {
+		File file = File.createTempFile("spans", ".bin");
+		file.deleteOnExit();
+		FileTransactionSpanSink sink = new FileTransactionSpanSink();
+		sink.open(file.getPath());
+		for (int i = 0; i < 100; i++) {
+			sink.span(new TransactionSpan(i % 2 == 0, "MESSAGE", CALL_ID + i, i, new int[] { i, i + 1, i + 2, i + 3 }));
+		}
+		sink.close();
+		assertEquals(0, sink.getDropped());
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			for (int i = 0; i < 100; i++) {
+				TransactionSpan span = TransactionSpan.read(in);
+				assertEquals(CALL_ID + i, span.getCallId());
+				assertEquals(i + 2, span.getDuration());
+			}
+			assertTrue(in.read() < 0);
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -2,29 +2,67 @@ package org.mobicents.slee.resource.sip11.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Properties;
 
+import javax.sip.IOExceptionEvent;
 import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.SipFactory;
+import javax.sip.SipProvider;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.slee.Address;
+import javax.slee.EventTypeID;
+import javax.slee.facilities.EventLookupFacility;
 import javax.slee.facilities.Tracer;
+import javax.slee.resource.ActivityHandle;
 import javax.slee.resource.ConfigProperties;
 import javax.slee.resource.ConfigProperties.Property;
+import javax.slee.resource.FireableEventType;
 import javax.slee.resource.InvalidConfigurationException;
+import javax.slee.resource.ReceivableService;
+import javax.slee.resource.ReceivableService.ReceivableEvent;
 import javax.slee.resource.ResourceAdaptorContext;
+import javax.slee.resource.SleeEndpoint;
+
+import net.java.slee.resource.sip.TransportFailureEvent;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mobicents.ext.javax.sip.SipStackImpl;
+import org.mobicents.slee.resource.sip11.LocalSipActivityManagement;
+import org.mobicents.slee.resource.sip11.PeerHealthTable;
+import org.mobicents.slee.resource.sip11.ServerLocatorImpl;
 import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
 import org.mobicents.slee.resource.sip11.SleeSipProviderImpl;
+import org.mobicents.slee.resource.sip11.SourceRateLimiter;
+import org.mobicents.slee.resource.sip11.ZoneDnsResolver;
+import org.mobicents.slee.resource.sip11.wrappers.ClientTransactionWrapper;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.reflect.Whitebox;
@@ -301,4 +339,149 @@ public class SipResourceAdaptorTest {
 
 		stack.stop();
 	}
+
+	@Test
+	/*
+	 * Purpose of this test it to verify that a transport failure reported by the stack,
+	 * outside of any SLEE transaction, starts the peer activity and fires the event on it.
+	 */
+	public void testTransportFailureEvent() throws Exception {
+		ResourceAdaptorContext raContext = mock(ResourceAdaptorContext.class);
+		mockRaContext(raContext,"STACK#TransportFailureEvent");
+		SipResourceAdaptor ra = createSipResourceAdaptorInstance(tracer1,raContext,sleeSipProvider);
+
+		SleeEndpoint sleeEndpoint = mock(SleeEndpoint.class);
+		EventLookupFacility eventLookupFacility = mock(EventLookupFacility.class);
+		FireableEventType eventType = mock(FireableEventType.class);
+		EventTypeID eventTypeID = new EventTypeID("net.java.slee.resource.sip.TRANSPORT_FAILURE", "net.java.slee", "1.2");
+		when(eventType.getEventType()).thenReturn(eventTypeID);
+		when(eventLookupFacility.getFireableEventType(any(EventTypeID.class))).thenReturn(eventType);
+		Whitebox.setInternalState(ra, "sleeEndpoint", sleeEndpoint);
+		Whitebox.setInternalState(ra, "eventLookupFacility", eventLookupFacility);
+		Whitebox.setInternalState(ra, "activityManagement", new LocalSipActivityManagement());
+		Whitebox.setInternalState(ra, "peerHealthTable", new PeerHealthTable(PeerHealthTable.DEFAULT_CAPACITY));
+
+		// a service receiving the event, so that it is not filtered
+		ReceivableEvent receivableEvent = mock(ReceivableEvent.class);
+		when(receivableEvent.getEventType()).thenReturn(eventTypeID);
+		ReceivableService receivableService = mock(ReceivableService.class);
+		when(receivableService.getReceivableEvents()).thenReturn(new ReceivableEvent[] { receivableEvent });
+		ra.serviceActive(receivableService);
+
+		ra.processIOException(new IOExceptionEvent(this, "10.0.0.1", 5060, "TCP"));
+
+		ArgumentCaptor<ActivityHandle> handle = ArgumentCaptor.forClass(ActivityHandle.class);
+		verify(sleeEndpoint).startActivity(handle.capture(), any(), anyInt());
+		verify(sleeEndpoint, never()).startActivitySuspended(any(ActivityHandle.class), any(), anyInt());
+		ArgumentCaptor<Object> event = ArgumentCaptor.forClass(Object.class);
+		verify(sleeEndpoint).fireEvent(eq(handle.getValue()), eq(eventType), event.capture(), (Address) isNull(),
+				(ReceivableService) isNull(), anyInt());
+		TransportFailureEvent transportFailureEvent = (TransportFailureEvent) event.getValue();
+		assertEquals("10.0.0.1", transportFailureEvent.getHost());
+		assertEquals(5060, transportFailureEvent.getPort());
+		assertEquals(1, transportFailureEvent.getConsecutiveFailures());
+	}
+
+	@Test
+	/*
+	 * Purpose of this test it to verify that requests with a To tag but without a dialog,
+	 * from a source over its rate limit, are not exempted from the limit as in dialog requests.
+	 */
+	public void testForgedToTagRateLimited() throws Exception {
+		ResourceAdaptorContext raContext = mock(ResourceAdaptorContext.class);
+		mockRaContext(raContext,"STACK#ForgedToTagRateLimited");
+		SipResourceAdaptor ra = createSipResourceAdaptorInstance(tracer1,raContext,sleeSipProvider);
+		SourceRateLimiter rateLimiter = new SourceRateLimiter("INVITE=1", false, 64);
+		Whitebox.setInternalState(ra, "rateLimiter", rateLimiter);
+		Whitebox.setInternalState(ra, "rateLimitDrop", true);
+
+		// the source reaches its limit
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+		assertTrue(rateLimiter.allow("INVITE", source, null));
+
+		SipFactory sipFactory = SipFactory.getInstance();
+		sipFactory.setPathName("gov.nist");
+		for (int i = 0; i < 3; i++) {
+			SIPRequest request = (SIPRequest) sipFactory.createMessageFactory().createRequest(
+					"INVITE sip:bob@10.0.0.2 SIP/2.0\r\n"
+					+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bKforged" + i + "\r\n"
+					+ "From: <sip:alice@10.0.0.1>;tag=1928301774\r\n"
+					+ "To: <sip:bob@10.0.0.2>;tag=x\r\n"
+					+ "Call-ID: forged" + i + "@10.0.0.1\r\n"
+					+ "CSeq: 1 INVITE\r\n"
+					+ "Max-Forwards: 70\r\n"
+					+ "Content-Length: 0\r\n\r\n");
+			request.setRemoteAddress(source);
+			// no dialog matches the forged To tag
+			ra.processRequest(new RequestEvent(this, null, null, request));
+		}
+		assertEquals(3, rateLimiter.getRejectedRequests());
+	}
+
+	@Test
+	/*
+	 * Purpose of this test it to verify that a request to servers not located yet is sent
+	 * by the server locator, to the located server, instead of being routed by the stack.
+	 */
+	public void testSendWhenLocated() throws Exception {
+		ResourceAdaptorContext raContext = mock(ResourceAdaptorContext.class);
+		mockRaContext(raContext,"STACK#SendWhenLocated");
+		when(raContext.getTracer(anyString())).thenReturn(tracer1);
+		SipResourceAdaptor ra = createSipResourceAdaptorInstance(tracer1,raContext,sleeSipProvider);
+		Whitebox.setInternalState(ra, "sleeEndpoint", mock(SleeEndpoint.class));
+		Whitebox.setInternalState(ra, "activityManagement", new LocalSipActivityManagement());
+
+		Properties properties = new Properties();
+		properties.setProperty("javax.sip.STACK_NAME", raContext.getEntityName());
+		SipStackImpl stack = new SipStackImpl(properties);
+		// the located server
+		DatagramSocket server = new DatagramSocket(0, InetAddress.getByName(STACK_ADDRESS));
+		server.setSoTimeout(5000);
+		ServerLocatorImpl serverLocator = new ServerLocatorImpl(new ZoneDnsResolver(
+				"_sip._udp.example.com 300 SRV 10 0 " + server.getLocalPort() + " server.example.com\n"
+				+ "server.example.com 300 A " + STACK_ADDRESS + "\n"), Collections.singleton("UDP"), 30, null, tracer1);
+		try {
+			DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName(STACK_ADDRESS));
+			int port = socket.getLocalPort();
+			socket.close();
+			ListeningPoint lp = stack.createListeningPoint(STACK_ADDRESS, port, "udp");
+			SipProvider provider = stack.createSipProvider(lp);
+			serverLocator.install(stack);
+			SipFactory sipFactory = SipFactory.getInstance();
+			sipFactory.setPathName("gov.nist");
+			MessageFactory messageFactory = sipFactory.createMessageFactory();
+			SleeSipProviderImpl providerWrapper = new SleeSipProviderImpl(ra);
+			providerWrapper.raActive(sipFactory.createAddressFactory(), sipFactory.createHeaderFactory(), messageFactory,
+					stack, provider);
+			Whitebox.setInternalState(ra, "providerWrapper", providerWrapper);
+			Whitebox.setInternalState(ra, "provider", provider);
+			Whitebox.setInternalState(ra, "serverLocator", serverLocator);
+
+			Request request = messageFactory.createRequest(
+					"MESSAGE sip:bob@example.com SIP/2.0\r\n"
+					+ "Via: SIP/2.0/UDP " + STACK_ADDRESS + ":" + lp.getPort() + ";branch=z9hG4bKlocated\r\n"
+					+ "From: <sip:alice@" + STACK_ADDRESS + ">;tag=1928301774\r\n"
+					+ "To: <sip:bob@example.com>\r\n"
+					+ "Call-ID: located@" + STACK_ADDRESS + "\r\n"
+					+ "CSeq: 1 MESSAGE\r\n"
+					+ "Max-Forwards: 70\r\n"
+					+ "Content-Length: 0\r\n\r\n");
+			ClientTransactionWrapper ctw = (ClientTransactionWrapper) providerWrapper.getNewClientTransaction(request);
+			assertNotNull(ctw.getLocatingURI());
+			ActivityHandle handle = ctw.getActivityHandle();
+			ctw.sendRequest();
+
+			DatagramPacket packet = new DatagramPacket(new byte[4096], 4096);
+			server.receive(packet);
+			assertTrue(new String(packet.getData(), 0, packet.getLength()).startsWith("MESSAGE sip:bob@example.com"));
+			assertNull(ctw.getLocatingURI());
+			assertEquals(server.getLocalPort(), ctw.getLocatedHop().getPort());
+			assertEquals(handle, ctw.getActivityHandle());
+			assertNotNull(ctw.getState());
+		} finally {
+			serverLocator.shutdown();
+			server.close();
+			stack.stop();
+		}
+	}
 }
@@ -0,0 +1,47 @@
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import net.java.slee.resource.sip.ClientTransactionOutcomeEvent;
+
+import org.junit.Test;
+import org.mobicents.slee.resource.sip11.SharedRequestActivityHandle;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+public class ActivitylessClientTransactionAppDataTest {
+
+	@Test
+	public void testOutcomeNotifiedOnce() {
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		Request request = mock(Request.class);
+		Response response = mock(Response.class);
+		ActivitylessClientTransactionAppData appData = new ActivitylessClientTransactionAppData(ra, request, new SharedRequestActivityHandle(1));
+		appData.transactionCompleted(response, 200);
+		// the tx terminated event that follows the final response is ignored
+		appData.transactionCompleted(null, Response.SERVICE_UNAVAILABLE);
+		verify(ra, times(1)).processClientTransactionOutcome(any(ActivitylessClientTransactionAppData.class), any(Response.class), anyInt());
+		verify(ra).processClientTransactionOutcome(appData, response, 200);
+		assertEquals(new SharedRequestActivityHandle(1), appData.getOutcomeActivityHandle());
+	}
+
+	@Test
+	public void testEvent() {
+		Request request = mock(Request.class);
+		ClientTransactionOutcomeEvent event = new ClientTransactionOutcomeEvent(request, null, Response.REQUEST_TIMEOUT);
+		assertFalse(event.isSuccess());
+		assertNull(event.getResponse());
+		assertTrue(new ClientTransactionOutcomeEvent(request, mock(Response.class), 202).isSuccess());
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.mobicents.slee.resource.sip11.wrappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import net.java.slee.resource.sip.BulkRequestCompletedEvent;
+
+import org.junit.Test;
+import org.mobicents.slee.resource.sip11.SipResourceAdaptor;
+
+public class BulkRequestActivityWrapperTest {
+
+	@Test
+	public void testCompletion() {
+		SipResourceAdaptor ra = mock(SipResourceAdaptor.class);
+		BulkRequestActivityWrapper activity = new BulkRequestActivityWrapper("a1b2c3", 3, ra);
+		BulkRequestActivityWrapper.Member m1 = activity.createMember("sip:alice@atlanta.com");
+		BulkRequestActivityWrapper.Member m2 = activity.createMember("sip:bob@biloxi.com");
+		BulkRequestActivityWrapper.Member m3 = activity.createMember("sip:carol@chicago.com");
+		m1.complete(200);
+		m2.complete(408);
+		// a final response after the timeout is ignored
+		m2.complete(200);
+		assertFalse(activity.isCompleted());
+		verify(ra, never()).processBulkRequestCompleted(activity);
+		m3.complete(202);
+		assertTrue(activity.isCompleted());
+		verify(ra, times(1)).processBulkRequestCompleted(activity);
+		assertEquals(2, activity.getSucceeded());
+		assertEquals(1, activity.getFailed());
+		BulkRequestCompletedEvent event = activity.createCompletedEvent();
+		assertEquals(3, event.getTotal());
+		assertEquals(2, event.getSucceeded());
+		assertEquals(1, event.getFailed());
+		assertEquals("sip:bob@biloxi.com", event.getFailures().get(0).getTarget());
+		assertEquals(408, event.getFailures().get(0).getStatusCode());
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+/**
+ * The activity of a bulk request fan-out, see
+ * {@link SleeSipProvider#sendBulkRequest(String, java.util.List, javax.sip.header.ContentTypeHeader, byte[])}.
+ * The requests of the fan-out are not activities, the RA fires a single
+ * {@link BulkRequestCompletedEvent} on this activity once all requests got a
+ * final response or failed, and then ends the activity.
+ * 
+ * @author martins
+ * 
+ */
+public interface BulkRequestActivity {
+
+	/**
+	 * Retrieves the unique id of the fan-out.
+	 * 
+	 * @return
+	 */
+	public String getId();
+
+	/**
+	 * Retrieves the number of requests in the fan-out.
+	 * 
+	 * @return
+	 */
+	public int getTotal();
+
+	/**
+	 * Retrieves the number of requests which got a 2xx response so far.
+	 * 
+	 * @return
+	 */
+	public int getSucceeded();
+
+	/**
+	 * Retrieves the number of requests which failed so far.
+	 * 
+	 * @return
+	 */
+	public int getFailed();
+
+	/**
+	 * Indicates if all requests of the fan-out completed.
+	 * 
+	 * @return
+	 */
+	public boolean isCompleted();
+
+}
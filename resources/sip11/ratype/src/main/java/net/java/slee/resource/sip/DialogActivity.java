@@ -146,4 +146,43 @@ public interface DialogActivity extends Dialog {
 	 */
 	public ClientTransaction sendCancel() throws SipException;
 
+	/**
+	 * Flag for {@link #setAutomaticActions(int)}, the RA answers BYE requests
+	 * received on the dialog with 200 OK, before firing the event.
+	 */
+	public static final int AUTOMATIC_BYE_RESPONSE = 1;
+
+	/**
+	 * Flag for {@link #setAutomaticActions(int)}, the RA sends the ACK for 2xx
+	 * responses to INVITEs sent on the dialog, before firing the event.
+	 */
+	public static final int AUTOMATIC_ACK = 2;
+
+	/**
+	 * Flag for {@link #setAutomaticActions(int)}, the RA answers CANCEL
+	 * requests received for the dialog's INVITE with 200 OK, and the INVITE
+	 * with 487 Request Terminated, before firing the event.
+	 */
+	public static final int AUTOMATIC_CANCEL_RESPONSE = 4;
+
+	/**
+	 * Sets the protocol actions the RA does on its own for this dialog,
+	 * before firing the related events, a combination of
+	 * {@link #AUTOMATIC_BYE_RESPONSE}, {@link #AUTOMATIC_ACK} and
+	 * {@link #AUTOMATIC_CANCEL_RESPONSE}. The initial value is the RA default.
+	 * The events fired tell if the action was done, through
+	 * {@link AutomaticResponseEvent} and {@link AutomaticAckEvent}.
+	 * 
+	 * @param actions
+	 */
+	public void setAutomaticActions(int actions);
+
+	/**
+	 * Retrieves the protocol actions the RA does on its own for this dialog.
+	 * 
+	 * @return
+	 * @see #setAutomaticActions(int)
+	 */
+	public int getAutomaticActions();
+
 }
\ No newline at end of file
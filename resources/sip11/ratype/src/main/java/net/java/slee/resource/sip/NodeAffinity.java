@@ -0,0 +1,141 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package net.java.slee.resource.sip;
+
+/**
+ * Encoding of the RA node in the SIP values the RA generates, so that a
+ * stateless load balancer can route in dialog requests, and responses, to
+ * the node which owns the dialog or transaction.
+ * 
+ * When the RA is configured with a node token, the local tags, the Call-IDs
+ * and the Via branches it generates end with <code>~n&lt;node&gt;</code>,
+ * in the case of the Call-ID before the <code>@</code>, for instance
+ * <code>a84b4c76~nnode1</code> and <code>3848276298~nnode1@10.0.0.1</code>.
+ * A load balancer may decode the node from the Call-ID, or from the To tag
+ * of requests received by the RA, and from the Via branch of responses.
+ * 
+ * The node token has 1 to 32 letters, digits or <code>-</code>. This class
+ * has no dependencies, it may be used outside the RA.
+ * 
+ * @author martins
+ * 
+ */
+public final class NodeAffinity {
+
+	/**
+	 * the marker which precedes the node token
+	 */
+	public static final String MARKER = "~n";
+
+	/**
+	 * the max length of a node token
+	 */
+	public static final int MAX_NODE_LENGTH = 32;
+
+	private NodeAffinity() {
+	}
+
+	/**
+	 * Checks if the specified node token may be encoded.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public static boolean isValidNode(String node) {
+		if (node == null || node.length() == 0 || node.length() > MAX_NODE_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < node.length(); i++) {
+			final char c = node.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes the node in a tag or Via branch.
+	 * 
+	 * @param value
+	 * @param node
+	 *            if null the value is not changed
+	 * @return
+	 */
+	public static String encode(String value, String node) {
+		return node == null ? value : new StringBuilder(value.length() + MARKER.length() + node.length())
+				.append(value).append(MARKER).append(node).toString();
+	}
+
+	/**
+	 * Encodes the node in a Call-ID, before its host part, if any.
+	 * 
+	 * @param callId
+	 * @param node
+	 *            if null the Call-ID is not changed
+	 * @return
+	 */
+	public static String encodeCallId(String callId, String node) {
+		if (node == null) {
+			return callId;
+		}
+		final int at = callId.indexOf('@');
+		return at < 0 ? encode(callId, node) : new StringBuilder(callId.length() + MARKER.length() + node.length())
+				.append(callId, 0, at).append(MARKER).append(node).append(callId, at, callId.length()).toString();
+	}
+
+	/**
+	 * Decodes the node of a tag or Via branch.
+	 * 
+	 * @param value
+	 * @return the node, null if the value has none
+	 */
+	public static String decode(String value) {
+		if (value == null) {
+			return null;
+		}
+		return decode(value, value.length());
+	}
+
+	/**
+	 * Decodes the node of a Call-ID.
+	 * 
+	 * @param callId
+	 * @return the node, null if the Call-ID has none
+	 */
+	public static String decodeCallId(String callId) {
+		if (callId == null) {
+			return null;
+		}
+		final int at = callId.indexOf('@');
+		return decode(callId, at < 0 ? callId.length() : at);
+	}
+
+	private static String decode(String value, int end) {
+		final int marker = value.lastIndexOf(MARKER, end - 1);
+		if (marker < 0) {
+			return null;
+		}
+		final String node = value.substring(marker + MARKER.length(), end);
+		return isValidNode(node) ? node : null;
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+/**
+ * The activity of a peer which transport failed, where the RA fires the
+ * {@link TransportFailureEvent}s for the peer. The activity is created on
+ * the first failure, and ends once a message is received from the peer,
+ * thus the activity end also signals the peer recovery. An SBB may attach
+ * to the activity of a peer already failed, retrieved with
+ * {@link SleeSipProvider#getPeerActivity(String, int, String)}.
+ * 
+ * @author martins
+ * 
+ */
+public interface PeerActivity {
+
+	/**
+	 * Retrieves the host of the peer.
+	 * 
+	 * @return
+	 */
+	public String getHost();
+
+	/**
+	 * Retrieves the port of the peer.
+	 * 
+	 * @return
+	 */
+	public int getPort();
+
+	/**
+	 * Retrieves the transport of the peer.
+	 * 
+	 * @return
+	 */
+	public String getTransport();
+
+	/**
+	 * Retrieves the current health of the peer.
+	 * 
+	 * @return
+	 */
+	public PeerHealth getHealth();
+
+}
@@ -0,0 +1,139 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the transport health of a peer, as tracked by the RA from
+ * the transport failures reported by the SIP stack, see
+ * {@link SleeSipProvider#getPeerHealth(String, int, String)}.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerHealth implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The transport state of a peer.
+	 */
+	public enum State {
+		/**
+		 * a message was received from the peer after the last failure
+		 */
+		AVAILABLE,
+		/**
+		 * no message was received from the peer since the last failure
+		 */
+		FAILED
+	}
+
+	private final String host;
+
+	private final int port;
+
+	private final String transport;
+
+	private final State state;
+
+	private final int consecutiveFailures;
+
+	private final long lastFailureTime;
+
+	/**
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @param state
+	 * @param consecutiveFailures
+	 * @param lastFailureTime
+	 */
+	public PeerHealth(String host, int port, String transport, State state, int consecutiveFailures, long lastFailureTime) {
+		this.host = host;
+		this.port = port;
+		this.transport = transport;
+		this.state = state;
+		this.consecutiveFailures = consecutiveFailures;
+		this.lastFailureTime = lastFailureTime;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getTransport() {
+		return transport;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Retrieves the number of failures since a message was last received
+	 * from the peer, 0 if the peer is available.
+	 * 
+	 * @return
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Retrieves the time of the last failure, in ms since the epoch.
+	 * 
+	 * @return
+	 */
+	public long getLastFailureTime() {
+		return lastFailureTime;
+	}
+
+	@Override
+	public String toString() {
+		return "PeerHealth[ peer = " + host + ":" + port + "/" + transport + ", state = " + state
+				+ ", consecutiveFailures = " + consecutiveFailures + ", lastFailureTime = " + lastFailureTime + " ]";
+	}
+}
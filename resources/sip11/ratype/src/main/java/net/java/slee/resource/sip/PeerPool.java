@@ -0,0 +1,98 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package net.java.slee.resource.sip;
+
+import java.util.List;
+
+/**
+ * A named pool of outbound peers, such as trunks, where requests sent with
+ * {@link SleeSipProvider#getNewClientTransaction(javax.sip.message.Request, String)}
+ * are load balanced. The RA tracks the transactions outstanding to each
+ * member, and takes members out of rotation after repeated transaction
+ * timeouts, re-admitting them once these answer an OPTIONS probe.
+ * 
+ * @author martins
+ * 
+ */
+public interface PeerPool {
+
+	/**
+	 * How a pool member is selected for a request.
+	 */
+	public enum Selection {
+		/**
+		 * the member with the least outstanding transactions, relative to
+		 * its weight
+		 */
+		LEAST_OUTSTANDING,
+		/**
+		 * a member selected by the request Call-ID, through a consistent
+		 * hash ring where each member's share is proportional to its weight,
+		 * so all requests of a call go to the same member, and only the
+		 * calls of a member which leaves the rotation are moved
+		 */
+		CALL_ID_HASH
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getName();
+
+	/**
+	 * 
+	 * @return
+	 */
+	public Selection getSelection();
+
+	/**
+	 * Adds a member to the pool, or updates its weight if already a member.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @param weight
+	 *            the relative share of requests, must be positive
+	 * @throws IllegalArgumentException
+	 *             if the port or weight are not valid
+	 */
+	public void addMember(String host, int port, String transport, int weight) throws IllegalArgumentException;
+
+	/**
+	 * Removes a member from the pool, its outstanding transactions are not
+	 * affected.
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @return true if it was a member
+	 */
+	public boolean removeMember(String host, int port, String transport);
+
+	/**
+	 * Retrieves a snapshot of the pool members.
+	 * 
+	 * @return
+	 */
+	public List<PeerPoolMember> getMembers();
+
+}
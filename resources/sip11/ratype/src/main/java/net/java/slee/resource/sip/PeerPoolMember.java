@@ -0,0 +1,141 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of a {@link PeerPool} member.
+ * 
+ * @author martins
+ * 
+ */
+public class PeerPoolMember implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final String host;
+
+	private final int port;
+
+	private final String transport;
+
+	private final int weight;
+
+	private final int outstandingTransactions;
+
+	private final boolean inRotation;
+
+	private final int consecutiveFailures;
+
+	/**
+	 * 
+	 * @param host
+	 * @param port
+	 * @param transport
+	 * @param weight
+	 * @param outstandingTransactions
+	 * @param inRotation
+	 * @param consecutiveFailures
+	 */
+	public PeerPoolMember(String host, int port, String transport, int weight, int outstandingTransactions,
+			boolean inRotation, int consecutiveFailures) {
+		this.host = host;
+		this.port = port;
+		this.transport = transport;
+		this.weight = weight;
+		this.outstandingTransactions = outstandingTransactions;
+		this.inRotation = inRotation;
+		this.consecutiveFailures = consecutiveFailures;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public String getTransport() {
+		return transport;
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Retrieves the number of client transactions sent to the member which
+	 * did not terminate yet.
+	 * 
+	 * @return
+	 */
+	public int getOutstandingTransactions() {
+		return outstandingTransactions;
+	}
+
+	/**
+	 * Indicates if requests are sent to the member, false if it was taken out
+	 * of rotation after repeated transaction timeouts.
+	 * 
+	 * @return
+	 */
+	public boolean isInRotation() {
+		return inRotation;
+	}
+
+	/**
+	 * Retrieves the number of transaction timeouts since the member last
+	 * answered.
+	 * 
+	 * @return
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	@Override
+	public String toString() {
+		return "PeerPoolMember[ peer = " + host + ":" + port + "/" + transport + ", weight = " + weight
+				+ ", outstandingTransactions = " + outstandingTransactions + ", inRotation = " + inRotation
+				+ ", consecutiveFailures = " + consecutiveFailures + " ]";
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package net.java.slee.resource.sip;
+
+import java.io.Serializable;
+
+/**
+ * A policy to suppress the provisional responses received on a client
+ * transaction, so that a burst of 180/183 responses does not fire an event
+ * per response, see
+ * {@link SleeSipProvider#setProvisionalSuppression(javax.sip.ClientTransaction, ProvisionalSuppression)}.
+ * Reliable provisional responses (RFC 3262) and final responses are never
+ * suppressed.
+ * 
+ * @author martins
+ * 
+ */
+public final class ProvisionalSuppression implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * How provisional responses are suppressed.
+	 */
+	public enum Mode {
+		/**
+		 * all provisional responses are delivered
+		 */
+		NONE,
+		/**
+		 * a provisional response with the same status code, To tag and
+		 * content as the last delivered one is dropped
+		 */
+		REPEATED,
+		/**
+		 * after a provisional response is delivered, the ones received in
+		 * the next window are collapsed, only the latest is delivered, at the
+		 * end of the window, unless a final response is received before
+		 */
+		WINDOW
+	}
+
+	/**
+	 * all provisional responses are delivered
+	 */
+	public static final ProvisionalSuppression NONE = new ProvisionalSuppression(Mode.NONE, 0);
+
+	/**
+	 * repeated provisional responses are dropped
+	 */
+	public static final ProvisionalSuppression REPEATED = new ProvisionalSuppression(Mode.REPEATED, 0);
+
+	private final Mode mode;
+
+	private final long window;
+
+	private ProvisionalSuppression(Mode mode, long window) {
+		this.mode = mode;
+		this.window = window;
+	}
+
+	/**
+	 * Retrieves the policy which collapses the provisional responses received
+	 * in the specified window.
+	 * 
+	 * @param window
+	 *            in ms
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the window is not positive
+	 */
+	public static ProvisionalSuppression window(long window) throws IllegalArgumentException {
+		if (window < 1) {
+			throw new IllegalArgumentException("invalid window " + window);
+		}
+		return new ProvisionalSuppression(Mode.WINDOW, window);
+	}
+
+	/**
+	 * Parses a policy, in the form <code>none</code>, <code>repeated</code>
+	 * or <code>window:&lt;ms&gt;</code>.
+	 * 
+	 * @param policy
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the policy is not valid
+	 */
+	public static ProvisionalSuppression parse(String policy) throws IllegalArgumentException {
+		final String s = policy.trim().toLowerCase();
+		if (s.equals("none")) {
+			return NONE;
+		}
+		if (s.equals("repeated")) {
+			return REPEATED;
+		}
+		if (s.startsWith("window:")) {
+			try {
+				return window(Long.parseLong(s.substring("window:".length()).trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid provisional suppression " + policy, e);
+			}
+		}
+		throw new IllegalArgumentException("invalid provisional suppression " + policy);
+	}
+
+	/**
+	 * 
+	 * @return
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * 
+	 * @return the window, in ms, if the mode is {@link Mode#WINDOW}
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	@Override
+	public int hashCode() {
+		return mode.hashCode() * 31 + (int) window;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		}
+		final ProvisionalSuppression other = (ProvisionalSuppression) obj;
+		return mode == other.mode && window == other.window;
+	}
+
+	@Override
+	public String toString() {
+		return mode == Mode.WINDOW ? "window:" + window : mode.name().toLowerCase();
+	}
+
+}
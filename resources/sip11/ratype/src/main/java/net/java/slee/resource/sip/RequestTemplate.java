@@ -0,0 +1,80 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import javax.sip.SipException;
+import javax.sip.address.Address;
+import javax.sip.address.URI;
+import javax.sip.message.Request;
+
+/**
+ * A pre-encoded request, for services which send high volumes of nearly
+ * identical out of dialog requests, such as MWI NOTIFYs, keepalive OPTIONS
+ * or MESSAGEs. The headers of the prototype request, except the slots, are
+ * encoded once, and the requests created from the template only encode the
+ * slots when sent: the Request-URI, the To, Call-ID and CSeq headers, the
+ * Via branch, the From tag and the body.
+ * 
+ * The created requests are sent as any other request, in a client
+ * transaction, with
+ * {@link SleeSipProvider#sendRequestWithoutActivity(Request, Object)} or
+ * statelessly. Each request has its own copy of the headers which are not
+ * slots, which may be retrieved and changed, or headers added or removed,
+ * but the request is then fully encoded.
+ * 
+ * @author martins
+ * 
+ */
+public interface RequestTemplate {
+
+	/**
+	 * Retrieves the method of the requests created from this template.
+	 * 
+	 * @return
+	 */
+	public String getMethod();
+
+	/**
+	 * Creates a request from this template, with the specified slot values.
+	 * A new From tag is always generated.
+	 * 
+	 * @param requestURI
+	 *            the Request-URI, or null to use the To URI, or the prototype
+	 *            one if the To is null too
+	 * @param to
+	 *            the To address, or null to use the prototype one
+	 * @param callId
+	 *            the Call-ID, or null to generate a new one
+	 * @param cseq
+	 *            the CSeq number, or a number lower than 1 to use the
+	 *            prototype one
+	 * @param branch
+	 *            the Via branch, or null to generate a new one
+	 * @param content
+	 *            the body, or null to use the prototype one, the content
+	 *            type is the prototype one
+	 * @return
+	 * @throws SipException
+	 *             if the slot values are not valid
+	 */
+	public Request createRequest(URI requestURI, Address to, String callId,
+			long cseq, String branch, byte[] content) throws SipException;
+
+}
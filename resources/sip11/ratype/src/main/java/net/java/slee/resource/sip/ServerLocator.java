@@ -0,0 +1,70 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package net.java.slee.resource.sip;
+
+import java.util.List;
+
+import javax.sip.address.Hop;
+import javax.sip.address.URI;
+
+/**
+ * Locates the SIP servers for a URI, with the RFC 3263 procedures: NAPTR,
+ * SRV and A/AAAA lookups, with transport selection. Lookups are done
+ * asynchronously, in the RA threads, and cached with their TTLs, including
+ * the failed ones.
+ * 
+ * If enabled, the {@link SleeSipProvider} uses the located servers to send
+ * out of dialog requests, created with
+ * {@link SleeSipProvider#getNewClientTransaction(javax.sip.message.Request)},
+ * to the server of the top Route or the Request-URI, and fails over to the
+ * next server on transaction timeout or transport failure. Services may call
+ * {@link #locate(URI)} ahead, so that the servers are already located when
+ * requests are sent, otherwise the request is sent by the RA threads once
+ * the servers are located, and the client transaction wraps a new stack
+ * transaction from then on.
+ * 
+ * @author martins
+ * 
+ */
+public interface ServerLocator {
+
+	/**
+	 * Starts locating the servers for the specified URI, if these are not
+	 * located yet, or are about to expire. Returns immediately.
+	 * 
+	 * @param uri
+	 */
+	public void locate(URI uri);
+
+	/**
+	 * Retrieves the servers located for the specified URI, in the order
+	 * requests should be tried, with SRV weighted selection applied and
+	 * failed peers last. Never blocks, if the servers were not located yet
+	 * they start being located, as in {@link #locate(URI)}.
+	 * 
+	 * @param uri
+	 * @return the hops, with IP addresses, empty if no server was found, or
+	 *         null if the servers are not located yet or the URI is not a
+	 *         SIP URI
+	 */
+	public List<Hop> getHops(URI uri);
+
+}
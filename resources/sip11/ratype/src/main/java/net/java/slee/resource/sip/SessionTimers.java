@@ -0,0 +1,198 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+import java.text.ParseException;
+
+import javax.sip.header.Header;
+import javax.sip.header.HeaderFactory;
+import javax.sip.message.Message;
+import javax.sip.message.Request;
+
+/**
+ * Helpers for RFC 4028 session timers, to negotiate the session interval and
+ * refresher of a dialog through the Session-Expires and Min-SE headers.
+ * 
+ * The RA learns the session interval of a dialog from the Session-Expires
+ * header of each 2xx response to INVITE or UPDATE, sent or received, and if
+ * its idle dialog reaper is enabled, a dialog which is not refreshed in time
+ * is considered idle, as if its session expired.
+ * 
+ * @author martins
+ * 
+ */
+public final class SessionTimers {
+
+	public static final String SESSION_EXPIRES = "Session-Expires";
+	public static final String MIN_SE = "Min-SE";
+	public static final String REFRESHER = "refresher";
+	public static final String REFRESHER_UAC = "uac";
+	public static final String REFRESHER_UAS = "uas";
+	public static final String OPTION_TAG = "timer";
+
+	/**
+	 * the minimum session interval allowed by RFC 4028, in seconds
+	 */
+	public static final int MIN_SESSION_INTERVAL = 90;
+
+	/**
+	 * the status code of the Session Interval Too Small response
+	 */
+	public static final int SESSION_INTERVAL_TOO_SMALL = 422;
+
+	private SessionTimers() {
+	}
+
+	/**
+	 * Retrieves the session interval of the specified message Session-Expires
+	 * header.
+	 * 
+	 * @param message
+	 * @return the session interval in seconds, -1 if there is no valid header
+	 */
+	public static int getSessionExpires(Message message) {
+		return getDeltaSeconds(message.getHeader(SESSION_EXPIRES));
+	}
+
+	/**
+	 * Retrieves the refresher of the specified message Session-Expires header.
+	 * 
+	 * @param message
+	 * @return {@link #REFRESHER_UAC}, {@link #REFRESHER_UAS} or null if not
+	 *         present
+	 */
+	public static String getRefresher(Message message) {
+		final String value = getValue(message.getHeader(SESSION_EXPIRES));
+		if (value != null) {
+			for (String param : value.split(";")) {
+				final int eq = param.indexOf('=');
+				if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(REFRESHER)) {
+					return param.substring(eq + 1).trim().toLowerCase();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the minimum session interval of the specified message Min-SE
+	 * header.
+	 * 
+	 * @param message
+	 * @return the minimum session interval in seconds, -1 if there is no
+	 *         valid header
+	 */
+	public static int getMinSE(Message message) {
+		return getDeltaSeconds(message.getHeader(MIN_SE));
+	}
+
+	/**
+	 * Negotiates, as UAS, the session interval for the 2xx response to the
+	 * specified INVITE or UPDATE request.
+	 * 
+	 * @param request
+	 * @param minSE
+	 *            the minimum session interval accepted by the UAS, in seconds
+	 * @param sessionInterval
+	 *            the session interval desired by the UAS, in seconds, used if
+	 *            the request has none or a larger one
+	 * @return the session interval to put in the response Session-Expires
+	 *         header, or -1 if the request interval is smaller than minSE, and
+	 *         must be rejected with a {@link #SESSION_INTERVAL_TOO_SMALL}
+	 *         response with a Min-SE header
+	 */
+	public static int negotiateSessionInterval(Request request, int minSE, int sessionInterval) {
+		final int requested = getSessionExpires(request);
+		if (requested < 0) {
+			return Math.max(sessionInterval, minSE);
+		}
+		if (requested < minSE) {
+			return -1;
+		}
+		// the interval may be reduced, but not below the request Min-SE
+		return Math.max(Math.min(requested, sessionInterval), Math.max(minSE, getMinSE(request)));
+	}
+
+	/**
+	 * Sets the Session-Expires header of the specified message.
+	 * 
+	 * @param headerFactory
+	 * @param message
+	 * @param sessionInterval
+	 *            in seconds
+	 * @param refresher
+	 *            {@link #REFRESHER_UAC}, {@link #REFRESHER_UAS} or null
+	 * @throws ParseException
+	 */
+	public static void setSessionExpires(HeaderFactory headerFactory, Message message, int sessionInterval, String refresher) throws ParseException {
+		final String value = refresher == null ? Integer.toString(sessionInterval)
+				: new StringBuilder().append(sessionInterval).append(';').append(REFRESHER).append('=').append(refresher).toString();
+		message.setHeader(headerFactory.createHeader(SESSION_EXPIRES, value));
+	}
+
+	/**
+	 * Sets the Min-SE header of the specified message.
+	 * 
+	 * @param headerFactory
+	 * @param message
+	 * @param minSE
+	 *            in seconds
+	 * @throws ParseException
+	 */
+	public static void setMinSE(HeaderFactory headerFactory, Message message, int minSE) throws ParseException {
+		message.setHeader(headerFactory.createHeader(MIN_SE, Integer.toString(minSE)));
+	}
+
+	/**
+	 * Computes when the side which is not the refresher should consider the
+	 * session expired, if no refresh is received, as defined by RFC 4028.
+	 * 
+	 * @param sessionInterval
+	 *            in seconds
+	 * @return the time after the last refresh, in ms
+	 */
+	public static long getExpirationTime(int sessionInterval) {
+		final long interval = sessionInterval * 1000L;
+		return interval - Math.min(32000L, interval / 3);
+	}
+
+	private static String getValue(Header header) {
+		if (header == null) {
+			return null;
+		}
+		final String s = header.toString();
+		final int colon = s.indexOf(':');
+		return colon < 0 ? null : s.substring(colon + 1).trim();
+	}
+
+	private static int getDeltaSeconds(Header header) {
+		final String value = getValue(header);
+		if (value == null) {
+			return -1;
+		}
+		final int semicolon = value.indexOf(';');
+		try {
+			return Integer.parseInt((semicolon < 0 ? value : value.substring(0, semicolon)).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2017, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package net.java.slee.resource.sip;
+
+/**
+ * A long lived activity owned by the RA, where out of dialog requests are
+ * fired when the RA is configured to not create server transaction activities
+ * for their method. The server transaction is still retrieved from the request
+ * event, to send the response, but it is not an activity.
+ * 
+ * The RA keeps a small pool of these activities, requests with the same
+ * Call-ID are always fired on the same activity. The activities only end when
+ * the RA entity is deactivated, thus SBB entities attached to their activity
+ * contexts should detach once the request is processed.
+ * 
+ * @author martins
+ * 
+ */
+public interface SharedRequestActivity {
+
+	/**
+	 * Retrieves the index of this activity in the RA pool.
+	 * 
+	 * @return
+	 */
+	public int getIndex();
+
+}
@@ -66,4 +66,37 @@ public interface SipActivityContextInterfaceFactory  {
 	public ActivityContextInterface getActivityContextInterface(
 			DialogActivity dialog) throws UnrecognizedActivityException,
 			FactoryException;
+
+	/**
+	 * 
+	 * @param sharedRequestActivity
+	 * @return
+	 * @throws UnrecognizedActivityException
+	 * @throws FactoryException
+	 */
+	public ActivityContextInterface getActivityContextInterface(
+			SharedRequestActivity sharedRequestActivity)
+			throws UnrecognizedActivityException, FactoryException;
+
+	/**
+	 * 
+	 * @param bulkRequestActivity
+	 * @return
+	 * @throws UnrecognizedActivityException
+	 * @throws FactoryException
+	 */
+	public ActivityContextInterface getActivityContextInterface(
+			BulkRequestActivity bulkRequestActivity)
+			throws UnrecognizedActivityException, FactoryException;
+
+	/**
+	 * 
+	 * @param peerActivity
+	 * @return
+	 * @throws UnrecognizedActivityException
+	 * @throws FactoryException
+	 */
+	public ActivityContextInterface getActivityContextInterface(
+			PeerActivity peerActivity)
+			throws UnrecognizedActivityException, FactoryException;
 }
@@ -22,16 +22,24 @@
 
 package net.java.slee.resource.sip;
 
+import java.util.List;
+
+import javax.sip.ClientTransaction;
 import javax.sip.ServerTransaction;
 import javax.sip.SipException;
 import javax.sip.SipProvider;
+import javax.sip.TransactionUnavailableException;
 import javax.sip.TransportNotSupportedException;
 import javax.sip.address.AddressFactory;
 import javax.sip.address.Address;
 import javax.sip.address.SipURI;
+import javax.sip.address.URI;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ContentTypeHeader;
 import javax.sip.header.HeaderFactory;
 import javax.sip.header.ViaHeader;
 import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
 import javax.sip.message.Response;
 
 public interface SleeSipProvider extends SipProvider {
@@ -198,4 +206,256 @@ public interface SleeSipProvider extends SipProvider {
 	 * @return
 	 */
 	public boolean acceptCancel(CancelRequestEvent cancelEvent, boolean isProxy);
+
+	/**
+	 * Sends a request with the same method and body in each of the specified
+	 * dialogs, e.g. a presence NOTIFY to all subscribers. The requests are
+	 * built and sent by RA worker threads, after this method returns, and
+	 * their client transactions are not activities. The body is shared by
+	 * all requests, not copied.
+	 * 
+	 * The completion of the fan-out is signaled with a single
+	 * {@link BulkRequestCompletedEvent}, fired on the returned activity, thus
+	 * the SBB transaction does not grow with the number of dialogs.
+	 * 
+	 * @param method
+	 *            the request method, e.g. NOTIFY or MESSAGE
+	 * @param dialogs
+	 * @param contentType
+	 *            the body content type, null if there is no body
+	 * @param content
+	 *            the body, null if there is no body
+	 * @return
+	 * @throws SipException
+	 *             if the fan-out activity can't be created
+	 */
+	public BulkRequestActivity sendBulkRequest(String method,
+			List<DialogActivity> dialogs, ContentTypeHeader contentType,
+			byte[] content) throws SipException;
+
+	/**
+	 * Sends an out of dialog request, built from the specified template, to
+	 * each of the specified targets, e.g. a MESSAGE to all participants of a
+	 * chat room. For each target the RA copies the template, setting the
+	 * Request-URI and To header from the target, and a new Call-ID, From
+	 * tag and Via branch. The template body is shared by all requests.
+	 * 
+	 * The requests are built and sent by RA worker threads, after this
+	 * method returns, and their client transactions are not activities. The
+	 * completion of the fan-out is signaled with a single
+	 * {@link BulkRequestCompletedEvent}, fired on the returned activity.
+	 * 
+	 * @param template
+	 * @param targets
+	 * @return
+	 * @throws SipException
+	 *             if the fan-out activity can't be created
+	 */
+	public BulkRequestActivity sendBulkRequest(Request template,
+			List<Address> targets) throws SipException;
+
+	/**
+	 * Sends a request in a client transaction which is not an activity, for
+	 * fire-and-forget traffic such as a refresh PUBLISH or a forwarded
+	 * NOTIFY. If the request belongs to a dialog, it is sent in the dialog.
+	 * Provisional responses are not delivered to the application, and the
+	 * outcome, i.e. the final response, a timeout or a failure to send, is
+	 * signaled with a {@link ClientTransactionOutcomeEvent} fired on the
+	 * specified outcome activity, or only accounted in the RA statistics if
+	 * there is no outcome activity.
+	 * 
+	 * INVITE and ACK requests are not supported, the application needs the
+	 * transaction activity to handle the INVITE responses.
+	 * 
+	 * @param request
+	 * @param outcomeActivity
+	 *            an activity of this RA, e.g. a dialog or a long lived shared
+	 *            request activity, null if the outcome should only be
+	 *            accounted
+	 * @throws SipException
+	 *             if the request can't be sent
+	 */
+	public void sendRequestWithoutActivity(Request request,
+			Object outcomeActivity) throws SipException;
+
+	/**
+	 * Forwards a request statelessly (RFC 3261 section 16.11), without
+	 * client transactions or activities, e.g. in trunk selection or load
+	 * balancing services. A copy of the request is sent, with Max-Forwards
+	 * decremented, the top Route removed if it points to this RA, and a Via
+	 * which branch is derived from the incoming branch and the next hop, so
+	 * that retransmissions and CANCEL requests are forwarded with the same
+	 * branch. If the request was received in a server transaction, the
+	 * transaction is terminated.
+	 * 
+	 * The responses are relayed upstream by the RA, and not delivered to the
+	 * application.
+	 * 
+	 * @param request
+	 * @param nextHop
+	 *            the next hop, pushed as a loose route, or null if the
+	 *            request should be routed by its Route headers or
+	 *            Request-URI
+	 * @throws SipException
+	 *             if Max-Forwards reached zero, a
+	 *             {@link javax.sip.header.TooManyHopsException}, or the
+	 *             request can't be sent
+	 */
+	public void forwardStateless(Request request, URI nextHop)
+			throws SipException;
+
+	/**
+	 * Proxies the request of the specified server transaction to the
+	 * specified targets, as a stateful forking proxy (RFC 3261 section 16).
+	 * The targets are tried in groups of decreasing q-value, the targets of
+	 * a group in parallel, and the next group is only tried if all branches
+	 * of the previous one failed. The RA manages the branch transactions,
+	 * which are not activities, cancels the remaining branches once a 2xx
+	 * or 6xx response is received, or when the request is cancelled
+	 * upstream, and forwards the responses upstream, the final one being
+	 * the best response (RFC 3261 section 16.7).
+	 * 
+	 * Only the aggregated {@link ProxyResponseEvent}s are fired, on the
+	 * server transaction activity: the first provisional response, each
+	 * 2xx response and the best final response. The application must not
+	 * respond to the server transaction while it is proxied.
+	 * 
+	 * @param serverTransaction
+	 * @param targets
+	 *            the targets, with their q-values, e.g. the contacts of a
+	 *            registration
+	 * @throws SipException
+	 *             if Max-Forwards reached zero, a
+	 *             {@link javax.sip.header.TooManyHopsException}, or the
+	 *             server transaction is already proxied
+	 */
+	public void proxyRequest(ServerTransaction serverTransaction,
+			List<ContactHeader> targets) throws SipException;
+
+	/**
+	 * Creates a template from the specified out of dialog request, to send
+	 * high volumes of requests which only differ in the Request-URI, To,
+	 * Call-ID, CSeq, Via branch and body, without building and encoding each
+	 * one from scratch. The prototype should not be used after the template
+	 * is created.
+	 * 
+	 * @param prototype
+	 * @return
+	 * @throws SipException
+	 *             if the prototype is an ACK or CANCEL, has more than one
+	 *             Via, or a To tag
+	 */
+	public RequestTemplate createRequestTemplate(Request prototype)
+			throws SipException;
+
+	/**
+	 * Retrieves the transport health of the specified peer, as tracked from
+	 * the transport failures reported by the SIP stack, so that routing
+	 * logic can avoid failed peers without waiting for transaction timeouts.
+	 * 
+	 * @param host
+	 *            the peer IP address
+	 * @param port
+	 * @param transport
+	 * @return null if no failure is known for the peer
+	 */
+	public PeerHealth getPeerHealth(String host, int port, String transport);
+
+	/**
+	 * Retrieves the health of the peers which are currently failed.
+	 * 
+	 * @return
+	 */
+	public List<PeerHealth> getFailedPeers();
+
+	/**
+	 * Retrieves the activity of the specified peer, where its
+	 * {@link TransportFailureEvent}s are fired.
+	 * 
+	 * @param host
+	 *            the peer IP address
+	 * @param port
+	 * @param transport
+	 * @return null if the peer is not failed
+	 */
+	public PeerActivity getPeerActivity(String host, int port, String transport);
+
+	/**
+	 * Retrieves the RFC 3263 server locator, which the provider uses to send
+	 * out of dialog requests, if enabled in the RA configuration.
+	 * 
+	 * @return null if the server locator is not enabled
+	 */
+	public ServerLocator getServerLocator();
+
+	/**
+	 * Creates a peer pool, which exists until removed or the RA entity is
+	 * deactivated, in addition to the pools of the RA configuration.
+	 * 
+	 * @param name
+	 * @param selection
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a pool with the same name exists
+	 */
+	public PeerPool createPeerPool(String name, PeerPool.Selection selection) throws IllegalArgumentException;
+
+	/**
+	 * Retrieves the peer pool with the specified name.
+	 * 
+	 * @param name
+	 * @return null if there is no such pool
+	 */
+	public PeerPool getPeerPool(String name);
+
+	/**
+	 * Removes the peer pool with the specified name.
+	 * 
+	 * @param name
+	 * @return true if the pool existed
+	 */
+	public boolean removePeerPool(String name);
+
+	/**
+	 * Creates a client transaction activity for the specified out of dialog
+	 * request, to be sent to a member of the specified peer pool, which is
+	 * pushed to the request as a loose route. The member is selected per the
+	 * pool {@link PeerPool.Selection}, among the ones in rotation.
+	 * 
+	 * @param request
+	 * @param pool
+	 *            the pool name
+	 * @return
+	 * @throws TransactionUnavailableException
+	 *             if there is no such pool, or no member is in rotation
+	 */
+	public ClientTransaction getNewClientTransaction(Request request, String pool)
+			throws TransactionUnavailableException;
+
+	/**
+	 * Sets how the provisional responses received on the specified client
+	 * transaction are suppressed, overriding the RA default. Should be set
+	 * before the request is sent.
+	 * 
+	 * @param ct
+	 *            a client transaction created by this provider, or by a
+	 *            dialog activity
+	 * @param suppression
+	 *            null to use the RA default
+	 * @throws IllegalArgumentException
+	 *             if the client transaction was not created by the RA
+	 */
+	public void setProvisionalSuppression(ClientTransaction ct, ProvisionalSuppression suppression)
+			throws IllegalArgumentException;
+
+	/**
+	 * Retrieves the number of provisional responses suppressed on the
+	 * specified client transaction.
+	 * 
+	 * @param ct
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the client transaction was not created by the RA
+	 */
+	public long getSuppressedProvisionals(ClientTransaction ct) throws IllegalArgumentException;
 }
\ No newline at end of file